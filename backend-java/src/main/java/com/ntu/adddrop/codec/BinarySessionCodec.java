@@ -0,0 +1,355 @@
+package com.ntu.adddrop.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.util.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary session format.
+ * Layout: one version byte, then tagged fields (tag = field number << 3 | wire type) with
+ * varint numbers and length-prefixed UTF-8 strings, so field names are never stored and
+ * unknown fields from a newer writer are skipped. Known swap statuses are stored as ordinals.
+ * Values that start with '{' are legacy JSON and are decoded with Jackson.
+ */
+@Component
+@ConditionalOnProperty(name = "app.session.codec", havingValue = "binary", matchIfMissing = true)
+public class BinarySessionCodec implements SessionCodec {
+
+    static final byte FORMAT_VERSION = 0x01;
+
+    // Append only: the position is the stored ordinal
+    private static final List<String> STATUS_ORDINALS = List.of(
+        Constants.SwapStatus.IDLE,
+        Constants.SwapStatus.PROCESSING,
+        Constants.SwapStatus.COMPLETED,
+        Constants.SwapStatus.ERROR,
+        Constants.SwapStatus.STOPPED,
+        Constants.SwapStatus.TIMED_OUT,
+        Constants.SwapStatus.QUEUED
+    );
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_LENGTH = 2;
+
+    // Session fields
+    private static final int F_USERNAME = 1;
+    private static final int F_ENCRYPTED_PASSWORD = 2;
+    private static final int F_AUTHENTICATED = 3;
+    private static final int F_CREATED_AT = 4;
+    private static final int F_EXPIRES_AT = 5;
+    private static final int F_STATUS_ORDINAL = 6;
+    private static final int F_STATUS_TEXT = 7;
+    private static final int F_SWAP_MESSAGE = 8;
+    private static final int F_SWAP_STARTED_AT = 9;
+    private static final int F_MODULE = 10;
+    private static final int F_HAS_MODULES = 11;
+    private static final int F_STATUS_VERSION = 12;
+    private static final int F_SWAP_CYCLES = 13;
+    private static final int F_LAST_ATTEMPT_AT = 14;
+    private static final int F_LAST_ATTEMPT_MS = 15;
+    private static final int F_QUEUE_POSITION = 16;
+    private static final int F_ESTIMATED_START_AT = 17;
+
+    // Module fields
+    private static final int M_OLD_INDEX = 1;
+    private static final int M_NEW_INDEX = 2;
+    private static final int M_SWAPPED = 3;
+    private static final int M_MESSAGE = 4;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public BinarySessionCodec() {}
+
+    public BinarySessionCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(SessionData sessionData) {
+        Writer out = new Writer();
+        out.raw(FORMAT_VERSION);
+
+        out.string(F_USERNAME, sessionData.getUsername());
+        out.string(F_ENCRYPTED_PASSWORD, sessionData.getEncryptedPassword());
+        out.number(F_AUTHENTICATED, sessionData.isAuthenticated() ? 1 : 0);
+        out.number(F_CREATED_AT, sessionData.getCreatedAt());
+        out.number(F_EXPIRES_AT, sessionData.getExpiresAt());
+
+        String status = sessionData.getSwapStatus();
+        int ordinal = STATUS_ORDINALS.indexOf(status);
+        if (ordinal >= 0) {
+            out.number(F_STATUS_ORDINAL, ordinal);
+        } else {
+            out.string(F_STATUS_TEXT, status);
+        }
+        out.string(F_SWAP_MESSAGE, sessionData.getSwapMessage());
+        if (sessionData.getSwapStartedAt() != null) {
+            out.number(F_SWAP_STARTED_AT, sessionData.getSwapStartedAt());
+        }
+        out.number(F_STATUS_VERSION, sessionData.getStatusVersion());
+        if (sessionData.getSwapCycles() > 0) {
+            out.number(F_SWAP_CYCLES, sessionData.getSwapCycles());
+        }
+        if (sessionData.getLastAttemptAt() != null) {
+            out.number(F_LAST_ATTEMPT_AT, sessionData.getLastAttemptAt());
+        }
+        if (sessionData.getLastAttemptMs() != null) {
+            out.number(F_LAST_ATTEMPT_MS, sessionData.getLastAttemptMs());
+        }
+        if (sessionData.getQueuePosition() != null) {
+            out.number(F_QUEUE_POSITION, sessionData.getQueuePosition());
+        }
+        if (sessionData.getEstimatedStartAt() != null) {
+            out.number(F_ESTIMATED_START_AT, sessionData.getEstimatedStartAt());
+        }
+
+        if (sessionData.getModules() != null) {
+            out.number(F_HAS_MODULES, 1);
+            Writer moduleOut = new Writer();
+            for (ModuleStatus module : sessionData.getModules()) {
+                moduleOut.reset();
+                moduleOut.string(M_OLD_INDEX, module.getOldIndex());
+                if (module.getNewIndexes() != null) {
+                    for (String newIndex : module.getNewIndexes()) {
+                        moduleOut.string(M_NEW_INDEX, newIndex);
+                    }
+                }
+                moduleOut.number(M_SWAPPED, module.isSwapped() ? 1 : 0);
+                moduleOut.string(M_MESSAGE, module.getMessage());
+                out.nested(F_MODULE, moduleOut);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public SessionData decode(byte[] value) {
+        if (isBinary(value)) {
+            return decodeBinary(value);
+        }
+        return JsonSessionCodec.decodeJson(objectMapper, value);
+    }
+
+    @Override
+    public String name() {
+        return "binary-v" + FORMAT_VERSION;
+    }
+
+    static boolean isBinary(byte[] value) {
+        // JSON documents start with '{' or whitespace, never with a small control byte
+        return value != null && value.length > 0 && value[0] >= 0x01 && value[0] <= 0x08;
+    }
+
+    static SessionData decodeBinary(byte[] value) {
+        if (value[0] != FORMAT_VERSION) {
+            throw new SessionCodecException("Unsupported session format version: " + value[0]);
+        }
+
+        try {
+            Reader in = new Reader(value, 1, value.length);
+            SessionData sessionData = new SessionData();
+            List<ModuleStatus> modules = null;
+
+            while (in.hasMore()) {
+                int tag = (int) in.varint();
+                switch (tag >>> 3) {
+                    case F_USERNAME -> sessionData.setUsername(in.string());
+                    case F_ENCRYPTED_PASSWORD -> sessionData.setEncryptedPassword(in.string());
+                    case F_AUTHENTICATED -> sessionData.setAuthenticated(in.varint() != 0);
+                    case F_CREATED_AT -> sessionData.setCreatedAt(in.varint());
+                    case F_EXPIRES_AT -> sessionData.setExpiresAt(in.varint());
+                    case F_STATUS_ORDINAL -> sessionData.setSwapStatus(statusForOrdinal((int) in.varint()));
+                    case F_STATUS_TEXT -> sessionData.setSwapStatus(in.string());
+                    case F_SWAP_MESSAGE -> sessionData.setSwapMessage(in.string());
+                    case F_SWAP_STARTED_AT -> sessionData.setSwapStartedAt(in.varint());
+                    case F_STATUS_VERSION -> sessionData.setStatusVersion(in.varint());
+                    case F_SWAP_CYCLES -> sessionData.setSwapCycles((int) in.varint());
+                    case F_LAST_ATTEMPT_AT -> sessionData.setLastAttemptAt(in.varint());
+                    case F_LAST_ATTEMPT_MS -> sessionData.setLastAttemptMs(in.varint());
+                    case F_QUEUE_POSITION -> sessionData.setQueuePosition((int) in.varint());
+                    case F_ESTIMATED_START_AT -> sessionData.setEstimatedStartAt(in.varint());
+                    case F_HAS_MODULES -> {
+                        in.varint();
+                        if (modules == null) {
+                            modules = new ArrayList<>();
+                        }
+                    }
+                    case F_MODULE -> {
+                        if (modules == null) {
+                            modules = new ArrayList<>();
+                        }
+                        modules.add(decodeModule(in.nested()));
+                    }
+                    default -> in.skip(tag & 0x07);
+                }
+            }
+            sessionData.setModules(modules);
+            return sessionData;
+        } catch (SessionCodecException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SessionCodecException("Corrupt binary session data", e);
+        }
+    }
+
+    private static ModuleStatus decodeModule(Reader in) {
+        ModuleStatus module = new ModuleStatus();
+        List<String> newIndexes = new ArrayList<>();
+        while (in.hasMore()) {
+            int tag = (int) in.varint();
+            switch (tag >>> 3) {
+                case M_OLD_INDEX -> module.setOldIndex(in.string());
+                case M_NEW_INDEX -> newIndexes.add(in.string());
+                case M_SWAPPED -> module.setSwapped(in.varint() != 0);
+                case M_MESSAGE -> module.setMessage(in.string());
+                default -> in.skip(tag & 0x07);
+            }
+        }
+        module.setNewIndexes(newIndexes);
+        return module;
+    }
+
+    private static String statusForOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= STATUS_ORDINALS.size()) {
+            throw new SessionCodecException("Unknown swap status ordinal: " + ordinal);
+        }
+        return STATUS_ORDINALS.get(ordinal);
+    }
+
+    /* Minimal tagged-field writer over a growable, unsynchronized buffer */
+    private static class Writer {
+        private byte[] buffer = new byte[256];
+        private int count;
+
+        void raw(int b) {
+            ensureCapacity(1);
+            buffer[count++] = (byte) b;
+        }
+
+        void number(int field, long value) {
+            varint(((long) field << 3) | WIRE_VARINT);
+            varint(value);
+        }
+
+        void string(int field, String value) {
+            if (value != null) {
+                bytes(field, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void bytes(int field, byte[] value) {
+            bytes(field, value, value.length);
+        }
+
+        void bytes(int field, byte[] value, int length) {
+            varint(((long) field << 3) | WIRE_LENGTH);
+            varint(length);
+            ensureCapacity(length);
+            System.arraycopy(value, 0, buffer, count, length);
+            count += length;
+        }
+
+        void nested(int field, Writer nested) {
+            bytes(field, nested.buffer, nested.count);
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        private void varint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[count++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (count + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+    }
+
+    /* Minimal tagged-field reader over a slice of the buffer */
+    private static class Reader {
+        private final byte[] buffer;
+        private int position;
+        private final int limit;
+
+        Reader(byte[] buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return position < limit;
+        }
+
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new SessionCodecException("Truncated varint");
+                }
+                byte b = buffer[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new SessionCodecException("Malformed varint");
+        }
+
+        String string() {
+            int length = length();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Reader nested() {
+            int length = length();
+            Reader nested = new Reader(buffer, position, position + length);
+            position += length;
+            return nested;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case WIRE_VARINT -> varint();
+                case WIRE_LENGTH -> {
+                    // Not "position += length()": that adds to the position read before the length varint
+                    int length = length();
+                    position += length;
+                }
+                default -> throw new SessionCodecException("Unknown wire type: " + wireType);
+            }
+        }
+
+        private int length() {
+            long length = varint();
+            if (length < 0 || position + length > limit) {
+                throw new SessionCodecException("Field length out of bounds");
+            }
+            return (int) length;
+        }
+    }
+}
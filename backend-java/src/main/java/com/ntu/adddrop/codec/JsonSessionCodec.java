@@ -0,0 +1,55 @@
+package com.ntu.adddrop.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.model.SessionData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Legacy JSON format, matches the FastAPI session_data structure.
+ * Kept for rollback: it still reads values written by the binary codec.
+ */
+@Component
+@ConditionalOnProperty(name = "app.session.codec", havingValue = "json")
+public class JsonSessionCodec implements SessionCodec {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public JsonSessionCodec() {}
+
+    public JsonSessionCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(SessionData sessionData) {
+        try {
+            return objectMapper.writeValueAsBytes(sessionData);
+        } catch (Exception e) {
+            throw new SessionCodecException("Failed to serialize session data", e);
+        }
+    }
+
+    @Override
+    public SessionData decode(byte[] value) {
+        if (BinarySessionCodec.isBinary(value)) {
+            return BinarySessionCodec.decodeBinary(value);
+        }
+        return decodeJson(objectMapper, value);
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    static SessionData decodeJson(ObjectMapper objectMapper, byte[] value) {
+        try {
+            return objectMapper.readValue(value, SessionData.class);
+        } catch (Exception e) {
+            throw new SessionCodecException("Failed to deserialize session data", e);
+        }
+    }
+}
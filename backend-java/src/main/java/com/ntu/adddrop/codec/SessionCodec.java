@@ -0,0 +1,18 @@
+package com.ntu.adddrop.codec;
+
+import com.ntu.adddrop.model.SessionData;
+
+/**
+ * Encodes SessionData for storage in Redis.
+ * Every codec must be able to decode values written by the other codecs, so the
+ * stored format can be switched (or rolled back) without invalidating live sessions.
+ */
+public interface SessionCodec {
+
+    byte[] encode(SessionData sessionData);
+
+    SessionData decode(byte[] value);
+
+    /* Name of the format written by this codec, for logs and metrics */
+    String name();
+}
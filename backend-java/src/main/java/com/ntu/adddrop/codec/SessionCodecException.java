@@ -0,0 +1,13 @@
+package com.ntu.adddrop.codec;
+
+/* Thrown when session data can't be encoded or decoded */
+public class SessionCodecException extends RuntimeException {
+
+    public SessionCodecException(String message) {
+        super(message);
+    }
+
+    public SessionCodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
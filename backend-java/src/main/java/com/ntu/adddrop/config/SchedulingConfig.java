@@ -0,0 +1,29 @@
+package com.ntu.adddrop.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * One scheduler for the periodic background work of every service (expiry sweeps, status flushes,
+ * lease renewals, long-poll rechecks, wakeup and Grid polls, pre-login expiry, compaction, memory
+ * sampling) instead of a thread per service. A task that throws is logged and runs again next time.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    @Value("${app.scheduler.pool-size:4}")
+    private int poolSize;
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("background-");
+        scheduler.setDaemon(true);
+        // Lease renewals are cancelled with every released lease, don't keep them queued until due
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
@@ -1,22 +1,54 @@
 package com.ntu.adddrop.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.header.writers.CacheControlHeadersWriter;
+import org.springframework.security.web.header.writers.DelegatingRequestMatcherHeaderWriter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
     
+    private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
+    
+    // No shipped default: the admin endpoints stay closed until ADMIN_PASSWORD is set
+    @Value("${spring.security.user.password:}")
+    private String adminPassword;
+    
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+        boolean adminEnabled = !adminPassword.isBlank();
+        if (!adminEnabled) {
+            logger.warn("ADMIN_PASSWORD is not set, /api/admin/** is disabled");
+        }
+        
         http
             .csrf(csrf -> csrf.disable()) // Disable CSRF for API
-            .authorizeHttpRequests(auth -> auth
-                .anyRequest().permitAll() // Allow all requests for now
-            );
+            .headers(headers -> headers
+                // Swap status sets its own no-cache + ETag so clients can revalidate, keep no-store everywhere else
+                .cacheControl(cacheControl -> cacheControl.disable())
+                .addHeaderWriter(new DelegatingRequestMatcherHeaderWriter(
+                    new NegatedRequestMatcher(PathPatternRequestMatcher.withDefaults().matcher("/api/swap-status/**")),
+                    new CacheControlHeadersWriter()))
+            )
+            .authorizeHttpRequests(auth -> {
+                if (adminEnabled) {
+                    auth.requestMatchers("/api/admin/**").hasRole("ADMIN"); // Operator endpoints
+                } else {
+                    auth.requestMatchers("/api/admin/**").denyAll();
+                }
+                auth.anyRequest().permitAll(); // Allow all requests for now
+            })
+            .httpBasic(Customizer.withDefaults());
 
         return http.build();
     }
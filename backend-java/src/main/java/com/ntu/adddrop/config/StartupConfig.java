@@ -0,0 +1,72 @@
+package com.ntu.adddrop.config;
+
+import com.ntu.adddrop.service.SessionExpirySweeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+/**
+ * Support for lazy initialization (the fast-start profile). Work that has to run without any
+ * request, like the expiry sweep, stays eager. Once the app is ready and answering, the singletons
+ * still not created are created on a background thread, so Selenium class loading and the
+ * swap services' set-up land between startup and the first user rather than in either.
+ */
+@Configuration
+public class StartupConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupConfig.class);
+
+    @Value("${spring.main.lazy-initialization:false}")
+    private boolean lazyInitialization;
+
+    @Value("${app.startup.warm-up:true}")
+    private boolean warmUp;
+
+    /* Sessions expire whether or not anyone calls this node, so the sweeper can't wait for a request */
+    @Bean
+    static LazyInitializationExcludeFilter eagerBackgroundWork() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SessionExpirySweeper.class, StartupConfig.class);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp(ApplicationReadyEvent event) {
+        if (!lazyInitialization || !warmUp) {
+            return;
+        }
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        Thread thread = new Thread(() -> createRemainingSingletons(context), "startup-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void createRemainingSingletons(ConfigurableApplicationContext context) {
+        long start = System.currentTimeMillis();
+        ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+        int created = 0;
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            if (!context.isActive()) {
+                return;
+            }
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (!definition.isSingleton() || definition.isAbstract() || beanFactory.containsSingleton(name)) {
+                continue;
+            }
+            try {
+                beanFactory.getBean(name);
+                created++;
+            } catch (Exception e) {
+                // Left for first use, which reports the failure to whoever needs the bean
+                logger.warn("Warm-up could not create bean {}: {}", name, e.getMessage());
+            }
+        }
+        logger.info("Warm-up created {} beans in {} ms", created, System.currentTimeMillis() - start);
+    }
+}
@@ -1,8 +1,14 @@
 package com.ntu.adddrop.config;
 
+import com.ntu.adddrop.selenium.ChromeDriverServiceHolder;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.ImmutableCapabilities;
+import org.openqa.selenium.PageLoadStrategy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,9 +34,21 @@ public class WebDriverConfig {
     @Value("${app.selenium.timeouts.page-load:30}")
     private int pageLoadTimeout;
 
-    @Value("${app.selenium.timeouts.implicit-wait:10}")
+    @Value("${app.selenium.timeouts.implicit-wait:0}")
     private int implicitWaitTimeout;
 
+    @Value("${app.selenium.page-load-strategy:eager}")
+    private String pageLoadStrategy;
+
+    @Value("${app.selenium.shared-driver-service:true}")
+    private boolean sharedDriverService;
+
+    @Autowired
+    private ChromeDriverServiceHolder chromeDriverServiceHolder;
+
+    // Options are the same for every driver, build them once and share a read-only copy
+    private volatile Capabilities capabilities;
+
     /* Configure Chrome options for Selenium WebDriver */
     @Bean
     public ChromeOptions chromeOptions() {
@@ -57,6 +75,13 @@ public class WebDriverConfig {
         options.addArguments("--disable-javascript");
         options.addArguments("--disable-plugins");
         options.addArguments("--disable-popup-blocking");
+
+        // Sent with the new-session request instead of two extra round trips per driver
+        options.setPageLoadTimeout(Duration.ofSeconds(pageLoadTimeout));
+        options.setImplicitWaitTimeout(Duration.ofSeconds(implicitWaitTimeout));
+
+        // Return once the DOM is parsed; WaitPolicy waits for the elements each step needs
+        options.setPageLoadStrategy(PageLoadStrategy.fromString(pageLoadStrategy));
         
         return options;
     }
@@ -64,19 +89,28 @@ public class WebDriverConfig {
     /**
      * Create WebDriver bean with proper configuration
      * Scope: prototype - creates new instance each time
+     * With the shared driver service each driver is a browser session on the node's one
+     * chromedriver server, otherwise every driver launches its own chromedriver.
      */
     @Bean
     @Scope("prototype")
     public WebDriver webDriver() {
+        if (sharedDriverService) {
+            return new RemoteWebDriver(chromeDriverServiceHolder.getUrl(capabilities()), capabilities());
+        }
+
         // Set ChromeDriver path
         System.setProperty("webdriver.chrome.driver", chromeDriverPath);
         
-        ChromeDriver driver = new ChromeDriver(chromeOptions());
-        
-        // Set timeouts
-        driver.manage().timeouts().pageLoadTimeout(Duration.ofSeconds(pageLoadTimeout));
-        driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(implicitWaitTimeout));
-        
-        return driver;
+        return new ChromeDriver(chromeOptions());
+    }
+
+    private Capabilities capabilities() {
+        Capabilities built = capabilities;
+        if (built == null) {
+            built = new ImmutableCapabilities(chromeOptions());
+            capabilities = built;
+        }
+        return built;
     }
 }
@@ -0,0 +1,85 @@
+package com.ntu.adddrop.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.service.DemandIndexService;
+import com.ntu.adddrop.service.SwapAdminService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Operator endpoints, HTTP Basic protected (see SecurityConfig) */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdminController.class);
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private SwapAdminService swapAdminService;
+
+    @Autowired
+    private DemandIndexService demandIndexService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Stream swaps across all nodes as NDJSON, one session per line, written while Redis is scanned
+     * @param status Swap status to list (default Queued and Processing), or "all"
+     */
+    @GetMapping("/swaps")
+    public ResponseEntity<StreamingResponseBody> streamSwaps(@RequestParam(required = false) String status) {
+        Set<String> filter = SwapAdminService.statusFilter(status);
+
+        StreamingResponseBody body = out -> {
+            try {
+                swapAdminService.streamSwaps(filter, row -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(row));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, () -> {
+                    try {
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // Client went away, stop scanning
+                logger.debug("Swap stream aborted: {}", e.getMessage());
+            }
+        };
+
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /* Sessions waiting for a course index, in the order a freed seat would be offered */
+    @GetMapping("/demand/{index}")
+    public ResponseEntity<Map<String, Object>> demand(@PathVariable String index) {
+        List<String> waiters = demandIndexService.getWaiters(index);
+        return ResponseEntity.ok(Map.of(
+            "index", index,
+            "waiting_sessions", waiters.size(),
+            "waiters", waiters
+        ));
+    }
+}
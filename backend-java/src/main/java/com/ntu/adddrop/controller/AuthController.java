@@ -1,15 +1,19 @@
 package com.ntu.adddrop.controller;
 
 import com.ntu.adddrop.model.LoginRequest;
-import com.ntu.adddrop.model.SessionData;
 import com.ntu.adddrop.security.EncryptionService;
+import com.ntu.adddrop.service.PreLoginService;
+import com.ntu.adddrop.service.ReactiveSessionService;
 import com.ntu.adddrop.service.SessionService;
+import com.ntu.adddrop.service.SessionStatusWriteBuffer;
+import com.ntu.adddrop.util.Constants;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.util.Map;
 
@@ -28,6 +32,15 @@ public class AuthController {
     @Autowired
     private EncryptionService encryptionService;
 
+    @Autowired
+    private SessionStatusWriteBuffer sessionWriteBuffer;
+
+    @Autowired
+    private ReactiveSessionService reactiveSessionService;
+
+    @Autowired
+    private PreLoginService preLoginService;
+
     /* Login endpoint: /api/login */
     @PostMapping("/login")
     public ResponseEntity<Map<String, Object>> login(
@@ -49,12 +62,16 @@ public class AuthController {
             request.getSession().setAttribute("authenticated", true);
             request.getSession().setAttribute("numModules", loginRequest.getNumModules());
 
+            // Log in to the portal while the user fills in the swap form, see /api/login-status
+            String preLogin = preLoginService.start(sessionId);
+
             // Return 200 OK success response
             return ResponseEntity.ok(Map.of(
                 "success", true,
                 "message", "Login successful",
                 "session_id", sessionId,
-                "num_modules", loginRequest.getNumModules()
+                "num_modules", loginRequest.getNumModules(),
+                "pre_login", preLogin
             ));
         } catch (Exception e) {
             // Return 500 error response
@@ -74,6 +91,8 @@ public class AuthController {
         try {
             // Clean up session from Redis
             sessionService.cleanupSession(sessionId);
+            sessionWriteBuffer.discard(sessionId);
+            preLoginService.discard(sessionId);
 
             // Invalidate HTTP session
             request.getSession().invalidate();
@@ -92,28 +111,50 @@ public class AuthController {
 
     /* Check session status - additional endpoint for frontend */
     @GetMapping("/session-status/{sessionId}")
-    public ResponseEntity<Map<String, Object>> getSessionStatus(@PathVariable String sessionId) {
-        try {
-            SessionData sessionData = sessionService.getSecureSession(sessionId);
-
-            return ResponseEntity.ok(Map.of(
+    public Mono<ResponseEntity<Map<String, Object>>> getSessionStatus(@PathVariable String sessionId) {
+        return reactiveSessionService.getSecureSession(sessionId)
+            .map(sessionData -> ResponseEntity.ok(Map.<String, Object>of(
                 "success", true,
                 "authenticated", sessionData.isAuthenticated(),
                 "username", sessionData.getUsername(),
                 "swap_status", sessionData.getSwapStatus(),
                 "created_at", sessionData.getCreatedAt(),
                 "expires_at", sessionData.getExpiresAt()
-            ));
-        } catch (SecurityException e) {
-            return ResponseEntity.status(401).body(Map.of(
+            )))
+            .onErrorResume(SecurityException.class, e -> Mono.just(ResponseEntity.status(401).body(Map.of(
                 "success", false,
                 "message", e.getMessage()
-            ));
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body(Map.of(
+            ))))
+            .onErrorResume(e -> Mono.just(ResponseEntity.status(500).body(Map.of(
                 "success", false,
                 "message", "Failed to get session status: " + e.getMessage()
-            ));
-        }
+            ))));
+    }
+
+    /* Whether the background portal login started at /api/login got through */
+    @GetMapping("/login-status/{sessionId}")
+    public Mono<ResponseEntity<Map<String, Object>>> getLoginStatus(@PathVariable String sessionId) {
+        return preLoginService.status(sessionId)
+            .map(state -> ResponseEntity.ok(Map.<String, Object>of(
+                "success", true,
+                "pre_login", state,
+                "credentials_rejected", PreLoginService.REJECTED.equals(state),
+                "message", loginStatusMessage(state)
+            )))
+            .onErrorResume(e -> Mono.just(ResponseEntity.status(500).body(Map.of(
+                "success", false,
+                "message", "Failed to get login status: " + e.getMessage()
+            ))));
+    }
+
+    private static String loginStatusMessage(String state) {
+        return switch (state) {
+            case PreLoginService.PENDING -> "Logging into NTU portal...";
+            case PreLoginService.READY, PreLoginService.CLAIMED -> "Logged into NTU portal";
+            case PreLoginService.REJECTED -> Constants.ErrorMessages.LOGIN_FAILED;
+            case PreLoginService.FAILED -> "Could not reach the NTU portal yet, will retry when the swap starts";
+            case PreLoginService.EXPIRED -> "Portal login expired, will log in again when the swap starts";
+            default -> "No portal login in progress for this session";
+        };
     }
 }
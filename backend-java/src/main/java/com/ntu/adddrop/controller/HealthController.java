@@ -1,11 +1,12 @@
 package com.ntu.adddrop.controller;
 
+import com.ntu.adddrop.service.ReactiveSessionService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -15,7 +16,7 @@ import java.util.Map;
 public class HealthController {
     
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private ReactiveSessionService reactiveSessionService;
 
     @GetMapping("/")
     public ResponseEntity<Map<String, Object>> root() {
@@ -27,24 +28,19 @@ public class HealthController {
     }
 
     @GetMapping("/health")
-    public ResponseEntity<Map<String, Object>> healthCheck() {
-        try {
-            // Test Redis Connection
-            redisTemplate.opsForValue().set("health-check", "ok");
-            String value = redisTemplate.opsForValue().get("health-check");
-
-            return ResponseEntity.ok(Map.of(
+    public Mono<ResponseEntity<Map<String, Object>>> healthCheck() {
+        // Test Redis Connection
+        return reactiveSessionService.healthCheck()
+            .map(value -> ResponseEntity.ok(Map.<String, Object>of(
                 "status", "healthy",
                 "redis", "connected",
                 "redis-test", value,
                 "timestamp", LocalDateTime.now()
-            ));
-        } catch (Exception e) {
-            return ResponseEntity.status(503).body(Map.of(
+            )))
+            .onErrorResume(e -> Mono.just(ResponseEntity.status(503).body(Map.of(
                 "status", "unhealthy",
                 "redis", "disconnected: " + e.getMessage(),
                 "timestamp", LocalDateTime.now()
-            ));
-        }
+            ))));
     }
 }
@@ -0,0 +1,108 @@
+package com.ntu.adddrop.controller;
+
+import com.ntu.adddrop.selenium.DriverAdmissionController;
+import com.ntu.adddrop.selenium.DriverProvider;
+import com.ntu.adddrop.selenium.FailureRecovery;
+import com.ntu.adddrop.selenium.PortalCircuitBreaker;
+import com.ntu.adddrop.selenium.PortalRequestGovernor;
+import com.ntu.adddrop.selenium.VacancyCache;
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.page.PageRecorder;
+import com.ntu.adddrop.selenium.page.StarsPages;
+import com.ntu.adddrop.service.AttemptScheduler;
+import com.ntu.adddrop.service.DemandIndexService;
+import com.ntu.adddrop.service.PreLoginService;
+import com.ntu.adddrop.service.SeleniumService;
+import com.ntu.adddrop.service.SessionEventLog;
+import com.ntu.adddrop.service.SessionExpirySweeper;
+import com.ntu.adddrop.service.SessionStatusWriteBuffer;
+import com.ntu.adddrop.timeseries.VacancyHistoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/* Operational metrics for tuning the automation backend */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    @Autowired
+    private PortalRequestGovernor portalRequestGovernor;
+
+    @Autowired
+    private SessionStatusWriteBuffer sessionWriteBuffer;
+
+    @Autowired
+    private SessionExpirySweeper sessionExpirySweeper;
+
+    @Autowired
+    private VacancyCache vacancyCache;
+
+    @Autowired
+    private DemandIndexService demandIndexService;
+
+    @Autowired
+    private VacancyHistoryService vacancyHistoryService;
+
+    @Autowired
+    private AttemptScheduler attemptScheduler;
+
+    @Autowired
+    private PreLoginService preLoginService;
+
+    @Autowired
+    private DriverProvider driverProvider;
+
+    @Autowired
+    private DriverAdmissionController driverAdmissionController;
+
+    @Autowired
+    private WaitPolicy waitPolicy;
+
+    @Autowired
+    private StarsPages starsPages;
+
+    @Autowired
+    private FailureRecovery failureRecovery;
+
+    @Autowired
+    private PortalCircuitBreaker portalCircuitBreaker;
+
+    @Autowired
+    private SessionEventLog sessionEventLog;
+
+    @Autowired
+    private PageRecorder pageRecorder;
+
+    @Autowired
+    private SeleniumService seleniumService;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> metrics() {
+        return ResponseEntity.ok(Map.ofEntries(
+            Map.entry("portal_governor", portalRequestGovernor.getStats()),
+            Map.entry("session_write_buffer", sessionWriteBuffer.getStats()),
+            Map.entry("session_expiry_sweeper", sessionExpirySweeper.getStats()),
+            Map.entry("vacancy_cache", vacancyCache.getStats()),
+            Map.entry("demand_index", demandIndexService.getStats()),
+            Map.entry("vacancy_history", vacancyHistoryService.getStats()),
+            Map.entry("attempt_scheduler", attemptScheduler.getStats()),
+            Map.entry("pre_login", preLoginService.getStats()),
+            Map.entry("driver_provider", driverProvider.getStats()),
+            Map.entry("driver_admission", driverAdmissionController.getStats()),
+            Map.entry("wait_policy", waitPolicy.getStats()),
+            Map.entry("pages", starsPages.getStats()),
+            Map.entry("recovery", failureRecovery.getStats()),
+            Map.entry("portal_breaker", portalCircuitBreaker.getStats()),
+            Map.entry("event_log", sessionEventLog.getStats()),
+            Map.entry("page_recorder", pageRecorder.getStats()),
+            Map.entry("swap_loops", seleniumService.getLoopStats()),
+            Map.entry("timestamp", LocalDateTime.now())
+        ));
+    }
+}
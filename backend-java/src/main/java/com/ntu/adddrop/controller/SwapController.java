@@ -1,18 +1,30 @@
 package com.ntu.adddrop.controller;
 
+import com.ntu.adddrop.exception.SwapProcessingException;
 import com.ntu.adddrop.service.SwapProcessingService;
+import com.ntu.adddrop.service.SwapProcessingService.QueueTicket;
 import com.ntu.adddrop.service.SwapProcessingService.SwapItem;
 import com.ntu.adddrop.service.SwapProcessingService.SwapStatusResponse;
+import com.ntu.adddrop.service.SessionEventLog;
 import com.ntu.adddrop.service.SessionService;
+import com.ntu.adddrop.service.SessionStatusWriteBuffer;
+import com.ntu.adddrop.service.SwapStatusWatchService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,19 +34,35 @@ import java.util.Map;
     "http://localhost:3000",
     "https://ntu-add-drop-automator.vercel.app",
     "https://ntu-add-drop-automator-*.vercel.app"
-})
+}, exposedHeaders = {HttpHeaders.ETAG, HttpHeaders.RETRY_AFTER})
 public class SwapController {
     
     private static final Logger logger = LoggerFactory.getLogger(SwapController.class);
     
+    private static final int MAX_HISTORY_PAGE = 500;
+    
     @Autowired
     private SwapProcessingService swapProcessingService;
     
     @Autowired
     private SessionService sessionService;
     
+    @Autowired
+    private SessionStatusWriteBuffer sessionWriteBuffer;
+    
+    @Autowired
+    private SwapStatusWatchService swapStatusWatchService;
+    
+    @Autowired
+    private SessionEventLog sessionEventLog;
+    
+    @Value("${app.swap.status.long-poll-timeout-seconds:25}")
+    private long longPollTimeoutSeconds;
+    
     /**
      * Submit swap request - matches your FastAPI /api/submit-swap
+     * The response carries a queue ticket: position 0 starts right away, otherwise the swap waits for
+     * a browser and /api/swap-status reports its position. A full queue answers 429 with Retry-After.
      */
     @PostMapping("/submit-swap")
     public ResponseEntity<Map<String, Object>> submitSwap(
@@ -100,16 +128,43 @@ public class SwapController {
             }
             
             // Start swap process (matches your FastAPI thread.start())
-            swapProcessingService.startSwapProcess(sessionId, swapItems);
+            QueueTicket ticket = swapProcessingService.startSwapProcess(sessionId, swapItems);
             
-            logger.info("Swap process started successfully for session: {}", sessionId);
+            logger.info("Swap process started successfully for session: {} (queue position {})", sessionId, ticket.getPosition());
             
             return ResponseEntity.ok(Map.of(
                 "success", true,
                 "session_id", sessionId,
-                "message", "Swap process started successfully"
+                "message", ticket.isQueued()
+                    ? "Swap queued at position " + ticket.getPosition() + ", it will start when a browser is free"
+                    : "Swap process started successfully",
+                "queued", ticket.isQueued(),
+                "ticket", Map.of(
+                    "position", ticket.getPosition(),
+                    "estimated_start_at", ticket.getEstimatedStartAt()
+                )
             ));
             
+        } catch (SwapProcessingException.QueueFullException e) {
+            // Back-pressure: tell the client when a queue spot is expected instead of starting a doomed loop
+            logger.warn("Swap submission turned away, browser queue full, session: {}", e.getSessionId());
+            return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of(
+                    "success", false,
+                    "session_id", e.getSessionId(),
+                    "message", e.getMessage(),
+                    "retry_after_seconds", e.getRetryAfterSeconds()
+                ));
+            
+        } catch (SwapProcessingException.SwapAlreadyRunningException e) {
+            // Duplicate submission (double click / retry): answer fast instead of starting another browser
+            logger.info("Duplicate swap submission ignored for session: {}", e.getSessionId());
+            return ResponseEntity.status(409).body(Map.of(
+                "success", false,
+                "session_id", e.getSessionId(),
+                "message", e.getMessage()
+            ));
         } catch (Exception e) {
             logger.error("Error submitting swap request: {}", e.getMessage(), e);
             return ResponseEntity.status(500).body(Map.of(
@@ -121,21 +176,129 @@ public class SwapController {
     
     /**
      * Get swap status - matches your FastAPI /api/swap-status/{session_id}
+     * Clients that send If-None-Match with the last ETag get a 304 while the status version is unchanged.
+     * Clients that pass sinceVersion are parked until the version moves past it, or get a 304 on timeout.
      */
     @GetMapping("/swap-status/{sessionId}")
-    public ResponseEntity<SwapStatusResponse> getSwapStatus(@PathVariable String sessionId) {
+    public Mono<ResponseEntity<SwapStatusResponse>> getSwapStatus(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) Long sinceVersion,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.debug("Getting swap status for session: {}", sessionId);
+        
+        Long knownVersion = sinceVersion != null ? sinceVersion : parseETag(ifNoneMatch);
+        if (knownVersion == null) {
+            return fetchSwapStatus(sessionId);
+        }
+        
+        // Only the small version key is read here, the session itself is loaded only when it changed
+        return swapStatusWatchService.currentVersion(sessionId)
+            .flatMap(current -> {
+                if (current < 0 || current != knownVersion) {
+                    return fetchSwapStatus(sessionId);
+                }
+                if (sinceVersion == null) {
+                    return Mono.just(notModified(current));
+                }
+                return swapStatusWatchService.awaitVersionAfter(sessionId, sinceVersion, Duration.ofSeconds(longPollTimeoutSeconds))
+                    .flatMap(changed -> changed ? fetchSwapStatus(sessionId) : Mono.just(notModified(sinceVersion)));
+            })
+            .onErrorResume(e -> {
+                logger.error("Error checking swap status version for session: {}: {}", sessionId, e.getMessage());
+                return fetchSwapStatus(sessionId);
+            });
+    }
+    
+    private Mono<ResponseEntity<SwapStatusResponse>> fetchSwapStatus(String sessionId) {
+        // Served on the Redis event loop, no servlet thread is held while waiting
+        return swapProcessingService.getSwapStatusReactive(sessionId)
+            .map(status -> ResponseEntity.ok()
+                .eTag(eTagFor(status.getVersion()))
+                .cacheControl(CacheControl.noCache())
+                .body(status))
+            .onErrorResume(e -> {
+                logger.error("Error getting swap status for session: {}: {}", sessionId, e.getMessage());
+                return Mono.just(ResponseEntity.status(500).body(null));
+            });
+    }
+    
+    private static ResponseEntity<SwapStatusResponse> notModified(long version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            .eTag(eTagFor(version))
+            .cacheControl(CacheControl.noCache())
+            .build();
+    }
+    
+    private static String eTagFor(long version) {
+        return "\"v" + version + "\"";
+    }
+    
+    /* Accepts "v12", W/"v12" and "v12" - returns null for anything else */
+    private static Long parseETag(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        String tag = ifNoneMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+        if (!tag.startsWith("v")) {
+            return null;
+        }
         try {
-            logger.debug("Getting swap status for session: {}", sessionId);
-            
-            SwapStatusResponse status = swapProcessingService.getSwapStatus(sessionId);
-            return ResponseEntity.ok(status);
-            
-        } catch (Exception e) {
-            logger.error("Error getting swap status for session: {}: {}", sessionId, e.getMessage());
-            return ResponseEntity.status(500).body(null);
+            return Long.parseLong(tag.substring(1));
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
     
+    /**
+     * Event history of a swap, oldest first. Pass the returned next_cursor as after to read on from there.
+     * The first page (no cursor) also carries the current state, folded from the whole log.
+     */
+    @GetMapping("/swap-history/{sessionId}")
+    public Mono<ResponseEntity<Map<String, Object>>> getSwapHistory(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (after != null && !SessionEventLog.isValidCursor(after)) {
+            return Mono.just(ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Invalid cursor: " + after
+            )));
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE));
+        Mono<Map<String, Object>> current = after == null ? sessionEventLog.fold(sessionId) : Mono.just(Map.of());
+        
+        return Mono.zip(sessionEventLog.read(sessionId, after, pageSize), current)
+            .map(page -> {
+                List<Map<String, String>> events = page.getT1();
+                if (events.isEmpty() && after == null) {
+                    return ResponseEntity.status(404).body(Map.<String, Object>of(
+                        "success", false,
+                        "message", "No history for this session"
+                    ));
+                }
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("success", true);
+                body.put("events", events);
+                body.put("next_cursor", events.isEmpty() ? after : events.get(events.size() - 1).get("id"));
+                body.put("has_more", events.size() == pageSize);
+                if (after == null) {
+                    body.put("current", page.getT2());
+                }
+                return ResponseEntity.ok(body);
+            })
+            .onErrorResume(e -> {
+                logger.error("Error reading swap history for session: {}: {}", sessionId, e.getMessage());
+                return Mono.just(ResponseEntity.status(500).body(Map.of(
+                    "success", false,
+                    "message", "Error reading swap history"
+                )));
+            });
+    }
+    
     /**
      * Stop swap - matches your FastAPI /api/stop-swap/{session_id}
      */
@@ -152,6 +315,7 @@ public class SwapController {
             
             // Clean up session (matches your FastAPI cleanup)
             sessionService.cleanupSession(sessionId);
+            sessionWriteBuffer.discard(sessionId);
             request.getSession().invalidate();
             
             return ResponseEntity.ok(Map.of(
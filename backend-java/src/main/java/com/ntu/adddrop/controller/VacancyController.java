@@ -0,0 +1,72 @@
+package com.ntu.adddrop.controller;
+
+import com.ntu.adddrop.timeseries.VacancyHistoryService;
+import com.ntu.adddrop.timeseries.VacancySeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Observed vacancy history per course index */
+@RestController
+@RequestMapping("/api/vacancies")
+public class VacancyController {
+
+    private static final Logger logger = LoggerFactory.getLogger(VacancyController.class);
+
+    private static final long MAX_RANGE_SECONDS = 31L * 24 * 60 * 60;
+    private static final long DEFAULT_RANGE_SECONDS = 24L * 60 * 60;
+
+    @Autowired
+    private VacancyHistoryService vacancyHistoryService;
+
+    /**
+     * Vacancy samples for an index
+     * @param from Epoch seconds, default 24 hours before to
+     * @param to Epoch seconds, default now
+     * @param step Bucket size in seconds; raw samples when omitted
+     */
+    @GetMapping("/{index}/history")
+    public ResponseEntity<Map<String, Object>> history(
+            @PathVariable String index,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to,
+            @RequestParam(required = false) Long step) {
+
+        long end = to != null ? to : System.currentTimeMillis() / 1000;
+        long start = from != null ? from : end - DEFAULT_RANGE_SECONDS;
+        if (start >= end || end - start > MAX_RANGE_SECONDS || (step != null && step <= 0)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "from must be before to, the range at most 31 days and step positive"
+            ));
+        }
+
+        try {
+            VacancySeries series = vacancyHistoryService.query(index, start, end);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("success", true);
+            response.put("index", index);
+            response.put("from", start);
+            response.put("to", end);
+            response.put("step", step);
+            response.put("points", step != null ? series.downsample(start, step) : series.toRows());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            logger.error("Error reading vacancy history for index: {}: {}", index, e.getMessage());
+            return ResponseEntity.status(500).body(Map.of(
+                "success", false,
+                "message", "Failed to read vacancy history: " + e.getMessage()
+            ));
+        }
+    }
+}
@@ -53,4 +53,16 @@ public class SeleniumException extends RuntimeException{
             super("NAVIGATION_FAILED", "Failed to navigate to " + url + ": " + message);
         }
     }
+    
+    public static class PortalClosedException extends SeleniumException {
+        public PortalClosedException(String alertText) {
+            super("PORTAL_CLOSED", "Portal closed: " + alertText);
+        }
+    }
+    
+    public static class NodeAtCapacityException extends SeleniumException {
+        public NodeAtCapacityException(String message) {
+            super("NODE_AT_CAPACITY", message);
+        }
+    }
 }
@@ -50,4 +50,30 @@ public class SwapProcessingException extends RuntimeException {
             super("INVALID_MODULE", sessionId, "Invalid module index " + moduleIndex);
         }
     }
+
+    public static class SwapAlreadyRunningException extends SwapProcessingException {
+        public SwapAlreadyRunningException(String sessionId) {
+            super("SWAP_ALREADY_RUNNING", sessionId, "A swap is already running for this session");
+        }
+    }
+
+    public static class StatusWriteException extends SwapProcessingException {
+        public StatusWriteException(String sessionId, Throwable cause) {
+            super("STATUS_WRITE_FAILED", sessionId, "Could not save the swap status yet, it will be retried: " + cause.getMessage());
+            initCause(cause);
+        }
+    }
+
+    public static class QueueFullException extends SwapProcessingException {
+        private final long retryAfterSeconds;
+
+        public QueueFullException(String sessionId, long retryAfterSeconds) {
+            super("QUEUE_FULL", sessionId, "All browsers on this server are busy and the queue is full, please try again later");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
 }
@@ -21,7 +21,7 @@ public class SessionData {
 
     // Swap status fields
     @JsonProperty("swap_status")
-    private String swapStatus; // "Idle", "Processing", "Completed", "Error", "Stopped", "Timed Out"
+    private String swapStatus; // "Idle", "Queued", "Processing", "Completed", "Error", "Stopped", "Timed Out"
 
     @JsonProperty("swap_message")
     private String swapMessage;
@@ -29,6 +29,27 @@ public class SessionData {
     @JsonProperty("swap_started_at")
     private Long swapStartedAt;
 
+    // Incremented on every status / module write, used for ETags and long-polling
+    @JsonProperty("status_version")
+    private long statusVersion;
+
+    // Swap loop progress, reported by the admin swaps stream
+    @JsonProperty("swap_cycles")
+    private int swapCycles;
+
+    @JsonProperty("last_attempt_at")
+    private Long lastAttemptAt;
+
+    @JsonProperty("last_attempt_ms")
+    private Long lastAttemptMs;
+
+    // Only set while Queued for a browser slot
+    @JsonProperty("queue_position")
+    private Integer queuePosition;
+
+    @JsonProperty("estimated_start_at")
+    private Long estimatedStartAt;
+
     // Module data
     private List<ModuleStatus> modules;
 
@@ -165,6 +186,54 @@ public class SessionData {
         this.swapStartedAt = swapStartedAt;
     }
     
+    public long getStatusVersion() {
+        return statusVersion;
+    }
+    
+    public void setStatusVersion(long statusVersion) {
+        this.statusVersion = statusVersion;
+    }
+    
+    public int getSwapCycles() {
+        return swapCycles;
+    }
+    
+    public void setSwapCycles(int swapCycles) {
+        this.swapCycles = swapCycles;
+    }
+    
+    public Long getLastAttemptAt() {
+        return lastAttemptAt;
+    }
+    
+    public void setLastAttemptAt(Long lastAttemptAt) {
+        this.lastAttemptAt = lastAttemptAt;
+    }
+    
+    public Long getLastAttemptMs() {
+        return lastAttemptMs;
+    }
+    
+    public void setLastAttemptMs(Long lastAttemptMs) {
+        this.lastAttemptMs = lastAttemptMs;
+    }
+    
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+    
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+    
+    public Long getEstimatedStartAt() {
+        return estimatedStartAt;
+    }
+    
+    public void setEstimatedStartAt(Long estimatedStartAt) {
+        this.estimatedStartAt = estimatedStartAt;
+    }
+    
     public List<ModuleStatus> getModules() {
         return modules;
     }
@@ -0,0 +1,94 @@
+package com.ntu.adddrop.selenium;
+
+import jakarta.annotation.PreDestroy;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.remote.service.DriverFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One chromedriver server per node, started on first use and restarted if it dies. Every browser
+ * session is created against its URL, so a new driver costs a browser launch but no chromedriver
+ * launch. Drivers must be RemoteWebDrivers: ChromeDriver(service, options) stops the service on
+ * the first quit().
+ */
+@Component
+public class ChromeDriverServiceHolder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChromeDriverServiceHolder.class);
+
+    @Value("${app.selenium.chrome.driver-path:}")
+    private String chromeDriverPath;
+
+    private volatile ChromeDriverService service;
+
+    private final AtomicLong starts = new AtomicLong();
+
+    /**
+     * URL of the running chromedriver server, starting it if needed
+     * @param capabilities Used by Selenium Manager to pick a chromedriver when no driver-path is set
+     */
+    public URL getUrl(Capabilities capabilities) {
+        ChromeDriverService current = service;
+        if (current != null && current.isRunning()) {
+            return current.getUrl();
+        }
+        return start(capabilities).getUrl();
+    }
+
+    private synchronized ChromeDriverService start(Capabilities capabilities) {
+        if (service != null && service.isRunning()) {
+            return service;
+        }
+        if (service != null) {
+            logger.warn("Shared chromedriver is no longer running, starting a new one");
+            service.stop();
+        }
+
+        ChromeDriverService.Builder builder = new ChromeDriverService.Builder().usingAnyFreePort();
+        if (chromeDriverPath != null && new File(chromeDriverPath).isFile()) {
+            builder.usingDriverExecutable(new File(chromeDriverPath));
+        }
+        ChromeDriverService created = builder.build();
+        if (created.getExecutable() == null) {
+            created.setExecutable(DriverFinder.getPath(created, capabilities).getDriverPath());
+        }
+
+        try {
+            created.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start chromedriver", e);
+        }
+        starts.incrementAndGet();
+        logger.info("Shared chromedriver started at {}", created.getUrl());
+        service = created;
+        return created;
+    }
+
+    public Map<String, Object> getStats() {
+        ChromeDriverService current = service;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", current != null && current.isRunning());
+        stats.put("starts", starts.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (service != null) {
+            service.stop();
+            service = null;
+        }
+    }
+}
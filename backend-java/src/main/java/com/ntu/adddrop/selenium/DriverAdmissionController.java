@@ -0,0 +1,463 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import com.sun.management.OperatingSystemMXBean;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Admits a new local browser only while the node's memory budget has room for it, so a rush of
+ * sessions queues instead of OOM-killing the container. The budget is the cgroup memory limit
+ * (or physical memory) minus the JVM's max heap and a fixed overhead; each browser is charged the
+ * memory measured across this JVM's child processes divided by the number of drivers, starting from an
+ * estimate until Chrome has run. Memory is PSS where the kernel has smaps_rollup, so pages the Chrome
+ * processes share are counted once, and RSS otherwise. Sessions over capacity wait in FIFO order and can see their position.
+ * When the queue is full or a wait times out, the session is turned away rather than the node crashing.
+ * Wait estimates come from how fast slots were given back over the last throughput window, or before
+ * enough have been, from the mean time a browser holds its slot spread over the node's capacity.
+ */
+@Component
+public class DriverAdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DriverAdmissionController.class);
+
+    private static final long MB = 1024 * 1024;
+
+    // cgroup v1 reports "no limit" as a huge page-aligned number
+    private static final long UNLIMITED = 1L << 60;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${app.selenium.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.selenium.admission.memory-limit-mb:0}")
+    private long memoryLimitMb;
+
+    @Value("${app.selenium.admission.jvm-overhead-mb:256}")
+    private long jvmOverheadMb;
+
+    @Value("${app.selenium.admission.initial-driver-mb:400}")
+    private long initialDriverMb;
+
+    @Value("${app.selenium.admission.max-queued:50}")
+    private int maxQueued;
+
+    @Value("${app.selenium.admission.max-wait-seconds:600}")
+    private long maxWaitSeconds;
+
+    @Value("${app.selenium.admission.sample-interval-seconds:10}")
+    private long sampleIntervalSeconds;
+
+    @Value("${app.selenium.admission.throughput-window-seconds:900}")
+    private long throughputWindowSeconds;
+
+    @Value("${app.selenium.admission.default-hold-seconds:1800}")
+    private long defaultHoldSeconds;
+
+    // Releases needed in the window before the observed rate is trusted over the hold time
+    private static final int MIN_RELEASES_FOR_RATE = 3;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Sessions waiting for a browser, head first
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private int admitted;
+
+    // When slots were given back by browsers that ran, oldest first, trimmed to the throughput window
+    private final Deque<Long> releaseTimes = new ArrayDeque<>();
+    private volatile long startedAtMillis;
+    private volatile long meanHoldMillis;
+
+    private volatile long limitBytes;
+    private volatile String limitSource;
+    private volatile long reserveBytes;
+    private volatile long perDriverBytes;
+    private volatile long lastRssBytes;
+    private volatile String memoryMeasure = "none";
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    private volatile ScheduledFuture<?> sampling;
+
+    @PostConstruct
+    public void start() {
+        detectLimit();
+        reserveBytes = Runtime.getRuntime().maxMemory() + jvmOverheadMb * MB;
+        perDriverBytes = initialDriverMb * MB;
+        startedAtMillis = System.currentTimeMillis();
+        logger.info("Driver admission: memory limit {} MB ({}), JVM reserve {} MB, capacity {} browsers at {} MB each",
+            limitBytes / MB, limitSource, reserveBytes / MB, capacity(), perDriverBytes / MB);
+        sampling = taskScheduler.scheduleWithFixedDelay(this::sampleRss,
+            Instant.now().plusSeconds(sampleIntervalSeconds), Duration.ofSeconds(sampleIntervalSeconds));
+    }
+
+    /**
+     * Wait for room for one more browser
+     * @param sessionId Session the browser is for, used for its queue position
+     * @param onPosition Told the session's 1-based queue position whenever it changes while waiting
+     * @throws SeleniumException.NodeAtCapacityException if the queue is full or the wait times out
+     * @throws InterruptedException if the waiting loop is being stopped
+     */
+    public void acquire(String sessionId, IntConsumer onPosition) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxWaitSeconds);
+        int reported = 0;
+        lock.lock();
+        try {
+            if (queue.isEmpty() && admitted < capacity()) {
+                admitted++;
+                return;
+            }
+            if (queue.size() >= maxQueued) {
+                rejectedCount.incrementAndGet();
+                throw new SeleniumException.NodeAtCapacityException(
+                    "All browser slots on this node are taken and " + queue.size() + " sessions are waiting");
+            }
+            Waiter waiter = new Waiter(sessionId);
+            queue.addLast(waiter);
+            queuedCount.incrementAndGet();
+            try {
+                while (true) {
+                    if (queue.peekFirst() == waiter && admitted < capacity()) {
+                        queue.removeFirst();
+                        admitted++;
+                        // The next in line may fit as well
+                        changed.signalAll();
+                        return;
+                    }
+                    int position = position(sessionId);
+                    if (position != reported) {
+                        reported = position;
+                        lock.unlock();
+                        try {
+                            onPosition.accept(position);
+                        } finally {
+                            lock.lock();
+                        }
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timedOutCount.incrementAndGet();
+                        throw new SeleniumException.NodeAtCapacityException(
+                            "No browser slot on this node became free within " + maxWaitSeconds + "s");
+                    }
+                    changed.awaitNanos(remaining);
+                }
+            } finally {
+                if (queue.remove(waiter)) {
+                    changed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* Take a slot only if one is free right now and nobody is waiting for it */
+    public boolean tryAcquire() {
+        if (!enabled) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (queue.isEmpty() && admitted < capacity()) {
+                admitted++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* Give back the slot of a browser that has been closed or failed to start */
+    public void release() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            admitted = Math.max(0, admitted - 1);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* Give back the slot of a browser that ran for heldMillis, counted towards the wait estimates */
+    public void release(long heldMillis) {
+        if (!enabled) {
+            return;
+        }
+        long previous = meanHoldMillis;
+        meanHoldMillis = previous == 0 ? heldMillis : (long) (0.8 * previous + 0.2 * heldMillis);
+        lock.lock();
+        try {
+            releaseTimes.addLast(System.currentTimeMillis());
+            trimReleaseTimes();
+        } finally {
+            lock.unlock();
+        }
+        release();
+    }
+
+    /**
+     * Queue position a session asking for a browser now would get, 0 if it would be admitted at once
+     * @param ahead Loops not yet asking for a browser that will ask before this session (waiting for a thread)
+     */
+    public int expectedPosition(int ahead) {
+        if (!enabled) {
+            return ahead > 0 ? ahead + 1 : 0;
+        }
+        lock.lock();
+        try {
+            return ahead == 0 && queue.isEmpty() && admitted < capacity() ? 0 : queue.size() + ahead + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a session asking for a browser now would be turned away
+     * @param ahead Loops not yet asking for a browser that will ask before this session
+     */
+    public boolean isQueueFull(int ahead) {
+        if (!enabled) {
+            return ahead >= maxQueued;
+        }
+        lock.lock();
+        try {
+            return queue.size() + ahead >= maxQueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /* Loops that can be running at once: one per browser slot plus one per queue place */
+    public int getLoopCapacity() {
+        return capacity() + maxQueued;
+    }
+
+    /**
+     * Expected wait before the session at a queue position gets its browser
+     * @param position 1-based queue position, 0 for a session that isn't waiting
+     */
+    public long estimatedWaitMillis(int position) {
+        if (position <= 0) {
+            return 0;
+        }
+        int releases;
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            trimReleaseTimes();
+            releases = releaseTimes.size();
+        } finally {
+            lock.unlock();
+        }
+        if (releases >= MIN_RELEASES_FOR_RATE) {
+            // Slots given back per ms over the part of the window the node has been up for
+            long span = Math.min(TimeUnit.SECONDS.toMillis(throughputWindowSeconds), now - startedAtMillis);
+            return (long) (position * (double) Math.max(span, 1) / releases);
+        }
+        long holdMillis = meanHoldMillis > 0 ? meanHoldMillis : TimeUnit.SECONDS.toMillis(defaultHoldSeconds);
+        return (long) Math.ceil((double) position / capacity()) * holdMillis;
+    }
+
+    private void trimReleaseTimes() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(throughputWindowSeconds);
+        while (!releaseTimes.isEmpty() && releaseTimes.peekFirst() < cutoff) {
+            releaseTimes.removeFirst();
+        }
+    }
+
+    /* 1-based position of a waiting session, 0 if it isn't waiting */
+    public int position(String sessionId) {
+        lock.lock();
+        try {
+            int position = 1;
+            for (Waiter waiter : queue) {
+                if (waiter.sessionId.equals(sessionId)) {
+                    return position;
+                }
+                position++;
+            }
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* Browsers the budget allows at the current per-browser cost, at least one so the node stays useful */
+    int capacity() {
+        return (int) Math.max(1, (limitBytes - reserveBytes) / Math.max(perDriverBytes, MB));
+    }
+
+    private void detectLimit() {
+        if (memoryLimitMb > 0) {
+            limitBytes = memoryLimitMb * MB;
+            limitSource = "configured";
+            return;
+        }
+        // cgroup v2, then v1, then the whole machine
+        long cgroup = readLimit(Path.of("/sys/fs/cgroup/memory.max"));
+        if (cgroup <= 0) {
+            cgroup = readLimit(Path.of("/sys/fs/cgroup/memory/memory.limit_in_bytes"));
+        }
+        if (cgroup > 0) {
+            limitBytes = cgroup;
+            limitSource = "cgroup";
+            return;
+        }
+        limitBytes = ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalMemorySize();
+        limitSource = "physical memory";
+    }
+
+    private static long readLimit(Path path) {
+        try {
+            String value = Files.readString(path).trim();
+            long limit = "max".equals(value) ? 0 : Long.parseLong(value);
+            return limit >= UNLIMITED ? 0 : limit;
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /* Charge each browser its share of the child processes' memory; rises at once, falls slowly */
+    private void sampleRss() {
+        try {
+            int drivers;
+            lock.lock();
+            try {
+                drivers = admitted;
+            } finally {
+                lock.unlock();
+            }
+            long rss = ProcessHandle.current().descendants().mapToLong(process -> memoryBytes(process.pid())).sum();
+            lastRssBytes = rss;
+            if (drivers == 0 || rss == 0) {
+                return;
+            }
+            long sample = rss / drivers;
+            long previous = perDriverBytes;
+            perDriverBytes = sample > previous ? sample : (long) (0.9 * previous + 0.1 * sample);
+
+            lock.lock();
+            try {
+                // A smaller per-browser cost may have made room for waiters
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } catch (Exception e) {
+            logger.debug("Browser RSS sample failed: {}", e.getMessage());
+        }
+    }
+
+    /* PSS splits shared pages among the processes mapping them; summing RSS counts them once per process */
+    private long memoryBytes(long pid) {
+        Path proc = Path.of("/proc", String.valueOf(pid));
+        long pss = kbField(proc.resolve("smaps_rollup"), "Pss:");
+        if (pss >= 0) {
+            memoryMeasure = "pss";
+            return pss;
+        }
+        long rss = kbField(proc.resolve("status"), "VmRSS:");
+        if (rss >= 0) {
+            memoryMeasure = "rss";
+            return rss;
+        }
+        return 0;
+    }
+
+    /* A "<name> <n> kB" line of a /proc file in bytes, -1 if the file or line isn't there */
+    private static long kbField(Path path, String name) {
+        try {
+            for (String line : Files.readAllLines(path)) {
+                if (line.startsWith(name)) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Exited since listing, no smaps_rollup (kernel < 4.14), or not Linux
+        }
+        return -1;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("memory_limit_mb", limitBytes / MB);
+        stats.put("memory_limit_source", limitSource);
+        stats.put("jvm_reserve_mb", reserveBytes / MB);
+        stats.put("per_driver_mb", perDriverBytes / MB);
+        stats.put("browser_rss_mb", lastRssBytes / MB);
+        stats.put("memory_measure", memoryMeasure);
+        stats.put("capacity", capacity());
+        lock.lock();
+        try {
+            stats.put("admitted", admitted);
+            stats.put("waiting", queue.size());
+            trimReleaseTimes();
+            stats.put("releases_in_window", releaseTimes.size());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("max_queued", maxQueued);
+        stats.put("mean_hold_seconds", meanHoldMillis / 1000);
+        stats.put("estimated_wait_seconds", estimatedWaitMillis(1) / 1000);
+        stats.put("queued_total", queuedCount.get());
+        stats.put("rejected", rejectedCount.get());
+        stats.put("timed_out", timedOutCount.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampling.cancel(false);
+    }
+
+    /* One waiting acquire; compared by identity, a session can briefly wait twice (pre-login and loop) */
+    private static class Waiter {
+        private final String sessionId;
+
+        Waiter(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.ntu.adddrop.selenium;
+
+import org.openqa.selenium.WebDriver;
+
+import java.util.Map;
+
+/**
+ * Where WebDrivers come from. WebDriverManager owns their lifecycle, a provider only decides
+ * which browser a new session gets: one launched on this box, or one on a Selenium Grid so
+ * browser capacity scales separately from the API nodes.
+ */
+public interface DriverProvider {
+
+    WebDriver create();
+
+    /* Name of the provider, for logs and metrics */
+    String name();
+
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,274 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.selenium.page.PageRecorder;
+import com.ntu.adddrop.selenium.page.StarsPages;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.UnhandledAlertException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Gets a swap loop going again after a failed attempt. A failure is classified by its exception type
+ * (and, where the type alone can't tell, by asking the browser where it is), and each kind starts at
+ * the cheapest recovery tier that can fix it. A tier counts as done once the planner is back on screen;
+ * if it isn't, the next, more expensive tier is tried, up to quitting the browser and starting over.
+ */
+@Component
+public class FailureRecovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(FailureRecovery.class);
+
+    /* Ways of getting back to the planner, cheapest first */
+    public enum RecoveryTier {
+        RETRY_STEP,     // page is fine, run the attempt again
+        RELOAD_PAGE,    // load the planner again in the same portal session
+        RELOGIN,        // log in again in the same browser
+        RECREATE_DRIVER // quit the browser, start a new one and log in
+    }
+
+    /* What went wrong, and the tier to start recovering from */
+    public enum FailureKind {
+        STALE_ELEMENT(RecoveryTier.RETRY_STEP),
+        UNEXPECTED_ALERT(RecoveryTier.RETRY_STEP),
+        TIMEOUT(RecoveryTier.RELOAD_PAGE),
+        OTHER(RecoveryTier.RELOAD_PAGE),
+        LOGGED_OUT(RecoveryTier.RELOGIN),
+        BROWSER_DEAD(RecoveryTier.RECREATE_DRIVER),
+        PORTAL_CLOSED(null); // nothing to recover, wait for the next cycle
+
+        private final RecoveryTier firstTier;
+
+        FailureKind(RecoveryTier firstTier) {
+            this.firstTier = firstTier;
+        }
+
+        public RecoveryTier getFirstTier() {
+            return firstTier;
+        }
+    }
+
+    @Autowired
+    private WebDriverManager webDriverManager;
+
+    @Autowired
+    private NTULoginAutomator ntuLoginAutomator;
+
+    @Autowired
+    private PortalRequestGovernor portalRequestGovernor;
+
+    @Autowired
+    private PortalUrls portalUrls;
+
+    @Autowired
+    private StarsPages starsPages;
+
+    @Autowired
+    private PortalCircuitBreaker portalCircuitBreaker;
+
+    @Autowired
+    private PageRecorder pageRecorder;
+
+    private final Map<FailureKind, LongAdder> failures = new EnumMap<>(FailureKind.class);
+    private final Map<RecoveryTier, TierStats> tierStats = new EnumMap<>(RecoveryTier.class);
+    private final LongAdder unrecovered = new LongAdder();
+
+    public FailureRecovery() {
+        for (FailureKind kind : FailureKind.values()) {
+            failures.put(kind, new LongAdder());
+        }
+        for (RecoveryTier tier : RecoveryTier.values()) {
+            tierStats.put(tier, new TierStats());
+        }
+    }
+
+    /**
+     * Classify a failed attempt
+     * @param driver Driver the attempt ran on, asked where it is when the exception doesn't say
+     * @param failure What the attempt threw
+     * @return The kind of failure
+     */
+    public FailureKind classify(WebDriver driver, Throwable failure) {
+        FailureKind kind = byType(failure);
+        if (kind == FailureKind.STALE_ELEMENT || kind == FailureKind.TIMEOUT || kind == FailureKind.OTHER) {
+            kind = probe(driver, kind);
+        }
+        failures.get(kind).increment();
+        return kind;
+    }
+
+    /**
+     * Bring the session back to the planner, starting at the kind's first tier and escalating
+     * @param driver Driver the attempt ran on
+     * @param sessionId Session being recovered
+     * @param kind Classified failure
+     * @param username NTU username, for the tiers that log in again
+     * @param password NTU password
+     * @param onQueuePosition Told the queue position if a new browser has to wait for memory
+     * @return The driver to carry on with, a new one if the browser was recreated
+     * @throws SeleniumException if even a new browser could not get back to the planner
+     * @throws SeleniumException.LoginFailedException if logging in again was rejected
+     */
+    public WebDriver recover(WebDriver driver, String sessionId, FailureKind kind, String username, String password,
+                             IntConsumer onQueuePosition) {
+        pageRecorder.mark(driver, "recovery", "kind", kind.name());
+        RecoveryTier[] tiers = RecoveryTier.values();
+        for (int i = kind.getFirstTier().ordinal(); i < tiers.length; i++) {
+            RecoveryTier tier = tiers[i];
+            TierStats stats = tierStats.get(tier);
+            stats.tried.increment();
+            try {
+                WebDriver recovered = apply(tier, driver, sessionId, username, password, onQueuePosition);
+                if (recovered != null) {
+                    stats.recovered.increment();
+                    logger.info("Recovered session {} from {} with {}", sessionId, kind, tier);
+                    return recovered;
+                }
+            } catch (SeleniumException.LoginFailedException e) {
+                // Rejected credentials stay rejected in a new browser too
+                throw e;
+            } catch (RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.warn("{} did not recover session {}: {}", tier, sessionId, e.getMessage());
+            }
+        }
+        unrecovered.increment();
+        throw new SeleniumException("RECOVERY_FAILED", "Could not recover the browser after " + kind);
+    }
+
+    /* Run one tier, returning the driver if the planner is showing afterwards, null to escalate */
+    private WebDriver apply(RecoveryTier tier, WebDriver driver, String sessionId, String username, String password,
+                            IntConsumer onQueuePosition) {
+        return switch (tier) {
+            case RETRY_STEP -> {
+                dismissAlert(driver);
+                yield starsPages.planner(driver).isShowing() ? driver : null;
+            }
+            case RELOAD_PAGE -> {
+                dismissAlert(driver);
+                portalRequestGovernor.acquire(sessionId);
+                pageRecorder.navigated(driver);
+                driver.navigate().to(portalUrls.coursePlanner());
+                if (isOnLoginPage(driver)) {
+                    yield null;
+                }
+                starsPages.planner(driver).await();
+                portalCircuitBreaker.recordSuccess(sessionId);
+                yield driver;
+            }
+            case RELOGIN -> {
+                dismissAlert(driver);
+                ntuLoginAutomator.performLogin(driver, sessionId, username, password);
+                yield driver;
+            }
+            case RECREATE_DRIVER -> {
+                webDriverManager.closeDriver(sessionId, driver);
+                WebDriver fresh = webDriverManager.createDriver(sessionId, onQueuePosition);
+                ntuLoginAutomator.performLogin(fresh, sessionId, username, password);
+                yield fresh;
+            }
+        };
+    }
+
+    /* Kind from the exception or its causes; message text isn't looked at, it may be null */
+    private FailureKind byType(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SeleniumException.PortalClosedException) {
+                return FailureKind.PORTAL_CLOSED;
+            }
+            if (t instanceof NoSuchSessionException || t instanceof SessionNotCreatedException
+                    || t instanceof UnreachableBrowserException || t instanceof NoSuchWindowException) {
+                return FailureKind.BROWSER_DEAD;
+            }
+            if (t instanceof UnhandledAlertException) {
+                return FailureKind.UNEXPECTED_ALERT;
+            }
+            if (t instanceof StaleElementReferenceException) {
+                return FailureKind.STALE_ELEMENT;
+            }
+            if (t instanceof TimeoutException || t instanceof NoSuchElementException
+                    || t instanceof SeleniumException.TimeoutException) {
+                return FailureKind.TIMEOUT;
+            }
+        }
+        return FailureKind.OTHER;
+    }
+
+    /* Ask the browser where it is: a dead browser or the login page outranks what the exception said */
+    private FailureKind probe(WebDriver driver, FailureKind kind) {
+        try {
+            return isOnLoginPage(driver) ? FailureKind.LOGGED_OUT : kind;
+        } catch (UnhandledAlertException e) {
+            return FailureKind.UNEXPECTED_ALERT;
+        } catch (WebDriverException e) {
+            return FailureKind.BROWSER_DEAD;
+        }
+    }
+
+    private boolean isOnLoginPage(WebDriver driver) {
+        String url = driver.getCurrentUrl();
+        return url != null && url.contains(NTULoginAutomator.LOGIN_PAGE_MARKER);
+    }
+
+    private void dismissAlert(WebDriver driver) {
+        try {
+            driver.switchTo().alert().accept();
+        } catch (NoAlertPresentException e) {
+            // Nothing in the way
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> kinds = new HashMap<>();
+        failures.forEach((kind, count) -> kinds.put(kind.name().toLowerCase(), count.sum()));
+
+        Map<String, Object> tiers = new HashMap<>();
+        long[] recoveredAt = new long[RecoveryTier.values().length];
+        tierStats.forEach((tier, stats) -> {
+            recoveredAt[tier.ordinal()] = stats.recovered.sum();
+            Map<String, Object> row = new HashMap<>();
+            row.put("tried", stats.tried.sum());
+            row.put("recovered", stats.recovered.sum());
+            tiers.put(tier.name().toLowerCase(), row);
+        });
+
+        long withoutRelogin = recoveredAt[RecoveryTier.RETRY_STEP.ordinal()] + recoveredAt[RecoveryTier.RELOAD_PAGE.ordinal()];
+        long withoutRecreate = withoutRelogin + recoveredAt[RecoveryTier.RELOGIN.ordinal()];
+        long recoveries = withoutRecreate + recoveredAt[RecoveryTier.RECREATE_DRIVER.ordinal()];
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("failures", kinds);
+        stats.put("tiers", tiers);
+        stats.put("recoveries", recoveries);
+        stats.put("unrecovered", unrecovered.sum());
+        stats.put("relogin_avoided", withoutRelogin);
+        stats.put("recreate_avoided", withoutRecreate);
+        stats.put("recreate_avoided_ratio", recoveries > 0 ? Math.round(withoutRecreate * 100.0 / recoveries) / 100.0 : 0);
+        return stats;
+    }
+
+    /* Counters for one tier */
+    private static class TierStats {
+        private final LongAdder tried = new LongAdder();
+        private final LongAdder recovered = new LongAdder();
+    }
+}
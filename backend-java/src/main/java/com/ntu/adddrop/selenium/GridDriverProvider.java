@@ -0,0 +1,231 @@
+package com.ntu.adddrop.selenium;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.ImmutableCapabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Browsers on one or more Selenium Grids (hub or standalone server), e.g. dedicated browser boxes.
+ * Each grid's /status is polled for free Chrome slots and the round-trip time of the poll.
+ * A new session goes to the grid with the best free slots / (1 + rtt / RTT_SCALE_MS), since every
+ * WebDriver command pays the round trip; slots handed out are counted down until the next poll.
+ * If no grid reports a free slot the closest reachable one gets the request and queues it.
+ * For local testing: java -jar selenium-server.jar standalone, then provider=grid.
+ */
+@Component
+@ConditionalOnProperty(name = "app.selenium.provider", havingValue = "grid")
+public class GridDriverProvider implements DriverProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(GridDriverProvider.class);
+
+    // A grid this much further away counts as having half the free slots
+    static final double RTT_SCALE_MS = 50;
+
+    private static final Duration STATUS_TIMEOUT = Duration.ofSeconds(2);
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private ChromeOptions chromeOptions;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.selenium.grid.urls:http://localhost:4444}")
+    private String gridUrls;
+
+    @Value("${app.selenium.grid.status-interval-seconds:5}")
+    private long statusIntervalSeconds;
+
+    private final List<Grid> grids = new ArrayList<>();
+
+    private Capabilities capabilities;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(STATUS_TIMEOUT).build();
+
+    private volatile ScheduledFuture<?> statusPolling;
+
+    @PostConstruct
+    public void start() throws MalformedURLException {
+        for (String url : gridUrls.split(",")) {
+            if (!url.isBlank()) {
+                grids.add(new Grid(URI.create(url.trim()).toURL()));
+            }
+        }
+        capabilities = remoteCapabilities(chromeOptions);
+        statusPolling = taskScheduler.scheduleWithFixedDelay(this::refreshStatus, Instant.now(), Duration.ofSeconds(statusIntervalSeconds));
+        logger.info("Placing browser sessions on Selenium Grid(s): {}", gridUrls);
+    }
+
+    @Override
+    public WebDriver create() {
+        List<Grid> tried = new ArrayList<>();
+        Exception lastError = null;
+        Grid grid;
+        while ((grid = choose(grids, tried)) != null) {
+            tried.add(grid);
+            grid.freeSlots.decrementAndGet();
+            try {
+                WebDriver driver = new RemoteWebDriver(grid.url, capabilities);
+                grid.placed.incrementAndGet();
+                return driver;
+            } catch (Exception e) {
+                // Don't offer this grid again until its status says it's back
+                grid.reachable = false;
+                grid.failures.incrementAndGet();
+                lastError = e;
+                logger.warn("Selenium Grid {} refused a new session: {}", grid.url, e.getMessage());
+            }
+        }
+        throw new SeleniumException(Constants.ErrorMessages.DRIVER_INIT_FAILED + ": no Selenium Grid accepted a new session", lastError);
+    }
+
+    /* Best grid not yet tried, or null when every grid has been tried */
+    static Grid choose(Collection<Grid> grids, Collection<Grid> tried) {
+        Grid best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Grid grid : grids) {
+            if (tried.contains(grid)) {
+                continue;
+            }
+            // Reachable grids with free slots first, then reachable ones that will queue, then the rest
+            double score = grid.reachable && grid.freeSlots.get() > 0
+                ? grid.freeSlots.get() / (1 + grid.rttMs / RTT_SCALE_MS)
+                : (grid.reachable ? -1 : -2) - grid.rttMs / 1_000_000;
+            if (score > bestScore) {
+                best = grid;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    void refreshStatus() {
+        for (Grid grid : grids) {
+            long start = System.nanoTime();
+            try {
+                HttpRequest request = HttpRequest.newBuilder(grid.url.toURI().resolve("/status"))
+                    .timeout(STATUS_TIMEOUT).GET().build();
+                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                double rttMs = (System.nanoTime() - start) / 1_000_000.0;
+
+                JsonNode value = objectMapper.readTree(response.body()).path("value");
+                grid.freeSlots.set(freeChromeSlots(value));
+                grid.rttMs = grid.rttMs == 0 ? rttMs : 0.7 * grid.rttMs + 0.3 * rttMs;
+                grid.reachable = value.path("ready").asBoolean(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                grid.reachable = false;
+                logger.debug("Selenium Grid {} status check failed: {}", grid.url, e.getMessage());
+            }
+        }
+    }
+
+    /* Idle Chrome slots on nodes that are up, from a Grid or standalone /status response */
+    static int freeChromeSlots(JsonNode status) {
+        int free = 0;
+        for (JsonNode node : status.path("nodes")) {
+            if (!"UP".equals(node.path("availability").asText())) {
+                continue;
+            }
+            for (JsonNode slot : node.path("slots")) {
+                boolean chrome = "chrome".equalsIgnoreCase(slot.path("stereotype").path("browserName").asText());
+                if (chrome && (slot.path("session").isMissingNode() || slot.path("session").isNull())) {
+                    free++;
+                }
+            }
+        }
+        return free;
+    }
+
+    /* Same options as local drivers, minus the binary path, which only means something on this box */
+    @SuppressWarnings("unchecked")
+    private static Capabilities remoteCapabilities(ChromeOptions options) {
+        Map<String, Object> capabilities = new HashMap<>(options.asMap());
+        Object chrome = capabilities.get(ChromeOptions.CAPABILITY);
+        if (chrome instanceof Map) {
+            Map<String, Object> chromeOptions = new HashMap<>((Map<String, Object>) chrome);
+            chromeOptions.remove("binary");
+            capabilities.put(ChromeOptions.CAPABILITY, chromeOptions);
+        }
+        return new ImmutableCapabilities(capabilities);
+    }
+
+    @Override
+    public String name() {
+        return "grid";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> gridStats = new ArrayList<>();
+        for (Grid grid : grids) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("url", grid.url.toString());
+            stats.put("reachable", grid.reachable);
+            stats.put("free_slots", grid.freeSlots.get());
+            stats.put("rtt_ms", Math.round(grid.rttMs * 10) / 10.0);
+            stats.put("placed", grid.placed.get());
+            stats.put("failures", grid.failures.get());
+            gridStats.add(stats);
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("provider", name());
+        stats.put("grids", gridStats);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        statusPolling.cancel(false);
+    }
+
+    /* One Grid endpoint and what its last status said */
+    static class Grid {
+        final URL url;
+        volatile boolean reachable;
+        volatile double rttMs;
+        final AtomicInteger freeSlots = new AtomicInteger();
+        final AtomicLong placed = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Grid(URL url) {
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ntu.adddrop.selenium;
+
+import org.openqa.selenium.WebDriver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* Browsers on this box, from the prototype WebDriver bean (see WebDriverConfig) */
+@Component
+@ConditionalOnProperty(name = "app.selenium.provider", havingValue = "local", matchIfMissing = true)
+public class LocalDriverProvider implements DriverProvider {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private ChromeDriverServiceHolder chromeDriverServiceHolder;
+
+    @Override
+    public WebDriver create() {
+        // Get new WebDriver instance from Spring context (prototype scope)
+        return applicationContext.getBean(WebDriver.class);
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("provider", name());
+        stats.put("shared_driver_service", chromeDriverServiceHolder.getStats());
+        return stats;
+    }
+}
@@ -1,20 +1,26 @@
 package com.ntu.adddrop.selenium;
 
+import com.ntu.adddrop.exception.SeleniumException;
 import com.ntu.adddrop.model.SessionData.ModuleStatus;
-import com.ntu.adddrop.util.Constants;
+import com.ntu.adddrop.selenium.page.ChangeIndexPage;
+import com.ntu.adddrop.selenium.page.ConfirmPage;
+import com.ntu.adddrop.selenium.page.PageRecorder;
+import com.ntu.adddrop.selenium.page.PlannerPage;
+import com.ntu.adddrop.selenium.page.StarsPages;
+import com.ntu.adddrop.service.DemandIndexService;
+import com.ntu.adddrop.timeseries.VacancyHistoryService;
 import org.openqa.selenium.Alert;
-import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.WebDriverException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /* Handles NTU course swap automation - implements FastAPI attempt_swap logic */
 @Component
@@ -22,6 +28,27 @@ public class ModuleSwapAutomator {
     
     private static final Logger logger = LoggerFactory.getLogger(ModuleSwapAutomator.class);
     
+    @Autowired
+    private PortalRequestGovernor portalRequestGovernor;
+    
+    @Autowired
+    private VacancyCache vacancyCache;
+    
+    @Autowired
+    private DemandIndexService demandIndexService;
+    
+    @Autowired
+    private VacancyHistoryService vacancyHistoryService;
+    
+    @Autowired
+    private StarsPages starsPages;
+    
+    @Autowired
+    private PortalCircuitBreaker portalCircuitBreaker;
+    
+    @Autowired
+    private PageRecorder pageRecorder;
+    
     /**
      * Attempt to swap a module - follows FastAPI attempt_swap function
      * @param driver WebDriver instance
@@ -29,105 +56,130 @@ public class ModuleSwapAutomator {
      * @param oldIndex Current module index
      * @param newIndex Desired new module index
      * @return SwapResult with success status and message
+     * @throws WebDriverException if the browser or page is in a state the caller has to recover from
+     * @throws SeleniumException.PortalClosedException if the portal is closed
      */
     public SwapResult attemptSwap(WebDriver driver, String sessionId, String oldIndex, String newIndex) {
         try {
             logger.info("Attempting swap for session: {} - {} -> {}", sessionId, oldIndex, newIndex);
             
-            WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(Constants.Timeouts.ELEMENT_WAIT));
-            
-            // Step 1: Wait for course table to be present
-            wait.until(ExpectedConditions.presenceOfElementLocated(By.xpath(Constants.Selectors.COURSE_TABLE)));
-            
-            // Step 2: Find and click the radio button for old_index
-            String radioButtonXpath = String.format(Constants.Selectors.RADIO_BUTTON_TEMPLATE, oldIndex);
-            try {
-                wait.until(ExpectedConditions.presenceOfElementLocated(By.xpath(radioButtonXpath)));
-                WebElement radioButton = driver.findElement(By.xpath(radioButtonXpath));
-                radioButton.click();
-                logger.debug("Selected radio button for old index: {}", oldIndex);
-            } catch (Exception e) {
-                String errorMsg = "Old index " + oldIndex + " not found. Swap cannot proceed.";
-                logger.error(errorMsg);
-                return new SwapResult(false, errorMsg);
-            }
-            
-            // Step 3: Select "Change Index" from dropdown
-            Select dropdown = new Select(driver.findElement(By.name(Constants.Selectors.DROPDOWN_OPTIONS)));
-            dropdown.selectByValue("C");
-            logger.debug("Selected 'Change Index' option");
-            
-            // Step 4: Hide header and click Go button
-            try {
-                WebElement header = driver.findElement(By.className(Constants.Selectors.HEADER_HIDE));
-                ((org.openqa.selenium.JavascriptExecutor) driver).executeScript("arguments[0].style.visibility = 'hidden';", header);
-            } catch (Exception e) {
-                // Header hiding is optional, continue if it fails
-                logger.debug("Could not hide header, continuing...");
-            }
-            
-            WebElement goButton = driver.findElement(By.xpath(Constants.Selectors.GO_BUTTON));
-            goButton.click();
-            logger.debug("Clicked Go button");
-            
-            // Step 5: Check for portal closed alert
-            if (checkForPortalClosedAlert(driver)) {
-                return new SwapResult(false, Constants.ErrorMessages.PORTAL_CLOSED);
+            // Skip the portal round trips if another session just saw this index full
+            if (vacancyCache.isKnownFull(newIndex)) {
+                logger.debug("Index {} recently seen full, skipping attempt", newIndex);
+                return new SwapResult(false, "Index " + newIndex + " has no vacancies. Swap cannot proceed.");
             }
             
-            // Step 6: Wait for swap page to load
-            wait.until(ExpectedConditions.presenceOfElementLocated(By.name(Constants.Selectors.SWAP_PAGE_INDICATOR)));
-            logger.debug("Swap page loaded successfully");
-            
-            // Step 7: Check if new index exists and has vacancies
-            SwapResult vacancyCheck = checkNewIndexVacancy(driver, newIndex);
-            if (!vacancyCheck.isSuccess()) {
-                // Click back to timetable before returning
-                clickBackToTimetable(driver);
-                return vacancyCheck;
+            // A freed seat is being offered to sessions that have waited longer
+            if (!demandIndexService.mayAttempt(sessionId, newIndex)) {
+                logger.debug("Index {} granted to earlier waiters, skipping attempt", newIndex);
+                return SwapResult.deferred(newIndex);
             }
             
-            // Step 8: Click OK to proceed with swap
-            WebElement okButton = driver.findElement(By.xpath(Constants.Selectors.OK_BUTTON));
-            okButton.click();
-            logger.debug("Clicked OK button to proceed with swap");
+            // Only attempts that reach the portal are recorded, with their outcome for replays to check
+            pageRecorder.mark(driver, "attempt", "old_index", oldIndex, "new_index", newIndex);
+            SwapResult result = swapOnPortal(driver, sessionId, oldIndex, newIndex);
+            pageRecorder.mark(driver, "outcome", "success", result.isSuccess(), "message", result.getMessage());
+            return result;
             
-            // Step 9: Check for module clash alert
-            if (checkForModuleClashAlert(driver)) {
-                clickBackToTimetable(driver);
-                return new SwapResult(false, "Module clash detected with existing modules");
+        } catch (WebDriverException | SeleniumException e) {
+            // Typed failures go to the caller, which knows how to recover the browser
+            logger.warn("Swap attempt failed for {} -> {}: {}", oldIndex, newIndex, e.toString());
+            if (e instanceof TimeoutException) {
+                portalCircuitBreaker.recordFailure(sessionId, "portal page did not load during a swap attempt");
             }
-            
-            // Step 10: Wait for confirm swap page
-            wait.until(ExpectedConditions.presenceOfElementLocated(By.xpath(Constants.Selectors.CONFIRM_FORM)));
-            logger.debug("Confirm swap page loaded");
-            
-            // Step 11: Click confirm swap button
-            WebElement confirmButton = driver.findElement(By.xpath(Constants.Selectors.CONFIRM_SWAP_BUTTON));
-            confirmButton.click();
-            logger.debug("Clicked confirm swap button");
-            
-            // Step 12: Wait for success alert and accept it
-            wait.until(ExpectedConditions.alertIsPresent());
-            Alert alert = driver.switchTo().alert();
-            String alertText = alert.getText();
-            logger.info("Swap success alert: {}", alertText);
-            alert.accept();
-            
-            logger.info("Successfully swapped {} -> {} for session: {}", oldIndex, newIndex, sessionId);
-            return new SwapResult(true, "Successfully swapped " + oldIndex + " → " + newIndex);
-            
+            pageRecorder.mark(driver, "outcome", "error", e.getClass().getSimpleName());
+            throw e;
         } catch (Exception e) {
             logger.error("Swap attempt failed for {} -> {}: {}", oldIndex, newIndex, e.getMessage(), e);
+            pageRecorder.mark(driver, "outcome", "error", e.getClass().getSimpleName());
             return new SwapResult(false, "Error during swap attempt: " + e.getMessage());
         }
     }
     
+    /* Steps 1-12 on the portal, from the planner to the outcome alert */
+    private SwapResult swapOnPortal(WebDriver driver, String sessionId, String oldIndex, String newIndex) {
+        // Step 1: Wait for course table to be present
+        PlannerPage planner = starsPages.planner(driver);
+        planner.await();
+        
+        // Step 2: Find and click the radio button for old_index; the table is loaded, so no waiting for it
+        if (!planner.selectIndex(oldIndex)) {
+            String errorMsg = "Old index " + oldIndex + " not found. Swap cannot proceed.";
+            logger.error(errorMsg);
+            return new SwapResult(false, errorMsg);
+        }
+        logger.debug("Selected radio button for old index: {}", oldIndex);
+        
+        // Step 3: Select "Change Index" from dropdown
+        planner.chooseChangeIndex();
+        logger.debug("Selected 'Change Index' option");
+        
+        // Step 4: Hide header and click Go button
+        try {
+            planner.hideHeader();
+        } catch (Exception e) {
+            // Header hiding is optional, continue if it fails
+            logger.debug("Could not hide header, continuing...");
+        }
+        
+        portalRequestGovernor.acquire(sessionId);
+        planner.go();
+        logger.debug("Clicked Go button");
+        
+        // Step 5-6: Wait for the swap page, or the portal closed alert in its place
+        ChangeIndexPage menu = starsPages.changeIndex(driver);
+        Alert closedAlert = menu.await();
+        if (closedAlert != null) {
+            String alertText = menu.acceptAlert(closedAlert);
+            logger.warn("Portal closed alert detected: {}", alertText);
+            portalCircuitBreaker.tripPortalClosed(sessionId, alertText);
+            throw new SeleniumException.PortalClosedException(alertText);
+        }
+        logger.debug("Swap page loaded successfully");
+        portalCircuitBreaker.recordSuccess(sessionId);
+        
+        // Step 7: Check if new index exists and has vacancies
+        SwapResult vacancyCheck = checkNewIndexVacancy(menu, sessionId, newIndex);
+        if (!vacancyCheck.isSuccess()) {
+            // Click back to timetable before returning
+            clickBackToTimetable(menu, sessionId);
+            return vacancyCheck;
+        }
+        
+        // Step 8: Click OK to proceed with swap
+        portalRequestGovernor.acquire(sessionId);
+        menu.ok();
+        logger.debug("Clicked OK button to proceed with swap");
+        
+        // Step 9-10: Wait for the confirm swap page, or the module clash alert in its place
+        ConfirmPage confirmPage = starsPages.confirm(driver);
+        Alert clashAlert = confirmPage.await();
+        if (clashAlert != null) {
+            logger.warn("Module clash alert detected: {}", confirmPage.acceptAlert(clashAlert));
+            clickBackToTimetable(menu, sessionId);
+            return new SwapResult(false, "Module clash detected with existing modules");
+        }
+        logger.debug("Confirm swap page loaded");
+        
+        // Step 11: Click confirm swap button
+        portalRequestGovernor.acquire(sessionId);
+        confirmPage.confirm();
+        logger.debug("Clicked confirm swap button");
+        
+        // Step 12: Wait for success alert and accept it
+        String alertText = confirmPage.awaitResult();
+        logger.info("Swap success alert: {}", alertText);
+        
+        logger.info("Successfully swapped {} -> {} for session: {}", oldIndex, newIndex, sessionId);
+        return new SwapResult(true, "Successfully swapped " + oldIndex + " → " + newIndex);
+    }
+    
     /* Process a module with multiple new index options */
     public ModuleStatus performModuleSwap(WebDriver driver, String sessionId, ModuleStatus moduleStatus) {
         logger.info("Processing module swap for session: {} - Old Index: {}", sessionId, moduleStatus.getOldIndex());
         
         List<String> failedIndexes = new java.util.ArrayList<>();
+        List<String> deferredIndexes = new java.util.ArrayList<>();
         
         // Try each new index in order of preference
         for (String newIndex : moduleStatus.getNewIndexes()) {
@@ -140,6 +192,8 @@ public class ModuleSwapAutomator {
                 moduleStatus.setSwapped(true);
                 moduleStatus.setMessage(result.getMessage());
                 return moduleStatus;
+            } else if (result.isDeferred()) {
+                deferredIndexes.add(newIndex);
             } else {
                 // Failed, add to failed list and try next
                 failedIndexes.add(newIndex);
@@ -148,44 +202,24 @@ public class ModuleSwapAutomator {
         }
         
         // All indexes failed
-        String failureMessage = "Indexes " + String.join(", ", failedIndexes) + " have no vacancies.";
-        moduleStatus.setMessage(failureMessage);
+        moduleStatus.setMessage(failureMessage(failedIndexes, deferredIndexes, List.of()));
         return moduleStatus;
     }
     
-    /* Check for portal closed alert */
-    private boolean checkForPortalClosedAlert(WebDriver driver) {
-        try {
-            WebDriverWait shortWait = new WebDriverWait(driver, Duration.ofSeconds(Constants.Timeouts.ALERT_WAIT));
-            shortWait.until(ExpectedConditions.alertIsPresent());
-            
-            Alert alert = driver.switchTo().alert();
-            String alertText = alert.getText();
-            alert.accept();
-            
-            logger.warn("Portal closed alert detected: {}", alertText);
-            return true;
-            
-        } catch (Exception e) {
-            // No alert found, continue
-            return false;
-        }
-    }
-    
     /* Check if new index has vacancies */
-    private SwapResult checkNewIndexVacancy(WebDriver driver, String newIndex) {
+    private SwapResult checkNewIndexVacancy(ChangeIndexPage menu, String sessionId, String newIndex) {
         try {
-            WebElement dropdownElement = driver.findElement(By.name(Constants.Selectors.NEW_INDEX_DROPDOWN));
-            List<WebElement> options = dropdownElement.findElements(By.xpath(".//option[@value='" + newIndex + "']"));
+            Map<String, String> options = menu.options();
+            recordVacancies(options);
             
-            if (options.isEmpty()) {
+            String optionText = options.get(newIndex);
+            if (optionText == null) {
                 String errorMsg = "New Index " + newIndex + " was not found in the dropdown options. Swap cannot proceed.";
                 logger.warn(errorMsg);
                 return new SwapResult(false, errorMsg);
             }
             
             // Parse vacancies from option text (e.g., "01172 / 9 / 1")
-            String optionText = options.get(0).getText();
             try {
                 String[] parts = optionText.split(" / ");
                 if (parts.length >= 2) {
@@ -197,6 +231,12 @@ public class ModuleSwapAutomator {
                         logger.warn(errorMsg);
                         return new SwapResult(false, errorMsg);
                     }
+                    
+                    // Seeing the seat first doesn't jump the queue
+                    if (!demandIndexService.mayAttempt(sessionId, newIndex)) {
+                        logger.info("Index {} has vacancies but is granted to earlier waiters", newIndex);
+                        return SwapResult.deferred(newIndex);
+                    }
                 } else {
                     logger.warn("Could not parse vacancy information from: {}", optionText);
                 }
@@ -205,12 +245,13 @@ public class ModuleSwapAutomator {
             }
             
             // Select the new index
-            Select selectDropdown = new Select(dropdownElement);
-            selectDropdown.selectByValue(newIndex);
+            menu.select(newIndex);
             logger.debug("Selected new index: {}", newIndex);
             
             return new SwapResult(true, "Index available");
             
+        } catch (WebDriverException e) {
+            throw e;
         } catch (Exception e) {
             String errorMsg = "Unexpected error while checking new index " + newIndex + ": " + e.getMessage();
             logger.error(errorMsg, e);
@@ -218,50 +259,90 @@ public class ModuleSwapAutomator {
         }
     }
     
-    /* Check for module clash alert */
-    private boolean checkForModuleClashAlert(WebDriver driver) {
-        try {
-            WebDriverWait shortWait = new WebDriverWait(driver, Duration.ofSeconds(Constants.Timeouts.ALERT_WAIT));
-            shortWait.until(ExpectedConditions.alertIsPresent());
-            
-            Alert alert = driver.switchTo().alert();
-            String alertText = alert.getText();
-            alert.accept();
-            
-            logger.warn("Module clash alert detected: {}", alertText);
-            return true;
-            
-        } catch (Exception e) {
-            // No alert found, continue
-            return false;
+    /* Share the vacancy counts of every index in the dropdown, not just the one being tried */
+    private void recordVacancies(Map<String, String> options) {
+        Map<String, Integer> vacanciesByIndex = new HashMap<>();
+        Map<String, int[]> readings = new HashMap<>();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            String value = option.getKey();
+            String[] parts = option.getValue().split(" / ");
+            if (value.isBlank() || parts.length < 2) {
+                continue;
+            }
+            try {
+                int vacancies = Integer.parseInt(parts[1].trim());
+                int waitlist = parts.length >= 3 ? Integer.parseInt(parts[2].trim()) : 0;
+                vacanciesByIndex.put(value, vacancies);
+                readings.put(value, new int[]{vacancies, waitlist});
+            } catch (NumberFormatException e) {
+                // Not a vacancy row (e.g. placeholder option)
+            }
         }
+        vacancyCache.recordAll(vacanciesByIndex);
+        vacancyHistoryService.recordAll(readings);
+        demandIndexService.onVacanciesObserved(vacanciesByIndex);
     }
     
     /* Click back to timetable button */
-    private void clickBackToTimetable(WebDriver driver) {
+    private void clickBackToTimetable(ChangeIndexPage menu, String sessionId) {
         try {
-            WebElement backButton = driver.findElement(By.xpath(Constants.Selectors.BACK_TO_TIMETABLE));
-            backButton.click();
+            portalRequestGovernor.acquire(sessionId);
+            menu.backToTimetable();
             logger.debug("Clicked back to timetable");
         } catch (Exception e) {
             logger.warn("Could not click back to timetable: {}", e.getMessage());
         }
     }
     
+    /**
+     * Module message once none of its new indexes could be swapped to this cycle
+     * @param failedIndexes Indexes tried without a swap (full, clash, not offered)
+     * @param deferredIndexes Indexes with a seat held for sessions that have waited longer
+     * @param uncheckedIndexes Indexes whose attempt kept failing in the browser, so never checked
+     */
+    public static String failureMessage(List<String> failedIndexes, List<String> deferredIndexes, List<String> uncheckedIndexes) {
+        List<String> parts = new java.util.ArrayList<>();
+        if (!failedIndexes.isEmpty()) {
+            parts.add("Indexes " + String.join(", ", failedIndexes) + " have no vacancies.");
+        }
+        if (!deferredIndexes.isEmpty()) {
+            parts.add("Indexes " + String.join(", ", deferredIndexes) + " have a seat, waiting behind earlier requests.");
+        }
+        if (!uncheckedIndexes.isEmpty()) {
+            parts.add("Indexes " + String.join(", ", uncheckedIndexes) + " could not be checked, the attempt failed; retrying next cycle.");
+        }
+        return String.join(" ", parts);
+    }
+    
     /* Result class for swap operations */
     public static class SwapResult {
         private final boolean success;
         private final String message;
+        private final boolean deferred;
         
         public SwapResult(boolean success, String message) {
+            this(success, message, false);
+        }
+        
+        private SwapResult(boolean success, String message, boolean deferred) {
             this.success = success;
             this.message = message;
+            this.deferred = deferred;
+        }
+        
+        /* Not attempted: the seat is being offered to sessions that have waited longer */
+        public static SwapResult deferred(String newIndex) {
+            return new SwapResult(false, "Waiting behind earlier requests for index " + newIndex, true);
         }
         
         public boolean isSuccess() {
             return success;
         }
         
+        public boolean isDeferred() {
+            return deferred;
+        }
+        
         public String getMessage() {
             return message;
         }
@@ -1,18 +1,17 @@
 package com.ntu.adddrop.selenium;
 
 import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.selenium.page.LoginPage;
+import com.ntu.adddrop.selenium.page.PageRecorder;
+import com.ntu.adddrop.selenium.page.StarsPages;
 import com.ntu.adddrop.util.Constants;
-import com.ntu.adddrop.util.SeleniumUtil;
-import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-
 /**
  * Handles NTU login automation - follows FastAPI login_to_portal implementation
  */
@@ -20,72 +19,100 @@ import java.time.Duration;
 public class NTULoginAutomator {
     
     private static final Logger logger = LoggerFactory.getLogger(NTULoginAutomator.class);
+
+    // Any URL containing this is the login page, i.e. the portal session has ended
+    static final String LOGIN_PAGE_MARKER = "ldap_login.login";
+
+    @Autowired
+    private PortalRequestGovernor portalRequestGovernor;
+    
+    @Autowired
+    private PortalUrls portalUrls;
+    
+    @Autowired
+    private StarsPages starsPages;
+    
+    @Autowired
+    private PortalCircuitBreaker portalCircuitBreaker;
+    
+    @Autowired
+    private PageRecorder pageRecorder;
     
     /**
      * Perform login to NTU system - follows FastAPI login_to_portal logic
      * @param driver WebDriver instance
+     * @param sessionId Session identifier, used for fair sharing of portal requests
      * @param username NTU username
      * @param password NTU password
      * @return true if login successful
+     * @throws SeleniumException.LoginFailedException only if the portal rejected the credentials
+     * @throws SeleniumException if the login didn't get through for any other reason, worth trying again
      */
-    public boolean performLogin(WebDriver driver, String username, String password) {
+    public boolean performLogin(WebDriver driver, String sessionId, String username, String password) {
         try {
             logger.info("Starting NTU login process for user: {}", username);
+            pageRecorder.mark(driver, "login");
             
             // Step 1: Navigate to login page
             logger.debug("Navigating to NTU login page");
-            driver.get(Constants.URLs.NTU_LOGIN);
+            LoginPage loginPage = starsPages.login(driver);
+            portalRequestGovernor.acquire(sessionId);
+            loginPage.open(portalUrls.login());
             
             // Step 2: Enter username and click OK
             logger.debug("Entering username");
-            WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(Constants.Timeouts.ELEMENT_WAIT));
-            
-            wait.until(ExpectedConditions.presenceOfElementLocated(By.id(Constants.Selectors.USERNAME_INPUT)));
-            driver.findElement(By.id(Constants.Selectors.USERNAME_INPUT)).sendKeys(username);
+            loginPage.enterUsername(username);
             
-            driver.findElement(By.xpath(Constants.Selectors.LOGIN_BUTTON)).click();
+            portalRequestGovernor.acquire(sessionId);
+            loginPage.submit();
             
             // Step 3: Wait for password field and enter password
             logger.debug("Entering password");
-            wait.until(ExpectedConditions.presenceOfElementLocated(By.id(Constants.Selectors.PASSWORD_INPUT)));
-            driver.findElement(By.id(Constants.Selectors.PASSWORD_INPUT)).sendKeys(password);
+            loginPage.enterPassword(password);
             
-            driver.findElement(By.xpath(Constants.Selectors.LOGIN_BUTTON)).click();
+            portalRequestGovernor.acquire(sessionId);
+            loginPage.submit();
             
             // Step 4: Wait for redirect and check which page we land on
             logger.debug("Waiting for login redirect");
-            wait.until(ExpectedConditions.or(
-                ExpectedConditions.urlToBe(Constants.URLs.COURSE_PLANNER),
-                ExpectedConditions.urlToBe(Constants.URLs.COURSE_TIMETABLE)
-            ));
-            
-            String currentUrl = driver.getCurrentUrl();
+            String currentUrl = loginPage.awaitRedirect(portalUrls.coursePlanner(), portalUrls.courseTimetable());
             logger.debug("Login redirected to: {}", currentUrl);
             
             // Step 5: Handle different redirect scenarios
-            if (Constants.URLs.COURSE_TIMETABLE.equals(currentUrl)) {
+            if (portalUrls.courseTimetable().equals(currentUrl)) {
                 // If redirected to timetable, click "Plan/ Registration" button
                 logger.debug("On timetable page, looking for Plan/Registration button");
                 try {
-                    wait.until(ExpectedConditions.elementToBeClickable(By.xpath(Constants.Selectors.PLAN_REGISTRATION_BUTTON)));
-                    driver.findElement(By.xpath(Constants.Selectors.PLAN_REGISTRATION_BUTTON)).click();
+                    portalRequestGovernor.acquire(sessionId);
+                    loginPage.openPlanner();
                     logger.debug("Clicked Plan/Registration button");
                 } catch (Exception e) {
                     logger.error("Failed to find Plan/Registration button");
-                    throw new SeleniumException.LoginFailedException(Constants.ErrorMessages.PLAN_BUTTON_NOT_FOUND);
+                    throw new SeleniumException(Constants.ErrorMessages.PLAN_BUTTON_NOT_FOUND, e);
                 }
             }
             
             // Step 6: Wait for the main course table to appear
             logger.debug("Waiting for course table to load");
-            wait.until(ExpectedConditions.presenceOfElementLocated(By.xpath(Constants.Selectors.COURSE_TABLE)));
+            starsPages.planner(driver).await();
             
             logger.info("NTU login successful for user: {}", username);
+            portalCircuitBreaker.recordSuccess(sessionId);
             return true;
             
         } catch (Exception e) {
+            // Only the portal saying so means the credentials are wrong, a retry can't fix that
+            if (starsPages.login(driver).showsCredentialsError()) {
+                logger.warn("Portal rejected the credentials of user: {}", username);
+                throw new SeleniumException.LoginFailedException(Constants.ErrorMessages.LOGIN_FAILED);
+            }
+            if (e instanceof TimeoutException) {
+                portalCircuitBreaker.recordFailure(sessionId, "portal page did not load during login");
+            }
             logger.error("Login failed for user: {} - Error: {}", username, e.getMessage(), e);
-            throw new SeleniumException.LoginFailedException(Constants.ErrorMessages.LOGIN_FAILED);
+            throw e instanceof SeleniumException seleniumException
+                ? seleniumException
+                : new SeleniumException("LOGIN_INCOMPLETE", "Login did not complete: " + e.getMessage(), e);
         }
     }
     
@@ -99,13 +126,13 @@ public class NTULoginAutomator {
             String currentUrl = driver.getCurrentUrl();
             
             // If back at login page, session expired
-            if (currentUrl.contains("ldap_login.login")) {
+            if (currentUrl.contains(LOGIN_PAGE_MARKER)) {
                 logger.warn("Session appears to be expired - back at login page");
                 return false;
             }
             
             // Check if course table is still present
-            return SeleniumUtil.isElementPresent(driver, By.xpath(Constants.Selectors.COURSE_TABLE));
+            return starsPages.planner(driver).isShowing();
             
         } catch (Exception e) {
             logger.warn("Error checking login status: {}", e.getMessage());
@@ -0,0 +1,412 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker for the NTU portal as a whole, shared by every session (and every node when clustered).
+ * Automators report whether the portal answered or failed them; when enough different sessions fail
+ * within a window, and at least as many failed as got through, the breaker opens. The closed-portal
+ * alert opens it at once. While open, swap loops hold before their next attempt, keeping their browsers.
+ * Once the open period runs out a single session is let through as the probe: if the portal answers it
+ * everyone resumes, if not the breaker opens again for twice as long.
+ */
+@Component
+public class PortalCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortalCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // One hash tag so every script's keys share a Redis Cluster slot
+    private static final String FAILING_KEY = "{portal_breaker}:failing";
+    private static final String ANSWERED_KEY = "{portal_breaker}:answered";
+    private static final String TRIPPED_KEY = "{portal_breaker}:tripped";
+    private static final String OPEN_KEY = "{portal_breaker}:open";
+    private static final String PROBE_KEY = "{portal_breaker}:probe";
+    private static final List<String> KEYS = List.of(FAILING_KEY, ANSWERED_KEY, TRIPPED_KEY, OPEN_KEY, PROBE_KEY);
+
+    // Outcome of one portal request, returns 1 if it tripped the breaker, 2 if it closed it, 3 if the probe failed
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>(
+        "local t = redis.call('time') " +
+        "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+        "local window = tonumber(ARGV[3]) " +
+        "if ARGV[1] == 's' then " +
+        "  redis.call('zadd', KEYS[2], now, ARGV[2]) redis.call('pexpire', KEYS[2], window) " +
+        "  if redis.call('exists', KEYS[3]) == 1 and redis.call('exists', KEYS[4]) == 0 then " +
+        "    redis.call('del', KEYS[1], KEYS[3], KEYS[5]) return 2 end " +
+        "  return 0 end " +
+        "redis.call('zadd', KEYS[1], now, ARGV[2]) redis.call('pexpire', KEYS[1], window) " +
+        "if redis.call('exists', KEYS[3]) == 1 then " +
+        "  if redis.call('exists', KEYS[4]) == 0 and redis.call('get', KEYS[5]) == ARGV[2] then " +
+        "    local ms = math.min(tonumber(redis.call('get', KEYS[3])) * 2, tonumber(ARGV[6])) " +
+        "    redis.call('set', KEYS[3], ms) redis.call('set', KEYS[4], ARGV[7], 'PX', ms) redis.call('del', KEYS[5]) " +
+        "    return 3 end " +
+        "  return 0 end " +
+        "redis.call('zremrangebyscore', KEYS[1], 0, now - window) " +
+        "redis.call('zremrangebyscore', KEYS[2], 0, now - window) " +
+        "local failing = redis.call('zcard', KEYS[1]) " +
+        "if failing >= tonumber(ARGV[4]) and failing >= redis.call('zcard', KEYS[2]) then " +
+        "  redis.call('set', KEYS[3], ARGV[5]) redis.call('set', KEYS[4], ARGV[7], 'PX', ARGV[5]) return 1 end " +
+        "return 0",
+        Long.class);
+
+    // Open now for at least ARGV[1] ms, returns 1 if it wasn't open already
+    private static final RedisScript<Long> TRIP_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('pttl', KEYS[4]) >= tonumber(ARGV[1]) then return 0 end " +
+        "local wasOpen = redis.call('exists', KEYS[4]) " +
+        "redis.call('set', KEYS[3], ARGV[1]) redis.call('set', KEYS[4], ARGV[2], 'PX', ARGV[1]) redis.call('del', KEYS[5]) " +
+        "return 1 - wasOpen",
+        Long.class);
+
+    // Returns 0 to go ahead (closed, or this session holds the probe), -1 if it just became the probe,
+    // otherwise the ms to wait
+    private static final RedisScript<Long> PERMIT_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('exists', KEYS[3]) == 0 then return 0 end " +
+        "local open = redis.call('pttl', KEYS[4]) " +
+        "if open > 0 then return open end " +
+        "if redis.call('set', KEYS[5], ARGV[1], 'NX', 'PX', ARGV[2]) then return -1 end " +
+        "if redis.call('get', KEYS[5]) == ARGV[1] then return 0 end " +
+        "return math.max(1, redis.call('pttl', KEYS[5])) ",
+        Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.portal.breaker.window-seconds:60}")
+    private long windowSeconds;
+
+    @Value("${app.portal.breaker.min-sessions:3}")
+    private int minSessions;
+
+    @Value("${app.portal.breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${app.portal.breaker.max-open-seconds:600}")
+    private long maxOpenSeconds;
+
+    @Value("${app.portal.breaker.closed-portal-open-seconds:300}")
+    private long closedPortalOpenSeconds;
+
+    @Value("${app.portal.breaker.probe-timeout-seconds:60}")
+    private long probeTimeoutSeconds;
+
+    @Value("${app.portal.breaker.poll-ms:1000}")
+    private long pollMs;
+
+    @Value("${app.portal.breaker.cluster-enabled:${app.portal.governor.cluster-enabled:false}}")
+    private boolean clusterEnabled;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+
+    // Local breaker, also the fallback when Redis is unreachable (guarded by lock)
+    private final Map<String, Long> failing = new HashMap<>();
+    private final Map<String, Long> answered = new HashMap<>();
+    private long trippedOpenMs;     // 0 while closed
+    private long openUntil;
+    private String probeSession;
+    private long probeUntil;
+    private String lastReason;
+
+    // Metrics
+    private final AtomicLong trips = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong failedProbes = new AtomicLong();
+    private final AtomicLong closes = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong pausedMillis = new AtomicLong();
+    private final AtomicInteger pausedNow = new AtomicInteger();
+    private final AtomicLong clusterFallbackCount = new AtomicLong();
+
+    /* The portal answered a request from this session */
+    public void recordSuccess(String sessionId) {
+        if (clusterEnabled) {
+            try {
+                Long outcome = redisTemplate.execute(RECORD_SCRIPT, KEYS, "s", sessionId, String.valueOf(windowMs()),
+                    String.valueOf(minSessions), String.valueOf(openMs()), String.valueOf(maxOpenMs()), "");
+                if (outcome != null) {
+                    onOutcome(outcome, "portal answered " + sessionId);
+                    return;
+                }
+            } catch (Exception e) {
+                clusterFallback(e);
+            }
+        }
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            answered.put(sessionId, now);
+            if (trippedOpenMs > 0 && now >= openUntil) {
+                closeLocal();
+                onOutcome(2, "portal answered " + sessionId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The portal failed a request from this session (page never came, connection refused)
+     * @param sessionId Session that saw the failure
+     * @param reason What failed, kept for the stats and logs
+     */
+    public void recordFailure(String sessionId, String reason) {
+        if (clusterEnabled) {
+            try {
+                Long outcome = redisTemplate.execute(RECORD_SCRIPT, KEYS, "f", sessionId, String.valueOf(windowMs()),
+                    String.valueOf(minSessions), String.valueOf(openMs()), String.valueOf(maxOpenMs()), reason);
+                if (outcome != null) {
+                    onOutcome(outcome, reason);
+                    return;
+                }
+            } catch (Exception e) {
+                clusterFallback(e);
+            }
+        }
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            failing.put(sessionId, now);
+            if (trippedOpenMs > 0) {
+                // Only the probe's failure counts while tripped, the rest were sent before it opened
+                if (now >= openUntil && sessionId.equals(probeSession)) {
+                    openLocal(Math.min(trippedOpenMs * 2, maxOpenMs()), reason);
+                    onOutcome(3, reason);
+                }
+                return;
+            }
+            failing.values().removeIf(at -> at < now - windowMs());
+            answered.values().removeIf(at -> at < now - windowMs());
+            if (failing.size() >= minSessions && failing.size() >= answered.size()) {
+                openLocal(openMs(), reason);
+                onOutcome(1, reason);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* The portal said it is closed; no point asking again for a while */
+    public void tripPortalClosed(String sessionId, String alertText) {
+        long ms = TimeUnit.SECONDS.toMillis(closedPortalOpenSeconds);
+        String reason = "portal closed: " + alertText;
+        if (clusterEnabled) {
+            try {
+                Long tripped = redisTemplate.execute(TRIP_SCRIPT, KEYS, String.valueOf(ms), reason);
+                if (tripped != null) {
+                    onOutcome(tripped == 1 ? 1 : 0, reason);
+                    return;
+                }
+            } catch (Exception e) {
+                clusterFallback(e);
+            }
+        }
+        lock.lock();
+        try {
+            boolean wasOpen = trippedOpenMs > 0 && System.currentTimeMillis() < openUntil;
+            if (!wasOpen || openUntil - System.currentTimeMillis() < ms) {
+                openLocal(ms, reason);
+            }
+            onOutcome(wasOpen ? 0 : 1, reason);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hold until this session may send requests to the portal: the breaker is closed, or this session
+     * is the probe. Browsers are left as they are while waiting.
+     * @param sessionId Session about to use the portal
+     * @param maxWaitMs Give up waiting after this long
+     * @param onPause Run once if the session has to wait
+     * @return How long the session was paused, 0 if it went straight ahead, or -1 if it gave up
+     */
+    public long awaitPermit(String sessionId, long maxWaitMs, Runnable onPause) {
+        long start = System.currentTimeMillis();
+        boolean paused = false;
+        try {
+            while (true) {
+                long waitMs = permit(sessionId);
+                long now = System.currentTimeMillis();
+                if (waitMs == 0) {
+                    return paused ? Math.max(1, now - start) : 0;
+                }
+                if (!paused) {
+                    paused = true;
+                    pauses.incrementAndGet();
+                    pausedNow.incrementAndGet();
+                    onPause.run();
+                }
+                long remaining = start + maxWaitMs - now;
+                if (remaining <= 0) {
+                    return -1;
+                }
+                lock.lock();
+                try {
+                    stateChanged.await(Math.min(remaining, Math.min(waitMs, pollMs)), TimeUnit.MILLISECONDS);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SeleniumException("Interrupted while waiting for the portal circuit breaker", e);
+        } finally {
+            if (paused) {
+                pausedNow.decrementAndGet();
+                pausedMillis.addAndGet(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    public State getState() {
+        if (clusterEnabled) {
+            try {
+                if (Boolean.FALSE.equals(redisTemplate.hasKey(TRIPPED_KEY))) {
+                    return State.CLOSED;
+                }
+                Long open = redisTemplate.getExpire(OPEN_KEY, TimeUnit.MILLISECONDS);
+                return open != null && open > 0 ? State.OPEN : State.HALF_OPEN;
+            } catch (Exception e) {
+                clusterFallback(e);
+            }
+        }
+        lock.lock();
+        try {
+            if (trippedOpenMs == 0) {
+                return State.CLOSED;
+            }
+            return System.currentTimeMillis() < openUntil ? State.OPEN : State.HALF_OPEN;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* 0 if the session may go ahead, otherwise the ms to wait before asking again */
+    private long permit(String sessionId) {
+        if (clusterEnabled) {
+            try {
+                Long waitMs = redisTemplate.execute(PERMIT_SCRIPT, KEYS, sessionId,
+                    String.valueOf(TimeUnit.SECONDS.toMillis(probeTimeoutSeconds)));
+                if (waitMs != null && waitMs < 0) {
+                    probes.incrementAndGet();
+                    logger.info("Portal circuit breaker half-open, probing with session: {}", sessionId);
+                    return 0;
+                }
+                if (waitMs != null) {
+                    return waitMs;
+                }
+            } catch (Exception e) {
+                clusterFallback(e);
+            }
+        }
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (trippedOpenMs == 0) {
+                return 0;
+            }
+            if (now < openUntil) {
+                return openUntil - now;
+            }
+            if (probeSession == null || now >= probeUntil) {
+                probeSession = sessionId;
+                probeUntil = now + TimeUnit.SECONDS.toMillis(probeTimeoutSeconds);
+                probes.incrementAndGet();
+                logger.info("Portal circuit breaker half-open, probing with session: {}", sessionId);
+            }
+            return sessionId.equals(probeSession) ? 0 : Math.max(1, probeUntil - now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openLocal(long ms, String reason) {
+        trippedOpenMs = ms;
+        openUntil = System.currentTimeMillis() + ms;
+        probeSession = null;
+        lastReason = reason;
+    }
+
+    private void closeLocal() {
+        trippedOpenMs = 0;
+        probeSession = null;
+        failing.clear();
+    }
+
+    /* Log and count a state change, and wake the waiting sessions to look again */
+    private void onOutcome(long outcome, String reason) {
+        if (outcome == 0) {
+            return;
+        }
+        if (outcome == 1) {
+            trips.incrementAndGet();
+            lastReason = reason;
+            logger.warn("Portal circuit breaker opened: {}", reason);
+        } else if (outcome == 2) {
+            closes.incrementAndGet();
+            logger.info("Portal circuit breaker closed, {}", reason);
+        } else {
+            failedProbes.incrementAndGet();
+            lastReason = reason;
+            logger.warn("Portal circuit breaker probe failed, opening again: {}", reason);
+        }
+        lock.lock();
+        try {
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clusterFallback(Exception e) {
+        // Redis unavailable: fall back to this node's own breaker
+        clusterFallbackCount.incrementAndGet();
+        logger.debug("Cluster circuit breaker unavailable, using local breaker: {}", e.getMessage());
+    }
+
+    private long windowMs() {
+        return TimeUnit.SECONDS.toMillis(windowSeconds);
+    }
+
+    private long openMs() {
+        return TimeUnit.SECONDS.toMillis(openSeconds);
+    }
+
+    private long maxOpenMs() {
+        return TimeUnit.SECONDS.toMillis(maxOpenSeconds);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", getState().name().toLowerCase());
+        stats.put("cluster_enabled", clusterEnabled);
+        stats.put("last_reason", lastReason != null ? lastReason : "");
+        stats.put("trips", trips.get());
+        stats.put("probes", probes.get());
+        stats.put("failed_probes", failedProbes.get());
+        stats.put("closes", closes.get());
+        stats.put("pauses", pauses.get());
+        stats.put("paused_now", pausedNow.get());
+        stats.put("paused_seconds_total", pausedMillis.get() / 1000);
+        stats.put("cluster_fallbacks", clusterFallbackCount.get());
+        return stats;
+    }
+}
@@ -0,0 +1,250 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Global governor for requests sent to the NTU portal.
+ * Every navigation (page load, form submit) must call acquire() first. Permits come from a
+ * token bucket (local, or shared through Redis when clustered) and are handed out in
+ * self-clocked weighted fair queueing order, so one busy session cannot starve the others.
+ */
+@Component
+public class PortalRequestGovernor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortalRequestGovernor.class);
+
+    private static final String CLUSTER_BUCKET_KEY = "portal_governor:bucket";
+
+    // Token bucket on Redis server time, returns 0 when a token was taken or the ms to wait
+    private static final RedisScript<Long> TAKE_TOKEN_SCRIPT = new DefaultRedisScript<>(
+        "local rate = tonumber(ARGV[1]) " +
+        "local burst = tonumber(ARGV[2]) " +
+        "local t = redis.call('time') " +
+        "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+        "local state = redis.call('hmget', KEYS[1], 'tokens', 'ts') " +
+        "local tokens = tonumber(state[1]) or burst " +
+        "local ts = tonumber(state[2]) or now " +
+        "tokens = math.min(burst, tokens + math.max(0, now - ts) * rate) " +
+        "local wait = 0 " +
+        "if tokens >= 1 then tokens = tokens - 1 else wait = math.ceil((1 - tokens) / rate) end " +
+        "redis.call('hset', KEYS[1], 'tokens', tostring(tokens), 'ts', now) " +
+        "redis.call('pexpire', KEYS[1], math.ceil(burst / rate) + 60000) " +
+        "return wait",
+        Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.portal.governor.rate-per-second:2.0}")
+    private double ratePerSecond;
+
+    @Value("${app.portal.governor.burst:5}")
+    private int burst;
+
+    @Value("${app.portal.governor.max-wait-seconds:120}")
+    private long maxWaitSeconds;
+
+    @Value("${app.portal.governor.cluster-enabled:false}")
+    private boolean clusterEnabled;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queueChanged = lock.newCondition();
+
+    // Waiters ordered by finish tag (guarded by lock)
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+    private final Map<String, Double> lastFinishTags = new HashMap<>();
+    private double virtualTime;
+    private long ticketSequence;
+    // The head waiter is taking a cluster token with the lock released (guarded by lock)
+    private boolean takingClusterToken;
+
+    // Local token bucket (guarded by lock)
+    private double localTokens = -1;
+    private long lastRefillNanos;
+
+    // Metrics
+    private final AtomicLong grantedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong clusterFallbackCount = new AtomicLong();
+
+    /* Wait for a portal request permit with the default weight */
+    public void acquire(String sessionId) {
+        acquire(sessionId, 1.0);
+    }
+
+    /**
+     * Block until this session may send one request to the portal
+     * @param sessionId Session the request belongs to (fair-share unit)
+     * @param weight Relative share of the request rate for this session
+     */
+    public void acquire(String sessionId, double weight) {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(maxWaitSeconds);
+
+        lock.lock();
+        try {
+            Ticket ticket = enqueue(sessionId, weight);
+            try {
+                while (true) {
+                    long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        timedOutCount.incrementAndGet();
+                        throw new SeleniumException.TimeoutException("waiting for portal request permit");
+                    }
+
+                    if (queue.peek() == ticket && !takingClusterToken) {
+                        long tokenWaitNanos = tryTakeToken();
+                        if (tokenWaitNanos == 0) {
+                            break;
+                        }
+                        queueChanged.awaitNanos(Math.min(tokenWaitNanos, deadlineNanos - System.nanoTime()));
+                    } else {
+                        queueChanged.awaitNanos(remainingNanos);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SeleniumException("Interrupted while waiting for portal request permit", e);
+            } finally {
+                // Served or abandoned, either way the next waiter may now be at the head
+                queue.remove(ticket);
+                virtualTime = Math.max(virtualTime, ticket.finishTag);
+                queueChanged.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        recordWait(System.nanoTime() - startNanos);
+    }
+
+    private Ticket enqueue(String sessionId, double weight) {
+        double startTag = Math.max(virtualTime, lastFinishTags.getOrDefault(sessionId, 0.0));
+        Ticket ticket = new Ticket(startTag + 1.0 / Math.max(weight, 0.01), ticketSequence++);
+        lastFinishTags.put(sessionId, ticket.finishTag);
+        queue.add(ticket);
+
+        // Sessions whose last request is already behind the virtual clock no longer affect ordering
+        if (lastFinishTags.size() > 1024) {
+            lastFinishTags.values().removeIf(tag -> tag <= virtualTime);
+        }
+        return ticket;
+    }
+
+    /* Take one token, returning 0 on success or the nanos until one is available; called holding the lock */
+    private long tryTakeToken() {
+        if (clusterEnabled) {
+            // The Redis round trip runs unlocked so enqueues, timeouts and stats don't wait on it
+            Long waitMs;
+            takingClusterToken = true;
+            lock.unlock();
+            try {
+                waitMs = tryTakeClusterToken();
+            } finally {
+                lock.lock();
+                takingClusterToken = false;
+                queueChanged.signalAll();
+            }
+            if (waitMs != null) {
+                return TimeUnit.MILLISECONDS.toNanos(waitMs);
+            }
+        }
+        return tryTakeLocalToken();
+    }
+
+    /* Milliseconds to wait for the shared bucket, 0 once a token was taken, null when Redis is unavailable */
+    private Long tryTakeClusterToken() {
+        try {
+            return redisTemplate.execute(TAKE_TOKEN_SCRIPT, List.of(CLUSTER_BUCKET_KEY),
+                String.valueOf(ratePerSecond / 1000.0), String.valueOf(burst));
+        } catch (Exception e) {
+            // Redis unavailable: fall back to this node's own bucket
+            clusterFallbackCount.incrementAndGet();
+            logger.debug("Cluster token bucket unavailable, using local bucket: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private long tryTakeLocalToken() {
+        long now = System.nanoTime();
+        if (localTokens < 0) {
+            localTokens = burst;
+        } else {
+            double refill = (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond;
+            localTokens = Math.min(burst, localTokens + refill);
+        }
+        lastRefillNanos = now;
+
+        if (localTokens >= 1) {
+            localTokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - localTokens) / ratePerSecond * 1_000_000_000L);
+    }
+
+    private void recordWait(long waitNanos) {
+        grantedCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /* Snapshot of governor metrics */
+    public Map<String, Object> getStats() {
+        int queued;
+        lock.lock();
+        try {
+            queued = queue.size();
+        } finally {
+            lock.unlock();
+        }
+
+        long granted = grantedCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("rate_per_second", ratePerSecond);
+        stats.put("burst", burst);
+        stats.put("cluster_enabled", clusterEnabled);
+        stats.put("granted", granted);
+        stats.put("timed_out", timedOutCount.get());
+        stats.put("queued", queued);
+        stats.put("avg_wait_ms", granted == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / granted);
+        stats.put("max_wait_ms", maxWaitNanos.get() / 1_000_000.0);
+        stats.put("cluster_fallbacks", clusterFallbackCount.get());
+        return stats;
+    }
+
+    /* A queued request, ordered by finish tag then arrival */
+    private static class Ticket implements Comparable<Ticket> {
+        private final double finishTag;
+        private final long sequence;
+
+        private Ticket(double finishTag, long sequence) {
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byTag = Double.compare(finishTag, other.finishTag);
+            return byTag != 0 ? byTag : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.util.Constants;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/* STARS portal URLs under the configured base URL, so a local stand-in portal can replace the real one */
+@Component
+public class PortalUrls {
+
+    @Value("${app.portal.base-url:" + Constants.URLs.DEFAULT_BASE_URL + "}")
+    private String baseUrl;
+
+    public String login() {
+        return baseUrl + Constants.URLs.NTU_LOGIN_PATH + baseUrl + Constants.URLs.STARS_MAIN_PATH;
+    }
+
+    public String coursePlanner() {
+        return baseUrl + Constants.URLs.COURSE_PLANNER_PATH;
+    }
+
+    public String courseTimetable() {
+        return baseUrl + Constants.URLs.COURSE_TIMETABLE_PATH;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+}
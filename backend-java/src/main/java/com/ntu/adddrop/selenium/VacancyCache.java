@@ -0,0 +1,118 @@
+package com.ntu.adddrop.selenium;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived vacancy counts per course index, shared by all sessions and nodes.
+ * Every swap page lists the vacancies of all indexes of that course, so one read refreshes
+ * many entries. Sessions skip indexes recently seen full instead of walking into the swap page.
+ * Redis failures are treated as cache misses.
+ */
+@Component
+public class VacancyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VacancyCache.class);
+
+    private static final String KEY_PREFIX = "vacancy:";
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.vacancy-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.vacancy-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    // Metrics
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong fullHits = new AtomicLong();
+    private final AtomicLong availableHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong recordedIndexes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /* True if the index was seen with no vacancies within the TTL */
+    public boolean isKnownFull(String index) {
+        OptionalInt vacancies = getVacancies(index);
+        return vacancies.isPresent() && vacancies.getAsInt() <= 0;
+    }
+
+    /* Last observed vacancy count, empty if not seen within the TTL */
+    public OptionalInt getVacancies(String index) {
+        if (!enabled) {
+            return OptionalInt.empty();
+        }
+        lookups.incrementAndGet();
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + index);
+            if (value == null) {
+                misses.incrementAndGet();
+                return OptionalInt.empty();
+            }
+            int vacancies = Integer.parseInt(value);
+            (vacancies <= 0 ? fullHits : availableHits).incrementAndGet();
+            return OptionalInt.of(vacancies);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            misses.incrementAndGet();
+            logger.debug("Vacancy cache lookup failed for index {}: {}", index, e.getMessage());
+            return OptionalInt.empty();
+        }
+    }
+
+    /* Record every vacancy count read from one dropdown in a single pipelined write */
+    public void recordAll(Map<String, Integer> vacanciesByIndex) {
+        if (!enabled || vacanciesByIndex.isEmpty()) {
+            return;
+        }
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    vacanciesByIndex.forEach((index, vacancies) ->
+                        ops.opsForValue().set(KEY_PREFIX + index, Integer.toString(vacancies), ttl));
+                    return null;
+                }
+            });
+            recordedIndexes.addAndGet(vacanciesByIndex.size());
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            logger.debug("Failed to record {} vacancy counts: {}", vacanciesByIndex.size(), e.getMessage());
+        }
+    }
+
+    /* Snapshot of cache metrics, full_hit_rate is the share of lookups that saved a swap page visit */
+    public Map<String, Object> getStats() {
+        long total = lookups.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ttl_seconds", ttlSeconds);
+        stats.put("lookups", total);
+        stats.put("full_hits", fullHits.get());
+        stats.put("available_hits", availableHits.get());
+        stats.put("misses", misses.get());
+        stats.put("full_hit_rate", total == 0 ? 0.0 : fullHits.get() / (double) total);
+        stats.put("hit_rate", total == 0 ? 0.0 : (fullHits.get() + availableHits.get()) / (double) total);
+        stats.put("recorded_indexes", recordedIndexes.get());
+        stats.put("errors", errors.get());
+        return stats;
+    }
+}
@@ -0,0 +1,198 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PostConstruct;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The one place automators wait on the portal. Drivers run with an implicit wait of 0, so every wait
+ * is an explicit one with the timeout of its step and a short polling interval, and checks for
+ * something that may legitimately be missing (an index not on offer, an optional header) return at
+ * once instead of blocking for a timeout. Where the portal answers a click with either the next page
+ * or an alert, both are waited for together rather than giving the alert a fixed head start.
+ * Time saved is counted against what the same outcome cost under the old implicit and alert waits.
+ */
+@Component
+public class WaitPolicy {
+
+    /* What is being waited for; each maps to a timeout */
+    public enum Step {
+        LOGIN_PAGE,        // username / password forms
+        LOGIN_REDIRECT,    // planner or timetable after submitting the password
+        COURSE_TABLE,      // the planner table every attempt starts from
+        PLAN_BUTTON,       // Plan / Registration on the timetable page
+        CHANGE_INDEX_PAGE, // change-index menu, or the portal-closed alert, after Go
+        CONFIRM_PAGE,      // confirm page, or the clash alert, after OK
+        SWAP_RESULT        // alert after confirming the change
+    }
+
+    // What the old policy paid for a missing element (implicit wait) and for an alert that didn't come
+    private static final long LEGACY_ABSENCE_MS = Constants.Timeouts.ELEMENT_WAIT * 1000L;
+    private static final long LEGACY_ALERT_MS = Constants.Timeouts.ALERT_WAIT * 1000L;
+
+    @Value("${app.selenium.waits.page-ms:10000}")
+    private long pageMs;
+
+    @Value("${app.selenium.waits.login-redirect-ms:15000}")
+    private long loginRedirectMs;
+
+    @Value("${app.selenium.waits.swap-result-ms:20000}")
+    private long swapResultMs;
+
+    @Value("${app.selenium.waits.poll-interval-ms:100}")
+    private long pollIntervalMs;
+
+    private final Map<Step, Duration> timeouts = new EnumMap<>(Step.class);
+    private final Map<Step, StepStats> stepStats = new EnumMap<>(Step.class);
+
+    private final LongAdder absenceChecks = new LongAdder();
+    private final LongAdder absent = new LongAdder();
+    private final LongAdder savedMs = new LongAdder();
+    private final LongAdder waitedMs = new LongAdder();
+    private final AtomicLong cycles = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        for (Step step : Step.values()) {
+            long ms = switch (step) {
+                case LOGIN_REDIRECT -> loginRedirectMs;
+                case SWAP_RESULT -> swapResultMs;
+                default -> pageMs;
+            };
+            timeouts.put(step, Duration.ofMillis(ms));
+            stepStats.put(step, new StepStats());
+        }
+    }
+
+    /**
+     * Wait for a condition within the step's timeout
+     * @throws TimeoutException if the condition isn't met in time
+     */
+    public <T> T until(WebDriver driver, Step step, ExpectedCondition<T> condition) {
+        StepStats stats = stepStats.get(step);
+        long start = System.nanoTime();
+        try {
+            return new WebDriverWait(driver, timeouts.get(step), Duration.ofMillis(pollIntervalMs)).until(condition);
+        } catch (TimeoutException e) {
+            stats.timeouts.increment();
+            throw e;
+        } finally {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            stats.waits.increment();
+            stats.totalMs.add(elapsed);
+            waitedMs.add(elapsed);
+        }
+    }
+
+    /**
+     * Wait for the step's page or an alert shown instead of it, whichever comes first
+     * @return The alert, not yet accepted, or null once the page is there
+     * @throws TimeoutException if neither shows up in time
+     */
+    public Alert pageOrAlert(WebDriver driver, Step step, By pageLocator) {
+        return pageOrAlert(driver, step, pageLocator, () -> { });
+    }
+
+    /* As pageOrAlert, telling onDriverCall about each driver command it issues */
+    public Alert pageOrAlert(WebDriver driver, Step step, By pageLocator, Runnable onDriverCall) {
+        // Alert first: looking up an element while an alert is open would dismiss it
+        until(driver, step, ExpectedConditions.or(
+            counted(ExpectedConditions.alertIsPresent(), onDriverCall),
+            counted(ExpectedConditions.presenceOfElementLocated(pageLocator), onDriverCall)
+        ));
+        try {
+            onDriverCall.run();
+            return driver.switchTo().alert();
+        } catch (NoAlertPresentException e) {
+            savedMs.add(LEGACY_ALERT_MS);
+            return null;
+        }
+    }
+
+    /* An element on the current page, or empty straight away if it isn't there */
+    public Optional<WebElement> find(SearchContext context, By locator) {
+        List<WebElement> found = findAll(context, locator);
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    /* Whether an element is on the current page, without waiting */
+    public boolean isPresent(SearchContext context, By locator) {
+        return !findAll(context, locator).isEmpty();
+    }
+
+    /* All matching elements on the current page, empty straight away if there are none */
+    public List<WebElement> findAll(SearchContext context, By locator) {
+        absenceChecks.increment();
+        List<WebElement> found = context.findElements(locator);
+        if (found.isEmpty()) {
+            absent.increment();
+            savedMs.add(LEGACY_ABSENCE_MS);
+        }
+        return found;
+    }
+
+    /* A condition that tells onDriverCall each time it is evaluated, i.e. each driver command it issues */
+    public static <T> ExpectedCondition<T> counted(ExpectedCondition<T> condition, Runnable onDriverCall) {
+        return driver -> {
+            onDriverCall.run();
+            return condition.apply(driver);
+        };
+    }
+
+    /* Count one pass over a session's modules, for the per-cycle figures */
+    public void recordCycle() {
+        cycles.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> steps = new HashMap<>();
+        stepStats.forEach((step, stats) -> {
+            long waits = stats.waits.sum();
+            Map<String, Object> row = new HashMap<>();
+            row.put("timeout_ms", timeouts.get(step).toMillis());
+            row.put("waits", waits);
+            row.put("timeouts", stats.timeouts.sum());
+            row.put("avg_ms", waits > 0 ? stats.totalMs.sum() / waits : 0);
+            steps.put(step.name().toLowerCase(), row);
+        });
+
+        long cycleCount = cycles.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("poll_interval_ms", pollIntervalMs);
+        stats.put("steps", steps);
+        stats.put("absence_checks", absenceChecks.sum());
+        stats.put("absent", absent.sum());
+        stats.put("cycles", cycleCount);
+        stats.put("saved_ms_total", savedMs.sum());
+        stats.put("saved_ms_per_cycle", cycleCount > 0 ? savedMs.sum() / cycleCount : 0);
+        stats.put("waited_ms_per_cycle", cycleCount > 0 ? waitedMs.sum() / cycleCount : 0);
+        return stats;
+    }
+
+    /* Counters for one step */
+    private static class StepStats {
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder totalMs = new LongAdder();
+    }
+}
@@ -6,11 +6,12 @@ import org.openqa.selenium.WebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntConsumer;
 
 /**
  * Manages WebDriver instances with proper lifecycle management
@@ -21,30 +22,120 @@ public class WebDriverManager {
     private static final Logger logger = LoggerFactory.getLogger(WebDriverManager.class);
 
     @Autowired
-    private ApplicationContext applicationContext;
+    private DriverProvider driverProvider;
+
+    @Autowired
+    private DriverAdmissionController admissionController;
 
     // Track active drivers for cleanup
     private final ConcurrentMap<String, WebDriver> activeDrivers = new ConcurrentHashMap<>();
 
+    // Drivers holding an admission slot and when they got it, released exactly once when they are quit
+    private final ConcurrentMap<WebDriver, Long> admittedDrivers = new ConcurrentHashMap<>();
+
     /* Create a new WebDriver instance for a session */
     public WebDriver createDriver(String sessionId) {
+        return createDriver(sessionId, position -> { });
+    }
+
+    /**
+     * Create a new WebDriver instance for a session, waiting for room in the node's memory budget
+     * @param onQueuePosition Told the session's queue position while it waits for a browser slot
+     * @throws SeleniumException.NodeAtCapacityException if the node can't take another browser
+     */
+    public WebDriver createDriver(String sessionId, IntConsumer onQueuePosition) {
+        boolean admitted = false;
+        if (usesLocalBrowsers()) {
+            try {
+                admissionController.acquire(sessionId, onQueuePosition);
+                admitted = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SeleniumException("Interrupted while waiting for a browser slot for session: " + sessionId);
+            }
+        }
+        return create(sessionId, admitted);
+    }
+
+    /* Create a driver only if the node has room right now, otherwise null */
+    public WebDriver createDriverIfAdmitted(String sessionId) {
+        boolean admitted = false;
+        if (usesLocalBrowsers()) {
+            if (!admissionController.tryAcquire()) {
+                return null;
+            }
+            admitted = true;
+        }
+        return create(sessionId, admitted);
+    }
+
+    private WebDriver create(String sessionId, boolean admitted) {
         try {
-            logger.info("Creating WebDriver for session: {}", sessionId);
+            logger.info("Creating {} WebDriver for session: {}", driverProvider.name(), sessionId);
 
-            // Get new WebDriver instance from Spring context (prototype scope)
-            WebDriver driver = applicationContext.getBean(WebDriver.class);
+            WebDriver driver = driverProvider.create();
 
             // Track the driver
+            if (admitted) {
+                admittedDrivers.put(driver, System.currentTimeMillis());
+            }
             activeDrivers.put(sessionId, driver);
 
             logger.info("WebDriver created successfully for session: {}", sessionId);
             return driver;
         } catch (Exception e) {
+            if (admitted) {
+                admissionController.release();
+            }
             logger.error("Failed to create WebDriver for session: {}", sessionId, e);
             throw new SeleniumException(Constants.ErrorMessages.DRIVER_INIT_FAILED + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Queue position a new browser for this session would start at, 0 if it needs no local slot or gets one now
+     * @param waitingForThread Swap loops still waiting for a thread, they queue ahead of this session
+     */
+    public int expectedQueuePosition(String sessionId, int waitingForThread) {
+        if (!usesLocalBrowsers() || hasDriver(sessionId)) {
+            return waitingForThread > 0 ? waitingForThread + 1 : 0;
+        }
+        return admissionController.expectedPosition(waitingForThread);
+    }
+
+    /**
+     * Whether a new browser for this session would be turned away because the queue is full
+     * @param waitingForThread Swap loops still waiting for a thread, they take queue places first
+     */
+    public boolean isQueueFull(String sessionId, int waitingForThread) {
+        if (!usesLocalBrowsers() || hasDriver(sessionId)) {
+            return waitingForThread >= admissionController.getMaxQueued();
+        }
+        return admissionController.isQueueFull(waitingForThread);
+    }
+
+    /* Expected wait for a browser at a queue position, from the observed slot throughput */
+    public long estimatedWaitMillis(int position) {
+        return usesLocalBrowsers() ? admissionController.estimatedWaitMillis(position) : 0;
+    }
+
+    /* Browsers on a Grid use the Grid's memory, not this node's */
+    private boolean usesLocalBrowsers() {
+        return !"grid".equals(driverProvider.name());
+    }
+
+    /* Quit a driver and give back its admission slot */
+    private void quit(WebDriver driver) {
+        try {
+            driver.quit();
+        } finally {
+            Long admittedAt = admittedDrivers.remove(driver);
+            if (admittedAt != null) {
+                admissionController.release(System.currentTimeMillis() - admittedAt);
+            }
+        }
+    }
+
     /* Get existing WebDriver for a session */
     public WebDriver getDriver(String sessionId) {
         WebDriver driver = activeDrivers.get(sessionId);
@@ -66,7 +157,7 @@ public class WebDriverManager {
         if (driver != null) {
             try {
                 logger.info("Closing WebDriver for session: {}", sessionId);
-                driver.quit();
+                quit(driver);
                 logger.info("WebDriver closed successfully for session: {}", sessionId);
             } catch (Exception e) {
                 logger.warn("Error closing WebDriver for session: {}", sessionId, e);
@@ -76,6 +167,16 @@ public class WebDriverManager {
         }
     }
 
+    /* Close one particular driver, leaving the session's slot alone if it has moved on to another one */
+    public void closeDriver(String sessionId, WebDriver driver) {
+        activeDrivers.remove(sessionId, driver);
+        try {
+            quit(driver);
+        } catch (Exception e) {
+            logger.warn("Error closing WebDriver for session: {}", sessionId, e);
+        }
+    }
+
     /* Close all active drivers (for application shutdown) */
     public void closeAllDrivers() {
         logger.info("Closing all active WebDrivers. Count: {}", activeDrivers.size());
@@ -88,6 +189,11 @@ public class WebDriverManager {
         logger.info("All WebDrivers closed");
     }
 
+    /* Sessions that currently own a driver */
+    public Set<String> getActiveSessionIds() {
+        return Set.copyOf(activeDrivers.keySet());
+    }
+
     /* Get count of active drivers */
     public int getActiveDriverCount() {
         return activeDrivers.size();
@@ -108,7 +214,7 @@ public class WebDriverManager {
             } catch (Exception e) {
                 logger.warn("Removing inactive WebDriver for session: {}", sessionId);
                 try {
-                    driver.quit();
+                    quit(driver);
                 } catch (Exception closeEx) {
                     logger.debug("Error closing inactive driver: {}", closeEx.getMessage());
                 }
@@ -0,0 +1,88 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.WaitPolicy.Step;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Change-index menu: the dropdown of new indexes as "index / vacancies / waitlist" */
+public class ChangeIndexPage extends PortalPage {
+
+    private static final By MENU_FORM = By.name("AUS_STARS_MENU");
+    private static final By NEW_INDEX_DROPDOWN = By.name("new_index_nmbr");
+    private static final By OK_BUTTON = By.cssSelector("input[type='submit'][value='OK']");
+    private static final By BACK_TO_TIMETABLE = By.cssSelector("input[type='submit'][value='Back to Timetable']");
+
+    private static final String READ_OPTIONS = "return Array.from(arguments[0].options, o => [o.value, o.text]);";
+
+    private Map<String, String> options;
+
+    ChangeIndexPage(WebDriver driver, WaitPolicy waitPolicy, PageStats stats, PageRecorder recorder) {
+        super(driver, waitPolicy, stats, recorder);
+    }
+
+    /* Wait for the menu, or return the alert (portal closed) the portal shows instead */
+    public Alert await() {
+        return awaitPageOrAlert(Step.CHANGE_INDEX_PAGE, MENU_FORM);
+    }
+
+    /* Accept the alert shown instead of the menu, returning its text */
+    public String acceptAlert(Alert alert) {
+        return accept(Step.CHANGE_INDEX_PAGE, alert);
+    }
+
+    /* Every option in the dropdown, value to text, read once per visit */
+    public Map<String, String> options() {
+        if (options == null) {
+            options = from(NEW_INDEX_DROPDOWN, this::readOptions);
+        }
+        return options;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> readOptions(WebElement dropdown) {
+        Map<String, String> read = new LinkedHashMap<>();
+        try {
+            // One round trip instead of two per option
+            List<List<Object>> rows = (List<List<Object>>) ((JavascriptExecutor) driver).executeScript(READ_OPTIONS, dropdown);
+            for (List<Object> row : rows) {
+                read.put(String.valueOf(row.get(0)), String.valueOf(row.get(1)));
+            }
+        } catch (StaleElementReferenceException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            read.clear();
+            call();
+            for (WebElement option : dropdown.findElements(By.tagName("option"))) {
+                call();
+                String value = option.getAttribute("value");
+                call();
+                read.put(value == null ? "" : value, option.getText());
+            }
+        }
+        return read;
+    }
+
+    public void select(String newIndex) {
+        click(By.cssSelector("select[name='new_index_nmbr'] > option[value='" + newIndex + "']"));
+    }
+
+    /* Proceed to the confirm page (or the clash alert shown instead) */
+    public void ok() {
+        click(OK_BUTTON);
+        left();
+    }
+
+    public void backToTimetable() {
+        click(BACK_TO_TIMETABLE);
+        left();
+    }
+}
@@ -0,0 +1,38 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.WaitPolicy.Step;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+/* Confirm page for an index change, and the alert with the outcome */
+public class ConfirmPage extends PortalPage {
+
+    private static final By CONFIRM_FORM = By.cssSelector("#top > div > section:nth-of-type(2) > div > div > form:nth-of-type(1)");
+    private static final By CONFIRM_BUTTON = By.cssSelector("input[type='submit'][value='Confirm to Change Index Number']");
+
+    ConfirmPage(WebDriver driver, WaitPolicy waitPolicy, PageStats stats, PageRecorder recorder) {
+        super(driver, waitPolicy, stats, recorder);
+    }
+
+    /* Wait for the confirm page, or return the alert (module clash) the portal shows instead */
+    public Alert await() {
+        return awaitPageOrAlert(Step.CONFIRM_PAGE, CONFIRM_FORM);
+    }
+
+    /* Accept the alert shown instead of the confirm page, returning its text */
+    public String acceptAlert(Alert alert) {
+        return accept(Step.CONFIRM_PAGE, alert);
+    }
+
+    public void confirm() {
+        click(CONFIRM_BUTTON);
+    }
+
+    /* Wait for the outcome alert, accept it and return its text */
+    public String awaitResult() {
+        return accept(Step.SWAP_RESULT, waitPolicy.until(driver, Step.SWAP_RESULT, counted(ExpectedConditions.alertIsPresent())));
+    }
+}
@@ -0,0 +1,80 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.WaitPolicy.Step;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.regex.Pattern;
+
+/* NTU login forms (username, then password) and the timetable page some accounts land on */
+public class LoginPage extends PortalPage {
+
+    private static final By USERNAME_INPUT = By.id("UID");
+    private static final By PASSWORD_INPUT = By.id("PW");
+    private static final By OK_BUTTON = By.cssSelector("input[value='OK']");
+    private static final By PLAN_REGISTRATION_BUTTON = By.cssSelector("input[value='Plan/ Registration']");
+    private static final By BODY = By.tagName("body");
+    // What the portal says above the login form when it turns the credentials down
+    private static final Pattern CREDENTIALS_ERROR = Pattern.compile("invalid|incorrect|wrong", Pattern.CASE_INSENSITIVE);
+
+    LoginPage(WebDriver driver, WaitPolicy waitPolicy, PageStats stats, PageRecorder recorder) {
+        super(driver, waitPolicy, stats, recorder);
+    }
+
+    public void open(String url) {
+        call();
+        driver.get(url);
+        left();
+    }
+
+    public void enterUsername(String username) {
+        await(Step.LOGIN_PAGE, USERNAME_INPUT);
+        recorder.secret(driver, username);
+        on(USERNAME_INPUT, input -> input.sendKeys(username));
+    }
+
+    public void enterPassword(String password) {
+        await(Step.LOGIN_PAGE, PASSWORD_INPUT);
+        recorder.secret(driver, password);
+        on(PASSWORD_INPUT, input -> input.sendKeys(password));
+    }
+
+    /* Submit the form on screen; the portal moves on to the next form or page */
+    public void submit() {
+        click(OK_BUTTON);
+        left();
+    }
+
+    /* Wait to land on the planner or the timetable, returning the URL landed on */
+    public String awaitRedirect(String plannerUrl, String timetableUrl) {
+        waitPolicy.until(driver, Step.LOGIN_REDIRECT, ExpectedConditions.or(
+            counted(ExpectedConditions.urlToBe(plannerUrl)),
+            counted(ExpectedConditions.urlToBe(timetableUrl))
+        ));
+        loaded(Step.LOGIN_REDIRECT);
+        call();
+        return driver.getCurrentUrl();
+    }
+
+    /**
+     * Whether the portal sent the login form back with an error about the user ID or password.
+     * Anything else (a page that never loaded, a dead browser) is not a rejection; this never throws.
+     */
+    public boolean showsCredentialsError() {
+        try {
+            boolean onLoginForm = !driver.findElements(USERNAME_INPUT).isEmpty() || !driver.findElements(PASSWORD_INPUT).isEmpty();
+            return onLoginForm && CREDENTIALS_ERROR.matcher(driver.findElement(BODY).getText()).find();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /* Leave the timetable for the planner */
+    public void openPlanner() {
+        awaitClickable(Step.PLAN_BUTTON, PLAN_REGISTRATION_BUTTON);
+        click(PLAN_REGISTRATION_BUTTON);
+        left();
+    }
+}
@@ -0,0 +1,309 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.selenium.PortalUrls;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in recorder of the STARS pages a browser goes through, for offline fixtures. Each browser gets a
+ * recording directory with one HTML file per page (the DOM once the page objects saw it, scripts removed)
+ * and a manifest.jsonl of pages, alert texts and markers for login and swap attempts with their outcomes.
+ * A page is captured the first time it is awaited after a navigation, with the time since that navigation,
+ * and is flagged after_alert when the portal itself moved there once an alert was accepted.
+ * Credentials typed into the login forms, matriculation numbers, e-mail addresses, password field values
+ * and the configured patterns are scrubbed, and only URL paths are kept. Nothing generic can tell the
+ * student's name apart in the planner header, so the recorder stays off until scrub-patterns covers it.
+ * ReplayStarsPortal (test sources) serves a recording back in order.
+ */
+@Component
+public class PageRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageRecorder.class);
+
+    private static final Pattern SCRIPT = Pattern.compile("<script\\b.*?</script\\s*>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern PASSWORD_INPUT = Pattern.compile("<input\\b[^>]*type=['\"]?password[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VALUE_ATTRIBUTE = Pattern.compile("\\bvalue=(\"[^\"]*\"|'[^']*'|[^\\s>]*)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MATRIC_NUMBER = Pattern.compile("\\b[UGN]\\d{7}[A-Z]\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EMAIL = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+
+    private static final DateTimeFormatter DIRECTORY_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Autowired
+    private PortalUrls portalUrls;
+
+    @Value("${app.selenium.recorder.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.selenium.recorder.dir:recordings}")
+    private String directory;
+
+    @Value("${app.selenium.recorder.max-pages:2000}")
+    private long maxPages;
+
+    @Value("${app.selenium.recorder.scrub-patterns:}")
+    private List<String> scrubPatterns;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Pattern> extraPatterns = new ArrayList<>();
+
+    // Recording per browser, dropped with the driver
+    private final Map<WebDriver, Recording> recordings = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicInteger recordingSequence = new AtomicInteger();
+
+    private final AtomicLong pagesRecorded = new AtomicLong();
+    private final AtomicLong alertsRecorded = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    private ExecutorService writer;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        for (String pattern : scrubPatterns) {
+            if (!pattern.isBlank()) {
+                extraPatterns.add(Pattern.compile(pattern.trim()));
+            }
+        }
+        if (extraPatterns.isEmpty()) {
+            enabled = false;
+            logger.error("Page recorder not enabled: set app.selenium.recorder.scrub-patterns to redact the student's name");
+            return;
+        }
+        // Disk writes stay off the swap threads
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "page-recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.warn("Page recorder enabled, writing scrubbed STARS pages to {}", Path.of(directory).toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /* The browser is about to load another page; the next page awaited is a new capture */
+    public void navigated(WebDriver driver) {
+        if (enabled) {
+            expectPage(recording(driver), false);
+        }
+    }
+
+    /* A value typed into the portal that must not end up in a fixture */
+    void secret(WebDriver driver, String value) {
+        if (enabled && value != null && !value.isBlank()) {
+            recording(driver).secrets.add(value);
+        }
+    }
+
+    /* The page now on screen, if it hasn't been captured since the last navigation */
+    void page(WebDriver driver, String step) {
+        if (!enabled || pagesRecorded.get() >= maxPages) {
+            return;
+        }
+        Recording recording = recording(driver);
+        long latencyMs;
+        boolean afterAlert;
+        synchronized (recording) {
+            if (!recording.pending) {
+                return;
+            }
+            recording.pending = false;
+            latencyMs = System.currentTimeMillis() - recording.navigatedAt;
+            afterAlert = recording.afterAlert;
+        }
+        String html;
+        String path;
+        try {
+            html = driver.getPageSource();
+            path = URI.create(driver.getCurrentUrl()).getPath();
+        } catch (RuntimeException e) {
+            logger.debug("Could not capture {} page: {}", step, e.getMessage());
+            return;
+        }
+        pagesRecorded.incrementAndGet();
+
+        int seq = recording.sequence.incrementAndGet();
+        String file = String.format("%03d-%s.html", seq, step);
+        Map<String, Object> entry = entry(seq, "page");
+        entry.put("step", step);
+        entry.put("path", path);
+        entry.put("file", file);
+        entry.put("latency_ms", latencyMs);
+        if (afterAlert) {
+            entry.put("after_alert", true);
+        }
+        String scrubbed = scrubPage(html, recording);
+        writer.execute(() -> {
+            write(recording.directory.resolve(file), scrubbed, false);
+            append(recording, entry);
+        });
+    }
+
+    /* An alert shown instead of a page, by its text, just accepted */
+    void alert(WebDriver driver, String step, String text) {
+        if (!enabled) {
+            return;
+        }
+        Recording recording = recording(driver);
+        expectPage(recording, true);
+        alertsRecorded.incrementAndGet();
+        Map<String, Object> entry = entry(recording.sequence.incrementAndGet(), "alert");
+        entry.put("step", step);
+        entry.put("text", scrub(text, recording));
+        writer.execute(() -> append(recording, entry));
+    }
+
+    /**
+     * Mark where an operation starts or ends in the recording, so a replay knows what to run and expect
+     * @param label What is marked (login, attempt, outcome)
+     * @param fieldsAndValues Alternating field names and values
+     */
+    public void mark(WebDriver driver, String label, Object... fieldsAndValues) {
+        if (!enabled) {
+            return;
+        }
+        Recording recording = recording(driver);
+        Map<String, Object> entry = entry(recording.sequence.incrementAndGet(), "mark");
+        entry.put("label", label);
+        for (int i = 0; i + 1 < fieldsAndValues.length; i += 2) {
+            Object value = fieldsAndValues[i + 1];
+            entry.put(String.valueOf(fieldsAndValues[i]), value instanceof String text ? scrub(text, recording) : value);
+        }
+        writer.execute(() -> append(recording, entry));
+    }
+
+    /* Remove scripts, password values and PII; absolute portal links become paths on the replay server */
+    String scrubPage(String html, Recording recording) {
+        String page = SCRIPT.matcher(html).replaceAll("");
+        Matcher passwords = PASSWORD_INPUT.matcher(page);
+        StringBuilder out = new StringBuilder();
+        while (passwords.find()) {
+            passwords.appendReplacement(out, Matcher.quoteReplacement(
+                VALUE_ATTRIBUTE.matcher(passwords.group()).replaceAll("value=\"\"")));
+        }
+        passwords.appendTail(out);
+        return scrub(out.toString().replace(portalUrls.getBaseUrl(), ""), recording);
+    }
+
+    String scrub(String text, Recording recording) {
+        if (text == null) {
+            return null;
+        }
+        String scrubbed = text;
+        for (String secret : recording.secrets) {
+            scrubbed = Pattern.compile(Pattern.quote(secret), Pattern.CASE_INSENSITIVE).matcher(scrubbed).replaceAll("REDACTED");
+        }
+        scrubbed = MATRIC_NUMBER.matcher(scrubbed).replaceAll("U0000000X");
+        scrubbed = EMAIL.matcher(scrubbed).replaceAll("student@example.com");
+        for (Pattern pattern : extraPatterns) {
+            scrubbed = pattern.matcher(scrubbed).replaceAll("REDACTED");
+        }
+        return scrubbed;
+    }
+
+    private static void expectPage(Recording recording, boolean afterAlert) {
+        synchronized (recording) {
+            recording.pending = true;
+            recording.navigatedAt = System.currentTimeMillis();
+            recording.afterAlert = afterAlert;
+        }
+    }
+
+    private Recording recording(WebDriver driver) {
+        return recordings.computeIfAbsent(driver, d -> new Recording(Path.of(directory,
+            LocalDateTime.now().format(DIRECTORY_TIME) + "-" + recordingSequence.incrementAndGet())));
+    }
+
+    private static Map<String, Object> entry(int seq, String kind) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("seq", seq);
+        entry.put("kind", kind);
+        entry.put("at", System.currentTimeMillis());
+        return entry;
+    }
+
+    private void append(Recording recording, Map<String, Object> entry) {
+        try {
+            write(recording.directory.resolve("manifest.jsonl"), objectMapper.writeValueAsString(entry) + "\n", true);
+        } catch (IOException e) {
+            writeFailures.incrementAndGet();
+        }
+    }
+
+    private void write(Path file, String content, boolean append) {
+        try {
+            Files.createDirectories(file.getParent());
+            if (append) {
+                Files.writeString(file, content, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } else {
+                Files.writeString(file, content, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            writeFailures.incrementAndGet();
+            logger.warn("Could not write recorded page {}: {}", file, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("recordings", recordingSequence.get());
+        stats.put("pages", pagesRecorded.get());
+        stats.put("alerts", alertsRecorded.get());
+        stats.put("write_failures", writeFailures.get());
+        return stats;
+    }
+
+    /* One browser's recording */
+    static class Recording {
+        private final Path directory;
+        private final AtomicInteger sequence = new AtomicInteger();
+        private final List<String> secrets = Collections.synchronizedList(new ArrayList<>());
+        private boolean pending = true; // a new browser's first page hasn't been captured
+        private long navigatedAt = System.currentTimeMillis();
+        private boolean afterAlert;
+
+        Recording(Path directory) {
+            this.directory = directory;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ntu.adddrop.selenium.page;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Counters shared by every visit to one page type */
+class PageStats {
+
+    final LongAdder pages = new LongAdder();
+    final LongAdder driverCalls = new LongAdder();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder staleRetries = new LongAdder();
+
+    Map<String, Object> snapshot() {
+        long visits = pages.sum();
+        long calls = driverCalls.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("visits", visits);
+        stats.put("driver_calls", calls);
+        stats.put("driver_calls_per_visit", visits > 0 ? Math.round(calls * 10.0 / visits) / 10.0 : 0);
+        stats.put("cache_hits", cacheHits.sum());
+        stats.put("stale_retries", staleRetries.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,56 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.WaitPolicy.Step;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+/* STARS planner: the registered courses table every attempt starts from */
+public class PlannerPage extends PortalPage {
+
+    private static final By COURSE_TABLE = By.cssSelector("table[bordercolor='#E0E0E0']");
+    private static final By CHANGE_INDEX_OPTION = By.cssSelector("select[name='opt'] > option[value='C']");
+    private static final By GO_BUTTON = By.cssSelector("input[type='submit'][value='Go']");
+    private static final By HEADER = By.className("site-header__body");
+
+    PlannerPage(WebDriver driver, WaitPolicy waitPolicy, PageStats stats, PageRecorder recorder) {
+        super(driver, waitPolicy, stats, recorder);
+    }
+
+    public void await() {
+        await(Step.COURSE_TABLE, COURSE_TABLE);
+    }
+
+    /* Whether the planner is on screen, without waiting */
+    public boolean isShowing() {
+        return optional(COURSE_TABLE).isPresent();
+    }
+
+    /* Pick a registered index, false if the table doesn't have it */
+    public boolean selectIndex(String index) {
+        By radioButton = By.cssSelector("input[type='radio'][value='" + index + "']");
+        if (optional(radioButton).isEmpty()) {
+            return false;
+        }
+        click(radioButton);
+        return true;
+    }
+
+    public void chooseChangeIndex() {
+        click(CHANGE_INDEX_OPTION);
+    }
+
+    /* Hide the sticky header so it can't cover the Go button; not every layout has one */
+    public void hideHeader() {
+        if (optional(HEADER).isPresent()) {
+            from(HEADER, header -> ((JavascriptExecutor) driver).executeScript("arguments[0].style.visibility = 'hidden';", header));
+        }
+    }
+
+    /* Go to the change-index page (or the alert the portal shows instead) */
+    public void go() {
+        click(GO_BUTTON);
+        left();
+    }
+}
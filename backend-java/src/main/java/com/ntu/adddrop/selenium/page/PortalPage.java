@@ -0,0 +1,152 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.WaitPolicy.Step;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Base for the STARS page objects. A page object lives for one visit to its page: elements are
+ * located once and reused until the page is left, a reference gone stale because the page
+ * re-rendered is located again and the command retried once, and every chromedriver command the
+ * page issues (waits' polls included) is counted against its page type. With the page recorder on,
+ * each page is handed to it once awaited, and each alert once accepted.
+ */
+public abstract class PortalPage {
+
+    protected final WebDriver driver;
+    protected final WaitPolicy waitPolicy;
+    private final PageStats stats;
+    protected final PageRecorder recorder;
+
+    // Elements already located on this visit, by locator
+    private final Map<By, WebElement> located = new HashMap<>();
+
+    protected PortalPage(WebDriver driver, WaitPolicy waitPolicy, PageStats stats, PageRecorder recorder) {
+        this.driver = driver;
+        this.waitPolicy = waitPolicy;
+        this.stats = stats;
+        this.recorder = recorder;
+        stats.pages.increment();
+    }
+
+    /* Wait for an element the page is expected to show and remember it */
+    protected WebElement await(Step step, By locator) {
+        WebElement element = waitPolicy.until(driver, step, counted(ExpectedConditions.presenceOfElementLocated(locator)));
+        located.put(locator, element);
+        loaded(step);
+        return element;
+    }
+
+    /* Wait for an element to become clickable and remember it */
+    protected WebElement awaitClickable(Step step, By locator) {
+        WebElement element = waitPolicy.until(driver, step, counted(ExpectedConditions.elementToBeClickable(locator)));
+        located.put(locator, element);
+        loaded(step);
+        return element;
+    }
+
+    /* Wait for this page or an alert shown instead of it; the alert is returned, null once the page is there */
+    protected Alert awaitPageOrAlert(Step step, By pageLocator) {
+        Alert alert = waitPolicy.pageOrAlert(driver, step, pageLocator, this::call);
+        if (alert == null) {
+            loaded(step);
+        }
+        return alert;
+    }
+
+    /* The page awaited in this step is on screen */
+    protected void loaded(Step step) {
+        recorder.page(driver, step.name().toLowerCase());
+    }
+
+    /* An element of this page, located on first use */
+    protected WebElement element(By locator) {
+        WebElement element = located.get(locator);
+        if (element != null) {
+            stats.cacheHits.increment();
+            return element;
+        }
+        call();
+        element = driver.findElement(locator);
+        located.put(locator, element);
+        return element;
+    }
+
+    /* An element the page may not have, found without waiting */
+    protected Optional<WebElement> optional(By locator) {
+        WebElement element = located.get(locator);
+        if (element != null) {
+            stats.cacheHits.increment();
+            return Optional.of(element);
+        }
+        call();
+        Optional<WebElement> found = waitPolicy.find(driver, locator);
+        found.ifPresent(e -> located.put(locator, e));
+        return found;
+    }
+
+    /* Run one driver command on an element, locating it again once if the page re-rendered it */
+    protected void on(By locator, Consumer<WebElement> command) {
+        from(locator, element -> {
+            command.accept(element);
+            return null;
+        });
+    }
+
+    /* Read something off an element, locating it again once if the page re-rendered it */
+    protected <T> T from(By locator, Function<WebElement, T> command) {
+        try {
+            WebElement element = element(locator);
+            call();
+            return command.apply(element);
+        } catch (StaleElementReferenceException e) {
+            stats.staleRetries.increment();
+            located.remove(locator);
+            WebElement element = element(locator);
+            call();
+            return command.apply(element);
+        }
+    }
+
+    protected void click(By locator) {
+        on(locator, WebElement::click);
+    }
+
+    /* Accept the alert shown in a step and return its text; the portal navigates away afterwards */
+    protected String accept(Step step, Alert alert) {
+        call();
+        String text = alert.getText();
+        call();
+        alert.accept();
+        located.clear();
+        recorder.alert(driver, step.name().toLowerCase(), text);
+        return text;
+    }
+
+    /* The page has been navigated away from, nothing located on it can be reused */
+    protected void left() {
+        located.clear();
+        recorder.navigated(driver);
+    }
+
+    protected <T> ExpectedCondition<T> counted(ExpectedCondition<T> condition) {
+        return WaitPolicy.counted(condition, this::call);
+    }
+
+    /* Count one chromedriver command */
+    protected void call() {
+        stats.driverCalls.increment();
+    }
+}
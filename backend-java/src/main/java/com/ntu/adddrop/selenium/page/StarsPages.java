@@ -0,0 +1,50 @@
+package com.ntu.adddrop.selenium.page;
+
+import com.ntu.adddrop.selenium.WaitPolicy;
+import org.openqa.selenium.WebDriver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* Creates a page object for each visit to a STARS page and keeps the per-page counters */
+@Component
+public class StarsPages {
+
+    @Autowired
+    private WaitPolicy waitPolicy;
+
+    @Autowired
+    private PageRecorder pageRecorder;
+
+    private final PageStats loginStats = new PageStats();
+    private final PageStats plannerStats = new PageStats();
+    private final PageStats changeIndexStats = new PageStats();
+    private final PageStats confirmStats = new PageStats();
+
+    public LoginPage login(WebDriver driver) {
+        return new LoginPage(driver, waitPolicy, loginStats, pageRecorder);
+    }
+
+    public PlannerPage planner(WebDriver driver) {
+        return new PlannerPage(driver, waitPolicy, plannerStats, pageRecorder);
+    }
+
+    public ChangeIndexPage changeIndex(WebDriver driver) {
+        return new ChangeIndexPage(driver, waitPolicy, changeIndexStats, pageRecorder);
+    }
+
+    public ConfirmPage confirm(WebDriver driver) {
+        return new ConfirmPage(driver, waitPolicy, confirmStats, pageRecorder);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("login", loginStats.snapshot());
+        stats.put("planner", plannerStats.snapshot());
+        stats.put("change_index", changeIndexStats.snapshot());
+        stats.put("confirm", confirmStats.snapshot());
+        return stats;
+    }
+}
@@ -0,0 +1,191 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.timeseries.VacancyForecast;
+import com.ntu.adddrop.timeseries.VacancyForecaster;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides how long a swap loop waits before its next cycle.
+ * "fixed" keeps the FastAPI cadence. "predictive" spends the same attempt budget unevenly:
+ * shorter waits in hours when the target indexes have historically had seats, longer ones
+ * elsewhere, with a per-session token bucket so the long-run rate never exceeds the fixed one.
+ */
+@Service
+public class AttemptScheduler {
+
+    public static final String MODE_FIXED = "fixed";
+    public static final String MODE_PREDICTIVE = "predictive";
+
+    @Autowired
+    private VacancyForecaster vacancyForecaster;
+
+    @Value("${app.swap.scheduler.mode:fixed}")
+    private String mode;
+
+    @Value("${app.swap.scheduler.base-interval-seconds:300}")
+    private long baseIntervalSeconds;
+
+    @Value("${app.swap.scheduler.min-interval-seconds:60}")
+    private long minIntervalSeconds;
+
+    @Value("${app.swap.scheduler.max-interval-seconds:1800}")
+    private long maxIntervalSeconds;
+
+    @Value("${app.swap.scheduler.burst:48}")
+    private int burst;
+
+    private final Map<String, BudgetedPlanner> planners = new ConcurrentHashMap<>();
+
+    /**
+     * Wait before the session's next cycle
+     * @param targetIndexes Indexes the session is still waiting for
+     */
+    public Duration nextDelay(String sessionId, Collection<String> targetIndexes) {
+        if (!MODE_PREDICTIVE.equals(mode) || targetIndexes.isEmpty()) {
+            return Duration.ofSeconds(baseIntervalSeconds);
+        }
+        List<VacancyForecast> forecasts = targetIndexes.stream().map(vacancyForecaster::forecast).toList();
+        BudgetedPlanner planner = planners.computeIfAbsent(sessionId, id -> new BudgetedPlanner(
+            Duration.ofSeconds(baseIntervalSeconds), Duration.ofSeconds(minIntervalSeconds),
+            Duration.ofSeconds(maxIntervalSeconds), burst));
+        return planner.nextDelay(forecasts, Instant.now());
+    }
+
+    /* Drop the session's budget once its loop ends */
+    public void forget(String sessionId) {
+        planners.remove(sessionId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", mode);
+        stats.put("base_interval_seconds", baseIntervalSeconds);
+        stats.put("planned_sessions", planners.size());
+        return stats;
+    }
+
+    /**
+     * Per-session planner. A reading every T seconds in an hour where the index is open a share p
+     * of the time, for spells of mean m seconds, finds a seat at a rate of p * (1 - e^(-T/m)) / T.
+     * For the next 24 hours it picks the interval per hour that maximises the sum of those rates
+     * while costing as many attempts as the fixed cadence (a Lagrange multiplier found by
+     * bisection), and returns the interval for the current hour. Seats that stay open long are not
+     * worth chasing faster, so the plan only leans hard on hot hours when spells are short.
+     * A token bucket refilled at the fixed rate (capacity burst) then holds the actual rate to
+     * the budget whatever the forecasts say. It starts full so a new session can lean on a hot
+     * hour before it has saved anything, which bounds the overspend at burst attempts.
+     */
+    public static class BudgetedPlanner {
+        private static final int HORIZON_HOURS = 24;
+        private static final long STEP_MS = 15_000;
+
+        private final Duration base;
+        private final Duration min;
+        private final Duration max;
+        private final int burst;
+        private double tokens;
+        private Instant lastRefill;
+
+        // The plan only changes with the hour or the forecasts, keep the last one
+        private long plannedHour = -1;
+        private List<VacancyForecast> plannedFor;
+        private long plannedMs;
+
+        public BudgetedPlanner(Duration base, Duration min, Duration max, int burst) {
+            this.base = base;
+            this.min = min;
+            this.max = max;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        public synchronized Duration nextDelay(List<VacancyForecast> forecasts, Instant now) {
+            long hour = now.getEpochSecond() / 3600;
+            if (hour != plannedHour || !forecasts.equals(plannedFor)) {
+                plannedMs = plan(forecasts, now);
+                plannedHour = hour;
+                plannedFor = List.copyOf(forecasts);
+            }
+            long wantedMs = plannedMs;
+
+            // Refill at the fixed cadence, then take one token for the next cycle
+            if (lastRefill != null) {
+                tokens = Math.min(burst, tokens + (now.toEpochMilli() - lastRefill.toEpochMilli()) / (double) base.toMillis());
+            }
+            long budgetMs = tokens >= 1 ? 0 : Math.round((1 - tokens) * base.toMillis());
+            long delayMs = Math.max(wantedMs, budgetMs);
+
+            // The token is spent when the cycle starts, after the delay
+            tokens += delayMs / (double) base.toMillis();
+            tokens = Math.min(burst, tokens) - 1;
+            lastRefill = now.plusMillis(delayMs);
+            return Duration.ofMillis(delayMs);
+        }
+
+        private long plan(List<VacancyForecast> forecasts, Instant now) {
+            int steps = (int) ((max.toMillis() - min.toMillis()) / STEP_MS) + 1;
+            long[] intervals = new long[steps];
+            for (int s = 0; s < steps; s++) {
+                intervals[s] = min.toMillis() + s * STEP_MS;
+            }
+
+            // found[h][s]: chance a reading in hour h finds a seat when readings are intervals[s] apart
+            double[][] found = new double[HORIZON_HOURS][steps];
+            double highest = 0;
+            for (int h = 0; h < HORIZON_HOURS; h++) {
+                Instant at = now.plus(Duration.ofHours(h));
+                for (VacancyForecast forecast : forecasts) {
+                    double p = forecast.probabilityAt(at);
+                    double meanOpenMs = forecast.getMeanOpenSeconds() * 1000;
+                    for (int s = 0; s < steps; s++) {
+                        found[h][s] += p * (1 - Math.exp(-intervals[s] / meanOpenMs));
+                    }
+                }
+                highest = Math.max(highest, found[h][steps - 1]);
+            }
+
+            double budget = HORIZON_HOURS * 3_600_000.0 / base.toMillis();
+            double low = 0;
+            double high = highest;
+            int[] choice = new int[HORIZON_HOURS];
+            for (int i = 0; i < 40; i++) {
+                double price = (low + high) / 2;
+                double attempts = 0;
+                for (int h = 0; h < HORIZON_HOURS; h++) {
+                    choice[h] = best(found[h], intervals, price);
+                    attempts += 3_600_000.0 / intervals[choice[h]];
+                }
+                if (attempts > budget) {
+                    low = price;
+                } else {
+                    high = price;
+                }
+            }
+            return intervals[best(found[0], intervals, high)];
+        }
+
+        /* Interval with the best seat finds per second net of the attempt price */
+        private static int best(double[] found, long[] intervals, double price) {
+            int best = intervals.length - 1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int s = 0; s < intervals.length; s++) {
+                double value = (found[s] - price) / intervals[s];
+                if (value > bestValue) {
+                    best = s;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.service.SwapProcessingService.SwapItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inverted index from target course index to the sessions waiting for it.
+ * demand:{index} is a ZSET of "sessionId|oldIndex|rank" scored by registration time plus a
+ * penalty per preference rank, so the longest waiter (who wants it most) comes first.
+ * demand_session:{sessionId} lists a session's entries so they can be removed together.
+ *
+ * When a vacancy is seen, the first eligible waiters (one per seat, loop still holding its swap
+ * lock) get a short grant on demand_grant:{index} and are woken. While a grant is live, only
+ * granted sessions may attempt that index, so waiters don't all race for one seat.
+ */
+@Service
+public class DemandIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DemandIndexService.class);
+
+    private static final String DEMAND_PREFIX = "demand:";
+    private static final String SESSION_DEMAND_PREFIX = "demand_session:";
+    private static final String GRANT_PREFIX = "demand_grant:";
+    private static final String SEPARATOR = "|";
+
+    // Waiters examined per vacancy, entries without a live loop are pruned as they are met
+    private static final int CANDIDATES_PER_DISPATCH = 20;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private SwapLockService swapLockService;
+
+    @Autowired
+    private SwapWakeupService swapWakeupService;
+
+    @Value("${app.demand.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.demand.grant-seconds:30}")
+    private long grantSeconds;
+
+    @Value("${app.demand.rank-penalty-seconds:60}")
+    private long rankPenaltySeconds;
+
+    @Value("${app.demand.session-ttl-hours:2}")
+    private long sessionTtlHours;
+
+    // Metrics
+    private final AtomicLong grantsIssued = new AtomicLong();
+    private final AtomicLong attemptsDeferred = new AtomicLong();
+    private final AtomicLong entriesPruned = new AtomicLong();
+
+    /* Register every target index of a new swap request, keeping the original preference order */
+    public void register(String sessionId, List<SwapItem> swapItems) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    String sessionKey = SESSION_DEMAND_PREFIX + sessionId;
+                    for (SwapItem item : swapItems) {
+                        List<String> newIndexes = item.getNewIndexes();
+                        for (int rank = 0; rank < newIndexes.size(); rank++) {
+                            String newIndex = newIndexes.get(rank);
+                            double score = now + rank * rankPenaltySeconds * 1000.0;
+                            ops.opsForZSet().add(DEMAND_PREFIX + newIndex, member(sessionId, item.getOldIndex(), rank), score);
+                            ops.opsForSet().add(sessionKey, newIndex + SEPARATOR + item.getOldIndex() + SEPARATOR + rank);
+                        }
+                    }
+                    ops.expire(sessionKey, Duration.ofHours(sessionTtlHours));
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to register demand for session: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /* Drop a module's entries once it has been swapped */
+    public void unregisterModule(String sessionId, String oldIndex) {
+        unregister(sessionId, oldIndex);
+    }
+
+    /* Drop all entries of a session whose loop has ended */
+    public void unregisterSession(String sessionId) {
+        unregister(sessionId, null);
+    }
+
+    private void unregister(String sessionId, String oldIndex) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            String sessionKey = SESSION_DEMAND_PREFIX + sessionId;
+            Set<String> entries = redisTemplate.opsForSet().members(sessionKey);
+            if (entries == null || entries.isEmpty()) {
+                return;
+            }
+            List<String[]> matching = entries.stream()
+                .map(entry -> entry.split("\\|"))
+                .filter(parts -> parts.length == 3 && (oldIndex == null || oldIndex.equals(parts[1])))
+                .toList();
+
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (String[] parts : matching) {
+                        ops.opsForZSet().remove(DEMAND_PREFIX + parts[0], member(sessionId, parts[1], Integer.parseInt(parts[2])));
+                        ops.opsForSet().remove(sessionKey, String.join(SEPARATOR, parts));
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to unregister demand for session: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Hand newly seen seats to the longest eligible waiters and wake them.
+     * Indexes that already have a live grant are left alone so grants are not reshuffled.
+     * @param vacanciesByIndex Observed vacancies, only positive counts are dispatched
+     */
+    public void onVacanciesObserved(Map<String, Integer> vacanciesByIndex) {
+        if (!enabled) {
+            return;
+        }
+        List<String> indexes = vacanciesByIndex.entrySet().stream()
+            .filter(entry -> entry.getValue() > 0)
+            .map(Map.Entry::getKey)
+            .toList();
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<Object> candidates = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (String index : indexes) {
+                        ops.hasKey(GRANT_PREFIX + index);
+                        ops.opsForZSet().range(DEMAND_PREFIX + index, 0, CANDIDATES_PER_DISPATCH - 1);
+                    }
+                    return null;
+                }
+            });
+
+            // Waiting members per index that has no live grant yet
+            Map<String, List<String>> waiting = new LinkedHashMap<>();
+            Set<String> sessionIds = new LinkedHashSet<>();
+            for (int i = 0; i < indexes.size(); i++) {
+                @SuppressWarnings("unchecked")
+                Set<String> members = (Set<String>) candidates.get(2 * i + 1);
+                if (Boolean.TRUE.equals(candidates.get(2 * i)) || members == null || members.isEmpty()) {
+                    continue;
+                }
+                waiting.put(indexes.get(i), new ArrayList<>(members));
+                members.forEach(member -> sessionIds.add(sessionOf(member)));
+            }
+            if (waiting.isEmpty()) {
+                return;
+            }
+
+            // Only sessions whose loop still holds its swap lock can use a seat
+            List<String> ids = new ArrayList<>(sessionIds);
+            List<String> holders = swapLockService.getLockHolders(ids);
+            Set<String> live = new LinkedHashSet<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (holders.get(i) != null) {
+                    live.add(ids.get(i));
+                }
+            }
+
+            waiting.forEach((index, members) -> dispatch(index, members, vacanciesByIndex.get(index), live));
+        } catch (Exception e) {
+            logger.warn("Failed to dispatch observed vacancies: {}", e.getMessage());
+        }
+    }
+
+    private void dispatch(String index, List<String> members, int seats, Set<String> live) {
+        List<String> granted = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (String member : members) {
+            String sessionId = sessionOf(member);
+            if (!live.contains(sessionId)) {
+                stale.add(member);
+            } else if (granted.size() < seats && !granted.contains(sessionId)) {
+                granted.add(sessionId);
+            }
+        }
+
+        if (!stale.isEmpty()) {
+            redisTemplate.opsForZSet().remove(DEMAND_PREFIX + index, stale.toArray());
+            entriesPruned.addAndGet(stale.size());
+        }
+        if (granted.isEmpty()) {
+            return;
+        }
+
+        // NX: if another node granted this index first, its grant stands
+        Boolean issued = redisTemplate.opsForValue().setIfAbsent(
+            GRANT_PREFIX + index, String.join(",", granted), Duration.ofSeconds(grantSeconds));
+        if (Boolean.TRUE.equals(issued)) {
+            grantsIssued.incrementAndGet();
+            logger.info("Granted index {} to {} waiting session(s)", index, granted.size());
+            granted.forEach(swapWakeupService::wake);
+        }
+    }
+
+    /**
+     * Whether a session may attempt an index now
+     * @return false only while the index is granted to other sessions
+     */
+    public boolean mayAttempt(String sessionId, String index) {
+        if (!enabled) {
+            return true;
+        }
+        try {
+            String grant = redisTemplate.opsForValue().get(GRANT_PREFIX + index);
+            if (grant == null || Arrays.asList(grant.split(",")).contains(sessionId)) {
+                return true;
+            }
+            attemptsDeferred.incrementAndGet();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /* Sessions waiting for an index, longest waiter first */
+    public List<String> getWaiters(String index) {
+        Set<String> members = redisTemplate.opsForZSet().range(DEMAND_PREFIX + index, 0, -1);
+        return members == null ? List.of() : members.stream().map(DemandIndexService::sessionOf).distinct().toList();
+    }
+
+    /* Snapshot of dispatch metrics */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("grant_seconds", grantSeconds);
+        stats.put("grants_issued", grantsIssued.get());
+        stats.put("attempts_deferred", attemptsDeferred.get());
+        stats.put("stale_entries_pruned", entriesPruned.get());
+        return stats;
+    }
+
+    private static String member(String sessionId, String oldIndex, int rank) {
+        return sessionId + SEPARATOR + oldIndex + SEPARATOR + rank;
+    }
+
+    private static String sessionOf(String member) {
+        return member.substring(0, member.indexOf(SEPARATOR));
+    }
+}
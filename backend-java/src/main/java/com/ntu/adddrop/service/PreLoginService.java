@@ -0,0 +1,288 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.selenium.NTULoginAutomator;
+import com.ntu.adddrop.selenium.WebDriverManager;
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts Chrome and the portal login as soon as a user logs in, instead of when the swap is
+ * submitted, and keeps the logged-in driver for a while so the swap loop can take it over.
+ * Whoever removes a session's entry from the map owns its outcome: the loop by claiming it, a
+ * logout by discarding it, or the expiry sweep once it has sat unclaimed for warm-seconds.
+ * The state is mirrored to Redis so the frontend can ask any node whether the credentials worked.
+ */
+@Service
+public class PreLoginService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreLoginService.class);
+
+    public static final String DISABLED = "disabled";
+    public static final String SKIPPED = "skipped";
+    public static final String PENDING = "pending";
+    public static final String READY = "ready";
+    public static final String REJECTED = "rejected";
+    public static final String FAILED = "failed";
+    public static final String CLAIMED = "claimed";
+    public static final String EXPIRED = "expired";
+    public static final String UNKNOWN = "unknown";
+
+    private static final Duration STATE_TTL = Duration.ofMinutes(15);
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private WebDriverManager webDriverManager;
+
+    @Autowired
+    private NTULoginAutomator ntuLoginAutomator;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+
+    @Value("${app.prelogin.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.prelogin.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${app.prelogin.max-drivers:6}")
+    private int maxDrivers;
+
+    @Value("${app.prelogin.warm-seconds:300}")
+    private long warmSeconds;
+
+    @Value("${app.prelogin.claim-wait-seconds:60}")
+    private long claimWaitSeconds;
+
+    // Pre-logins not yet claimed, discarded or expired
+    private final Map<String, PreLogin> preLogins = new ConcurrentHashMap<>();
+
+    private ExecutorService loginExecutor;
+
+    private volatile ScheduledFuture<?> expiry;
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong ready = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        loginExecutor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "pre-login-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiry = taskScheduler.scheduleWithFixedDelay(this::expireUnclaimed, Instant.now().plusSeconds(5), Duration.ofSeconds(5));
+    }
+
+    /**
+     * Start logging in to the portal in the background
+     * @param sessionId Unique Session Identifier
+     * @return Pre-login state: pending, or skipped/disabled if the swap loop will log in itself
+     */
+    public String start(String sessionId) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        // Each entry ends up holding a Chrome, keep their number bounded
+        if (preLogins.size() >= maxDrivers) {
+            skipped.incrementAndGet();
+            return SKIPPED;
+        }
+        PreLogin preLogin = new PreLogin();
+        if (preLogins.putIfAbsent(sessionId, preLogin) != null) {
+            return PENDING;
+        }
+        started.incrementAndGet();
+        publish(sessionId, PENDING);
+        loginExecutor.execute(() -> login(sessionId, preLogin));
+        return PENDING;
+    }
+
+    private void login(String sessionId, PreLogin preLogin) {
+        if (preLogin.driver.isDone()) {
+            // Discarded while queued
+            return;
+        }
+        WebDriver driver = null;
+        try {
+            String[] credentials = sessionService.getDecryptedCredentials(sessionId);
+            // Never queue for a browser here, the swap loop queues for its own if this one is skipped
+            driver = webDriverManager.createDriverIfAdmitted(sessionId);
+            if (driver == null) {
+                skipped.incrementAndGet();
+                finishUnsuccessful(sessionId, preLogin, null, SKIPPED,
+                    new SeleniumException("No browser slot free for pre-login of session: " + sessionId));
+                return;
+            }
+            ntuLoginAutomator.performLogin(driver, sessionId, credentials[0], credentials[1]);
+
+            preLogin.readyAt = System.currentTimeMillis();
+            if (preLogin.driver.complete(driver)) {
+                ready.incrementAndGet();
+                publish(sessionId, READY);
+                logger.info("Pre-login ready for session: {}", sessionId);
+            } else {
+                // Discarded or given up on while logging in, nobody will take this driver
+                webDriverManager.closeDriver(sessionId, driver);
+            }
+        } catch (SeleniumException.LoginFailedException e) {
+            rejected.incrementAndGet();
+            finishUnsuccessful(sessionId, preLogin, driver, REJECTED, e);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.warn("Pre-login failed for session: {}: {}", sessionId, e.getMessage());
+            finishUnsuccessful(sessionId, preLogin, driver, FAILED, e);
+        }
+    }
+
+    private void finishUnsuccessful(String sessionId, PreLogin preLogin, WebDriver driver, String state, Exception e) {
+        // Close before completing, so a waiting claimant never sees this driver in the session's slot
+        if (driver != null) {
+            webDriverManager.closeDriver(sessionId, driver);
+        }
+        preLogins.remove(sessionId, preLogin);
+        publish(sessionId, state);
+        preLogin.driver.completeExceptionally(e);
+    }
+
+    /**
+     * Take over the session's logged-in driver, waiting for a login still in progress
+     * @return The driver, or null if there is none and the caller should log in itself
+     * @throws SeleniumException.LoginFailedException if the portal rejected the credentials
+     */
+    public WebDriver claim(String sessionId) throws InterruptedException {
+        PreLogin preLogin = preLogins.remove(sessionId);
+        if (preLogin == null) {
+            return null;
+        }
+        try {
+            WebDriver driver = preLogin.driver.get(claimWaitSeconds, TimeUnit.SECONDS);
+            claimed.incrementAndGet();
+            publish(sessionId, CLAIMED);
+            logger.info("Swap loop took over pre-logged-in driver for session: {}", sessionId);
+            return driver;
+        } catch (TimeoutException e) {
+            logger.warn("Pre-login for session {} still running after {}s, logging in again", sessionId, claimWaitSeconds);
+            abandon(sessionId, preLogin);
+            return null;
+        } catch (InterruptedException e) {
+            abandon(sessionId, preLogin);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SeleniumException.LoginFailedException loginFailed) {
+                throw loginFailed;
+            }
+            return null;
+        }
+    }
+
+    /* Drop the session's pre-login and close its driver, e.g. on logout */
+    public void discard(String sessionId) {
+        PreLogin preLogin = preLogins.remove(sessionId);
+        if (preLogin != null) {
+            abandon(sessionId, preLogin);
+        }
+    }
+
+    /* For an entry already removed from the map: stop the login task handing over, or close what it handed over */
+    private void abandon(String sessionId, PreLogin preLogin) {
+        if (!preLogin.driver.cancel(false) && !preLogin.driver.isCompletedExceptionally()) {
+            webDriverManager.closeDriver(sessionId, preLogin.driver.join());
+        }
+    }
+
+    /* Pre-login state as last published by any node */
+    public Mono<String> status(String sessionId) {
+        return reactiveRedisTemplate.opsForValue().get(Constants.Session.PRE_LOGIN_PREFIX + sessionId)
+            .defaultIfEmpty(UNKNOWN);
+    }
+
+    private void expireUnclaimed() {
+        long cutoff = System.currentTimeMillis() - Duration.ofSeconds(warmSeconds).toMillis();
+        preLogins.forEach((sessionId, preLogin) -> {
+            WebDriver driver = preLogin.driver.getNow(null);
+            if (driver != null && preLogin.readyAt < cutoff && preLogins.remove(sessionId, preLogin)) {
+                webDriverManager.closeDriver(sessionId, driver);
+                expired.incrementAndGet();
+                publish(sessionId, EXPIRED);
+                logger.info("Pre-logged-in driver for session {} unclaimed after {}s, closed", sessionId, warmSeconds);
+            }
+        });
+    }
+
+    private void publish(String sessionId, String state) {
+        try {
+            redisTemplate.opsForValue().set(Constants.Session.PRE_LOGIN_PREFIX + sessionId, state, STATE_TTL);
+        } catch (Exception e) {
+            logger.debug("Failed to publish pre-login state for session: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("in_flight_or_warm", preLogins.size());
+        stats.put("started", started.get());
+        stats.put("skipped", skipped.get());
+        stats.put("ready", ready.get());
+        stats.put("rejected", rejected.get());
+        stats.put("failed", failed.get());
+        stats.put("claimed", claimed.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiry.cancel(false);
+        loginExecutor.shutdownNow();
+        preLogins.keySet().forEach(this::discard);
+    }
+
+    /* A background login; its future completes with the logged-in driver */
+    private static class PreLogin {
+        private final CompletableFuture<WebDriver> driver = new CompletableFuture<>();
+        private volatile long readyAt;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.codec.SessionCodec;
+import com.ntu.adddrop.codec.SessionCodecException;
+import com.ntu.adddrop.model.SessionData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of SessionService for the read-heavy status endpoints.
+ * Runs on the Lettuce event loop, so a parked status request holds no servlet thread.
+ */
+@Service
+public class ReactiveSessionService {
+
+    @Autowired
+    private ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, byte[]> reactiveSessionRedisTemplate;
+
+    @Autowired
+    private SessionCodec sessionCodec;
+
+    /* Non-blocking version of SessionService.getSecureSession */
+    public Mono<SessionData> getSecureSession(String sessionId) {
+        String key = "session:" + sessionId;
+        return reactiveSessionRedisTemplate.opsForValue().get(key)
+            .switchIfEmpty(Mono.error(() -> new SecurityException("Session expired or invalid")))
+            .flatMap(encoded -> {
+                SessionData sessionData;
+                try {
+                    sessionData = sessionCodec.decode(encoded);
+                } catch (SessionCodecException e) {
+                    return Mono.error(new RuntimeException("Failed to deserialize session data", e));
+                }
+
+                if (System.currentTimeMillis() / 1000 > sessionData.getExpiresAt()) {
+                    return reactiveSessionRedisTemplate.delete(key)
+                        .then(Mono.error(new SecurityException("Session expired")));
+                }
+                return Mono.just(sessionData);
+            });
+    }
+
+    /* Round-trip a value through Redis to check connectivity */
+    public Mono<String> healthCheck() {
+        return reactiveRedisTemplate.opsForValue().set("health-check", "ok")
+            .then(reactiveRedisTemplate.opsForValue().get("health-check"));
+    }
+}
@@ -1,19 +1,39 @@
 package com.ntu.adddrop.service;
 
+import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.exception.SwapProcessingException;
 import com.ntu.adddrop.model.SessionData;
 import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.selenium.DriverAdmissionController;
+import com.ntu.adddrop.selenium.FailureRecovery;
+import com.ntu.adddrop.selenium.FailureRecovery.FailureKind;
+import com.ntu.adddrop.selenium.PortalCircuitBreaker;
 import com.ntu.adddrop.selenium.NTULoginAutomator;
 import com.ntu.adddrop.selenium.ModuleSwapAutomator;
+import com.ntu.adddrop.selenium.WaitPolicy;
 import com.ntu.adddrop.selenium.WebDriverManager;
+import com.ntu.adddrop.service.SessionEventLog.EventType;
+import com.ntu.adddrop.service.SwapLockService.SwapLease;
 import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.openqa.selenium.WebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Core Selenium service that orchestrates the entire swap process
@@ -24,6 +44,11 @@ public class SeleniumService {
     
     private static final Logger logger = LoggerFactory.getLogger(SeleniumService.class);
 
+    // Times an attempt is run again once its failure has been recovered from
+    private static final int RETRIES_AFTER_RECOVERY = 1;
+
+    private static final long SWAP_TIMEOUT_MS = 2 * 60 * 60 * 1000; // 2 hours, as in FastAPI
+
     @Autowired
     private WebDriverManager webDriverManager;
 
@@ -36,23 +61,115 @@ public class SeleniumService {
     @Autowired
     private SessionService sessionService;
 
+    @Autowired
+    private SwapLockService swapLockService;
+
+    @Autowired
+    private SessionStatusWriteBuffer sessionWriteBuffer;
+
+    @Autowired
+    private DemandIndexService demandIndexService;
+
+    @Autowired
+    private SwapWakeupService swapWakeupService;
+
+    @Autowired
+    private AttemptScheduler attemptScheduler;
+
+    @Autowired
+    private PreLoginService preLoginService;
+
+    @Autowired
+    private WaitPolicy waitPolicy;
+
+    @Autowired
+    private FailureRecovery failureRecovery;
+
+    @Autowired
+    private PortalCircuitBreaker portalCircuitBreaker;
+
+    @Autowired
+    private DriverAdmissionController admissionController;
+
+    @Value("${app.swap.loop-threads:0}")
+    private int loopThreads;
+
+    // Loops block while queued for a browser and sleep between cycles, so they get threads of their own
+    private ThreadPoolExecutor loopExecutor;
+
+    // Worker thread per running loop, so the loop can be woken from its sleep and stopped
+    private final Map<String, Thread> swapThreads = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void startLoopExecutor() {
+        // Enough threads for every loop holding a browser plus every loop queued for one
+        int threads = loopThreads > 0 ? loopThreads : admissionController.getLoopCapacity();
+        AtomicInteger threadCount = new AtomicInteger();
+        loopExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "swap-loop-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loopExecutor.allowCoreThreadTimeOut(true);
+        logger.info("Swap loops run on up to {} threads", threads);
+    }
+
+    @PreDestroy
+    public void stopLoopExecutor() {
+        loopExecutor.shutdownNow();
+    }
+
+    /* Loops submitted but still waiting for a thread, they haven't asked for a browser yet */
+    public int getQueuedLoopCount() {
+        return loopExecutor.getQueue().size();
+    }
+
+    public Map<String, Object> getLoopStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", loopExecutor.getMaximumPoolSize());
+        stats.put("running", loopExecutor.getActiveCount());
+        stats.put("waiting_for_thread", loopExecutor.getQueue().size());
+        stats.put("completed", loopExecutor.getCompletedTaskCount());
+        return stats;
+    }
+
     /**
      * Main method that performs all swaps for a session - async version of perform_swaps()
      * @param sessionId Unique Session Identifier
+     * @param lease Swap lease held for this session, released when the loop exits
      * @return CompletableFuture that completes when swaps are done
      */
-    public CompletableFuture<Void> performSwapsAsync(String sessionId) {
+    public CompletableFuture<Void> performSwapsAsync(String sessionId, SwapLease lease) {
         return CompletableFuture.runAsync(() -> {
-            performSwaps(sessionId);
-        });
+            Thread worker = Thread.currentThread();
+            swapThreads.put(sessionId, worker);
+            sessionWriteBuffer.fence(lease);
+            try {
+                performSwaps(sessionId, lease);
+            } finally {
+                sessionWriteBuffer.unfence(lease);
+                swapThreads.remove(sessionId, worker);
+                attemptScheduler.forget(sessionId);
+                // A loop that lost its lease leaves the demand entries to the loop that took over
+                if (!lease.isLost()) {
+                    demandIndexService.unregisterSession(sessionId);
+                }
+                // Pooled thread must not carry the interrupt into its next task
+                Thread.interrupted();
+                swapLockService.release(lease);
+            }
+        }, loopExecutor);
     }
 
     /**
      * Core swap logic - direct port of your FastAPI perform_swaps() function
      * @param sessionId Unique Session Identifier
+     * @param lease Swap lease that must stay valid for the loop to keep running
      */
-    public void performSwaps(String sessionId) {
+    public void performSwaps(String sessionId, SwapLease lease) {
         WebDriver driver = null;
+        // Modules this loop swapped, kept swapped even while the write saying so is still being retried
+        Map<Integer, ModuleStatus> swappedHere = new HashMap<>();
 
         try {
             logger.info("Starting swap process for session: {}", sessionId);
@@ -62,26 +179,51 @@ public class SeleniumService {
             String username = credentials[0];
             String password = credentials[1];
 
-            // Create WebDriver
-            driver = webDriverManager.createDriver(sessionId);
+            // Take over the driver logged in at /api/login if there is one
+            driver = preLoginService.claim(sessionId);
+            if (driver == null) {
+                // Create WebDriver, queueing if the node's memory budget is used up
+                driver = webDriverManager.createDriver(sessionId, position -> reportQueuePosition(sessionId, position));
 
-            // Update status: Logging in (matches your FastAPI)
-            sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.PROCESSING, "Logging into NTU portal...");
-            
-            // Login to portal
-            boolean loginSuccess = ntuLoginAutomator.performLogin(driver, username, password);
-            if (!loginSuccess) {
-                logger.error("Login failed for session: {}", sessionId);
-                return; // Login automator already updated status
+                // Update status: Logging in (matches your FastAPI)
+                sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.PROCESSING, "Logging into NTU portal...");
+                
+                // Don't spend a login on a portal that is known to be down
+                if (!awaitPortal(sessionId, System.currentTimeMillis() + SWAP_TIMEOUT_MS)) {
+                    if (!Thread.currentThread().isInterrupted()) {
+                        sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.TIMED_OUT, 
+                            "Time limit reached while the NTU portal was unavailable.");
+                    }
+                    return;
+                }
+                
+                // Login to portal; unless the credentials were rejected, retry as a relogin, then in a new browser
+                try {
+                    ntuLoginAutomator.performLogin(driver, sessionId, username, password);
+                } catch (SeleniumException.LoginFailedException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    logger.warn("Login did not complete for session: {}, trying again: {}", sessionId, e.getMessage());
+                    driver = failureRecovery.recover(driver, sessionId, FailureKind.LOGGED_OUT, username, password,
+                        position -> reportQueuePosition(sessionId, position));
+                }
             }
             
             logger.info("Login successful for session: {}", sessionId);
             
             // Start main swap loop (matches your FastAPI while True loop)
             long startTime = System.currentTimeMillis();
-            long timeoutMs = 2 * 60 * 60 * 1000; // 2 hours in milliseconds
             
             while (true) {
+                // Stop if another loop has taken over this session (lease expired or superseded)
+                if (!swapLockService.isStillHeld(lease)) {
+                    logger.warn("Swap lock no longer held, stopping loop for session: {}", sessionId);
+                    break;
+                }
+                
                 // Check if session still exists (user might have stopped it)
                 try {
                     SessionData currentSession = sessionService.getSecureSession(sessionId);
@@ -95,11 +237,14 @@ public class SeleniumService {
                 }
                 
                 // Get current module statuses
+                long cycleStart = System.currentTimeMillis();
                 SessionData currentSessionData = sessionService.getSecureSession(sessionId);
-                List<ModuleStatus> modules = currentSessionData.getModules();
+                List<ModuleStatus> modules = withSwapped(currentSessionData.getModules(), swappedHere);
                 
                 // Attempt swaps for each module (matches your FastAPI logic)
-                for (int idx = 0; idx < modules.size(); idx++) {
+                boolean portalClosed = false;
+                boolean portalUnavailable = false;
+                for (int idx = 0; idx < modules.size() && !portalClosed && !portalUnavailable; idx++) {
                     ModuleStatus module = modules.get(idx);
                     
                     if (!module.isSwapped()) {
@@ -108,85 +253,148 @@ public class SeleniumService {
                         // Try each new index in order of preference
                         boolean swapSuccessful = false;
                         List<String> failedIndexes = new java.util.ArrayList<>();
+                        List<String> deferredIndexes = new java.util.ArrayList<>();
+                        List<String> uncheckedIndexes = new java.util.ArrayList<>();
                         
                         for (String newIndex : module.getNewIndexes()) {
-                            try {
-                                logger.info("Attempting swap: {} -> {} for session: {}", 
-                                    module.getOldIndex(), newIndex, sessionId);
-                                
-                                ModuleSwapAutomator.SwapResult result = moduleSwapAutomator.attemptSwap(
-                                    driver, sessionId, module.getOldIndex(), newIndex);
-                                
-                                if (result.isSuccess()) {
-                                    // Success! Update module status
-                                    module.setSwapped(true);
-                                    module.setMessage("Successfully swapped " + module.getOldIndex() + " → " + newIndex);
-                                    sessionService.updateModuleStatus(sessionId, idx, module);
-                                    swapSuccessful = true;
-                                    logger.info("Swap successful: {} -> {} for session: {}", 
-                                        module.getOldIndex(), newIndex, sessionId);
+                            logger.info("Attempting swap: {} -> {} for session: {}", 
+                                module.getOldIndex(), newIndex, sessionId);
+                            
+                            // Run the attempt again after a recovery, once
+                            ModuleSwapAutomator.SwapResult result = null;
+                            for (int attempt = 0; result == null && attempt <= RETRIES_AFTER_RECOVERY; attempt++) {
+                                // Portal down for everyone: hold here with the browser kept, not fail the attempt
+                                if (!awaitPortal(sessionId, startTime + SWAP_TIMEOUT_MS)) {
+                                    portalUnavailable = true;
                                     break;
-                                } else {
-                                    logger.warn("Swap failed: {} -> {}: {} for session: {}", 
-                                        module.getOldIndex(), newIndex, result.getMessage(), sessionId);
-                                    failedIndexes.add(newIndex);
                                 }
-                                
-                            } catch (Exception e) {
-                                logger.error("Error during swap attempt {} -> {} for session: {}: {}", 
-                                    module.getOldIndex(), newIndex, sessionId, e.getMessage(), e);
-                                
-                                failedIndexes.add(newIndex);
-                                
-                                // Handle WebDriver errors (matches your FastAPI WebDriverException handling)
-                                if (e.getMessage().contains("WebDriver") || e.getMessage().contains("Session")) {
-                                    logger.warn("WebDriver error detected, recreating driver for session: {}", sessionId);
+                                try {
+                                    result = moduleSwapAutomator.attemptSwap(
+                                        driver, sessionId, module.getOldIndex(), newIndex);
+                                } catch (Exception e) {
+                                    // Loop was terminated while the portal call was in flight, don't log back in
+                                    if (Thread.currentThread().isInterrupted()) {
+                                        return;
+                                    }
+                                    
+                                    FailureKind kind = failureRecovery.classify(driver, e);
+                                    sessionWriteBuffer.recordEvent(sessionId, EventType.ATTEMPT, "old_index", module.getOldIndex(),
+                                        "new_index", newIndex, "outcome", kind.name().toLowerCase());
+                                    if (kind == FailureKind.PORTAL_CLOSED) {
+                                        portalClosed = true;
+                                        break;
+                                    }
+                                    logger.warn("{} during swap attempt {} -> {} for session: {}: {}", 
+                                        kind, module.getOldIndex(), newIndex, sessionId, e.toString());
+                                    if (!awaitPortal(sessionId, startTime + SWAP_TIMEOUT_MS)) {
+                                        portalUnavailable = true;
+                                        break;
+                                    }
                                     try {
-                                        webDriverManager.closeDriver(sessionId);
-                                        driver = webDriverManager.createDriver(sessionId);
-                                        ntuLoginAutomator.performLogin(driver, username, password);
-                                    } catch (Exception driverError) {
-                                        logger.error("Failed to recreate driver for session: {}: {}", sessionId, driverError.getMessage());
-                                        sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.ERROR, 
-                                            "WebDriver error: " + driverError.getMessage());
+                                        WebDriver failedDriver = driver;
+                                        driver = failureRecovery.recover(driver, sessionId, kind, username, password,
+                                            position -> reportQueuePosition(sessionId, position));
+                                        sessionWriteBuffer.recordEvent(sessionId, EventType.RECOVERY, "kind", kind.name().toLowerCase(),
+                                            "driver_recreated", driver != failedDriver);
+                                    } catch (Exception recoveryError) {
+                                        if (Thread.currentThread().isInterrupted()) {
+                                            return;
+                                        }
+                                        logger.error("Failed to recover browser for session: {}: {}", sessionId, recoveryError.getMessage());
+                                        sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.ERROR, 
+                                            "WebDriver error: " + recoveryError.getMessage());
                                         return;
                                     }
                                 }
                             }
+                            
+                            if (portalClosed || portalUnavailable) {
+                                break;
+                            }
+                            if (result != null) {
+                                String outcome = result.isSuccess() ? "swapped" : result.isDeferred() ? "deferred" : "not_swapped";
+                                sessionWriteBuffer.recordEvent(sessionId, EventType.ATTEMPT, "old_index", module.getOldIndex(),
+                                    "new_index", newIndex, "outcome", outcome, "message", result.getMessage());
+                            }
+                            if (result != null && result.isSuccess()) {
+                                // Success! Update module status
+                                module.setSwapped(true);
+                                module.setMessage("Successfully swapped " + module.getOldIndex() + " → " + newIndex);
+                                swappedHere.put(idx, module);
+                                try {
+                                    sessionWriteBuffer.updateModuleStatus(sessionId, idx, module);
+                                } catch (SwapProcessingException.StatusWriteException e) {
+                                    logger.error("Swap {} -> {} done but not saved yet for session: {}: {}",
+                                        module.getOldIndex(), newIndex, sessionId, e.getMessage());
+                                }
+                                demandIndexService.unregisterModule(sessionId, module.getOldIndex());
+                                swapSuccessful = true;
+                                logger.info("Swap successful: {} -> {} for session: {}", 
+                                    module.getOldIndex(), newIndex, sessionId);
+                                break;
+                            }
+                            // Recovered but the retry failed again: the index was never checked
+                            if (result == null) {
+                                uncheckedIndexes.add(newIndex);
+                                continue;
+                            }
+                            if (result.isDeferred()) {
+                                deferredIndexes.add(newIndex);
+                                continue;
+                            }
+                            logger.warn("Swap failed: {} -> {}: {} for session: {}", 
+                                module.getOldIndex(), newIndex, result.getMessage(), sessionId);
+                            failedIndexes.add(newIndex);
                         }
                         
-                        // If no swap was successful, update with failure message (matches your FastAPI logic)
-                        if (!swapSuccessful) {
-                            String failureMsg = "Indexes " + String.join(", ", failedIndexes) + " have no vacancies.";
-                            module.setMessage(failureMsg);
-                            sessionService.updateModuleStatus(sessionId, idx, module);
+                        // Portal closed: nothing more to try this cycle, say so rather than "no vacancies"
+                        if (portalClosed) {
+                            logger.warn("Portal closed, skipping the rest of this cycle for session: {}", sessionId);
+                            module.setMessage(Constants.ErrorMessages.PORTAL_CLOSED);
+                            sessionWriteBuffer.updateModuleStatus(sessionId, idx, module);
+                        } else if (!swapSuccessful && !portalUnavailable) {
+                            // If no swap was successful, update with failure message (matches your FastAPI logic)
+                            module.setMessage(ModuleSwapAutomator.failureMessage(failedIndexes, deferredIndexes, uncheckedIndexes));
+                            sessionWriteBuffer.updateModuleStatus(sessionId, idx, module);
                         }
                     }
                 }
+                sessionWriteBuffer.recordCycle(sessionId, System.currentTimeMillis() - cycleStart);
+                waitPolicy.recordCycle();
                 
                 // Check if all modules are swapped (matches your FastAPI all_swapped check)
                 SessionData updatedSession = sessionService.getSecureSession(sessionId);
-                boolean allSwapped = updatedSession.getModules().stream().allMatch(ModuleStatus::isSwapped);
+                boolean allSwapped = withSwapped(updatedSession.getModules(), swappedHere).stream()
+                    .allMatch(ModuleStatus::isSwapped);
                 
                 if (allSwapped) {
-                    sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.COMPLETED, 
+                    sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.COMPLETED, 
                         "All modules have been successfully swapped.");
                     logger.info("All swaps completed for session: {}", sessionId);
                     break;
                 }
                 
                 // Check timeout (matches your FastAPI 2-hour timeout)
-                if (System.currentTimeMillis() - startTime >= timeoutMs) {
-                    sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.TIMED_OUT, 
+                if (System.currentTimeMillis() - startTime >= SWAP_TIMEOUT_MS) {
+                    sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.TIMED_OUT, 
                         "Time limit reached before completing the swap.");
                     logger.warn("Swap timed out for session: {}", sessionId);
                     break;
                 }
                 
-                // Wait 5 minutes before next attempt (matches your FastAPI sleep)
+                // Wait before next attempt: 5 minutes like FastAPI, or planned from vacancy history
+                // Cut short when a seat this session is waiting for is granted to it
                 try {
-                    logger.debug("Waiting 5 minutes before next swap attempt for session: {}", sessionId);
-                    Thread.sleep(5 * 60 * 1000); // 5 minutes
+                    List<String> targetIndexes = updatedSession.getModules().stream()
+                        .filter(module -> !module.isSwapped())
+                        .flatMap(module -> module.getNewIndexes().stream())
+                        .distinct()
+                        .toList();
+                    Duration delay = attemptScheduler.nextDelay(sessionId, targetIndexes);
+                    logger.debug("Waiting {}s before next swap attempt for session: {}", delay.toSeconds(), sessionId);
+                    if (swapWakeupService.sleep(sessionId, delay)) {
+                        logger.info("Woken early for a granted vacancy, session: {}", sessionId);
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     logger.info("Swap process interrupted for session: {}", sessionId);
@@ -194,10 +402,22 @@ public class SeleniumService {
                 }
             }
             
+        } catch (SwapProcessingException.StatusWriteException e) {
+            // The final status is still buffered and retried, an error status must not replace it
+            logger.error("Final status not saved yet for session: {}: {}", sessionId, e.getMessage());
         } catch (Exception e) {
+            // Stopped while queued or logging in: stopSwap writes the status, an error must not race it
+            if (Thread.currentThread().isInterrupted()) {
+                logger.info("Swap process interrupted for session: {}: {}", sessionId, e.getMessage());
+                return;
+            }
             logger.error("Error in swap process for session: {}: {}", sessionId, e.getMessage(), e);
-            sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.ERROR, 
-                "An error occurred: " + e.getMessage());
+            try {
+                sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.ERROR, 
+                    "An error occurred: " + e.getMessage());
+            } catch (SwapProcessingException.StatusWriteException writeError) {
+                logger.error("Error status not saved yet for session: {}: {}", sessionId, writeError.getMessage());
+            }
         } finally {
             // Clean up WebDriver (matches your FastAPI finally block)
             if (driver != null) {
@@ -211,21 +431,72 @@ public class SeleniumService {
         }
     }
     
+    /* Lay the modules this loop swapped over those read back from Redis */
+    private static List<ModuleStatus> withSwapped(List<ModuleStatus> modules, Map<Integer, ModuleStatus> swappedHere) {
+        swappedHere.forEach((idx, module) -> {
+            if (idx < modules.size()) {
+                modules.set(idx, module);
+            }
+        });
+        return modules;
+    }
+    
+    /**
+     * Hold while the portal circuit breaker is open, showing the session why it is waiting
+     * @return false if the deadline passed, or the loop was stopped, before the portal came back
+     */
+    private boolean awaitPortal(String sessionId, long deadlineMillis) {
+        long pausedMs;
+        try {
+            pausedMs = portalCircuitBreaker.awaitPermit(sessionId, deadlineMillis - System.currentTimeMillis(),
+                () -> sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.PROCESSING,
+                    "NTU portal is not responding, waiting for it to come back..."));
+        } catch (SeleniumException e) {
+            // Interrupted: the loop is being stopped, the interrupt flag is still set for it to see
+            return false;
+        }
+        if (pausedMs > 0) {
+            logger.info("Portal back after {}s, resuming session: {}", pausedMs / 1000, sessionId);
+            sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.PROCESSING,
+                "NTU portal is responding again, swapping resumed");
+        }
+        return pausedMs >= 0;
+    }
+    
+    /**
+     * Show a session as Queued for a browser, with its position and when it should start
+     * @return The estimated start, in epoch seconds
+     */
+    public long reportQueuePosition(String sessionId, int position) {
+        long estimatedStartAt = (System.currentTimeMillis() + webDriverManager.estimatedWaitMillis(position) + 999) / 1000;
+        sessionWriteBuffer.updateQueuePosition(sessionId, position, estimatedStartAt,
+            "Waiting for a free browser on this server (position " + position + " in queue)...");
+        return estimatedStartAt;
+    }
+    
     /* Check if swap is currently running for a session */
     public boolean isSwapRunning(String sessionId) {
         try {
             SessionData sessionData = sessionService.getSecureSession(sessionId);
             String status = sessionData.getSwapStatus();
-            return Constants.SwapStatus.PROCESSING.equals(status);
+            return Constants.SwapStatus.PROCESSING.equals(status) || Constants.SwapStatus.QUEUED.equals(status);
         } catch (Exception e) {
             return false;
         }
     }
     
+    /* Wake the loop's worker thread so it exits instead of finishing its sleep */
+    public void interruptSwap(String sessionId) {
+        Thread worker = swapThreads.get(sessionId);
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+    
     /* Stop swap process for a session */
     public void stopSwap(String sessionId) {
         try {
-            sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.STOPPED, "Swap stopped by user");
+            sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.STOPPED, "Swap stopped by user");
             webDriverManager.closeDriver(sessionId);
             logger.info("Swap stopped for session: {}", sessionId);
         } catch (Exception e) {
@@ -0,0 +1,363 @@
+package com.ntu.adddrop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of what happened to each session, one capped Redis stream per session.
+ * Status changes, module updates, attempt outcomes and recoveries are appended as small events
+ * (XADD is O(1)), so the history survives the status being overwritten. Events are handed over by
+ * SessionStatusWriteBuffer and written in the same flush, one pipelined round trip per batch; events that
+ * don't change the session (attempts, recoveries) only ever go to the log.
+ * Every so often the folded state is appended as a snapshot event, so trimming the oldest events
+ * (the modules event among them) doesn't lose the state a fold starts from.
+ */
+@Service
+public class SessionEventLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionEventLog.class);
+
+    /* Kind of event, stored lowercase in the "type" field */
+    public enum EventType {
+        STATUS,   // overall status and message (and queue position while Queued)
+        MODULES,  // modules submitted for swapping
+        MODULE,   // one module's swapped flag or message changed
+        ATTEMPT,  // outcome of one swap attempt
+        RECOVERY, // browser recovered after a failed attempt
+        CYCLE,    // one pass over all modules
+        SNAPSHOT; // the whole folded state, the fold starts over from here
+
+        public String wireName() {
+            return name().toLowerCase();
+        }
+    }
+
+    /* Order events by when they happened, for merging separately buffered events of one session */
+    public static final Comparator<SessionEvent> BY_TIME = Comparator.comparingLong(event -> Long.parseLong(event.fields.get("at")));
+
+    private static final Duration STREAM_TTL = Duration.ofHours(Constants.Session.DEFAULT_EXPIRY_HOURS);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> MODULES_TYPE = new TypeReference<>() {};
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+
+    @Value("${app.session.events.max-length:1000}")
+    private long maxLength;
+
+    @Value("${app.session.events.snapshot-every:250}")
+    private long snapshotEvery;
+
+    // Events appended per session since its last snapshot, on this node
+    private final Map<String, Long> sinceSnapshot = new ConcurrentHashMap<>();
+
+    private final AtomicLong appendedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong snapshotCount = new AtomicLong();
+
+    public static String streamKey(String sessionId) {
+        return Constants.Session.EVENT_STREAM_PREFIX + sessionId;
+    }
+
+    /* Build an event from alternating field names and values; null values are left out */
+    public static SessionEvent event(EventType type, Object... fieldsAndValues) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("type", type.wireName());
+        fields.put("at", String.valueOf(System.currentTimeMillis()));
+        for (int i = 0; i + 1 < fieldsAndValues.length; i += 2) {
+            if (fieldsAndValues[i + 1] != null) {
+                fields.put(String.valueOf(fieldsAndValues[i]), String.valueOf(fieldsAndValues[i + 1]));
+            }
+        }
+        return new SessionEvent(fields);
+    }
+
+    /* Snapshot event holding a folded state, so a fold can start from it instead of the first event */
+    static SessionEvent snapshot(Map<String, Object> state) {
+        String modules;
+        try {
+            modules = MAPPER.writeValueAsString(state.get("modules"));
+        } catch (JsonProcessingException e) {
+            modules = "[]";
+        }
+        return event(EventType.SNAPSHOT, "status", state.get("status"), "message", state.get("message"),
+            "queue_position", state.get("queue_position"), "estimated_start_at", state.get("estimated_start_at"),
+            "modules", modules, "attempts", state.get("attempts"), "cycles", state.get("cycles"),
+            "recoveries", state.get("recoveries"), "last_attempt_at", state.get("last_attempt_at"));
+    }
+
+    /**
+     * Append events to their sessions' streams in one pipelined round trip
+     * @param events Events per session, in the order they happened
+     * @throws DataAccessException if the events could not be appended, so the caller can retry them
+     */
+    public void appendAll(Map<String, List<SessionEvent>> events) {
+        int total = events.values().stream().mapToInt(List::size).sum();
+        if (total == 0) {
+            return;
+        }
+        // Approximate trimming keeps XADD O(1): whole nodes are dropped once past the cap
+        XAddOptions options = XAddOptions.maxlen(maxLength).approximateTrimming(true);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    events.forEach((sessionId, sessionEvents) -> {
+                        if (sessionEvents.isEmpty()) {
+                            return;
+                        }
+                        String key = streamKey(sessionId);
+                        for (SessionEvent event : sessionEvents) {
+                            ops.opsForStream().add(StreamRecords.newRecord().in(key).ofMap(event.fields), options);
+                        }
+                        ops.expire(key, STREAM_TTL);
+                    });
+                    return null;
+                }
+            });
+            appendedCount.addAndGet(total);
+            batchCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedCount.addAndGet(total);
+            logger.warn("Failed to append {} session events: {}", total, e.getMessage());
+            throw e;
+        }
+
+        // Snapshot well before the cap, so the last snapshot is always still in the stream
+        long every = Math.max(1, Math.min(snapshotEvery, maxLength / 2));
+        events.forEach((sessionId, sessionEvents) -> {
+            if (sinceSnapshot.merge(sessionId, (long) sessionEvents.size(), Long::sum) >= every) {
+                appendSnapshot(sessionId, options);
+            }
+        });
+    }
+
+    private void appendSnapshot(String sessionId, XAddOptions options) {
+        String key = streamKey(sessionId);
+        try {
+            List<Map<String, String>> logged = redisTemplate.<String, String>opsForStream()
+                .range(key, Range.unbounded()).stream()
+                .map(SessionEventLog::toEvent)
+                .toList();
+            redisTemplate.opsForStream().add(StreamRecords.newRecord().in(key).ofMap(snapshot(fold(logged)).fields), options);
+            sinceSnapshot.put(sessionId, 0L);
+            snapshotCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            // Tried again after the next append
+            logger.warn("Failed to snapshot event log of session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /* Drop what this node tracks for a session that is gone */
+    public void forget(String sessionId) {
+        sinceSnapshot.remove(sessionId);
+    }
+
+    /**
+     * Read a page of a session's events, oldest first
+     * @param sessionId Session whose events to read
+     * @param after Cursor (event ID) to read after, null for the start of the log
+     * @param limit Max number of events
+     */
+    public Mono<List<Map<String, String>>> read(String sessionId, String after, int limit) {
+        readCount.incrementAndGet();
+        Range<String> range = after == null
+            ? Range.unbounded()
+            : Range.rightUnbounded(Range.Bound.exclusive(after));
+        return reactiveRedisTemplate.<String, String>opsForStream()
+            .range(streamKey(sessionId), range, Limit.limit().count(limit))
+            .map(SessionEventLog::toEvent)
+            .collectList();
+    }
+
+    /* Current state of a session, folded from every event still in its log */
+    public Mono<Map<String, Object>> fold(String sessionId) {
+        readCount.incrementAndGet();
+        return reactiveRedisTemplate.<String, String>opsForStream()
+            .range(streamKey(sessionId), Range.unbounded())
+            .map(SessionEventLog::toEvent)
+            .collectList()
+            .map(SessionEventLog::fold);
+    }
+
+    /**
+     * Fold events, oldest first, into the state they leave the session in.
+     * Later events win; a modules event starts the module list over and a snapshot starts the whole state over.
+     */
+    static Map<String, Object> fold(List<Map<String, String>> events) {
+        String status = Constants.SwapStatus.IDLE;
+        String message = null;
+        String queuePosition = null;
+        String estimatedStartAt = null;
+        List<Map<String, Object>> modules = new ArrayList<>();
+        long attempts = 0;
+        long cycles = 0;
+        long recoveries = 0;
+        String lastAttemptAt = null;
+        String lastEventId = null;
+
+        for (Map<String, String> event : events) {
+            lastEventId = event.get("id");
+            switch (event.getOrDefault("type", "")) {
+                case "status" -> {
+                    status = event.getOrDefault("status", status);
+                    message = event.getOrDefault("message", message);
+                    queuePosition = event.get("queue_position");
+                    estimatedStartAt = event.get("estimated_start_at");
+                }
+                case "modules" -> {
+                    modules.clear();
+                    for (String oldIndex : event.getOrDefault("old_indexes", "").split(",")) {
+                        if (!oldIndex.isBlank()) {
+                            Map<String, Object> module = new LinkedHashMap<>();
+                            module.put("old_index", oldIndex);
+                            module.put("swapped", false);
+                            module.put("message", "");
+                            modules.add(module);
+                        }
+                    }
+                }
+                case "module" -> {
+                    int idx = parseInt(event.get("idx"));
+                    if (idx >= 0 && idx < modules.size()) {
+                        Map<String, Object> module = modules.get(idx);
+                        module.put("swapped", Boolean.parseBoolean(event.get("swapped")));
+                        module.put("message", event.getOrDefault("message", ""));
+                    }
+                }
+                case "attempt" -> {
+                    attempts++;
+                    lastAttemptAt = event.get("at");
+                }
+                case "recovery" -> recoveries++;
+                case "cycle" -> cycles++;
+                case "snapshot" -> {
+                    status = event.getOrDefault("status", Constants.SwapStatus.IDLE);
+                    message = event.get("message");
+                    queuePosition = event.get("queue_position");
+                    estimatedStartAt = event.get("estimated_start_at");
+                    modules.clear();
+                    modules.addAll(parseModules(event.get("modules")));
+                    attempts = parseLong(event.get("attempts"));
+                    cycles = parseLong(event.get("cycles"));
+                    recoveries = parseLong(event.get("recoveries"));
+                    lastAttemptAt = event.get("last_attempt_at");
+                }
+                default -> {
+                    // Unknown types from a newer version are kept in the log but don't affect the state
+                }
+            }
+        }
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("status", status);
+        state.put("message", message);
+        state.put("queue_position", queuePosition != null ? parseInt(queuePosition) : null);
+        state.put("estimated_start_at", estimatedStartAt != null ? Long.parseLong(estimatedStartAt) : null);
+        state.put("modules", modules);
+        state.put("attempts", attempts);
+        state.put("cycles", cycles);
+        state.put("recoveries", recoveries);
+        state.put("last_attempt_at", lastAttemptAt != null ? Long.parseLong(lastAttemptAt) : null);
+        state.put("last_event_id", lastEventId);
+        return state;
+    }
+
+    private static Map<String, String> toEvent(MapRecord<String, String, String> record) {
+        Map<String, String> event = new LinkedHashMap<>();
+        event.put("id", record.getId().getValue());
+        event.putAll(record.getValue());
+        return event;
+    }
+
+    private static List<Map<String, Object>> parseModules(String json) {
+        try {
+            return json != null ? MAPPER.readValue(json, MODULES_TYPE) : List.of();
+        } catch (JsonProcessingException e) {
+            return List.of();
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value != null ? Integer.parseInt(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /* Stream IDs are "<ms>-<seq>" */
+    public static boolean isValidCursor(String cursor) {
+        String[] parts = cursor.split("-");
+        return parts.length == 2 && Arrays.stream(parts).allMatch(part -> !part.isEmpty() && part.chars().allMatch(Character::isDigit));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("max_length", maxLength);
+        stats.put("appended", appendedCount.get());
+        stats.put("append_batches", batchCount.get());
+        stats.put("failed", failedCount.get());
+        stats.put("reads", readCount.get());
+        stats.put("snapshot_every", snapshotEvery);
+        stats.put("snapshots", snapshotCount.get());
+        return stats;
+    }
+
+    /* One event's fields, as written to the stream */
+    public static class SessionEvent {
+        private final Map<String, String> fields;
+
+        private SessionEvent(Map<String, String> fields) {
+            this.fields = fields;
+        }
+
+        public Map<String, String> getFields() {
+            return fields;
+        }
+    }
+}
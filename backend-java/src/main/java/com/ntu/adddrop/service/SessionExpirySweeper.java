@@ -0,0 +1,153 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.selenium.WebDriverManager;
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proactively ends sessions once they expire instead of waiting for a swap loop to notice.
+ * Due sessions are claimed from the expiry index atomically, so each is swept by exactly one node,
+ * which deletes its keys. Every node also checks the sessions it runs locally and tears down
+ * loops and drivers whose session is gone, wherever it was deleted.
+ */
+@Service
+public class SessionExpirySweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionExpirySweeper.class);
+
+    // Pop up to ARGV[2] members with score <= ARGV[1]
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+        "local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+        "if #due > 0 then redis.call('zrem', KEYS[1], unpack(due)) end " +
+        "return due",
+        List.class);
+
+    // Caps one sweep so a large backlog can't starve the local check
+    private static final int MAX_BATCHES_PER_SWEEP = 10;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private SessionService sessionService;
+
+    // Lazy so that with lazy initialization this eager bean doesn't pull in Selenium at startup
+    @Autowired
+    @Lazy
+    private SwapProcessingService swapProcessingService;
+
+    @Autowired
+    @Lazy
+    private WebDriverManager webDriverManager;
+
+    @Value("${app.session.sweeper.interval-seconds:5}")
+    private long intervalSeconds;
+
+    @Value("${app.session.sweeper.batch-size:100}")
+    private int batchSize;
+
+    private final AtomicLong sweptCount = new AtomicLong();
+    private final AtomicLong terminatedCount = new AtomicLong();
+
+    private volatile ScheduledFuture<?> sweeping;
+
+    @PostConstruct
+    public void start() {
+        sweeping = taskScheduler.scheduleWithFixedDelay(this::sweep,
+            Instant.now().plusSeconds(intervalSeconds), Duration.ofSeconds(intervalSeconds));
+    }
+
+    /* One sweep: claim and delete due sessions, then stop local work for sessions that are gone */
+    public void sweep() {
+        try {
+            sweepDueSessions();
+        } catch (Exception e) {
+            logger.warn("Session expiry sweep failed: {}", e.getMessage());
+        }
+        try {
+            terminateOrphanedLocalSessions();
+        } catch (Exception e) {
+            logger.warn("Local session check failed: {}", e.getMessage());
+        }
+    }
+
+    private void sweepDueSessions() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_SWEEP; batch++) {
+            long now = System.currentTimeMillis() / 1000;
+            @SuppressWarnings("unchecked")
+            List<String> due = redisTemplate.execute(CLAIM_SCRIPT,
+                List.of(Constants.Session.EXPIRY_INDEX_KEY), Long.toString(now), Integer.toString(batchSize));
+            if (due == null || due.isEmpty()) {
+                return;
+            }
+
+            due.forEach(this::terminateLocally);
+            sessionService.cleanupSessions(due);
+            sweptCount.addAndGet(due.size());
+            logger.info("Swept {} expired sessions", due.size());
+
+            if (due.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void terminateOrphanedLocalSessions() {
+        Set<String> local = new LinkedHashSet<>(swapProcessingService.getRunningSessionIds());
+        local.addAll(webDriverManager.getActiveSessionIds());
+        if (local.isEmpty()) {
+            return;
+        }
+
+        for (String sessionId : sessionService.findMissingSessions(new ArrayList<>(local))) {
+            logger.info("Session {} no longer exists, stopping its local swap", sessionId);
+            terminateLocally(sessionId);
+        }
+    }
+
+    private void terminateLocally(String sessionId) {
+        if (swapProcessingService.getRunningSessionIds().contains(sessionId) || webDriverManager.hasDriver(sessionId)) {
+            swapProcessingService.terminateSession(sessionId);
+            terminatedCount.incrementAndGet();
+        }
+    }
+
+    /* Snapshot of sweeper metrics */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("interval_seconds", intervalSeconds);
+        stats.put("swept_sessions", sweptCount.get());
+        stats.put("terminated_local_swaps", terminatedCount.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeping.cancel(false);
+    }
+}
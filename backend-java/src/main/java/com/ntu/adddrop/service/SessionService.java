@@ -1,32 +1,71 @@
 package com.ntu.adddrop.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.codec.SessionCodec;
+import com.ntu.adddrop.codec.SessionCodecException;
 import com.ntu.adddrop.model.SessionData;
 import com.ntu.adddrop.model.SessionData.ModuleStatus;
 import com.ntu.adddrop.security.EncryptionService;
+import com.ntu.adddrop.util.Constants;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 public class SessionService {
     
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private RedisTemplate<String, byte[]> bytesRedisTemplate;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private SessionCodec sessionCodec;
     
     @Autowired
     private EncryptionService encryptionService;
 
+    @Autowired
+    private SwapStatusWatchService swapStatusWatchService;
+
     private static final Duration SESSION_TTL = Duration.ofHours(2);
+    private static final int MAX_WRITE_ROUNDS = 5;
+
+    // Write the session only if it still holds the value read (by SHA-1), keeping its TTL;
+    // returns the TTL in ms once written, 0 if it changed meanwhile, -1 if it is gone
+    private static final byte[] COMPARE_AND_SET_SCRIPT = (
+        "local current = redis.call('get', KEYS[1]) " +
+        "if not current then return -1 end " +
+        "if redis.sha1hex(current) ~= ARGV[1] then return 0 end " +
+        "local ttl = redis.call('pttl', KEYS[1]) " +
+        "if ttl <= 0 then return -1 end " +
+        "redis.call('set', KEYS[1], ARGV[2], 'PX', ttl) " +
+        "return ttl").getBytes(StandardCharsets.UTF_8);
+
+    // The version mirror only moves forward, whichever of two writers' mirror updates lands last
+    private static final byte[] RAISE_VERSION_SCRIPT = (
+        "local stored = tonumber(redis.call('get', KEYS[1])) " +
+        "if stored and stored >= tonumber(ARGV[1]) then return 0 end " +
+        "redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+        "return 1").getBytes(StandardCharsets.UTF_8);
     private static final SecureRandom secureRandom = new SecureRandom();
 
     /**
@@ -44,16 +83,24 @@ public class SessionService {
         sessionData.setSwapStatus("Idle");
         sessionData.setSwapMessage(null);
         sessionData.setSwapStartedAt(null);
+        sessionData.setStatusVersion(1);
 
         try {
-            String sessionJson = objectMapper.writeValueAsString(sessionData);
-            redisTemplate.opsForValue().set(
-                "session:" + sessionId,
-                sessionJson,
-                SESSION_TTL
-            );
+            byte[] encoded = sessionCodec.encode(sessionData);
+            bytesRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                    ops.opsForValue().set("session:" + sessionId, encoded, SESSION_TTL);
+                    ops.opsForValue().set(versionKey(sessionId), versionBytes(1), SESSION_TTL);
+                    // Expiry index lets the sweeper free resources as soon as the session is due
+                    ops.opsForZSet().add(Constants.Session.EXPIRY_INDEX_KEY, memberBytes(sessionId), sessionData.getExpiresAt());
+                    return null;
+                }
+            });
             return sessionId;
-        } catch (JsonProcessingException e) {
+        } catch (SessionCodecException e) {
             throw new RuntimeException("Failed to serialize session data", e);
         } catch (Exception e) {
             throw new RuntimeException("Failed to create session", e);
@@ -62,22 +109,22 @@ public class SessionService {
 
     public SessionData getSecureSession(String sessionId) {
         try {
-            String sessionJson = redisTemplate.opsForValue().get("session:" + sessionId);
-            if (sessionJson == null) {
+            byte[] encoded = bytesRedisTemplate.opsForValue().get("session:" + sessionId);
+            if (encoded == null) {
                 throw new SecurityException("Session expired or invalid");
             }
 
-            SessionData sessionData = objectMapper.readValue(sessionJson, SessionData.class);
+            SessionData sessionData = sessionCodec.decode(encoded);
 
             if (System.currentTimeMillis() / 1000 > sessionData.getExpiresAt()) {
-                redisTemplate.delete("session:" + sessionId);
+                bytesRedisTemplate.delete("session:" + sessionId);
                 throw new SecurityException("Session expired");
             }
 
             return sessionData;
         } catch (SecurityException e) {
             throw e; // Re-throw security exceptions as-is
-        } catch (JsonProcessingException e) {
+        } catch (SessionCodecException e) {
             throw new RuntimeException("Failed to deserialize session data", e);
         } catch (Exception e) {
             throw new RuntimeException("Failed to retrieve session", e);
@@ -85,37 +132,171 @@ public class SessionService {
     }
 
     public void updateSessionData(String sessionId, SessionData updates) {
+        UpdateResult result;
         try {
-            SessionData sessionData = getSecureSession(sessionId);
+            result = applySessionUpdates(Map.of(sessionId, sessionData -> {
+                if (updates.getSwapStatus() != null) {
+                    sessionData.setSwapStatus(updates.getSwapStatus());
+                }
+                if (updates.getSwapMessage() != null) {
+                    sessionData.setSwapMessage(updates.getSwapMessage());
+                }
+                if (updates.getSwapStartedAt() != null) {
+                    sessionData.setSwapStartedAt(updates.getSwapStartedAt());
+                }
+                if (updates.getModules() != null) {
+                    sessionData.setModules(updates.getModules());
+                }
+            }));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to update session", e);
+        }
+        if (!result.getConflicted().isEmpty()) {
+            throw new RuntimeException("Failed to update session: it kept changing under concurrent writers");
+        }
+        if (result.getWritten().isEmpty()) {
+            throw new RuntimeException("Failed to update session", new SecurityException("Session expired or invalid"));
+        }
+    }
+
+    /**
+     * Apply in-place changes to several sessions, a pipelined GET for all of them then a pipelined
+     * compare-and-set: a session is only written if it still holds the value the change was applied to.
+     * Sessions another writer changed in between are read again and the change reapplied, up to
+     * MAX_WRITE_ROUNDS times. Sessions that are missing or expired are skipped. Each written session gets
+     * its status version bumped, so no two writes of a session share a version.
+     * @param mutations Changes to apply, keyed by session ID; a change may run more than once
+     * @return Sessions written, and those still contended after the last round
+     */
+    public UpdateResult applySessionUpdates(Map<String, Consumer<SessionData>> mutations) {
+        List<String> written = new ArrayList<>();
+        Map<String, Long> versions = new LinkedHashMap<>();
+        Map<String, Long> ttls = new LinkedHashMap<>();
+        Map<String, Consumer<SessionData>> remaining = new LinkedHashMap<>(mutations);
+
+        for (int round = 0; round < MAX_WRITE_ROUNDS && !remaining.isEmpty(); round++) {
+            List<String> sessionIds = new ArrayList<>(remaining.keySet());
+            List<Object> current = bytesRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                    sessionIds.forEach(sessionId -> ops.opsForValue().get("session:" + sessionId));
+                    return null;
+                }
+            });
 
-            if (updates.getSwapStatus() != null) {
-                sessionData.setSwapStatus(updates.getSwapStatus());
+            long nowSeconds = System.currentTimeMillis() / 1000;
+            Map<String, byte[][]> swaps = new LinkedHashMap<>();
+            Map<String, Long> attempted = new LinkedHashMap<>();
+            for (int i = 0; i < sessionIds.size(); i++) {
+                String sessionId = sessionIds.get(i);
+                byte[] value = (byte[]) current.get(i);
+                if (value == null) {
+                    remaining.remove(sessionId);
+                    continue;
+                }
+                try {
+                    SessionData sessionData = sessionCodec.decode(value);
+                    if (nowSeconds > sessionData.getExpiresAt()) {
+                        remaining.remove(sessionId);
+                        continue;
+                    }
+                    remaining.get(sessionId).accept(sessionData);
+                    sessionData.setStatusVersion(sessionData.getStatusVersion() + 1);
+                    attempted.put(sessionId, sessionData.getStatusVersion());
+                    swaps.put(sessionId, new byte[][] {sha1Hex(value), sessionCodec.encode(sessionData)});
+                } catch (SessionCodecException e) {
+                    throw new RuntimeException("Failed to apply session updates", e);
+                }
             }
-            if (updates.getSwapMessage() != null) {
-                sessionData.setSwapMessage(updates.getSwapMessage());
+            if (swaps.isEmpty()) {
+                break;
             }
-            if (updates.getSwapStartedAt() != null) {
-                sessionData.setSwapStartedAt(updates.getSwapStartedAt());
+
+            List<String> swapped = new ArrayList<>(swaps.keySet());
+            List<Object> outcomes = bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                swaps.forEach((sessionId, expectedAndValue) -> connection.scriptingCommands().eval(
+                    COMPARE_AND_SET_SCRIPT, ReturnType.INTEGER, 1,
+                    ("session:" + sessionId).getBytes(StandardCharsets.UTF_8), expectedAndValue[0], expectedAndValue[1]));
+                return null;
+            });
+            for (int i = 0; i < swapped.size(); i++) {
+                String sessionId = swapped.get(i);
+                long outcome = (Long) outcomes.get(i);
+                if (outcome == 0) {
+                    continue; // Changed since it was read, try again with what is there now
+                }
+                remaining.remove(sessionId);
+                if (outcome > 0) {
+                    written.add(sessionId);
+                    versions.put(sessionId, attempted.get(sessionId));
+                    ttls.put(sessionId, outcome);
+                }
             }
-            if (updates.getModules() != null) {
-                sessionData.setModules(updates.getModules());
+        }
+
+        if (!written.isEmpty()) {
+            bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                versions.forEach((sessionId, version) -> connection.scriptingCommands().eval(
+                    RAISE_VERSION_SCRIPT, ReturnType.INTEGER, 1,
+                    versionKey(sessionId).getBytes(StandardCharsets.UTF_8), versionBytes(version),
+                    Long.toString(ttls.get(sessionId)).getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+            versions.forEach(swapStatusWatchService::publish);
+        }
+        return new UpdateResult(written, new ArrayList<>(remaining.keySet()));
+    }
+
+    /**
+     * Walk every stored session using cursor-based SCAN, fetching each batch of keys with one
+     * pipelined GET round trip. Unlike KEYS this never blocks Redis, and it visits sessions that
+     * exist for the whole scan at least once. Sessions that vanish or can't be decoded are skipped.
+     * @param batchSize SCAN COUNT hint and pipeline size
+     * @param batchConsumer Receives each batch as session ID -> session data, in scan order
+     */
+    public void scanSessions(int batchSize, Consumer<Map<String, SessionData>> batchConsumer) {
+        ScanOptions options = ScanOptions.scanOptions().match("session:*").count(batchSize).build();
+        try (Cursor<String> cursor = bytesRedisTemplate.scan(options)) {
+            List<String> keys = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+                if (keys.size() >= batchSize) {
+                    batchConsumer.accept(fetchSessions(keys));
+                    keys.clear();
+                }
             }
+            if (!keys.isEmpty()) {
+                batchConsumer.accept(fetchSessions(keys));
+            }
+        }
+    }
 
-            String sessionJson = objectMapper.writeValueAsString(sessionData);
+    private Map<String, SessionData> fetchSessions(List<String> keys) {
+        List<Object> values = bytesRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                keys.forEach(key -> ops.opsForValue().get(key));
+                return null;
+            }
+        });
 
-            Long ttl = redisTemplate.getExpire("session:" + sessionId);
-            if (ttl != null && ttl > 0) {
-                redisTemplate.opsForValue().set(
-                    "session:" + sessionId,
-                    sessionJson,
-                    Duration.ofSeconds(ttl)
-                );
+        Map<String, SessionData> sessions = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = (byte[]) values.get(i);
+            if (value == null) {
+                continue;
+            }
+            try {
+                sessions.put(keys.get(i).substring("session:".length()), sessionCodec.decode(value));
+            } catch (SessionCodecException e) {
+                // A corrupt session must not hide the rest of the batch
             }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to serialize session updates", e);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to update session", e);
         }
+        return sessions;
     }
 
     /**
@@ -142,20 +323,20 @@ public class SessionService {
      * Update specific module status - matches FastAPI update_module_status
      */
     public void updateModuleStatus(String sessionId, int moduleIdx, ModuleStatus updatedModule) {
+        UpdateResult result;
         try {
-            SessionData sessionData = getSecureSession(sessionId);
-            List<ModuleStatus> modules = sessionData.getModules();
-            
-            if (moduleIdx >= 0 && moduleIdx < modules.size()) {
-                modules.set(moduleIdx, updatedModule);
-                
-                SessionData updates = new SessionData();
-                updates.setModules(modules);
-                updateSessionData(sessionId, updates);
-            }
+            result = applySessionUpdates(Map.of(sessionId, sessionData -> {
+                List<ModuleStatus> modules = sessionData.getModules();
+                if (modules != null && moduleIdx >= 0 && moduleIdx < modules.size()) {
+                    modules.set(moduleIdx, updatedModule);
+                }
+            }));
         } catch (Exception e) {
             throw new RuntimeException("Failed to update module status", e);
         }
+        if (result.getWritten().isEmpty()) {
+            throw new RuntimeException("Failed to update module status");
+        }
     }
     
     /**
@@ -171,7 +352,78 @@ public class SessionService {
     }
 
     public void cleanupSession(String sessionId) {
-        redisTemplate.delete("session:" + sessionId);
+        cleanupSessions(List.of(sessionId));
+    }
+
+    /* Delete several sessions and their index entries in one pipelined round trip */
+    public void cleanupSessions(Collection<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        for (String sessionId : sessionIds) {
+            keys.add("session:" + sessionId);
+            keys.add(versionKey(sessionId));
+            keys.add(SessionEventLog.streamKey(sessionId));
+        }
+        byte[][] members = sessionIds.stream().map(SessionService::memberBytes).toArray(byte[][]::new);
+
+        bytesRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                ops.delete(keys);
+                ops.opsForZSet().remove(Constants.Session.EXPIRY_INDEX_KEY, (Object[]) members);
+                return null;
+            }
+        });
+    }
+
+    /* IDs among the given sessions whose keys no longer exist (expired, swept or stopped elsewhere) */
+    public List<String> findMissingSessions(List<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return List.of();
+        }
+        List<Object> exists = bytesRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                sessionIds.forEach(sessionId -> ops.hasKey("session:" + sessionId));
+                return null;
+            }
+        });
+
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < sessionIds.size(); i++) {
+            if (Boolean.FALSE.equals(exists.get(i))) {
+                missing.add(sessionIds.get(i));
+            }
+        }
+        return missing;
+    }
+
+    /* Status version is mirrored in its own small key so conditional polls never load the session */
+    private static String versionKey(String sessionId) {
+        return Constants.Session.STATUS_VERSION_PREFIX + sessionId;
+    }
+
+    private static byte[] versionBytes(long version) {
+        return Long.toString(version).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] sha1Hex(byte[] value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value);
+            return HexFormat.of().formatHex(digest).getBytes(StandardCharsets.UTF_8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] memberBytes(String sessionId) {
+        return sessionId.getBytes(StandardCharsets.UTF_8);
     }
 
     private String generateSessionId() {
@@ -179,4 +431,23 @@ public class SessionService {
         secureRandom.nextBytes(bytes);
         return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
-}
\ No newline at end of file
+
+    /* Outcome of applySessionUpdates; sessions in neither list were missing or expired */
+    public static class UpdateResult {
+        private final List<String> written;
+        private final List<String> conflicted;
+
+        public UpdateResult(List<String> written, List<String> conflicted) {
+            this.written = written;
+            this.conflicted = conflicted;
+        }
+
+        public List<String> getWritten() {
+            return written;
+        }
+
+        public List<String> getConflicted() {
+            return conflicted;
+        }
+    }
+}
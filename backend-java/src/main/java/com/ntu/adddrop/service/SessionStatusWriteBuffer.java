@@ -0,0 +1,549 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.exception.SwapProcessingException;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.service.SessionEventLog.EventType;
+import com.ntu.adddrop.service.SessionEventLog.SessionEvent;
+import com.ntu.adddrop.service.SwapLockService.SwapLease;
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer in front of SessionService for swap status updates.
+ * Updates that don't change anything are dropped, updates to the same session are merged,
+ * and the result is flushed in pipelined batches within a short bounded delay.
+ * Terminal statuses and successful swaps are flushed synchronously, and a failure to write them is thrown.
+ * A batch that fails to write goes back into the buffer under any newer updates and is retried with backoff,
+ * as does a session other nodes kept changing while it was written. A running loop's updates never replace
+ * a Stopped status another node wrote meanwhile.
+ * Every accepted change is also kept as an event and appended to the session's event log in the same flush.
+ * Events that don't change the document (attempt outcomes, recoveries) are only appended to the log, so they
+ * neither rewrite the session nor bump its status version.
+ */
+@Service
+public class SessionStatusWriteBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionStatusWriteBuffer.class);
+
+    private static final long MAX_RETRY_DELAY_MS = 10_000;
+
+    private static final Set<String> TERMINAL_STATUSES = Set.of(
+        Constants.SwapStatus.COMPLETED,
+        Constants.SwapStatus.ERROR,
+        Constants.SwapStatus.STOPPED,
+        Constants.SwapStatus.TIMED_OUT
+    );
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionEventLog sessionEventLog;
+
+    @Autowired
+    private SwapLockService swapLockService;
+
+    @Value("${app.session.write-buffer.flush-delay-ms:250}")
+    private long flushDelayMs;
+
+    // Merged updates waiting to be written
+    private final Map<String, PendingUpdate> pending = new ConcurrentHashMap<>();
+
+    // Leases of the swap loops running here; a loop's writes are dropped once a newer loop holds the lock
+    private final Map<String, SwapLease> leases = new ConcurrentHashMap<>();
+
+    // Events that don't change the document, waiting to be appended to the log
+    private final Map<String, List<SessionEvent>> pendingEvents = new ConcurrentHashMap<>();
+
+    // Latest state accepted per session, used to drop no-op updates
+    private final Map<String, KnownState> knownStates = new ConcurrentHashMap<>();
+
+    // Serializes flushes so an older batch can never overwrite a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong mergedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong fencedCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Buffered version of SessionService.updateOverallSwapStatus
+     * @throws SwapProcessingException.StatusWriteException if a terminal status could not be written;
+     *         it stays buffered and is retried
+     */
+    public void updateOverallSwapStatus(String sessionId, String status, String message) {
+        KnownState known = knownStates.computeIfAbsent(sessionId, id -> new KnownState());
+        boolean changed;
+        synchronized (known) {
+            changed = !Objects.equals(known.status, status) || !Objects.equals(known.message, message);
+            known.status = status;
+            known.message = message;
+        }
+
+        if (changed) {
+            SessionEvent event = SessionEventLog.event(EventType.STATUS, "status", status, "message", message);
+            merge(sessionId, update -> {
+                update.status = status;
+                update.message = message;
+                update.events.add(event);
+            });
+        } else {
+            droppedCount.incrementAndGet();
+        }
+
+        if (TERMINAL_STATUSES.contains(status)) {
+            knownStates.remove(sessionId);
+            flush(sessionId);
+        }
+    }
+
+    /**
+     * Mark a session Queued for a browser slot; the queue fields are cleared by the next other status
+     * @param estimatedStartAt Epoch seconds the session is expected to get its browser
+     */
+    public void updateQueuePosition(String sessionId, int position, long estimatedStartAt, String message) {
+        KnownState known = knownStates.computeIfAbsent(sessionId, id -> new KnownState());
+        synchronized (known) {
+            known.status = Constants.SwapStatus.QUEUED;
+            known.message = message;
+        }
+
+        SessionEvent event = SessionEventLog.event(EventType.STATUS, "status", Constants.SwapStatus.QUEUED,
+            "message", message, "queue_position", position, "estimated_start_at", estimatedStartAt);
+        merge(sessionId, update -> {
+            update.status = Constants.SwapStatus.QUEUED;
+            update.message = message;
+            update.queuePosition = position;
+            update.estimatedStartAt = estimatedStartAt;
+            update.events.add(event);
+        });
+    }
+
+    /* Buffered version of SessionService.updateModules */
+    public void updateModules(String sessionId, List<ModuleStatus> modules) {
+        KnownState known = knownStates.computeIfAbsent(sessionId, id -> new KnownState());
+        synchronized (known) {
+            known.modules.clear();
+            for (int i = 0; i < modules.size(); i++) {
+                known.modules.put(i, copyOf(modules.get(i)));
+            }
+        }
+
+        List<ModuleStatus> snapshot = modules.stream().map(SessionStatusWriteBuffer::copyOf).toList();
+        long startedAt = System.currentTimeMillis() / 1000;
+        SessionEvent event = SessionEventLog.event(EventType.MODULES,
+            "old_indexes", String.join(",", snapshot.stream().map(ModuleStatus::getOldIndex).toList()));
+        merge(sessionId, update -> {
+            update.modules = new ArrayList<>(snapshot);
+            update.moduleUpdates.clear();
+            update.swapStartedAt = startedAt;
+            update.events.add(event);
+        });
+    }
+
+    /**
+     * Buffered version of SessionService.updateModuleStatus
+     * @throws SwapProcessingException.StatusWriteException if a successful swap could not be written;
+     *         it stays buffered and is retried
+     */
+    public void updateModuleStatus(String sessionId, int moduleIdx, ModuleStatus updatedModule) {
+        ModuleStatus snapshot = copyOf(updatedModule);
+        KnownState known = knownStates.computeIfAbsent(sessionId, id -> new KnownState());
+        boolean changed;
+        synchronized (known) {
+            ModuleStatus previous = known.modules.get(moduleIdx);
+            changed = previous == null
+                || previous.isSwapped() != snapshot.isSwapped()
+                || !Objects.equals(previous.getMessage(), snapshot.getMessage());
+            known.modules.put(moduleIdx, snapshot);
+        }
+
+        if (!changed) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        SessionEvent event = SessionEventLog.event(EventType.MODULE, "idx", moduleIdx,
+            "old_index", snapshot.getOldIndex(), "swapped", snapshot.isSwapped(), "message", snapshot.getMessage());
+        merge(sessionId, update -> {
+            update.moduleUpdates.put(moduleIdx, snapshot);
+            update.events.add(event);
+        });
+
+        // A successful swap is what the user is waiting for, don't delay it
+        if (snapshot.isSwapped()) {
+            flush(sessionId);
+        }
+    }
+
+    /* Count one completed pass over all modules and how long it took */
+    public void recordCycle(String sessionId, long durationMs) {
+        long attemptedAt = System.currentTimeMillis() / 1000;
+        SessionEvent event = SessionEventLog.event(EventType.CYCLE, "duration_ms", durationMs);
+        merge(sessionId, update -> {
+            update.cyclesCompleted++;
+            update.lastAttemptAt = attemptedAt;
+            update.lastAttemptMs = durationMs;
+            update.events.add(event);
+        });
+    }
+
+    /**
+     * Log an event that doesn't change the session document (attempt outcome, recovery)
+     * @param fieldsAndValues Alternating field names and values
+     */
+    public void recordEvent(String sessionId, EventType type, Object... fieldsAndValues) {
+        SessionEvent event = SessionEventLog.event(type, fieldsAndValues);
+        pendingEvents.merge(sessionId, List.of(event), SessionStatusWriteBuffer::concat);
+        scheduleFlush(flushDelayMs);
+    }
+
+    /* Check the session's writes against this lease's fencing token until unfence */
+    public void fence(SwapLease lease) {
+        leases.put(lease.getSessionId(), lease);
+    }
+
+    public void unfence(SwapLease lease) {
+        leases.remove(lease.getSessionId(), lease);
+    }
+
+    /**
+     * Write any pending update for one session now
+     * @throws SwapProcessingException.StatusWriteException if the write failed; the update is kept for a retry
+     */
+    public void flush(String sessionId) {
+        flushLock.lock();
+        try {
+            PendingUpdate update = pending.remove(sessionId);
+            List<SessionEvent> events = pendingEvents.remove(sessionId);
+            Map<String, PendingUpdate> batch = update != null ? Map.of(sessionId, update) : Map.of();
+            Map<String, List<SessionEvent>> eventsOnly = events != null ? Map.of(sessionId, events) : Map.of();
+            List<String> contended;
+            try {
+                contended = write(batch, eventsOnly);
+            } catch (RuntimeException e) {
+                requeue(batch, eventsOnly, e);
+                throw new SwapProcessingException.StatusWriteException(sessionId, e);
+            }
+            if (!contended.isEmpty()) {
+                throw new SwapProcessingException.StatusWriteException(sessionId,
+                    new IllegalStateException("session kept changing under concurrent writers"));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /* Write all pending updates in one pipelined batch */
+    public void flushAll() {
+        flushLock.lock();
+        try {
+            Map<String, PendingUpdate> batch = new LinkedHashMap<>();
+            for (String sessionId : new ArrayList<>(pending.keySet())) {
+                PendingUpdate update = pending.remove(sessionId);
+                if (update != null) {
+                    batch.put(sessionId, update);
+                }
+            }
+            Map<String, List<SessionEvent>> eventsOnly = new LinkedHashMap<>();
+            for (String sessionId : new ArrayList<>(pendingEvents.keySet())) {
+                List<SessionEvent> events = pendingEvents.remove(sessionId);
+                if (events != null) {
+                    eventsOnly.put(sessionId, events);
+                }
+            }
+            try {
+                write(batch, eventsOnly);
+            } catch (RuntimeException e) {
+                requeue(batch, eventsOnly, e);
+                throw e;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /* Forget buffered state for a session that is being cleaned up */
+    public void discard(String sessionId) {
+        pending.remove(sessionId);
+        pendingEvents.remove(sessionId);
+        knownStates.remove(sessionId);
+        sessionEventLog.forget(sessionId);
+    }
+
+    /* Snapshot of buffer metrics */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("flush_delay_ms", flushDelayMs);
+        stats.put("pending_sessions", pending.size());
+        stats.put("pending_event_sessions", pendingEvents.size());
+        stats.put("fenced_writes", fencedCount.get());
+        stats.put("dropped_noop_updates", droppedCount.get());
+        stats.put("merged_updates", mergedCount.get());
+        stats.put("written_sessions", writtenCount.get());
+        stats.put("failed_flushes", failedFlushCount.get());
+        return stats;
+    }
+
+    private void merge(String sessionId, Consumer<PendingUpdate> change) {
+        pending.compute(sessionId, (id, update) -> {
+            if (update == null) {
+                update = new PendingUpdate();
+            } else {
+                mergedCount.incrementAndGet();
+            }
+            change.accept(update);
+            return update;
+        });
+        scheduleFlush(flushDelayMs);
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (shutdown) {
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> {
+                flushScheduled.set(false);
+                try {
+                    flushAll();
+                } catch (Exception e) {
+                    // Already back in the buffer with a retry scheduled
+                    logger.debug("Scheduled session flush failed: {}", e.getMessage());
+                }
+            }, Instant.now().plusMillis(delayMs));
+        }
+    }
+
+    /* Put what failed to write back under any newer updates and retry it after a backoff */
+    private void requeue(Map<String, PendingUpdate> batch, Map<String, List<SessionEvent>> events, Exception failure) {
+        batch.forEach((sessionId, failed) -> pending.merge(sessionId, failed, PendingUpdate::over));
+        events.forEach((sessionId, failed) -> pendingEvents.merge(sessionId, failed, (newer, older) -> concat(older, newer)));
+        failedFlushCount.incrementAndGet();
+        int failures = consecutiveFailures.incrementAndGet();
+        long delayMs = Math.min(MAX_RETRY_DELAY_MS, flushDelayMs << Math.min(failures, 16));
+        logger.warn("Failed to flush buffered updates of {} sessions, retrying in {} ms: {}",
+            batch.size() + events.size(), delayMs, failure.getMessage());
+        scheduleFlush(delayMs);
+    }
+
+    /**
+     * Throws if the session documents could not be written; events that fail to append, and sessions
+     * other writers kept changing, are requeued here
+     * @return Sessions requeued because other writers kept changing them
+     */
+    private List<String> write(Map<String, PendingUpdate> batch, Map<String, List<SessionEvent>> eventsOnly) {
+        List<String> written = List.of();
+        List<String> contended = List.of();
+        if (!batch.isEmpty()) {
+            Map<String, Consumer<SessionData>> mutations = new LinkedHashMap<>();
+            batch.forEach((sessionId, update) -> {
+                // A loop's own status must not replace a stop written from another node since it last looked
+                boolean keepStopped = leases.containsKey(sessionId);
+                mutations.put(sessionId, sessionData -> update.applyTo(sessionData, keepStopped));
+            });
+            fencedOff(mutations.keySet()).forEach(mutations::remove);
+
+            SessionService.UpdateResult result = sessionService.applySessionUpdates(mutations);
+            written = result.getWritten();
+            writtenCount.addAndGet(written.size());
+
+            // Sessions that no longer exist won't be written again
+            List<String> stillThere = written;
+            batch.keySet().stream()
+                .filter(id -> !stillThere.contains(id) && !result.getConflicted().contains(id))
+                .forEach(knownStates::remove);
+
+            // Sessions other writers kept changing go back to the buffer, their events with them
+            contended = result.getConflicted();
+            if (!contended.isEmpty()) {
+                Map<String, PendingUpdate> retried = new LinkedHashMap<>();
+                Map<String, List<SessionEvent>> retriedEvents = new LinkedHashMap<>();
+                for (String sessionId : contended) {
+                    retried.put(sessionId, batch.get(sessionId));
+                    if (eventsOnly.containsKey(sessionId)) {
+                        retriedEvents.put(sessionId, eventsOnly.get(sessionId));
+                    }
+                }
+                requeue(retried, retriedEvents, new IllegalStateException("session kept changing under concurrent writers"));
+            }
+        }
+
+        // Events of sessions that are gone would only recreate their log
+        Map<String, List<SessionEvent>> events = new LinkedHashMap<>();
+        written.forEach(sessionId -> events.put(sessionId, batch.get(sessionId).events));
+        List<String> requeued = contended;
+        eventsOnly.forEach((sessionId, sessionEvents) -> {
+            if (!requeued.contains(sessionId)) {
+                events.merge(sessionId, sessionEvents, SessionStatusWriteBuffer::concat);
+            }
+        });
+        events.replaceAll((sessionId, sessionEvents) -> sessionEvents.stream().sorted(SessionEventLog.BY_TIME).toList());
+        try {
+            sessionEventLog.appendAll(events);
+            consecutiveFailures.set(0);
+        } catch (RuntimeException e) {
+            // The documents are written, only their events are retried
+            requeue(Map.of(), events, e);
+        }
+        return contended;
+    }
+
+    /* Sessions whose loop here lost its lock to a loop with a higher fencing token, one MGET for the batch */
+    private List<String> fencedOff(Collection<String> sessionIds) {
+        List<SwapLease> fenced = sessionIds.stream().map(leases::get).filter(Objects::nonNull).toList();
+        if (fenced.isEmpty()) {
+            return List.of();
+        }
+        List<String> holders = swapLockService.getLockHolders(fenced.stream().map(SwapLease::getSessionId).toList());
+        List<String> superseded = new ArrayList<>();
+        for (int i = 0; i < fenced.size(); i++) {
+            SwapLease lease = fenced.get(i);
+            if (swapLockService.isSupersededBy(lease, holders.get(i))) {
+                logger.warn("Dropping status write for session {}: fencing token {} superseded by lock {}",
+                    lease.getSessionId(), lease.getFencingToken(), holders.get(i));
+                fencedCount.incrementAndGet();
+                superseded.add(lease.getSessionId());
+            }
+        }
+        return superseded;
+    }
+
+    private static List<SessionEvent> concat(List<SessionEvent> first, List<SessionEvent> then) {
+        List<SessionEvent> all = new ArrayList<>(first);
+        all.addAll(then);
+        return all;
+    }
+
+    private static ModuleStatus copyOf(ModuleStatus module) {
+        List<String> newIndexes = module.getNewIndexes() == null ? null : new ArrayList<>(module.getNewIndexes());
+        return new ModuleStatus(module.getOldIndex(), newIndexes, module.isSwapped(), module.getMessage());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        try {
+            flushAll();
+        } catch (Exception e) {
+            logger.warn("Failed to flush session updates on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /* Field updates merged for one session */
+    private static class PendingUpdate {
+        private String status;
+        private String message;
+        private Long swapStartedAt;
+        private List<ModuleStatus> modules;
+        private final Map<Integer, ModuleStatus> moduleUpdates = new TreeMap<>();
+        private int cyclesCompleted;
+        private Long lastAttemptAt;
+        private Long lastAttemptMs;
+        private Integer queuePosition;
+        private Long estimatedStartAt;
+        private final List<SessionEvent> events = new ArrayList<>();
+
+        /* This (newer) update laid over an older one that failed to write; this one's fields win */
+        private static PendingUpdate over(PendingUpdate newer, PendingUpdate older) {
+            if (newer.status == null) {
+                newer.status = older.status;
+                newer.queuePosition = older.queuePosition;
+                newer.estimatedStartAt = older.estimatedStartAt;
+            }
+            if (newer.message == null) {
+                newer.message = older.message;
+            }
+            if (newer.swapStartedAt == null) {
+                newer.swapStartedAt = older.swapStartedAt;
+            }
+            // A newer module list replaces the older one along with its per-module updates
+            if (newer.modules == null) {
+                newer.modules = older.modules;
+                Map<Integer, ModuleStatus> newerUpdates = new TreeMap<>(newer.moduleUpdates);
+                newer.moduleUpdates.clear();
+                newer.moduleUpdates.putAll(older.moduleUpdates);
+                newer.moduleUpdates.putAll(newerUpdates);
+            }
+            newer.cyclesCompleted += older.cyclesCompleted;
+            if (newer.lastAttemptAt == null) {
+                newer.lastAttemptAt = older.lastAttemptAt;
+                newer.lastAttemptMs = older.lastAttemptMs;
+            }
+            newer.events.addAll(0, older.events);
+            return newer;
+        }
+
+        private void applyTo(SessionData sessionData, boolean keepStopped) {
+            boolean stopped = keepStopped && Constants.SwapStatus.STOPPED.equals(sessionData.getSwapStatus());
+            if (status != null && !stopped) {
+                sessionData.setSwapStatus(status);
+                // Queue fields only mean something while Queued
+                boolean queued = Constants.SwapStatus.QUEUED.equals(status);
+                sessionData.setQueuePosition(queued ? queuePosition : null);
+                sessionData.setEstimatedStartAt(queued ? estimatedStartAt : null);
+            }
+            if (message != null && !stopped) {
+                sessionData.setSwapMessage(message);
+            }
+            if (swapStartedAt != null) {
+                sessionData.setSwapStartedAt(swapStartedAt);
+            }
+            if (modules != null) {
+                sessionData.setModules(new ArrayList<>(modules));
+            }
+            if (cyclesCompleted > 0) {
+                sessionData.setSwapCycles(sessionData.getSwapCycles() + cyclesCompleted);
+                sessionData.setLastAttemptAt(lastAttemptAt);
+                sessionData.setLastAttemptMs(lastAttemptMs);
+            }
+            List<ModuleStatus> current = sessionData.getModules();
+            if (current != null) {
+                moduleUpdates.forEach((idx, module) -> {
+                    if (idx >= 0 && idx < current.size()) {
+                        current.set(idx, module);
+                    }
+                });
+            }
+        }
+    }
+
+    /* Latest accepted values for one session */
+    private static class KnownState {
+        private String status;
+        private String message;
+        private final Map<Integer, ModuleStatus> modules = new HashMap<>();
+    }
+}
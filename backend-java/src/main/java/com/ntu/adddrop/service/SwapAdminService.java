@@ -0,0 +1,98 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.util.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/* Operator view over the swaps of all nodes, built from Redis rather than this node's memory */
+@Service
+public class SwapAdminService {
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SwapLockService swapLockService;
+
+    @Value("${app.admin.scan-batch-size:500}")
+    private int scanBatchSize;
+
+    /**
+     * Emit one row per session in the given swap status, batch by batch as the keyspace is scanned
+     * @param statuses Swap statuses to include, or null for every session
+     * @param rowConsumer Receives each row
+     * @param batchDone Called after each batch so callers can flush
+     */
+    public void streamSwaps(Set<String> statuses, Consumer<Map<String, Object>> rowConsumer, Runnable batchDone) {
+        sessionService.scanSessions(scanBatchSize, batch -> {
+            List<String> sessionIds = new ArrayList<>();
+            batch.forEach((sessionId, sessionData) -> {
+                if (statuses == null || statuses.contains(sessionData.getSwapStatus())) {
+                    sessionIds.add(sessionId);
+                }
+            });
+            if (sessionIds.isEmpty()) {
+                return;
+            }
+
+            List<String> lockHolders = swapLockService.getLockHolders(sessionIds);
+            for (int i = 0; i < sessionIds.size(); i++) {
+                String sessionId = sessionIds.get(i);
+                rowConsumer.accept(toRow(sessionId, batch.get(sessionId), lockHolders.get(i)));
+            }
+            batchDone.run();
+        });
+    }
+
+    private Map<String, Object> toRow(String sessionId, SessionData sessionData, String lockHolder) {
+        List<ModuleStatus> modules = sessionData.getModules() != null ? sessionData.getModules() : List.of();
+        List<Map<String, Object>> moduleRows = new ArrayList<>();
+        for (ModuleStatus module : modules) {
+            Map<String, Object> moduleRow = new LinkedHashMap<>();
+            moduleRow.put("old_index", module.getOldIndex());
+            moduleRow.put("new_indexes", module.getNewIndexes());
+            moduleRow.put("swapped", module.isSwapped());
+            moduleRow.put("message", module.getMessage());
+            moduleRows.add(moduleRow);
+        }
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("session_id", sessionId);
+        row.put("username", sessionData.getUsername());
+        row.put("status", sessionData.getSwapStatus());
+        row.put("message", sessionData.getSwapMessage());
+        row.put("swap_started_at", sessionData.getSwapStartedAt());
+        row.put("modules_swapped", modules.stream().filter(ModuleStatus::isSwapped).count());
+        row.put("modules_total", modules.size());
+        row.put("modules", moduleRows);
+        row.put("cycles", sessionData.getSwapCycles());
+        row.put("last_attempt_at", sessionData.getLastAttemptAt());
+        row.put("last_attempt_ms", sessionData.getLastAttemptMs());
+        row.put("queue_position", sessionData.getQueuePosition());
+        row.put("status_version", sessionData.getStatusVersion());
+
+        // Lock value is "<owner node>:<fencing token>", a Processing session without one has no live loop
+        row.put("lock_owner", lockHolder != null ? lockHolder.substring(0, lockHolder.lastIndexOf(':')) : null);
+        row.put("fencing_token", lockHolder != null ? Long.parseLong(lockHolder.substring(lockHolder.lastIndexOf(':') + 1)) : null);
+        row.put("running_here", swapLockService.isHeldLocally(sessionId));
+        return row;
+    }
+
+    /* Normalizes the status filter: default every swap still to finish (Queued and Processing), "all" for every session */
+    public static Set<String> statusFilter(String status) {
+        if (status == null || status.isBlank()) {
+            return Set.of(Constants.SwapStatus.QUEUED, Constants.SwapStatus.PROCESSING);
+        }
+        return "all".equalsIgnoreCase(status) ? null : Set.of(status);
+    }
+}
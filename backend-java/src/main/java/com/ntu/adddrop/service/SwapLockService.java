@@ -0,0 +1,216 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis-based lease lock that guarantees a single swap loop per session across all nodes.
+ * Every acquisition gets a fencing token from a global counter, and the lease is renewed
+ * in the background while the loop runs. A loop that loses its lease must stop, and the status
+ * writes it still has buffered are dropped once a loop with a higher token holds the lock.
+ */
+@Service
+public class SwapLockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwapLockService.class);
+
+    private static final String FENCING_COUNTER_KEY = Constants.Session.SWAP_LOCK_PREFIX + "fencing_counter";
+
+    // Only extend / delete the lock if we still own it (value = owner:token)
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+        "  return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+        "else return 0 end",
+        Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+        "  return redis.call('del', KEYS[1]) " +
+        "else return 0 end",
+        Long.class);
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.swap.lock.lease-seconds:30}")
+    private long leaseSeconds;
+
+    @Value("${app.swap.lock.renew-interval-seconds:10}")
+    private long renewIntervalSeconds;
+
+    // Identifies this node as the lock owner
+    private final String ownerId = UUID.randomUUID().toString();
+
+    // Leases currently held by this node
+    private final Map<String, SwapLease> heldLeases = new ConcurrentHashMap<>();
+
+
+    /**
+     * Try to acquire the swap lease for a session
+     * @param sessionId Unique Session Identifier
+     * @return the lease, or empty if another loop already holds it
+     */
+    public Optional<SwapLease> tryAcquire(String sessionId) {
+        String key = lockKey(sessionId);
+        long fencingToken = redisTemplate.opsForValue().increment(FENCING_COUNTER_KEY);
+        String lockValue = ownerId + ":" + fencingToken;
+
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(key, lockValue, Duration.ofSeconds(leaseSeconds));
+        if (!Boolean.TRUE.equals(acquired)) {
+            logger.info("Swap lock already held for session: {}", sessionId);
+            return Optional.empty();
+        }
+
+        SwapLease lease = new SwapLease(sessionId, fencingToken, lockValue);
+        lease.renewal = taskScheduler.scheduleAtFixedRate(
+            () -> renew(lease), Instant.now().plusSeconds(renewIntervalSeconds), Duration.ofSeconds(renewIntervalSeconds));
+        heldLeases.put(sessionId, lease);
+
+        logger.info("Acquired swap lock for session: {} with fencing token {}", sessionId, fencingToken);
+        return Optional.of(lease);
+    }
+
+    /* Check against Redis that the lease has not been lost or taken over by a newer token */
+    public boolean isStillHeld(SwapLease lease) {
+        if (lease.isLost()) {
+            return false;
+        }
+        try {
+            String current = redisTemplate.opsForValue().get(lockKey(lease.getSessionId()));
+            if (!lease.lockValue.equals(current)) {
+                markLost(lease);
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            // Redis unreachable: keep running on the local view until the lease runs out
+            logger.warn("Could not verify swap lock for session: {}: {}", lease.getSessionId(), e.getMessage());
+            return !lease.isLost();
+        }
+    }
+
+    /* Check whether this node currently holds a lease for the session */
+    public boolean isHeldLocally(String sessionId) {
+        return heldLeases.containsKey(sessionId);
+    }
+
+    /* Current lock values ("owner:fencingToken") for several sessions in one MGET, null where no lock is held */
+    public List<String> getLockHolders(List<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return List.of();
+        }
+        List<String> holders = redisTemplate.opsForValue().multiGet(sessionIds.stream().map(this::lockKey).toList());
+        return holders != null ? holders : Collections.nCopies(sessionIds.size(), null);
+    }
+
+    /* Whether a lock value read from Redis belongs to a newer loop than the lease's */
+    public boolean isSupersededBy(SwapLease lease, String holder) {
+        if (holder == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(holder.substring(holder.lastIndexOf(':') + 1)) > lease.getFencingToken();
+        } catch (NumberFormatException e) {
+            return !holder.equals(lease.lockValue);
+        }
+    }
+
+    /* Release the lease if it is still ours */
+    public void release(SwapLease lease) {
+        cancelRenewal(lease);
+        heldLeases.remove(lease.getSessionId(), lease);
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey(lease.getSessionId())), lease.lockValue);
+            logger.info("Released swap lock for session: {}", lease.getSessionId());
+        } catch (Exception e) {
+            logger.warn("Failed to release swap lock for session: {}: {}", lease.getSessionId(), e.getMessage());
+        }
+    }
+
+    private void renew(SwapLease lease) {
+        try {
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(lockKey(lease.getSessionId())),
+                lease.lockValue, String.valueOf(TimeUnit.SECONDS.toMillis(leaseSeconds)));
+            if (renewed == null || renewed == 0) {
+                markLost(lease);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to renew swap lock for session: {}: {}", lease.getSessionId(), e.getMessage());
+        }
+    }
+
+    private void markLost(SwapLease lease) {
+        if (!lease.lost) {
+            logger.warn("Swap lock lost for session: {} (fencing token {})", lease.getSessionId(), lease.getFencingToken());
+        }
+        lease.lost = true;
+        cancelRenewal(lease);
+        heldLeases.remove(lease.getSessionId(), lease);
+    }
+
+    private void cancelRenewal(SwapLease lease) {
+        ScheduledFuture<?> renewal = lease.renewal;
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+    }
+
+    private String lockKey(String sessionId) {
+        return Constants.Session.SWAP_LOCK_PREFIX + sessionId;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heldLeases.values().forEach(this::release);
+    }
+
+    /* Lease handle held by a running swap loop */
+    public static class SwapLease {
+        private final String sessionId;
+        private final long fencingToken;
+        private final String lockValue;
+        private volatile boolean lost;
+        private volatile ScheduledFuture<?> renewal;
+
+        private SwapLease(String sessionId, long fencingToken, String lockValue) {
+            this.sessionId = sessionId;
+            this.fencingToken = fencingToken;
+            this.lockValue = lockValue;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        public boolean isLost() {
+            return lost;
+        }
+    }
+}
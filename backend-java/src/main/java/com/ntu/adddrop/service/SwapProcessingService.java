@@ -3,15 +3,20 @@ package com.ntu.adddrop.service;
 import com.ntu.adddrop.exception.SwapProcessingException;
 import com.ntu.adddrop.model.SessionData;
 import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.selenium.WebDriverManager;
+import com.ntu.adddrop.service.SwapLockService.SwapLease;
 import com.ntu.adddrop.util.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -30,14 +35,67 @@ public class SwapProcessingService {
     @Autowired
     private SeleniumService seleniumService;
     
+    @Autowired
+    private SwapLockService swapLockService;
+    
+    @Autowired
+    private SessionStatusWriteBuffer sessionWriteBuffer;
+    
+    @Autowired
+    private ReactiveSessionService reactiveSessionService;
+    
+    @Autowired
+    private WebDriverManager webDriverManager;
+    
+    @Autowired
+    private DemandIndexService demandIndexService;
+    
+    @Autowired
+    private PreLoginService preLoginService;
+    
     // Track running swap processes
     private final Map<String, CompletableFuture<Void>> runningSwaps = new ConcurrentHashMap<>();
     
     /**
      * Initialize swap data in session and start processing
      * Implements FastAPI initialize_swap_in_session + thread.start()
+     * @return Where the swap starts in the queue for a browser on this node
+     * @throws SwapProcessingException.QueueFullException if the browser queue can't take another session
      */
-    public void startSwapProcess(String sessionId, List<SwapItem> swapItems) {
+    public QueueTicket startSwapProcess(String sessionId, List<SwapItem> swapItems) {
+        // Fast path: a loop for this session is already running on this node
+        if (runningSwaps.containsKey(sessionId) || swapLockService.isHeldLocally(sessionId)) {
+            throw new SwapProcessingException.SwapAlreadyRunningException(sessionId);
+        }
+        
+        // Turn the swap away now rather than start a loop the browser queue would reject
+        int waitingForThread = seleniumService.getQueuedLoopCount();
+        if (webDriverManager.isQueueFull(sessionId, waitingForThread)) {
+            long retryAfterSeconds = Math.max(1, (webDriverManager.estimatedWaitMillis(1) + 999) / 1000);
+            throw new SwapProcessingException.QueueFullException(sessionId, retryAfterSeconds);
+        }
+        
+        // Cluster-wide guard: only one loop per session may hold the lease
+        SwapLease lease = swapLockService.tryAcquire(sessionId)
+            .orElseThrow(() -> new SwapProcessingException.SwapAlreadyRunningException(sessionId));
+        
+        // Track the swap before anything can complete it, so its cleanup always finds this entry
+        CompletableFuture<Void> swapFuture = new CompletableFuture<>();
+        if (runningSwaps.putIfAbsent(sessionId, swapFuture) != null) {
+            swapLockService.release(lease);
+            throw new SwapProcessingException.SwapAlreadyRunningException(sessionId);
+        }
+        swapFuture.whenComplete((result, throwable) -> {
+            // Clean up when done
+            runningSwaps.remove(sessionId, swapFuture);
+            // A stopped swap already has its status
+            if (throwable != null && !(throwable instanceof CancellationException)) {
+                logger.error("Swap process failed for session: {}: {}", sessionId, throwable.getMessage());
+                sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.ERROR, 
+                    "Swap process failed: " + throwable.getMessage());
+            }
+        });
+        
         try {
             logger.info("Starting swap process for session: {} with {} modules", sessionId, swapItems.size());
             
@@ -53,28 +111,39 @@ public class SwapProcessingService {
             }
             
             // Initialize swap data in session (matches your initialize_swap_in_session)
-            sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.PROCESSING, 
-                "Your swap request is being processed");
-            sessionService.updateModules(sessionId, modules);
+            // Both updates are merged into a single write, flushed before the loop reads them
+            int queuePosition = webDriverManager.expectedQueuePosition(sessionId, seleniumService.getQueuedLoopCount());
+            long estimatedStartAt = System.currentTimeMillis() / 1000;
+            if (queuePosition > 0) {
+                estimatedStartAt = seleniumService.reportQueuePosition(sessionId, queuePosition);
+            } else {
+                sessionWriteBuffer.updateOverallSwapStatus(sessionId, Constants.SwapStatus.PROCESSING, 
+                    "Your swap request is being processed");
+            }
+            sessionWriteBuffer.updateModules(sessionId, modules);
+            sessionWriteBuffer.flush(sessionId);
             
-            // Start async swap process (matches your threading.Thread)
-            CompletableFuture<Void> swapFuture = seleniumService.performSwapsAsync(sessionId)
-                .whenComplete((result, throwable) -> {
-                    // Clean up when done
-                    runningSwaps.remove(sessionId);
-                    if (throwable != null) {
-                        logger.error("Swap process failed for session: {}: {}", sessionId, throwable.getMessage());
-                        sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.ERROR, 
-                            "Swap process failed: " + throwable.getMessage());
-                    }
-                });
+            // Make this session findable by the indexes it is waiting for
+            demandIndexService.register(sessionId, swapItems);
             
-            // Track the running swap
-            runningSwaps.put(sessionId, swapFuture);
+            // Start async swap process (matches your threading.Thread)
+            // The lease is released by the loop itself once it exits
+            seleniumService.performSwapsAsync(sessionId, lease).whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    swapFuture.completeExceptionally(throwable);
+                } else {
+                    swapFuture.complete(null);
+                }
+            });
             
             logger.info("Swap process started successfully for session: {}", sessionId);
+            return new QueueTicket(queuePosition, estimatedStartAt);
             
         } catch (Exception e) {
+            // A status that couldn't be written must not be retried for a loop that never started
+            runningSwaps.remove(sessionId, swapFuture);
+            sessionWriteBuffer.discard(sessionId);
+            swapLockService.release(lease);
             logger.error("Failed to start swap process for session: {}: {}", sessionId, e.getMessage(), e);
             throw new SwapProcessingException(sessionId, "Failed to start swap process: " + e.getMessage(), e);
         }
@@ -85,12 +154,13 @@ public class SwapProcessingService {
         try {
             logger.info("Stopping swap process for session: {}", sessionId);
             
-            // Cancel running swap
-            CompletableFuture<Void> runningSwap = runningSwaps.get(sessionId);
+            // Cancel running swap and wake its worker thread
+            CompletableFuture<Void> runningSwap = runningSwaps.remove(sessionId);
             if (runningSwap != null) {
                 runningSwap.cancel(true);
-                runningSwaps.remove(sessionId);
             }
+            seleniumService.interruptSwap(sessionId);
+            demandIndexService.unregisterSession(sessionId);
             
             // Update status and cleanup
             seleniumService.stopSwap(sessionId);
@@ -103,18 +173,34 @@ public class SwapProcessingService {
         }
     }
     
+    /**
+     * Stop everything this node runs for a session whose data is already gone (expired or deleted).
+     * Unlike stopSwapProcess no status is written, there is nothing left to write it to.
+     */
+    public void terminateSession(String sessionId) {
+        CompletableFuture<Void> runningSwap = runningSwaps.remove(sessionId);
+        if (runningSwap != null) {
+            runningSwap.cancel(true);
+        }
+        seleniumService.interruptSwap(sessionId);
+        demandIndexService.unregisterSession(sessionId);
+        preLoginService.discard(sessionId);
+        if (webDriverManager.hasDriver(sessionId)) {
+            webDriverManager.closeDriver(sessionId);
+        }
+        sessionWriteBuffer.discard(sessionId);
+    }
+    
+    /* Sessions with a swap loop running on this node */
+    public Set<String> getRunningSessionIds() {
+        return Set.copyOf(runningSwaps.keySet());
+    }
+    
     /* Get swap status for a session */
     public SwapStatusResponse getSwapStatus(String sessionId) {
         try {
             SessionData sessionData = sessionService.getSecureSession(sessionId);
-            
-            SwapStatusResponse response = new SwapStatusResponse();
-            response.setStatus(sessionData.getSwapStatus());
-            response.setMessage(sessionData.getSwapMessage());
-            response.setDetails(sessionData.getModules());
-            response.setStartedAt(sessionData.getSwapStartedAt());
-            
-            return response;
+            return toStatusResponse(sessionData);
             
         } catch (Exception e) {
             logger.error("Error getting swap status for session: {}: {}", sessionId, e.getMessage());
@@ -122,6 +208,28 @@ public class SwapProcessingService {
         }
     }
     
+    /* Non-blocking version of getSwapStatus for the polling endpoint */
+    public Mono<SwapStatusResponse> getSwapStatusReactive(String sessionId) {
+        return reactiveSessionService.getSecureSession(sessionId)
+            .map(this::toStatusResponse)
+            .onErrorMap(e -> {
+                logger.error("Error getting swap status for session: {}: {}", sessionId, e.getMessage());
+                return new SwapProcessingException(sessionId, "Failed to get swap status: " + e.getMessage(), e);
+            });
+    }
+    
+    private SwapStatusResponse toStatusResponse(SessionData sessionData) {
+        SwapStatusResponse response = new SwapStatusResponse();
+        response.setStatus(sessionData.getSwapStatus());
+        response.setMessage(sessionData.getSwapMessage());
+        response.setDetails(sessionData.getModules());
+        response.setStartedAt(sessionData.getSwapStartedAt());
+        response.setVersion(sessionData.getStatusVersion());
+        response.setQueuePosition(sessionData.getQueuePosition());
+        response.setEstimatedStartAt(sessionData.getEstimatedStartAt());
+        return response;
+    }
+    
     /* Check if swap is currently running */
     public boolean isSwapRunning(String sessionId) {
         return runningSwaps.containsKey(sessionId) || seleniumService.isSwapRunning(sessionId);
@@ -168,6 +276,9 @@ public class SwapProcessingService {
         private String message;
         private List<ModuleStatus> details;
         private Long startedAt;
+        private long version;
+        private Integer queuePosition;
+        private Long estimatedStartAt;
         
         // Getters and setters
         public String getStatus() {
@@ -201,5 +312,52 @@ public class SwapProcessingService {
         public void setStartedAt(Long startedAt) {
             this.startedAt = startedAt;
         }
+        
+        public long getVersion() {
+            return version;
+        }
+        
+        public void setVersion(long version) {
+            this.version = version;
+        }
+        
+        public Integer getQueuePosition() {
+            return queuePosition;
+        }
+        
+        public void setQueuePosition(Integer queuePosition) {
+            this.queuePosition = queuePosition;
+        }
+        
+        public Long getEstimatedStartAt() {
+            return estimatedStartAt;
+        }
+        
+        public void setEstimatedStartAt(Long estimatedStartAt) {
+            this.estimatedStartAt = estimatedStartAt;
+        }
+    }
+    
+    /* Queue ticket handed out at submission: 0 means the swap starts right away */
+    public static class QueueTicket {
+        private final int position;
+        private final long estimatedStartAt;
+        
+        public QueueTicket(int position, long estimatedStartAt) {
+            this.position = position;
+            this.estimatedStartAt = estimatedStartAt;
+        }
+        
+        public int getPosition() {
+            return position;
+        }
+        
+        public long getEstimatedStartAt() {
+            return estimatedStartAt;
+        }
+        
+        public boolean isQueued() {
+            return position > 0;
+        }
     }
 }
\ No newline at end of file
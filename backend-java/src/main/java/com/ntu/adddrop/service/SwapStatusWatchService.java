@@ -0,0 +1,144 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.util.Constants;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Tracks per-session status versions and parks long-poll requests until the version moves.
+ * Writes on this node wake waiters immediately; writes from other nodes are picked up by a
+ * periodic MGET of the version keys of parked sessions only.
+ */
+@Service
+public class SwapStatusWatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwapStatusWatchService.class);
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+
+    @Value("${app.swap.status.recheck-interval-ms:1000}")
+    private long recheckIntervalMs;
+
+    // Parked long-poll requests per session
+    private final Map<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    private volatile ScheduledFuture<?> recheck;
+
+    @PostConstruct
+    public void start() {
+        recheck = taskScheduler.scheduleWithFixedDelay(this::recheckParkedSessions,
+            Instant.now().plusMillis(recheckIntervalMs), Duration.ofMillis(recheckIntervalMs));
+    }
+
+    /* Current status version of a session, -1 if unknown */
+    public Mono<Long> currentVersion(String sessionId) {
+        return reactiveRedisTemplate.opsForValue().get(Constants.Session.STATUS_VERSION_PREFIX + sessionId)
+            .map(Long::parseLong)
+            .defaultIfEmpty(-1L);
+    }
+
+    /**
+     * Wait until the status version of a session is greater than sinceVersion
+     * @param sessionId Unique Session Identifier
+     * @param sinceVersion Version the client already has
+     * @param timeout Maximum time to park the request
+     * @return true once the version has moved, false if the timeout expired first
+     */
+    public Mono<Boolean> awaitVersionAfter(String sessionId, long sinceVersion, Duration timeout) {
+        Waiter waiter = new Waiter(sinceVersion);
+
+        // Register before reading so a write in between can't be missed
+        waiters.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(waiter);
+
+        return currentVersion(sessionId)
+            .flatMap(version -> {
+                waiter.offer(version);
+                return waiter.sink.asMono();
+            })
+            .timeout(timeout, Mono.just(false))
+            .doFinally(signal -> unregister(sessionId, waiter));
+    }
+
+    /* Called after a session write on this node */
+    public void publish(String sessionId, long version) {
+        Set<Waiter> parked = waiters.get(sessionId);
+        if (parked != null) {
+            parked.forEach(waiter -> waiter.offer(version));
+        }
+    }
+
+    private void recheckParkedSessions() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        try {
+            List<String> sessionIds = new ArrayList<>(waiters.keySet());
+            List<String> keys = sessionIds.stream().map(id -> Constants.Session.STATUS_VERSION_PREFIX + id).toList();
+            List<String> versions = redisTemplate.opsForValue().multiGet(keys);
+            if (versions == null) {
+                return;
+            }
+            for (int i = 0; i < sessionIds.size(); i++) {
+                if (versions.get(i) != null) {
+                    publish(sessionIds.get(i), Long.parseLong(versions.get(i)));
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to recheck parked status versions: {}", e.getMessage());
+        }
+    }
+
+    private void unregister(String sessionId, Waiter waiter) {
+        waiters.computeIfPresent(sessionId, (id, parked) -> {
+            parked.remove(waiter);
+            return parked.isEmpty() ? null : parked;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recheck.cancel(false);
+    }
+
+    /* A parked long-poll request */
+    private static class Waiter {
+        private final long sinceVersion;
+        private final Sinks.One<Boolean> sink = Sinks.one();
+
+        private Waiter(long sinceVersion) {
+            this.sinceVersion = sinceVersion;
+        }
+
+        private void offer(long version) {
+            if (version > sinceVersion) {
+                sink.tryEmitValue(true);
+            }
+        }
+    }
+}
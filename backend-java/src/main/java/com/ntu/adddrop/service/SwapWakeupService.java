@@ -0,0 +1,121 @@
+package com.ntu.adddrop.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets a swap loop sleep between cycles but be woken early, on this node or from another one.
+ * Remote wakeups are left as short-lived swap_wake:{id} keys and picked up by a periodic MGET
+ * over the sessions sleeping here.
+ */
+@Service
+public class SwapWakeupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwapWakeupService.class);
+
+    private static final String WAKE_KEY_PREFIX = "swap_wake:";
+    private static final Duration WAKE_KEY_TTL = Duration.ofMinutes(1);
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${app.swap.wakeup.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    // Sleeping loops on this node
+    private final Map<String, CountDownLatch> sleepers = new ConcurrentHashMap<>();
+
+    private volatile ScheduledFuture<?> polling;
+
+    @PostConstruct
+    public void start() {
+        polling = taskScheduler.scheduleWithFixedDelay(this::pollRemoteWakeups,
+            Instant.now().plusMillis(pollIntervalMs), Duration.ofMillis(pollIntervalMs));
+    }
+
+    /**
+     * Sleep until the duration passes or the session is woken
+     * @return true if woken early
+     * @throws InterruptedException if the loop is being stopped
+     */
+    public boolean sleep(String sessionId, Duration duration) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        sleepers.put(sessionId, latch);
+        try {
+            return latch.await(duration.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            sleepers.remove(sessionId, latch);
+        }
+    }
+
+    /* Wake the session's loop wherever it runs */
+    public void wake(String sessionId) {
+        if (wakeLocally(sessionId)) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(WAKE_KEY_PREFIX + sessionId, "1", WAKE_KEY_TTL);
+        } catch (Exception e) {
+            logger.debug("Failed to leave wakeup for session: {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private boolean wakeLocally(String sessionId) {
+        CountDownLatch latch = sleepers.get(sessionId);
+        if (latch == null) {
+            return false;
+        }
+        latch.countDown();
+        return true;
+    }
+
+    private void pollRemoteWakeups() {
+        if (sleepers.isEmpty()) {
+            return;
+        }
+        try {
+            List<String> sessionIds = new ArrayList<>(sleepers.keySet());
+            List<String> keys = sessionIds.stream().map(id -> WAKE_KEY_PREFIX + id).toList();
+            List<String> values = redisTemplate.opsForValue().multiGet(keys);
+            if (values == null) {
+                return;
+            }
+            List<String> consumed = new ArrayList<>();
+            for (int i = 0; i < sessionIds.size(); i++) {
+                if (values.get(i) != null && wakeLocally(sessionIds.get(i))) {
+                    consumed.add(keys.get(i));
+                }
+            }
+            if (!consumed.isEmpty()) {
+                redisTemplate.delete(consumed);
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to poll swap wakeups: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        polling.cancel(false);
+    }
+}
@@ -0,0 +1,99 @@
+package com.ntu.adddrop.timeseries;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Chance that a reading of one index finds a free seat, per hour of the week.
+ * Samples are change points, so each reading counts for the time it held until the next one
+ * (capped, since long gaps mean nobody was looking). Per hour the estimate is the open share of
+ * observed time. A few weeks give each hour of the week only a handful of openings, so it is
+ * shrunk towards the same hour on every day, which in turn is shrunk towards the index's overall
+ * open share, each by a prior worth some seconds of observation. An index without history gets
+ * a flat forecast. The mean time a seat stays open, which decides how often it is worth
+ * looking, is the open time divided by the number of closed-to-open changes.
+ */
+public class VacancyForecast {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+
+    private static final long MAX_HOLD_SECONDS = 15 * 60;
+    private static final double HOUR_OF_DAY_PRIOR_SECONDS = 2 * 3600;
+    private static final double OVERALL_PRIOR_SECONDS = 600;
+    private static final double DEFAULT_OPEN_SECONDS = 300;
+
+    private final double[] probabilities;
+    private final double meanOpenSeconds;
+    private final ZoneId zone;
+    private final long samples;
+
+    private VacancyForecast(double[] probabilities, double meanOpenSeconds, ZoneId zone, long samples) {
+        this.probabilities = probabilities;
+        this.meanOpenSeconds = meanOpenSeconds;
+        this.zone = zone;
+        this.samples = samples;
+    }
+
+    public static VacancyForecast fromSeries(VacancySeries series, ZoneId zone) {
+        double[] observed = new double[HOURS_PER_WEEK];
+        double[] open = new double[HOURS_PER_WEEK];
+        long openings = 0;
+        long[] times = series.times();
+        for (int i = 0; i < series.size(); i++) {
+            long hold = i + 1 < series.size() ? Math.min(times[i + 1] - times[i], MAX_HOLD_SECONDS) : MAX_HOLD_SECONDS;
+            int hour = hourOfWeek(Instant.ofEpochSecond(times[i]), zone);
+            observed[hour] += hold;
+            if (series.vacancies()[i] > 0) {
+                open[hour] += hold;
+                if (i > 0 && series.vacancies()[i - 1] == 0) {
+                    openings++;
+                }
+            }
+        }
+
+        double totalOpen = Arrays.stream(open).sum();
+        double totalObserved = Arrays.stream(observed).sum();
+        double mean = totalObserved > 0 ? totalOpen / totalObserved : 0.5;
+
+        double[] dayOpen = new double[24];
+        double[] dayObserved = new double[24];
+        for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+            dayOpen[hour % 24] += open[hour];
+            dayObserved[hour % 24] += observed[hour];
+        }
+
+        double[] probabilities = new double[HOURS_PER_WEEK];
+        for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+            double day = (dayOpen[hour % 24] + OVERALL_PRIOR_SECONDS * mean) / (dayObserved[hour % 24] + OVERALL_PRIOR_SECONDS);
+            probabilities[hour] = (open[hour] + HOUR_OF_DAY_PRIOR_SECONDS * day) / (observed[hour] + HOUR_OF_DAY_PRIOR_SECONDS);
+        }
+        double meanOpenSeconds = openings > 0 ? totalOpen / openings : DEFAULT_OPEN_SECONDS;
+        return new VacancyForecast(probabilities, meanOpenSeconds, zone, series.size());
+    }
+
+    public static VacancyForecast flat(ZoneId zone) {
+        double[] probabilities = new double[HOURS_PER_WEEK];
+        Arrays.fill(probabilities, 0.5);
+        return new VacancyForecast(probabilities, DEFAULT_OPEN_SECONDS, zone, 0);
+    }
+
+    public double probabilityAt(Instant instant) {
+        return probabilities[hourOfWeek(instant, zone)];
+    }
+
+    public double getMeanOpenSeconds() {
+        return meanOpenSeconds;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    static int hourOfWeek(Instant instant, ZoneId zone) {
+        ZonedDateTime time = instant.atZone(zone);
+        return (time.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue()) * 24 + time.getHour();
+    }
+}
@@ -0,0 +1,59 @@
+package com.ntu.adddrop.timeseries;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Builds and caches a VacancyForecast per index from the recorded vacancy history */
+@Service
+public class VacancyForecaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(VacancyForecaster.class);
+
+    @Autowired
+    private VacancyHistoryService vacancyHistoryService;
+
+    @Value("${app.swap.scheduler.zone:Asia/Singapore}")
+    private String zone;
+
+    @Value("${app.swap.scheduler.lookback-days:28}")
+    private long lookbackDays;
+
+    @Value("${app.swap.scheduler.model-refresh-minutes:30}")
+    private long refreshMinutes;
+
+    private final Map<String, CachedForecast> cache = new ConcurrentHashMap<>();
+
+    public VacancyForecast forecast(String index) {
+        long now = System.currentTimeMillis();
+        CachedForecast cached = cache.get(index);
+        if (cached != null && now < cached.expiresAt) {
+            return cached.forecast;
+        }
+
+        VacancyForecast forecast;
+        try {
+            long to = now / 1000;
+            long from = to - Duration.ofDays(lookbackDays).toSeconds();
+            forecast = VacancyForecast.fromSeries(vacancyHistoryService.query(index, from, to), getZone());
+        } catch (Exception e) {
+            logger.debug("No vacancy history for index {}, using a flat forecast: {}", index, e.getMessage());
+            forecast = cached != null ? cached.forecast : VacancyForecast.flat(getZone());
+        }
+        cache.put(index, new CachedForecast(forecast, now + Duration.ofMinutes(refreshMinutes).toMillis()));
+        return forecast;
+    }
+
+    public ZoneId getZone() {
+        return ZoneId.of(zone);
+    }
+
+    private record CachedForecast(VacancyForecast forecast, long expiresAt) {}
+}
@@ -0,0 +1,196 @@
+package com.ntu.adddrop.timeseries;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * History of observed vacancies per course index.
+ * Readings land in an in-memory ring buffer per index and are periodically compacted to Redis,
+ * appended as delta-encoded chunks to one string per index per UTC day
+ * (vacancy_history:{index}:{epochDay}), which expire after the retention period.
+ * Queries merge the stored days with whatever has not been compacted yet.
+ */
+@Service
+public class VacancyHistoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VacancyHistoryService.class);
+
+    private static final String KEY_PREFIX = "vacancy_history:";
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private RedisTemplate<String, byte[]> bytesRedisTemplate;
+
+    @Value("${app.vacancy-history.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.vacancy-history.buffer-capacity:256}")
+    private int bufferCapacity;
+
+    @Value("${app.vacancy-history.min-interval-seconds:10}")
+    private long minIntervalSeconds;
+
+    @Value("${app.vacancy-history.compact-interval-seconds:60}")
+    private long compactIntervalSeconds;
+
+    @Value("${app.vacancy-history.retention-days:30}")
+    private long retentionDays;
+
+    private final Map<String, VacancyRingBuffer> buffers = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong compactedSamples = new AtomicLong();
+    private final AtomicLong compactedBytes = new AtomicLong();
+
+    private volatile ScheduledFuture<?> compaction;
+
+    @PostConstruct
+    public void start() {
+        compaction = taskScheduler.scheduleWithFixedDelay(this::compactSafely,
+            Instant.now().plusSeconds(compactIntervalSeconds), Duration.ofSeconds(compactIntervalSeconds));
+    }
+
+    /**
+     * Record one dropdown read
+     * @param readings Course index -> {vacancies, waitlist}
+     */
+    public void recordAll(Map<String, int[]> readings) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        readings.forEach((index, reading) -> {
+            VacancyRingBuffer buffer = buffers.computeIfAbsent(index, id -> new VacancyRingBuffer(bufferCapacity, minIntervalSeconds));
+            if (buffer.add(now, reading[0], reading[1])) {
+                recorded.incrementAndGet();
+            } else {
+                deduplicated.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Samples for an index in [from, to)
+     * @param from Epoch seconds, inclusive
+     * @param to Epoch seconds, exclusive
+     */
+    public VacancySeries query(String index, long from, long to) {
+        List<String> keys = new ArrayList<>();
+        for (long day = Math.floorDiv(from, SECONDS_PER_DAY); day <= Math.floorDiv(to - 1, SECONDS_PER_DAY); day++) {
+            keys.add(KEY_PREFIX + index + ":" + day);
+        }
+
+        List<VacancySeries> parts = new ArrayList<>();
+        List<byte[]> stored = bytesRedisTemplate.opsForValue().multiGet(keys);
+        if (stored != null) {
+            for (byte[] chunk : stored) {
+                if (chunk != null) {
+                    parts.add(VacancySeries.decode(chunk));
+                }
+            }
+        }
+        VacancyRingBuffer buffer = buffers.get(index);
+        if (buffer != null) {
+            parts.add(buffer.pending());
+        }
+        return VacancySeries.merge(parts).range(from, to);
+    }
+
+    /* Append everything not yet compacted to Redis, one pipelined round trip for all indexes */
+    public void compact() {
+        Map<String, VacancySeries> drained = new LinkedHashMap<>();
+        buffers.forEach((index, buffer) -> {
+            VacancySeries series = buffer.drain();
+            if (!series.isEmpty()) {
+                drained.put(index, series);
+            }
+        });
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        // A drained batch can straddle midnight, split it per day key
+        Map<String, byte[]> chunks = new LinkedHashMap<>();
+        drained.forEach((index, series) -> {
+            long firstDay = Math.floorDiv(series.times()[0], SECONDS_PER_DAY);
+            long lastDay = Math.floorDiv(series.times()[series.size() - 1], SECONDS_PER_DAY);
+            for (long day = firstDay; day <= lastDay; day++) {
+                VacancySeries part = series.range(day * SECONDS_PER_DAY, (day + 1) * SECONDS_PER_DAY);
+                if (!part.isEmpty()) {
+                    chunks.put(KEY_PREFIX + index + ":" + day, part.encode());
+                }
+            }
+        });
+
+        Duration retention = Duration.ofDays(retentionDays);
+        try {
+            bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                chunks.forEach((key, chunk) -> {
+                    // APPEND keeps each write O(chunk), the day key grows in place
+                    byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                    connection.stringCommands().append(rawKey, chunk);
+                    connection.keyCommands().expire(rawKey, retention.toSeconds());
+                });
+                return null;
+            });
+            compactedSamples.addAndGet(drained.values().stream().mapToLong(VacancySeries::size).sum());
+            compactedBytes.addAndGet(chunks.values().stream().mapToLong(chunk -> chunk.length).sum());
+        } catch (Exception e) {
+            // Keep the samples in memory for the next round
+            drained.forEach((index, series) -> buffers.get(index).undoDrain(series.size()));
+            throw e;
+        }
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (Exception e) {
+            logger.warn("Vacancy history compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /* Snapshot of history metrics */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("tracked_indexes", buffers.size());
+        stats.put("buffered_samples", buffers.values().stream().mapToInt(VacancyRingBuffer::size).sum());
+        stats.put("recorded_samples", recorded.get());
+        stats.put("deduplicated_samples", deduplicated.get());
+        stats.put("compacted_samples", compactedSamples.get());
+        stats.put("compacted_bytes", compactedBytes.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compaction.cancel(false);
+        compactSafely();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ntu.adddrop.timeseries;
+
+/**
+ * Fixed-capacity ring of vacancy samples for one course index, stored in parallel primitive arrays.
+ * Samples are numbered by a running sequence so the compactor can take only what it hasn't written yet.
+ * A sample is kept only when the reading changed or minIntervalSeconds passed since the last one.
+ */
+class VacancyRingBuffer {
+
+    private final long[] times;
+    private final int[] vacancies;
+    private final int[] waitlists;
+    private final long minIntervalSeconds;
+
+    // Sequence number of the next sample, and of the first one not yet compacted
+    private long appended;
+    private long compacted;
+
+    VacancyRingBuffer(int capacity, long minIntervalSeconds) {
+        this.times = new long[capacity];
+        this.vacancies = new int[capacity];
+        this.waitlists = new int[capacity];
+        this.minIntervalSeconds = minIntervalSeconds;
+    }
+
+    /* @return false if the sample was dropped as a duplicate */
+    synchronized boolean add(long epochSeconds, int vacancy, int waitlist) {
+        if (appended > 0) {
+            int last = slot(appended - 1);
+            boolean sameReading = vacancies[last] == vacancy && waitlists[last] == waitlist;
+            if (epochSeconds < times[last] || (sameReading && epochSeconds - times[last] < minIntervalSeconds)) {
+                return false;
+            }
+        }
+        int slot = slot(appended);
+        times[slot] = epochSeconds;
+        vacancies[slot] = vacancy;
+        waitlists[slot] = waitlist;
+        appended++;
+
+        // Overwritten samples that were never compacted are lost, keep the cursor inside the ring
+        compacted = Math.max(compacted, appended - times.length);
+        return true;
+    }
+
+    /* Samples not yet compacted, without marking them */
+    synchronized VacancySeries pending() {
+        return copy(compacted, appended);
+    }
+
+    /* Samples not yet compacted, marking them as compacted */
+    synchronized VacancySeries drain() {
+        VacancySeries series = copy(compacted, appended);
+        compacted = appended;
+        return series;
+    }
+
+    /* Put back samples whose compaction failed, unless newer data already pushed them out */
+    synchronized void undoDrain(int count) {
+        compacted = Math.max(appended - times.length, compacted - count);
+    }
+
+    synchronized int size() {
+        return (int) Math.min(appended, times.length);
+    }
+
+    private VacancySeries copy(long from, long to) {
+        int count = (int) (to - from);
+        long[] t = new long[count];
+        int[] v = new int[count];
+        int[] w = new int[count];
+        for (int i = 0; i < count; i++) {
+            int slot = slot(from + i);
+            t[i] = times[slot];
+            v[i] = vacancies[slot];
+            w[i] = waitlists[slot];
+        }
+        return new VacancySeries(t, v, w);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % times.length);
+    }
+}
@@ -0,0 +1,171 @@
+package com.ntu.adddrop.timeseries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Time-ordered vacancy samples as parallel primitive arrays.
+ * Binary form, used for compaction, is one chunk per append: varint count, then per sample the
+ * varint time delta and zigzag varint vacancy / waitlist deltas, all relative to the previous
+ * sample (the first one to zero). Chunks can be concatenated and decoded in one pass.
+ */
+public record VacancySeries(long[] times, int[] vacancies, int[] waitlists) {
+
+    public int size() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+
+    /* Encode as one self-delimiting chunk */
+    public byte[] encode() {
+        byte[] out = new byte[10 + times.length * 3 * 10];
+        int[] position = {0};
+        writeVarint(out, position, times.length);
+        long previousTime = 0;
+        int previousVacancy = 0;
+        int previousWaitlist = 0;
+        for (int i = 0; i < times.length; i++) {
+            writeVarint(out, position, times[i] - previousTime);
+            writeVarint(out, position, zigzag(vacancies[i] - previousVacancy));
+            writeVarint(out, position, zigzag(waitlists[i] - previousWaitlist));
+            previousTime = times[i];
+            previousVacancy = vacancies[i];
+            previousWaitlist = waitlists[i];
+        }
+        return Arrays.copyOf(out, position[0]);
+    }
+
+    /* Decode any number of concatenated chunks */
+    public static VacancySeries decode(byte[] data) {
+        List<long[]> samples = new ArrayList<>();
+        int[] position = {0};
+        while (position[0] < data.length) {
+            long count = readVarint(data, position);
+            long time = 0;
+            long vacancy = 0;
+            long waitlist = 0;
+            for (long i = 0; i < count; i++) {
+                time += readVarint(data, position);
+                vacancy += unzigzag(readVarint(data, position));
+                waitlist += unzigzag(readVarint(data, position));
+                samples.add(new long[]{time, vacancy, waitlist});
+            }
+        }
+        return fromSamples(samples);
+    }
+
+    /* Merge several series by time, a later series wins when two samples share a timestamp */
+    public static VacancySeries merge(List<VacancySeries> parts) {
+        Map<Long, long[]> byTime = new TreeMap<>();
+        for (VacancySeries part : parts) {
+            for (int i = 0; i < part.size(); i++) {
+                byTime.put(part.times[i], new long[]{part.times[i], part.vacancies[i], part.waitlists[i]});
+            }
+        }
+        return fromSamples(new ArrayList<>(byTime.values()));
+    }
+
+    /* Samples with from <= time < to */
+    public VacancySeries range(long from, long to) {
+        List<long[]> samples = new ArrayList<>();
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] >= from && times[i] < to) {
+                samples.add(new long[]{times[i], vacancies[i], waitlists[i]});
+            }
+        }
+        return fromSamples(samples);
+    }
+
+    /**
+     * Downsample into fixed buckets of stepSeconds starting at from.
+     * Each bucket reports min / max / last vacancies and the last waitlist; empty buckets are omitted.
+     */
+    public List<Map<String, Object>> downsample(long from, long stepSeconds) {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        Map<String, Object> current = null;
+        long currentBucket = Long.MIN_VALUE;
+        for (int i = 0; i < times.length; i++) {
+            long bucket = from + ((times[i] - from) / stepSeconds) * stepSeconds;
+            if (bucket != currentBucket) {
+                current = new LinkedHashMap<>();
+                current.put("t", bucket);
+                current.put("min", vacancies[i]);
+                current.put("max", vacancies[i]);
+                current.put("last", vacancies[i]);
+                current.put("waitlist", waitlists[i]);
+                current.put("samples", 0);
+                buckets.add(current);
+                currentBucket = bucket;
+            }
+            current.put("min", Math.min((int) current.get("min"), vacancies[i]));
+            current.put("max", Math.max((int) current.get("max"), vacancies[i]));
+            current.put("last", vacancies[i]);
+            current.put("waitlist", waitlists[i]);
+            current.put("samples", (int) current.get("samples") + 1);
+        }
+        return buckets;
+    }
+
+    /* Raw samples as rows */
+    public List<Map<String, Object>> toRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(times.length);
+        for (int i = 0; i < times.length; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("t", times[i]);
+            row.put("vacancies", vacancies[i]);
+            row.put("waitlist", waitlists[i]);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static VacancySeries fromSamples(List<long[]> samples) {
+        long[] t = new long[samples.size()];
+        int[] v = new int[samples.size()];
+        int[] w = new int[samples.size()];
+        for (int i = 0; i < samples.size(); i++) {
+            t[i] = samples.get(i)[0];
+            v[i] = (int) samples.get(i)[1];
+            w[i] = (int) samples.get(i)[2];
+        }
+        return new VacancySeries(t, v, w);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(byte[] out, int[] position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position[0]++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position[0]++] = (byte) value;
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated vacancy series");
+            }
+            byte b = data[position[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in vacancy series");
+    }
+}
@@ -7,39 +7,13 @@ public final class Constants {
         // Prevent instantiation
     }
     
-    // NTU URLs
+    // NTU URLs, relative to app.portal.base-url (see PortalUrls)
     public static final class URLs {
-        public static final String NTU_LOGIN = "https://wish.wis.ntu.edu.sg/pls/webexe/ldap_login.login?w_url=https://wish.wis.ntu.edu.sg/pls/webexe/aus_stars_planner.main";
-        public static final String COURSE_PLANNER = "https://wish.wis.ntu.edu.sg/pls/webexe/AUS_STARS_PLANNER.planner";
-        public static final String COURSE_TIMETABLE = "https://wish.wis.ntu.edu.sg/pls/webexe/AUS_STARS_PLANNER.time_table";
-    }
-    
-    // Selenium selectors - Updated to match actual NTU portal
-    public static final class Selectors {
-        // Login page
-        public static final String USERNAME_INPUT = "UID";  // By.ID
-        public static final String PASSWORD_INPUT = "PW";   // By.ID
-        public static final String LOGIN_BUTTON = "//input[@value='OK']";  // By.XPATH
-        
-        // Course planner page
-        public static final String PLAN_REGISTRATION_BUTTON = "//input[@value='Plan/ Registration']";
-        public static final String COURSE_TABLE = "//table[@bordercolor='#E0E0E0']";
-        
-        // Module selection and swap
-        public static final String RADIO_BUTTON_TEMPLATE = "//input[@type='radio' and @value='%s']";
-        public static final String DROPDOWN_OPTIONS = "opt";  // By.NAME
-        public static final String GO_BUTTON = "//input[@type='submit' and @value='Go']";
-        public static final String HEADER_HIDE = "site-header__body";  // By.CLASS_NAME
-        
-        // Swap page
-        public static final String SWAP_PAGE_INDICATOR = "AUS_STARS_MENU";  // By.NAME
-        public static final String NEW_INDEX_DROPDOWN = "new_index_nmbr";  // By.NAME
-        public static final String OK_BUTTON = "//input[@type='submit' and @value='OK']";
-        public static final String BACK_TO_TIMETABLE = "//input[@type='submit' and @value='Back to Timetable']";
-        
-        // Confirm swap page
-        public static final String CONFIRM_FORM = "//*[@id='top']/div/section[2]/div/div/form[1]";
-        public static final String CONFIRM_SWAP_BUTTON = "//input[@type='submit' and @value='Confirm to Change Index Number']";
+        public static final String DEFAULT_BASE_URL = "https://wish.wis.ntu.edu.sg";
+        public static final String NTU_LOGIN_PATH = "/pls/webexe/ldap_login.login?w_url=";
+        public static final String STARS_MAIN_PATH = "/pls/webexe/aus_stars_planner.main";
+        public static final String COURSE_PLANNER_PATH = "/pls/webexe/AUS_STARS_PLANNER.planner";
+        public static final String COURSE_TIMETABLE_PATH = "/pls/webexe/AUS_STARS_PLANNER.time_table";
     }
     
     // Timeouts (in seconds)
@@ -58,11 +32,16 @@ public final class Constants {
         public static final long DEFAULT_EXPIRY_HOURS = 2;
         public static final String SESSION_KEY_PREFIX = "ntu_session:";
         public static final String SWAP_LOCK_PREFIX = "swap_lock:";
+        public static final String STATUS_VERSION_PREFIX = "session_version:";
+        public static final String EXPIRY_INDEX_KEY = "session_expiry"; // ZSET of session ID by expiresAt
+        public static final String PRE_LOGIN_PREFIX = "pre_login:";
+        public static final String EVENT_STREAM_PREFIX = "session_events:"; // Capped stream of events per session
     }
     
     // Swap statuses
     public static final class SwapStatus {
         public static final String IDLE = "Idle";
+        public static final String QUEUED = "Queued";
         public static final String PROCESSING = "Processing";
         public static final String COMPLETED = "Completed";
         public static final String ERROR = "Error";
@@ -60,11 +60,10 @@ public final class SeleniumUtil {
         }
     }
     
-    /* Check if element exists without throwing exception */
+    /* Check if element exists without throwing exception; doesn't wait, drivers run with no implicit wait */
     public static boolean isElementPresent(WebDriver driver, By locator) {
         try {
-            driver.findElement(locator);
-            return true;
+            return !driver.findElements(locator).isEmpty();
         } catch (Exception e) {
             return false;
         }
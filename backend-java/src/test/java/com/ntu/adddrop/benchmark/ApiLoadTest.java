@@ -0,0 +1,321 @@
+package com.ntu.adddrop.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.AdddropBackendApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent users against the whole API, the way the frontend drives it: /api/login, /api/submit-swap
+ * with the session cookie, /api/swap-status polled at the frontend's cadence (2 s active, 20 s idle,
+ * stop on done), then /api/stop-swap. The backend runs in this JVM against a MockStarsPortal, so the
+ * swap loops really start Chrome and walk the portal pages, and nothing leaves the machine.
+ * Needs Redis on localhost:6379 and Chrome (CHROME_BINARY_PATH / CHROMEDRIVER_PATH, or Selenium Manager).
+ *
+ * Every second the timeline records active users, request rate, errors, backend threads, heap and the
+ * count and total RSS of Chrome/chromedriver processes; the summary has p50/p95/p99 per endpoint.
+ * Backend threads are all JVM threads minus the load generator's and the mock portal's; heap is the
+ * whole JVM's, of which the load generator is a small part.
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.ApiLoadTest \
+ *     -Dexec.args="50 30 120 200 --app.selenium.options.headless=true"
+ * Arguments: users, ramp-up seconds, seconds each user keeps polling, portal latency in ms, then any
+ * --property=value for the backend (e.g. --app.prelogin.enabled=false). --target=http://host:port
+ * drives an already running backend instead; thread and heap columns then show this JVM only.
+ */
+public class ApiLoadTest {
+
+    private static final long POLL_ACTIVE_MS = 2000;
+    private static final long POLL_IDLE_MS = 20000;
+    private static final String[] ENDPOINTS = {"login", "submit-swap", "swap-status", "stop-swap"};
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    private final AtomicInteger activeUsers = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final HttpClient httpClient;
+    private final String baseUrl;
+
+    private ApiLoadTest(String baseUrl) {
+        this.baseUrl = baseUrl;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "load-http-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }))
+            .build();
+        for (String endpoint : ENDPOINTS) {
+            endpoints.put(endpoint, new Endpoint());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                properties.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        int users = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 50;
+        long rampSeconds = positional.size() > 1 ? Long.parseLong(positional.get(1)) : 30;
+        long pollSeconds = positional.size() > 2 ? Long.parseLong(positional.get(2)) : 120;
+        long portalLatencyMs = positional.size() > 3 ? Long.parseLong(positional.get(3)) : 200;
+
+        MockStarsPortal portal = null;
+        ConfigurableApplicationContext context = null;
+        String target = properties.remove("target");
+        if (target == null) {
+            portal = new MockStarsPortal(0, portalLatencyMs, 120, 20, false);
+            portal.start();
+            context = startBackend(portal.getBaseUrl(), properties);
+            target = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        System.out.printf("Users: %d, ramp-up: %ds, polling: %ds, backend: %s%n", users, rampSeconds, pollSeconds, target);
+        ApiLoadTest loadTest = new ApiLoadTest(target);
+        loadTest.run(users, rampSeconds, pollSeconds);
+
+        if (portal != null) {
+            System.out.println("Portal pages served: " + portal.getHits());
+        }
+        if (context != null) {
+            context.close();
+            portal.stop();
+        }
+        System.exit(0);
+    }
+
+    /* Backend in this JVM, pointed at the mock portal, with the portal rate limit out of the way */
+    static ConfigurableApplicationContext startBackend(String portalUrl, Map<String, String> overrides) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("app.portal.base-url", portalUrl);
+        properties.put("app.portal.governor.rate-per-second", "1000");
+        properties.put("app.portal.governor.burst", "1000");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.com.ntu.adddrop", "WARN");
+        properties.putAll(overrides);
+
+        String[] args = properties.entrySet().stream()
+            .map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+            .toArray(String[]::new);
+        return SpringApplication.run(AdddropBackendApplication.class, args);
+    }
+
+    private void run(int users, long rampSeconds, long pollSeconds) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(users);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < users; i++) {
+            int user = i;
+            long delayMs = rampSeconds * 1000 * i / Math.max(users, 1);
+            Thread thread = new Thread(() -> {
+                try {
+                    Thread.sleep(delayMs);
+                    activeUsers.incrementAndGet();
+                    user(user, pollSeconds);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    activeUsers.decrementAndGet();
+                    done.countDown();
+                }
+            }, "load-user-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        System.out.printf("%6s %6s %7s %6s %8s %9s %7s %10s%n",
+            "t(s)", "users", "req/s", "errors", "threads", "heap(MB)", "chrome", "rss(MB)");
+        long lastRequests = 0;
+        long lastErrors = 0;
+        while (!done.await(1, TimeUnit.SECONDS)) {
+            long total = requests.get();
+            long failed = errors.get();
+            long[] chrome = chromeProcesses();
+            System.out.printf("%6d %6d %7d %6d %8d %9d %7d %10d%n",
+                (System.currentTimeMillis() - start) / 1000, activeUsers.get(),
+                total - lastRequests, failed - lastErrors, backendThreads(),
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024),
+                chrome[0], chrome[1] / 1024);
+            lastRequests = total;
+            lastErrors = failed;
+        }
+
+        System.out.printf("%nRun time: %ds%n", (System.currentTimeMillis() - start) / 1000);
+        System.out.printf("%-12s %7s %6s %7s %8s %8s %8s %8s%n",
+            "endpoint", "count", "errors", "error%", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)");
+        endpoints.forEach((name, endpoint) -> endpoint.print(name));
+    }
+
+    /* One user's session, following the frontend's calls and polling cadence */
+    private void user(int user, long pollSeconds) throws InterruptedException {
+        String oldIndex = MockStarsPortal.oldIndex(user % 20);
+        String newIndexes = MockStarsPortal.newIndex(user % 20) + "," + MockStarsPortal.newIndex((user + 7) % 20);
+
+        HttpResponse<String> login = call("login", post("/api/login", null, String.format(
+            "{\"username\":\"loaduser%d\",\"password\":\"secret\",\"numModules\":1}", user)));
+        if (login == null || login.statusCode() != 200) {
+            return;
+        }
+        String sessionId = json(login.body()).path("session_id").asText();
+        String cookie = login.headers().firstValue("Set-Cookie").map(value -> value.split(";", 2)[0]).orElse(null);
+
+        call("submit-swap", post("/api/submit-swap", cookie, String.format(
+            "{\"num_modules\":1,\"modules\":[{\"old_index\":\"%s\",\"new_indexes\":\"%s\"}]}", oldIndex, newIndexes)));
+
+        long deadline = System.currentTimeMillis() + pollSeconds * 1000;
+        while (System.currentTimeMillis() < deadline) {
+            HttpResponse<String> status = call("swap-status",
+                request("/api/swap-status/" + sessionId, cookie).GET().build());
+            String phase = status != null && status.statusCode() == 200 ? json(status.body()).path("phase").asText() : "";
+            if ("done".equals(phase)) {
+                break;
+            }
+            long delay = "idle".equals(phase) ? POLL_IDLE_MS : POLL_ACTIVE_MS;
+            Thread.sleep(Math.max(0, Math.min(delay, deadline - System.currentTimeMillis())));
+        }
+
+        call("stop-swap", post("/api/stop-swap/" + sessionId, cookie, "{}"));
+    }
+
+    private HttpResponse<String> call(String endpoint, HttpRequest request) throws InterruptedException {
+        Endpoint stats = endpoints.get(endpoint);
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            stats.latenciesMicros.add((System.nanoTime() - start) / 1000);
+            if (response.statusCode() >= 400) {
+                stats.errors.incrementAndGet();
+                errors.incrementAndGet();
+            }
+            return response;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            stats.errors.incrementAndGet();
+            stats.failedCalls.incrementAndGet();
+            errors.incrementAndGet();
+            return null;
+        }
+    }
+
+    private HttpRequest post(String path, String cookie, String body) {
+        return request(path, cookie)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    private HttpRequest.Builder request(String path, String cookie) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(60));
+        if (cookie != null) {
+            builder.header("Cookie", cookie);
+        }
+        return builder;
+    }
+
+    private static JsonNode json(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (Exception e) {
+            return objectMapper.missingNode();
+        }
+    }
+
+    /* JVM threads that aren't load users, their HTTP client (including its selector thread) or the mock portal */
+    private static long backendThreads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long count = 0;
+        boolean clientSelectorSeen = false;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null) {
+                continue;
+            }
+            String name = info.getThreadName();
+            if (name.startsWith("load-") || name.startsWith("mock-portal")) {
+                continue;
+            }
+            if (!clientSelectorSeen && name.startsWith("HttpClient-") && name.endsWith("SelectorManager")) {
+                // The load generator's client is created before any client in the backend
+                clientSelectorSeen = true;
+                continue;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /* Count and total RSS in kB of Chrome and chromedriver processes, from /proc (zeros elsewhere) */
+    private static long[] chromeProcesses() {
+        long[] totals = new long[2];
+        ProcessHandle.allProcesses().forEach(process -> {
+            Optional<String> command = process.info().command();
+            String name = command.map(path -> path.substring(path.lastIndexOf('/') + 1)).orElse("");
+            if (!name.startsWith("chrome") && !name.startsWith("headless_shell")) {
+                return;
+            }
+            totals[0]++;
+            try {
+                for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(process.pid()), "status"))) {
+                    if (line.startsWith("VmRSS:")) {
+                        totals[1] += Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    }
+                }
+            } catch (Exception e) {
+                // Exited since listing, or not Linux
+            }
+        });
+        return totals;
+    }
+
+    /* Latencies of completed calls; errors include calls that got no response */
+    private static class Endpoint {
+        private final ConcurrentLinkedQueue<Long> latenciesMicros = new ConcurrentLinkedQueue<>();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong failedCalls = new AtomicLong();
+
+        void print(String name) {
+            long[] sorted = latenciesMicros.stream().mapToLong(Long::longValue).sorted().toArray();
+            long count = sorted.length + failedCalls.get();
+            System.out.printf("%-12s %7d %6d %6.1f%% %8.1f %8.1f %8.1f %8.1f%n",
+                name, count, errors.get(), count == 0 ? 0.0 : 100.0 * errors.get() / count,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            return sorted.length == 0 ? 0 : sorted[(int) Math.round(p * (sorted.length - 1))] / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ntu.adddrop.benchmark;
+
+import com.ntu.adddrop.config.WebDriverConfig;
+import com.ntu.adddrop.selenium.ChromeDriverServiceHolder;
+import org.openqa.selenium.WebDriver;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Driver creation latency and process count with one chromedriver per driver (the old
+ * WebDriverConfig) versus one shared chromedriver server, for 1, 10 and 50 drivers created at once.
+ * Processes are counted while all drivers of a round are alive. Needs Chrome and chromedriver;
+ * without a driver path Selenium Manager looks them up. Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.DriverStartupBenchmark \
+ *     -Dexec.args="/usr/bin/google-chrome /usr/local/bin/chromedriver 1,10,50"
+ * Arguments: Chrome binary, chromedriver binary, concurrency levels.
+ */
+public class DriverStartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String chromeBinary = args.length > 0 ? args[0] : "/usr/bin/google-chrome";
+        String chromeDriver = args.length > 1 ? args[1] : "";
+        int[] levels = args.length > 2
+            ? Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[]{1, 10, 50};
+
+        for (boolean shared : new boolean[]{false, true}) {
+            ChromeDriverServiceHolder holder = new ChromeDriverServiceHolder();
+            ReflectionTestUtils.setField(holder, "chromeDriverPath", chromeDriver);
+            WebDriverConfig config = config(chromeBinary, chromeDriver, shared, holder);
+
+            // Untimed first driver, so the shared run doesn't charge the server start to one round
+            try {
+                config.webDriver().quit();
+            } catch (Exception e) {
+                System.out.println("Cannot start Chrome, skipping: " + e.getMessage());
+                System.exit(0);
+            }
+
+            for (int level : levels) {
+                round(shared ? "shared" : "per-driver", config, level);
+            }
+            holder.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void round(String name, WebDriverConfig config, int drivers) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(drivers);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Object[]>> futures = new ArrayList<>();
+        for (int i = 0; i < drivers; i++) {
+            futures.add(pool.submit(() -> {
+                go.await();
+                long start = System.nanoTime();
+                WebDriver driver = config.webDriver();
+                return new Object[]{driver, (System.nanoTime() - start) / 1_000_000L};
+            }));
+        }
+        go.countDown();
+
+        List<WebDriver> created = new ArrayList<>();
+        long[] millis = new long[drivers];
+        int failed = 0;
+        for (int i = 0; i < drivers; i++) {
+            try {
+                Object[] result = futures.get(i).get();
+                created.add((WebDriver) result[0]);
+                millis[i - failed] = (Long) result[1];
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long[] sorted = Arrays.stream(millis, 0, drivers - failed).sorted().toArray();
+        long chromedrivers = countProcesses("chromedriver");
+        long browsers = countProcesses("chrome") - chromedrivers;
+
+        created.parallelStream().forEach(WebDriver::quit);
+        pool.shutdown();
+
+        System.out.printf("%-10s drivers=%3d  failed=%2d  p50=%6d ms  p95=%6d ms  max=%6d ms  chromedriver procs=%3d  chrome procs=%4d%n",
+            name, drivers, failed, percentile(sorted, 0.5), percentile(sorted, 0.95), percentile(sorted, 1.0),
+            chromedrivers, browsers);
+    }
+
+    private static long countProcesses(String name) {
+        return ProcessHandle.allProcesses()
+            .map(process -> process.info().command())
+            .flatMap(Optional::stream)
+            .filter(command -> command.substring(command.lastIndexOf('/') + 1).startsWith(name))
+            .count();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.round(p * (sorted.length - 1))];
+    }
+
+    private static WebDriverConfig config(String chromeBinary, String chromeDriver, boolean shared,
+                                          ChromeDriverServiceHolder holder) {
+        WebDriverConfig config = new WebDriverConfig();
+        ReflectionTestUtils.setField(config, "chromeBinaryPath", chromeBinary);
+        ReflectionTestUtils.setField(config, "chromeDriverPath", chromeDriver);
+        ReflectionTestUtils.setField(config, "headless", true);
+        ReflectionTestUtils.setField(config, "windowSize", "1920,1080");
+        ReflectionTestUtils.setField(config, "pageLoadTimeout", 30);
+        ReflectionTestUtils.setField(config, "implicitWaitTimeout", 0);
+        ReflectionTestUtils.setField(config, "pageLoadStrategy", "eager");
+        ReflectionTestUtils.setField(config, "sharedDriverService", shared);
+        ReflectionTestUtils.setField(config, "chromeDriverServiceHolder", holder);
+        return config;
+    }
+}
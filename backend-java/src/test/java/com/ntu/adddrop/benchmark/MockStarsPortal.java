@@ -0,0 +1,243 @@
+package com.ntu.adddrop.benchmark;
+
+import com.ntu.adddrop.util.Constants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the STARS portal, serving just enough HTML for NTULoginAutomator and
+ * ModuleSwapAutomator to run their full flow: login, planner table, change-index menu with
+ * "index / vacancies / waitlist" options, confirm page and the alerts in between. Point the backend
+ * at it with app.portal.base-url (PORTAL_BASE_URL).
+ *
+ * Any username logs in; password "wrong" is rejected. Old indexes are OLD_INDEX_BASE + 0..indexes-1
+ * and new ones NEW_INDEX_BASE + 0..indexes-1. Each new index has a seat for 10 s out of every
+ * vacancy-period-seconds, at a per-index offset, so swap loops both miss and succeed.
+ * Every page waits latency-ms first, like the real portal under add-drop load.
+ * Standalone: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.ntu.adddrop.benchmark.MockStarsPortal -Dexec.args="8090 200"
+ * Arguments: port, latency in ms, vacancy period in seconds, "closed" to answer with the portal-closed alert.
+ */
+public class MockStarsPortal {
+
+    public static final int OLD_INDEX_BASE = 10001;
+    public static final int NEW_INDEX_BASE = 20001;
+    public static final String REJECTED_PASSWORD = "wrong";
+
+    private static final String LOGIN = "/pls/webexe/ldap_login.login";
+    private static final String MENU = "/pls/webexe/AUS_STARS_PLANNER.menu";
+    private static final String CONFIRM = "/pls/webexe/AUS_STARS_PLANNER.confirm";
+    private static final String CHANGE = "/pls/webexe/AUS_STARS_PLANNER.change";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+    private final long vacancyPeriodSeconds;
+    private final int indexes;
+    private final boolean closed;
+
+    private final Map<String, AtomicLong> hits = new HashMap<>();
+    private final AtomicLong swaps = new AtomicLong();
+
+    public MockStarsPortal(int port, long latencyMs, long vacancyPeriodSeconds, int indexes, boolean closed) throws IOException {
+        this.latencyMs = latencyMs;
+        this.vacancyPeriodSeconds = vacancyPeriodSeconds;
+        this.indexes = indexes;
+        this.closed = closed;
+        for (String page : new String[]{"login", "password", "planner", "menu", "confirm", "change"}) {
+            hits.put(page, new AtomicLong());
+        }
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 256);
+        executor = Executors.newFixedThreadPool(64, runnable -> {
+            Thread thread = new Thread(runnable, "mock-portal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(LOGIN, this::login);
+        server.createContext(Constants.URLs.STARS_MAIN_PATH, exchange -> redirect(exchange, Constants.URLs.COURSE_PLANNER_PATH));
+        server.createContext(Constants.URLs.COURSE_PLANNER_PATH, exchange -> page(exchange, "planner", planner()));
+        server.createContext(Constants.URLs.COURSE_TIMETABLE_PATH, exchange -> page(exchange, "planner", planner()));
+        server.createContext(MENU, exchange -> page(exchange, "menu", closed ? closedAlert() : menu()));
+        server.createContext(CONFIRM, exchange -> page(exchange, "confirm", confirm()));
+        server.createContext(CHANGE, exchange -> {
+            swaps.incrementAndGet();
+            page(exchange, "change", changed());
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        long period = args.length > 2 ? Long.parseLong(args[2]) : 120;
+        boolean closed = args.length > 3 && "closed".equals(args[3]);
+        MockStarsPortal portal = new MockStarsPortal(port, latencyMs, period, 20, closed);
+        portal.start();
+        System.out.println("Mock STARS portal at " + portal.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public static String oldIndex(int i) {
+        return String.valueOf(OLD_INDEX_BASE + i);
+    }
+
+    public static String newIndex(int i) {
+        return String.valueOf(NEW_INDEX_BASE + i);
+    }
+
+    public Map<String, Long> getHits() {
+        Map<String, Long> counts = new HashMap<>();
+        hits.forEach((page, count) -> counts.put(page, count.get()));
+        counts.put("swaps", swaps.get());
+        return counts;
+    }
+
+    /* Username form, then password form, then off to the planner unless the password is rejected */
+    private void login(HttpExchange exchange) throws IOException {
+        Map<String, String> form = form(exchange);
+        if (!form.containsKey("UID")) {
+            page(exchange, "login", loginForm(""));
+        } else if (!form.containsKey("PW")) {
+            page(exchange, "password", html("<form method='post' action='" + LOGIN + "'>"
+                + "<input type='hidden' name='UID' value='" + escape(form.get("UID")) + "'>"
+                + "<input type='password' id='PW' name='PW'>"
+                + "<input type='submit' value='OK'></form>"));
+        } else if (REJECTED_PASSWORD.equals(form.get("PW"))) {
+            page(exchange, "password", loginForm("<p>Invalid user ID or password</p>"));
+        } else {
+            hits.get("password").incrementAndGet();
+            pause();
+            redirect(exchange, Constants.URLs.COURSE_PLANNER_PATH);
+        }
+    }
+
+    private String loginForm(String message) {
+        return html(message + "<form method='post' action='" + LOGIN + "'>"
+            + "<input type='text' id='UID' name='UID'>"
+            + "<input type='submit' value='OK'></form>");
+    }
+
+    private String planner() {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < indexes; i++) {
+            rows.append("<tr><td><input type='radio' name='index' value='").append(oldIndex(i))
+                .append("'></td><td>MOCK").append(1000 + i).append("</td></tr>");
+        }
+        return html("<div class='site-header__body'>STARS Planner</div>"
+            + "<form method='post' action='" + MENU + "'>"
+            + "<table bordercolor='#E0E0E0'>" + rows + "</table>"
+            + "<select name='opt'><option value='A'>Add Course</option><option value='C'>Change Index</option></select>"
+            + "<input type='submit' value='Go'></form>");
+    }
+
+    private String menu() {
+        long now = System.currentTimeMillis() / 1000;
+        StringBuilder options = new StringBuilder();
+        for (int i = 0; i < indexes; i++) {
+            // Open for the first 10 s of each period, staggered across indexes
+            long phase = Math.floorMod(now + i * vacancyPeriodSeconds / Math.max(indexes, 1), vacancyPeriodSeconds);
+            int vacancies = phase < 10 ? 1 : 0;
+            options.append("<option value='").append(newIndex(i)).append("'>")
+                .append(newIndex(i)).append(" / ").append(vacancies).append(" / ").append(vacancies > 0 ? 0 : 3)
+                .append("</option>");
+        }
+        return html("<form name='AUS_STARS_MENU' method='post' action='" + CONFIRM + "'>"
+            + "<select name='new_index_nmbr'>" + options + "</select>"
+            + "<input type='submit' value='OK'>"
+            + "<input type='submit' value='Back to Timetable' formaction='" + Constants.URLs.COURSE_PLANNER_PATH + "' formmethod='get'>"
+            + "</form>");
+    }
+
+    private String confirm() {
+        return "<html><body><div id='top'><div><section>Change Index</section><section><div><div>"
+            + "<form method='post' action='" + CHANGE + "'><input type='submit' value='Confirm to Change Index Number'></form>"
+            + "<form method='get' action='" + Constants.URLs.COURSE_PLANNER_PATH + "'><input type='submit' value='Cancel'></form>"
+            + "</div></div></section></div></div></body></html>";
+    }
+
+    private String changed() {
+        return html("<script>alert('Index Number changed successfully.');"
+            + "window.location='" + Constants.URLs.COURSE_PLANNER_PATH + "';</script>");
+    }
+
+    private String closedAlert() {
+        return html("<script>alert('" + Constants.ErrorMessages.PORTAL_CLOSED + "');"
+            + "window.location='" + Constants.URLs.COURSE_PLANNER_PATH + "';</script>");
+    }
+
+    private void page(HttpExchange exchange, String name, String body) throws IOException {
+        hits.get(name).incrementAndGet();
+        pause();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void redirect(HttpExchange exchange, String path) throws IOException {
+        exchange.getResponseHeaders().set("Location", path);
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void pause() {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Map<String, String> form(HttpExchange exchange) throws IOException {
+        Map<String, String> form = new HashMap<>();
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return form;
+        }
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    private static String html(String body) {
+        return "<html><body>" + body + "</body></html>";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("'", "&#39;").replace("<", "&lt;");
+    }
+}
@@ -0,0 +1,204 @@
+package com.ntu.adddrop.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ntu.adddrop.selenium.FailureRecovery;
+import com.ntu.adddrop.selenium.FailureRecovery.FailureKind;
+import com.ntu.adddrop.selenium.ModuleSwapAutomator;
+import com.ntu.adddrop.selenium.ModuleSwapAutomator.SwapResult;
+import com.ntu.adddrop.selenium.NTULoginAutomator;
+import com.ntu.adddrop.selenium.WaitPolicy;
+import com.ntu.adddrop.selenium.WebDriverManager;
+import com.ntu.adddrop.selenium.page.StarsPages;
+import org.openqa.selenium.WebDriver;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Runs a PageRecorder recording back through the real automators, offline. The recording is served by
+ * ReplayStarsPortal and the backend runs in this JVM pointed at it; each run starts a browser and does
+ * what the markers say was done (log in, attempt old -> new, recover), checking every attempt's outcome
+ * against the recorded one. Selector drift shows up as mismatches or timeouts on the step that drifted,
+ * performance changes as per-step times and the WaitPolicy and page counters; with latency 0 the times
+ * are the automation's own cost.
+ * Needs Redis on localhost:6379 and Chrome (CHROME_BINARY_PATH / CHROMEDRIVER_PATH, or Selenium Manager).
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.ReplayBenchmark \
+ *     -Dexec.args="recordings/20261019-101500-1 5 0"
+ * Arguments: recording directory, runs, portal latency in ms (-1 = as recorded), then any
+ * --property=value for the backend. Exits 1 if any run diverged from the recording.
+ */
+public class ReplayBenchmark {
+
+    private static final String SESSION_PREFIX = "replay-";
+    private static final String USERNAME = "replay";
+    private static final String PASSWORD = "replay";
+
+    private final ReplayStarsPortal portal;
+    private final WebDriverManager webDriverManager;
+    private final NTULoginAutomator loginAutomator;
+    private final ModuleSwapAutomator swapAutomator;
+    private final FailureRecovery failureRecovery;
+
+    private final Map<String, List<Long>> timings = new LinkedHashMap<>();
+    private final List<String> mismatches = new ArrayList<>();
+
+    private ReplayBenchmark(ReplayStarsPortal portal, ConfigurableApplicationContext context) {
+        this.portal = portal;
+        this.webDriverManager = context.getBean(WebDriverManager.class);
+        this.loginAutomator = context.getBean(NTULoginAutomator.class);
+        this.swapAutomator = context.getBean(ModuleSwapAutomator.class);
+        this.failureRecovery = context.getBean(FailureRecovery.class);
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                properties.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+        Path recording = Path.of(positional.size() > 0 ? positional.get(0) : "recordings");
+        int runs = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 3;
+        long latencyMs = positional.size() > 2 ? Long.parseLong(positional.get(2)) : 0;
+
+        // The replay has to reach the portal on every recorded attempt, and must not record itself
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("app.vacancy-cache.enabled", "false");
+        defaults.put("app.demand.enabled", "false");
+        defaults.put("app.selenium.recorder.enabled", "false");
+        defaults.put("app.selenium.options.headless", "true");
+        defaults.putAll(properties);
+
+        ReplayStarsPortal portal = new ReplayStarsPortal(recording, 0, latencyMs);
+        portal.start();
+        ConfigurableApplicationContext context = ApiLoadTest.startBackend(portal.getBaseUrl(), defaults);
+        ReplayBenchmark benchmark = new ReplayBenchmark(portal, context);
+
+        System.out.printf("Recording: %s, %d markers, runs: %d, latency: %s%n", recording, portal.getMarks().size(),
+            runs, latencyMs >= 0 ? latencyMs + " ms" : "as recorded");
+        int failedRuns = 0;
+        for (int run = 1; run <= runs; run++) {
+            if (!benchmark.run(run)) {
+                failedRuns++;
+            }
+        }
+        benchmark.report(context, runs, failedRuns);
+
+        context.close();
+        portal.stop();
+        System.exit(failedRuns > 0 ? 1 : 0);
+    }
+
+    /* One pass over the recording in a fresh browser; false if anything came out differently */
+    private boolean run(int run) {
+        portal.reset();
+        int mismatchesBefore = mismatches.size();
+        String sessionId = SESSION_PREFIX + run;
+        long start = System.currentTimeMillis();
+        WebDriver driver = webDriverManager.createDriver(sessionId);
+        try {
+            List<JsonNode> marks = portal.getMarks();
+            for (int i = 0; i < marks.size(); i++) {
+                JsonNode mark = marks.get(i);
+                switch (mark.path("label").asText()) {
+                    case "login" -> {
+                        long stepStart = System.nanoTime();
+                        loginAutomator.performLogin(driver, sessionId, USERNAME, PASSWORD);
+                        time("login", stepStart);
+                    }
+                    case "attempt" -> {
+                        JsonNode expected = i + 1 < marks.size() && "outcome".equals(marks.get(i + 1).path("label").asText())
+                            ? marks.get(++i) : null;
+                        attempt(run, driver, sessionId, mark, expected);
+                    }
+                    case "recovery" -> {
+                        long stepStart = System.nanoTime();
+                        driver = failureRecovery.recover(driver, sessionId, FailureKind.valueOf(mark.path("kind").asText()),
+                            USERNAME, PASSWORD, position -> { });
+                        time("recovery", stepStart);
+                    }
+                    default -> mismatch(run, "unexpected marker " + mark);
+                }
+            }
+        } catch (RuntimeException e) {
+            mismatch(run, "replay stopped: " + e);
+        } finally {
+            webDriverManager.closeDriver(sessionId, driver);
+        }
+        if (!portal.isFinished()) {
+            mismatch(run, portal.getRemaining() + " recorded pages/alerts never requested");
+        }
+        boolean passed = mismatches.size() == mismatchesBefore;
+        System.out.printf("Run %d: %s in %d ms%n", run, passed ? "PASS" : "FAIL", System.currentTimeMillis() - start);
+        return passed;
+    }
+
+    private void attempt(int run, WebDriver driver, String sessionId, JsonNode mark, JsonNode expected) {
+        String oldIndex = mark.path("old_index").asText();
+        String newIndex = mark.path("new_index").asText();
+        String attempt = oldIndex + " -> " + newIndex;
+        long stepStart = System.nanoTime();
+        try {
+            SwapResult result = swapAutomator.attemptSwap(driver, sessionId, oldIndex, newIndex);
+            time("attempt", stepStart);
+            if (expected == null) {
+                return;
+            }
+            if (expected.has("error")) {
+                mismatch(run, attempt + ": expected " + expected.path("error").asText() + ", got " + describe(result));
+            } else if (result.isSuccess() != expected.path("success").asBoolean()
+                    || !Objects.equals(result.getMessage(), expected.path("message").asText())) {
+                mismatch(run, attempt + ": expected " + expected.path("success").asBoolean() + " \""
+                    + expected.path("message").asText() + "\", got " + describe(result));
+            }
+        } catch (RuntimeException e) {
+            time("attempt", stepStart);
+            if (expected == null || !e.getClass().getSimpleName().equals(expected.path("error").asText())) {
+                mismatch(run, attempt + ": expected " + (expected == null ? "no outcome" : expected) + ", got " + e);
+            }
+            // A recorded failure is followed by its recovery marker, which the next iteration replays
+        }
+    }
+
+    private static String describe(SwapResult result) {
+        return result.isSuccess() + " \"" + result.getMessage() + "\"";
+    }
+
+    private void time(String step, long startNanos) {
+        timings.computeIfAbsent(step, s -> new ArrayList<>()).add((System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    private void mismatch(int run, String message) {
+        mismatches.add("run " + run + ": " + message);
+    }
+
+    private void report(ConfigurableApplicationContext context, int runs, int failedRuns) {
+        System.out.printf("%nRuns: %d, passed: %d, failed: %d%n", runs, runs - failedRuns, failedRuns);
+        mismatches.forEach(m -> System.out.println("  " + m));
+
+        System.out.printf("%n%-10s %6s %8s %8s %8s%n", "step", "count", "p50 ms", "p95 ms", "max ms");
+        timings.forEach((step, samples) -> {
+            long[] sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%-10s %6d %8d %8d %8d%n", step, sorted.length,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), sorted[sorted.length - 1]);
+        });
+
+        System.out.println();
+        System.out.println("Replay portal: " + portal.getStats());
+        System.out.println("Waits: " + context.getBean(WaitPolicy.class).getStats());
+        System.out.println("Pages: " + context.getBean(StarsPages.class).getStats());
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
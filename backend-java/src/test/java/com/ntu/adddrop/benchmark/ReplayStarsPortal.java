@@ -0,0 +1,249 @@
+package com.ntu.adddrop.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a PageRecorder recording back, in the order it was recorded, so the automators can be run
+ * against real STARS pages without the portal. Each browser navigation gets the next recorded page:
+ * as-is if the browser asked for that page's path, otherwise a redirect to it (the portal's own
+ * redirects and form posts land there the same way). Requests that aren't navigations (images,
+ * stylesheets) get 404 and leave the sequence alone.
+ *
+ * A recorded alert is served as the page before it with the alert shown on load. If the portal moved
+ * on by itself once the alert was accepted (after_alert on the next page), the alert page navigates
+ * there too; otherwise the browser stays on that copy, as it did on the portal.
+ * Pages wait latency-ms first; -1 waits as long as the recorded step took, an upper bound on the
+ * portal's share since it includes the browser's.
+ * Standalone: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.ntu.adddrop.benchmark.ReplayStarsPortal -Dexec.args="recordings/20261019-101500-1 8091 0"
+ * Arguments: recording directory, port, latency in ms.
+ */
+public class ReplayStarsPortal {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+
+    // Pages and alerts in recorded order, and the marks (login, attempt, outcome, recovery) between them
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<JsonNode> marks = new ArrayList<>();
+
+    private int next;
+    private String lastPage = "";
+
+    private final AtomicLong pagesServed = new AtomicLong();
+    private final AtomicLong alertsServed = new AtomicLong();
+    private final AtomicLong redirects = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+
+    public ReplayStarsPortal(Path recording, int port, long latencyMs) throws IOException {
+        this.latencyMs = latencyMs;
+        for (String line : Files.readAllLines(recording.resolve("manifest.jsonl"), StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node = objectMapper.readTree(line);
+            switch (node.path("kind").asText()) {
+                case "page" -> entries.add(new Entry(node,
+                    Files.readString(recording.resolve(node.path("file").asText()), StandardCharsets.UTF_8)));
+                case "alert" -> entries.add(new Entry(node, null));
+                case "mark" -> marks.add(node);
+                default -> {
+                    // Kinds from a newer recorder aren't served
+                }
+            }
+        }
+        // The writer appends in order, but sort by seq in case a line was appended late
+        entries.sort((a, b) -> Integer.compare(a.seq, b.seq));
+        marks.sort((a, b) -> Integer.compare(a.path("seq").asInt(), b.path("seq").asInt()));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 64);
+        executor = Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "replay-portal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path recording = Path.of(args.length > 0 ? args[0] : "recordings");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8091;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        ReplayStarsPortal portal = new ReplayStarsPortal(recording, port, latencyMs);
+        portal.start();
+        System.out.printf("Replaying %d pages and alerts from %s at %s%n", portal.entries.size(), recording, portal.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /* Markers in recorded order, for a replay to know what was run and what came of it */
+    public List<JsonNode> getMarks() {
+        return marks;
+    }
+
+    /* Start the recording over, for the next run */
+    public synchronized void reset() {
+        next = 0;
+        lastPage = "";
+    }
+
+    /* Whether every recorded page and alert has been served */
+    public synchronized boolean isFinished() {
+        return next >= entries.size();
+    }
+
+    public synchronized int getRemaining() {
+        return entries.size() - next;
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("pages", pagesServed.get());
+        stats.put("alerts", alertsServed.get());
+        stats.put("redirects", redirects.get());
+        stats.put("not_found", notFound.get());
+        stats.put("overruns", overruns.get());
+        return stats;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept == null || !accept.contains("text/html")) {
+            notFound.incrementAndGet();
+            send(exchange, 404, "");
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        Entry entry;
+        String body;
+        synchronized (this) {
+            if (next >= entries.size()) {
+                overruns.incrementAndGet();
+                body = null;
+                entry = null;
+            } else {
+                entry = entries.get(next);
+                if (entry.html != null && !entry.path.equals(path)) {
+                    body = null;
+                } else {
+                    next++;
+                    body = entry.html != null ? entry.html : alertPage(entry);
+                    if (entry.html != null) {
+                        lastPage = entry.html;
+                    }
+                }
+            }
+        }
+
+        if (entry == null) {
+            send(exchange, 404, "<html><body>End of recording</body></html>");
+        } else if (body == null) {
+            redirects.incrementAndGet();
+            exchange.getResponseHeaders().set("Location", entry.path);
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        } else {
+            (entry.html != null ? pagesServed : alertsServed).incrementAndGet();
+            pause(entry);
+            send(exchange, 200, body);
+        }
+    }
+
+    /* The page the alert was shown over, with the alert on load and, if the portal moved on after it, the move */
+    private String alertPage(Entry alert) {
+        StringBuilder script = new StringBuilder("<script>alert(")
+            .append(quote(alert.text)).append(");");
+        if (next < entries.size() && entries.get(next).afterAlert) {
+            script.append("window.location.replace(").append(quote(entries.get(next).path)).append(");");
+        }
+        script.append("</script>");
+        int end = lastPage.toLowerCase().lastIndexOf("</body>");
+        return end >= 0
+            ? lastPage.substring(0, end) + script + lastPage.substring(end)
+            : lastPage + script;
+    }
+
+    private void pause(Entry entry) {
+        long ms = latencyMs >= 0 ? latencyMs : entry.latencyMs;
+        if (ms > 0) {
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String quote(String text) {
+        try {
+            // A JSON string is a valid JS string literal; </ is split so it can't close the script
+            return objectMapper.writeValueAsString(text).replace("</", "<\\/");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /* One recorded page (html set) or alert (text set) */
+    private static class Entry {
+        private final int seq;
+        private final String path;
+        private final String html;
+        private final String text;
+        private final long latencyMs;
+        private final boolean afterAlert;
+
+        Entry(JsonNode node, String html) {
+            this.seq = node.path("seq").asInt();
+            this.path = node.path("path").asText("");
+            this.html = html;
+            this.text = node.path("text").asText("");
+            this.latencyMs = node.path("latency_ms").asLong(0);
+            this.afterAlert = node.path("after_alert").asBoolean(false);
+        }
+    }
+}
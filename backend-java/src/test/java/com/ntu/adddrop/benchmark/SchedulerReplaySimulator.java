@@ -0,0 +1,206 @@
+package com.ntu.adddrop.benchmark;
+
+import com.ntu.adddrop.config.RedisConfig;
+import com.ntu.adddrop.service.AttemptScheduler.BudgetedPlanner;
+import com.ntu.adddrop.timeseries.VacancyForecast;
+import com.ntu.adddrop.timeseries.VacancyHistoryService;
+import com.ntu.adddrop.timeseries.VacancySeries;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays vacancy history against the fixed and predictive attempt schedules and compares time-to-swap.
+ * The forecast is trained on everything before the replay week, so the replay is out of sample.
+ * Each simulated session wants one index, starts at a random time in the replay week and attempts
+ * on its schedule until it finds a seat or gives up after 48 hours. Sessions don't compete for seats.
+ *
+ * Synthetic history (seats mostly freed just after midnight drop deadlines and around 9-10am):
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.SchedulerReplaySimulator
+ * Recorded history from Redis (last 5 weeks, replaying the last one):
+ *   ... -Dexec.args="localhost 6379 01172,01173,01174"
+ */
+public class SchedulerReplaySimulator {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Singapore");
+    private static final Duration BASE = Duration.ofMinutes(5);
+    private static final Duration MIN = Duration.ofMinutes(1);
+    private static final Duration MAX = Duration.ofMinutes(30);
+    private static final int BURST = 48;
+    private static final Duration GIVE_UP = Duration.ofHours(48);
+    private static final int SESSIONS = 2000;
+    private static final long WEEK = Duration.ofDays(7).toSeconds();
+
+    public static void main(String[] args) {
+        long replayEnd = ZonedDateTime.now(ZONE).withHour(0).withMinute(0).withSecond(0).toEpochSecond();
+        long replayStart = replayEnd - WEEK;
+        long historyStart = replayStart - 4 * WEEK;
+
+        Map<String, VacancySeries> history = args.length >= 3
+            ? loadFromRedis(args[0], Integer.parseInt(args[1]), args[2].split(","), historyStart, replayEnd)
+            : synthetic(historyStart, replayEnd, new Random(42));
+
+        Random random = new Random(7);
+        List<String> indexes = new ArrayList<>(history.keySet());
+        Map<String, VacancyForecast> forecasts = new LinkedHashMap<>();
+        history.forEach((index, series) ->
+            forecasts.put(index, VacancyForecast.fromSeries(series.range(historyStart, replayStart), ZONE)));
+
+        List<long[]> sessions = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            long start = replayStart + (long) (random.nextDouble() * (WEEK - GIVE_UP.toSeconds()));
+            sessions.add(new long[]{start, random.nextInt(indexes.size())});
+        }
+
+        System.out.printf("Indexes: %d, sessions: %d, training samples: %d%n", indexes.size(), SESSIONS,
+            forecasts.values().stream().mapToLong(VacancyForecast::getSamples).sum());
+        run("fixed", sessions, indexes, history, forecasts, false).print();
+        run("predictive", sessions, indexes, history, forecasts, true).print();
+        System.exit(0);
+    }
+
+    private static Result run(String name, List<long[]> sessions, List<String> indexes,
+                              Map<String, VacancySeries> history, Map<String, VacancyForecast> forecasts,
+                              boolean predictive) {
+        List<Long> times = new ArrayList<>();
+        long attempts = 0;
+        double sessionHours = 0;
+
+        for (long[] session : sessions) {
+            String index = indexes.get((int) session[1]);
+            VacancySeries series = history.get(index);
+            BudgetedPlanner planner = new BudgetedPlanner(BASE, MIN, MAX, BURST);
+
+            long start = session[0];
+            long t = start;
+            long found = -1;
+            while (t - start < GIVE_UP.toSeconds()) {
+                attempts++;
+                if (vacanciesAt(series, t) > 0) {
+                    found = t - start;
+                    break;
+                }
+                Duration delay = predictive
+                    ? planner.nextDelay(List.of(forecasts.get(index)), Instant.ofEpochSecond(t))
+                    : BASE;
+                t += delay.toSeconds();
+            }
+            sessionHours += (Math.min(t, start + GIVE_UP.toSeconds()) - start) / 3600.0;
+            if (found >= 0) {
+                times.add(found);
+            }
+        }
+        return new Result(name, times.stream().mapToLong(Long::longValue).sorted().toArray(),
+            sessions.size(), attempts, sessionHours);
+    }
+
+    /* Recorded samples are change points, so the reading holds until the next one */
+    private static int vacanciesAt(VacancySeries series, long t) {
+        int idx = Arrays.binarySearch(series.times(), t);
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        return idx < 0 ? 0 : series.vacancies()[idx];
+    }
+
+    /**
+     * Seats are freed as a Poisson process that is 12x denser in 00:00-01:00 and 09:00-10:00,
+     * and each stays open for an exponential time (mean 2 minutes) until someone else takes it
+     */
+    private static Map<String, VacancySeries> synthetic(long from, long to, Random random) {
+        Map<String, VacancySeries> history = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            double baseRatePerHour = 0.08 + random.nextDouble() * 0.1;
+            List<long[]> openings = new ArrayList<>();
+            for (long hour = from; hour < to; hour += 3600) {
+                int localHour = Instant.ofEpochSecond(hour).atZone(ZONE).getHour();
+                double rate = (localHour == 0 || localHour == 9) ? baseRatePerHour * 12 : baseRatePerHour;
+                for (double t = exponential(random, 3600 / rate); t < 3600; t += exponential(random, 3600 / rate)) {
+                    long open = hour + (long) t;
+                    openings.add(new long[]{open, open + (long) exponential(random, 120)});
+                }
+            }
+
+            // Minute-resolution change points plus a reading every 5 minutes when nothing changes,
+            // like the recorder produces while sessions keep reading the dropdown
+            List<long[]> samples = new ArrayList<>();
+            int last = -1;
+            long lastSample = 0;
+            for (long t = from; t < to; t += 60) {
+                int vacancies = 0;
+                for (long[] opening : openings) {
+                    if (opening[0] <= t && t < opening[1]) {
+                        vacancies++;
+                    }
+                }
+                if (vacancies != last || t - lastSample >= 300) {
+                    samples.add(new long[]{t, vacancies});
+                    last = vacancies;
+                    lastSample = t;
+                }
+            }
+            long[] times = samples.stream().mapToLong(s -> s[0]).toArray();
+            int[] vacancies = samples.stream().mapToInt(s -> (int) s[1]).toArray();
+            history.put(String.format("0117%d", i), new VacancySeries(times, vacancies, new int[times.length]));
+        }
+        return history;
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -Math.log(1 - random.nextDouble()) * mean;
+    }
+
+    private static Map<String, VacancySeries> loadFromRedis(String host, int port, String[] indexes, long from, long to) {
+        RedisConfig redisConfig = new RedisConfig();
+        ReflectionTestUtils.setField(redisConfig, "redisHost", host);
+        ReflectionTestUtils.setField(redisConfig, "redisPort", port);
+        ReflectionTestUtils.setField(redisConfig, "redisTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(redisConfig, "poolMaxActive", 2);
+        ReflectionTestUtils.setField(redisConfig, "poolMaxIdle", 2);
+        ReflectionTestUtils.setField(redisConfig, "poolMinIdle", 0);
+        JedisConnectionFactory factory = (JedisConnectionFactory) redisConfig.redisConnectionFactory();
+        factory.afterPropertiesSet();
+        factory.start();
+
+        VacancyHistoryService historyService = new VacancyHistoryService();
+        ReflectionTestUtils.setField(historyService, "bytesRedisTemplate", redisConfig.bytesRedisTemplate(factory));
+
+        Map<String, VacancySeries> history = new LinkedHashMap<>();
+        for (String index : indexes) {
+            history.put(index, historyService.query(index, from, to));
+        }
+        return history;
+    }
+
+    private record Result(String name, long[] sortedSeconds, int sessions, long attempts, double sessionHours) {
+        void print() {
+            System.out.printf("%-11s swapped=%5.1f%%  median=%6.1f min  mean=%6.1f min  p90=%6.1f min  attempts/session-hour=%5.2f%n",
+                name,
+                100.0 * sortedSeconds.length / sessions,
+                percentile(0.5), mean(), percentile(0.9),
+                attempts / sessionHours);
+        }
+
+        private double percentile(double p) {
+            if (sortedSeconds.length == 0) {
+                return 0;
+            }
+            return sortedSeconds[(int) Math.round(p * (sortedSeconds.length - 1))] / 60.0;
+        }
+
+        private double mean() {
+            return Arrays.stream(sortedSeconds).average().orElse(0) / 60.0;
+        }
+    }
+}
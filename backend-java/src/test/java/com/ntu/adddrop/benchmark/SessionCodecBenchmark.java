@@ -0,0 +1,130 @@
+package com.ntu.adddrop.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.codec.BinarySessionCodec;
+import com.ntu.adddrop.codec.JsonSessionCodec;
+import com.ntu.adddrop.codec.SessionCodec;
+import com.ntu.adddrop.config.RedisConfig;
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.util.Constants;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures encoded size, encode/decode time and Redis memory per session for each SessionCodec.
+ * The Redis part is skipped if no Redis is reachable. Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.SessionCodecBenchmark -Dexec.args="localhost 6379"
+ */
+public class SessionCodecBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        SessionData session = sampleSession();
+        List<SessionCodec> codecs = List.of(new JsonSessionCodec(objectMapper), new BinarySessionCodec(objectMapper));
+
+        RedisTemplate<String, byte[]> redis = connect(host, port);
+
+        for (SessionCodec codec : codecs) {
+            byte[] encoded = codec.encode(session);
+            verifyRoundTrip(codecs, encoded, session);
+
+            double encodeNs = time(() -> codec.encode(session));
+            double decodeNs = time(() -> codec.decode(encoded));
+
+            String memory = "n/a";
+            if (redis != null) {
+                String key = "codec_benchmark:" + codec.name();
+                redis.opsForValue().set(key, encoded);
+                Long bytes = redis.execute((RedisConnection connection) -> (Long) connection.execute(
+                    "MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+                redis.delete(key);
+                memory = bytes + " B";
+            }
+
+            System.out.printf("%-10s encoded=%5d B  redis=%8s  encode=%8.0f ns  decode=%8.0f ns%n",
+                codec.name(), encoded.length, memory, encodeNs, decodeNs);
+        }
+        System.exit(0);
+    }
+
+    /* A session mid-swap: three modules, three candidate indexes each, failure messages set */
+    private static SessionData sampleSession() {
+        SessionData session = new SessionData("U2212345A", "q8Vw3mN0r1yJ2kXz9Lp4sT6uH7bC5dE0fG1hI2jK3lM=", true);
+        session.setSwapStatus(Constants.SwapStatus.PROCESSING);
+        session.setSwapMessage("Your swap request is being processed");
+        session.setSwapStartedAt(System.currentTimeMillis() / 1000);
+
+        List<ModuleStatus> modules = new ArrayList<>();
+        for (int m = 0; m < 3; m++) {
+            List<String> newIndexes = List.of("0117" + m, "0118" + m, "0119" + m);
+            modules.add(new ModuleStatus("0116" + m, newIndexes, false,
+                "Indexes " + String.join(", ", newIndexes) + " have no vacancies."));
+        }
+        session.setModules(modules);
+        return session;
+    }
+
+    private static void verifyRoundTrip(List<SessionCodec> codecs, byte[] encoded, SessionData expected) {
+        // Every codec must read every other codec's output
+        for (SessionCodec reader : codecs) {
+            SessionData decoded = reader.decode(encoded);
+            boolean same = expected.getUsername().equals(decoded.getUsername())
+                && expected.getSwapStatus().equals(decoded.getSwapStatus())
+                && expected.getExpiresAt() == decoded.getExpiresAt()
+                && expected.getModules().size() == decoded.getModules().size()
+                && expected.getModules().get(2).getMessage().equals(decoded.getModules().get(2).getMessage())
+                && expected.getModules().get(2).getNewIndexes().equals(decoded.getModules().get(2).getNewIndexes());
+            if (!same) {
+                throw new IllegalStateException(reader.name() + " failed to round-trip session data");
+            }
+        }
+    }
+
+    private static double time(Runnable operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / (double) MEASURED_ITERATIONS;
+    }
+
+    private static RedisTemplate<String, byte[]> connect(String host, int port) {
+        try {
+            RedisConfig redisConfig = new RedisConfig();
+            ReflectionTestUtils.setField(redisConfig, "redisHost", host);
+            ReflectionTestUtils.setField(redisConfig, "redisPort", port);
+            ReflectionTestUtils.setField(redisConfig, "redisTimeout", Duration.ofSeconds(2));
+            ReflectionTestUtils.setField(redisConfig, "poolMaxActive", 2);
+            ReflectionTestUtils.setField(redisConfig, "poolMaxIdle", 2);
+            ReflectionTestUtils.setField(redisConfig, "poolMinIdle", 0);
+
+            JedisConnectionFactory factory = (JedisConnectionFactory) redisConfig.redisConnectionFactory();
+            factory.afterPropertiesSet();
+            factory.start();
+            RedisTemplate<String, byte[]> template = redisConfig.bytesRedisTemplate(factory);
+            template.hasKey("codec_benchmark:ping");
+            return template;
+        } catch (Exception e) {
+            System.out.println("Redis not reachable, skipping memory measurement: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ntu.adddrop.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.codec.BinarySessionCodec;
+import com.ntu.adddrop.codec.SessionCodec;
+import com.ntu.adddrop.config.RedisConfig;
+import com.ntu.adddrop.service.ReactiveSessionService;
+import com.ntu.adddrop.service.SessionService;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Compares the blocking (Jedis) and reactive (Lettuce) session stores under concurrent status polling.
+ * Each simulated watcher polls one session every poll interval, like the SwapStatus page does.
+ * The blocking run serves polls from a 200-thread pool (Tomcat's default), the reactive run
+ * fires them straight onto the Lettuce event loop.
+ *
+ * Needs a local Redis. Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.SessionStoreBenchmark -Dexec.args="localhost 6379 5000 20"
+ * Arguments: redis host, redis port, number of watchers, duration in seconds.
+ */
+public class SessionStoreBenchmark {
+
+    private static final int SESSIONS = 200;
+    private static final long POLL_INTERVAL_MS = 2000;
+    private static final int SERVLET_THREADS = 200;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int watchers = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int durationSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        RedisConfig redisConfig = new RedisConfig();
+        ReflectionTestUtils.setField(redisConfig, "redisHost", host);
+        ReflectionTestUtils.setField(redisConfig, "redisPort", port);
+        ReflectionTestUtils.setField(redisConfig, "redisTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(redisConfig, "poolMaxActive", 8);
+        ReflectionTestUtils.setField(redisConfig, "poolMaxIdle", 8);
+        ReflectionTestUtils.setField(redisConfig, "poolMinIdle", 0);
+
+        JedisConnectionFactory jedisFactory = (JedisConnectionFactory) redisConfig.redisConnectionFactory();
+        jedisFactory.afterPropertiesSet();
+        jedisFactory.start();
+        LettuceConnectionFactory lettuceFactory = (LettuceConnectionFactory) redisConfig.reactiveRedisConnectionFactory();
+        lettuceFactory.afterPropertiesSet();
+        lettuceFactory.start();
+
+        RedisTemplate<String, byte[]> sessionTemplate = redisConfig.bytesRedisTemplate(jedisFactory);
+        ReactiveRedisTemplate<String, byte[]> reactiveSessionTemplate = redisConfig.reactiveSessionRedisTemplate(lettuceFactory);
+        SessionCodec codec = new BinarySessionCodec(new ObjectMapper());
+
+        SessionService sessionService = new SessionService();
+        ReflectionTestUtils.setField(sessionService, "bytesRedisTemplate", sessionTemplate);
+        ReflectionTestUtils.setField(sessionService, "sessionCodec", codec);
+
+        ReactiveSessionService reactiveSessionService = new ReactiveSessionService();
+        ReflectionTestUtils.setField(reactiveSessionService, "reactiveSessionRedisTemplate", reactiveSessionTemplate);
+        ReflectionTestUtils.setField(reactiveSessionService, "sessionCodec", codec);
+
+        List<String> sessionIds = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            sessionIds.add(sessionService.createSecureSession("bench" + i, "ZW5jcnlwdGVkLXBhc3N3b3Jk"));
+        }
+
+        // Warm up connections and JIT for both paths before measuring
+        for (int i = 0; i < 2000; i++) {
+            String sessionId = sessionIds.get(i % sessionIds.size());
+            sessionService.getSecureSession(sessionId);
+            reactiveSessionService.getSecureSession(sessionId).block();
+        }
+
+        System.out.printf("Watchers: %d, poll interval: %d ms, duration: %d s%n", watchers, POLL_INTERVAL_MS, durationSeconds);
+
+        ExecutorService servletPool = Executors.newFixedThreadPool(SERVLET_THREADS);
+        Result blocking = run("blocking (Jedis)", watchers, durationSeconds, sessionIds, (sessionId, done) ->
+            servletPool.execute(() -> {
+                try {
+                    sessionService.getSecureSession(sessionId);
+                    done.accept(true);
+                } catch (Exception e) {
+                    done.accept(false);
+                }
+            }));
+        servletPool.shutdownNow();
+        servletPool.awaitTermination(10, TimeUnit.SECONDS);
+
+        Result reactive = run("reactive (Lettuce)", watchers, durationSeconds, sessionIds, (sessionId, done) ->
+            reactiveSessionService.getSecureSession(sessionId).subscribe(
+                data -> done.accept(true),
+                error -> done.accept(false)));
+
+        System.out.println();
+        blocking.print();
+        reactive.print();
+
+        sessionIds.forEach(sessionService::cleanupSession);
+        jedisFactory.destroy();
+        lettuceFactory.destroy();
+        System.exit(0);
+    }
+
+    private static Result run(String name, int watchers, int durationSeconds, List<String> sessionIds, Poller poller)
+            throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicLong errors = new AtomicLong();
+        ScheduledExecutorService clock = Executors.newScheduledThreadPool(2);
+
+        for (int w = 0; w < watchers; w++) {
+            String sessionId = sessionIds.get(w % sessionIds.size());
+            long offset = (POLL_INTERVAL_MS * w) / watchers;
+            clock.scheduleAtFixedRate(() -> {
+                long start = System.nanoTime();
+                poller.poll(sessionId, ok -> {
+                    if (ok) {
+                        latencies.add(System.nanoTime() - start);
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                });
+            }, offset, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        clock.shutdownNow();
+        clock.awaitTermination(10, TimeUnit.SECONDS);
+        Thread.sleep(1000);
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return new Result(name, sorted, errors.get(), durationSeconds, threads.getPeakThreadCount());
+    }
+
+    private interface Poller {
+        void poll(String sessionId, Consumer<Boolean> done);
+    }
+
+    private record Result(String name, long[] sortedLatencies, long errors, int durationSeconds, int peakThreads) {
+        void print() {
+            System.out.printf("%-20s polls/s=%8.0f  p50=%7.2f ms  p99=%8.2f ms  errors=%d  peak threads=%d%n",
+                name,
+                sortedLatencies.length / (double) durationSeconds,
+                percentile(0.50), percentile(0.99),
+                errors, peakThreads);
+        }
+
+        private double percentile(double p) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int idx = (int) Math.min(sortedLatencies.length - 1, Math.round(p * (sortedLatencies.length - 1)));
+            return sortedLatencies[idx] / 1_000_000.0;
+        }
+    }
+}
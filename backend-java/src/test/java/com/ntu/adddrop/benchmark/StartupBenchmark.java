@@ -0,0 +1,125 @@
+package com.ntu.adddrop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time from launching the packaged backend to its first 200 from /api/health (which also checks
+ * Redis), for the default mode, the fast-start profile, and fast-start on the AppCDS archive the
+ * cds Maven profile builds. Each run is a fresh JVM; RSS is read once the health check passes.
+ * Needs Redis on localhost:6379. Build first, with -Pcds for the third variant:
+ *   mvn -Pcds package -DskipTests
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.ntu.adddrop.benchmark.StartupBenchmark -Dexec.args="5"
+ * Arguments: runs per variant, jar (default target/adddrop-backend-0.0.1-SNAPSHOT.jar).
+ */
+public class StartupBenchmark {
+
+    private static final Duration GIVE_UP = Duration.ofSeconds(120);
+
+    private static final HttpClient httpClient = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofMillis(500))
+        .build();
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path jar = Path.of(args.length > 1 ? args[1] : "target/adddrop-backend-0.0.1-SNAPSHOT.jar");
+        Path cdsDir = jar.resolveSibling("cds");
+        Path cdsJar = cdsDir.resolve(jar.getFileName());
+        Path archive = cdsDir.resolve("application.jsa");
+        if (!Files.isRegularFile(jar)) {
+            System.out.println("No jar at " + jar + ", run mvn package first");
+            System.exit(1);
+        }
+
+        variant("default", runs, List.of("-jar", jar.toString()));
+        variant("fast-start", runs, List.of("-jar", jar.toString(), "--spring.profiles.active=fast-start"));
+        if (Files.isRegularFile(archive)) {
+            variant("fast-start+cds", runs, List.of("-XX:SharedArchiveFile=" + archive, "-Xshare:auto",
+                "-jar", cdsJar.toString(), "--spring.profiles.active=fast-start"));
+        } else {
+            System.out.println("No AppCDS archive at " + archive + ", build with -Pcds to include it");
+        }
+        System.exit(0);
+    }
+
+    private static void variant(String name, int runs, List<String> javaArgs) throws Exception {
+        long[] millis = new long[runs];
+        long[] rssKb = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long[] result = run(javaArgs);
+            millis[i] = result[0];
+            rssKb[i] = result[1];
+        }
+        Arrays.sort(millis);
+        Arrays.sort(rssKb);
+        System.out.printf("%-15s runs=%d  first healthy: median=%6d ms  min=%6d ms  max=%6d ms  rss median=%5d MB%n",
+            name, runs, millis[runs / 2], millis[0], millis[runs - 1], rssKb[runs / 2] / 1024);
+    }
+
+    /* One cold start: {ms to first healthy response, RSS in kB at that point} */
+    private static long[] run(List<String> javaArgs) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(javaArgs);
+        command.add("--server.port=" + port);
+
+        HttpRequest health = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/health"))
+            .timeout(Duration.ofSeconds(2)).GET().build();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")))
+            .start();
+        try {
+            while (System.nanoTime() - start < GIVE_UP.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Backend exited with " + process.exitValue() + ": " + command);
+                }
+                try {
+                    if (httpClient.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return new long[]{(System.nanoTime() - start) / 1_000_000, rssKb(process.pid())};
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(20);
+            }
+            throw new IllegalStateException("No healthy response within " + GIVE_UP.toSeconds() + "s: " + command);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static long rssKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux
+        }
+        return 0;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
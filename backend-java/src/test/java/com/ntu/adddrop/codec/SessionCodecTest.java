@@ -0,0 +1,150 @@
+package com.ntu.adddrop.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BinarySessionCodec binary = new BinarySessionCodec(objectMapper);
+    private final JsonSessionCodec json = new JsonSessionCodec(objectMapper);
+
+    private static SessionData swappingSession() {
+        SessionData sessionData = new SessionData("U2012345A", "gAAAAABencrypted==", true);
+        sessionData.setCreatedAt(1_760_000_000L);
+        sessionData.setExpiresAt(1_760_007_200L);
+        sessionData.setSwapStatus(Constants.SwapStatus.QUEUED);
+        sessionData.setSwapMessage("Waiting for a browser, position 3");
+        sessionData.setSwapStartedAt(1_760_000_100L);
+        sessionData.setStatusVersion(42);
+        sessionData.setSwapCycles(7);
+        sessionData.setLastAttemptAt(1_760_000_900L);
+        sessionData.setLastAttemptMs(1_834L);
+        sessionData.setQueuePosition(3);
+        sessionData.setEstimatedStartAt(1_760_001_000L);
+        sessionData.setModules(new ArrayList<>(List.of(
+            new ModuleStatus("10001", List.of("20001", "20002"), false, "Pending..."),
+            new ModuleStatus("10002", List.of("20003"), true, "Swapped to 20003 — ünïcode ok"))));
+        return sessionData;
+    }
+
+    private JsonNode tree(SessionData sessionData) {
+        return objectMapper.valueToTree(sessionData);
+    }
+
+    @Test
+    void binaryRoundTripKeepsEveryField() {
+        SessionData original = swappingSession();
+
+        byte[] encoded = binary.encode(original);
+
+        assertEquals(BinarySessionCodec.FORMAT_VERSION, encoded[0]);
+        assertEquals(tree(original), tree(binary.decode(encoded)));
+    }
+
+    @Test
+    void binaryRoundTripKeepsNullsAndEmptyModules() {
+        SessionData fresh = new SessionData("U2012345A", "gAAAAABencrypted==", true);
+        SessionData decoded = binary.decode(binary.encode(fresh));
+        assertEquals(tree(fresh), tree(decoded));
+        assertNull(decoded.getModules());
+        assertNull(decoded.getQueuePosition());
+
+        fresh.setModules(List.of());
+        assertEquals(List.of(), binary.decode(binary.encode(fresh)).getModules());
+    }
+
+    @Test
+    void binaryRoundTripKeepsStatusOutsideOrdinalTable() {
+        SessionData sessionData = swappingSession();
+        sessionData.setSwapStatus("Paused by operator");
+
+        assertEquals("Paused by operator", binary.decode(binary.encode(sessionData)).getSwapStatus());
+    }
+
+    @Test
+    void binaryIsSmallerThanJson() {
+        SessionData sessionData = swappingSession();
+
+        assertTrue(binary.encode(sessionData).length < json.encode(sessionData).length);
+    }
+
+    @Test
+    void jsonCodecReadsBinaryValues() {
+        SessionData original = swappingSession();
+
+        assertEquals(tree(original), tree(json.decode(binary.encode(original))));
+    }
+
+    @Test
+    void binaryCodecReadsJsonValues() {
+        SessionData original = swappingSession();
+
+        assertEquals(tree(original), tree(binary.decode(json.encode(original))));
+    }
+
+    @Test
+    void decodesLegacyJsonWrittenBeforeTheBinaryFormat() {
+        String legacy = """
+            {"username": "U2012345A", "encrypted_password": "gAAAAABencrypted==", "authenticated": true,
+             "created_at": 1760000000, "expires_at": 1760007200,
+             "swap_status": "Processing", "swap_message": "Your swap request is being processed",
+             "swap_started_at": 1760000100,
+             "modules": [{"old_index": "10001", "new_indexes": ["20001", "20002"], "swapped": false, "message": "Pending..."}]}
+            """;
+        byte[] value = legacy.getBytes(StandardCharsets.UTF_8);
+
+        for (SessionCodec codec : List.of(binary, json)) {
+            SessionData decoded = codec.decode(value);
+            assertEquals("U2012345A", decoded.getUsername());
+            assertEquals("gAAAAABencrypted==", decoded.getEncryptedPassword());
+            assertEquals(Constants.SwapStatus.PROCESSING, decoded.getSwapStatus());
+            assertEquals(1_760_000_100L, decoded.getSwapStartedAt());
+            assertEquals(0, decoded.getStatusVersion());
+            assertNull(decoded.getQueuePosition());
+            assertEquals(1, decoded.getModules().size());
+            assertEquals(List.of("20001", "20002"), decoded.getModules().get(0).getNewIndexes());
+        }
+    }
+
+    @Test
+    void skipsFieldsFromANewerWriter() {
+        SessionData original = swappingSession();
+        byte[] encoded = binary.encode(original);
+
+        // Field 30 as a varint (tag 240), then field 31 as a length-prefixed string (tag 250)
+        byte[] unknown = {(byte) 0xf0, 0x01, 0x05, (byte) 0xfa, 0x01, 0x02, 'n', 'e'};
+        byte[] extended = Arrays.copyOf(encoded, encoded.length + unknown.length);
+        System.arraycopy(unknown, 0, extended, encoded.length, unknown.length);
+
+        assertEquals(tree(original), tree(binary.decode(extended)));
+    }
+
+    @Test
+    void rejectsUnsupportedVersionAndCorruptValues() {
+        byte[] encoded = binary.encode(swappingSession());
+
+        byte[] newerVersion = encoded.clone();
+        newerVersion[0] = 0x02;
+        assertThrows(SessionCodecException.class, () -> binary.decode(newerVersion));
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+        assertThrows(SessionCodecException.class, () -> binary.decode(truncated));
+
+        assertThrows(SessionCodecException.class, () -> binary.decode("{not json".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,248 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DriverAdmissionControllerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    // Waiters block, so they get threads of their own rather than the common pool's few
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopWaiters() {
+        executor.shutdownNow();
+    }
+
+    /* Room for the given number of 100 MB browsers, set directly rather than detected from the machine */
+    private static DriverAdmissionController controller(int capacity, int maxQueued, long maxWaitSeconds) {
+        DriverAdmissionController controller = new DriverAdmissionController();
+        ReflectionTestUtils.setField(controller, "enabled", true);
+        ReflectionTestUtils.setField(controller, "maxQueued", maxQueued);
+        ReflectionTestUtils.setField(controller, "maxWaitSeconds", maxWaitSeconds);
+        ReflectionTestUtils.setField(controller, "throughputWindowSeconds", 900L);
+        ReflectionTestUtils.setField(controller, "defaultHoldSeconds", 1800L);
+        ReflectionTestUtils.setField(controller, "limitBytes", capacity * 100 * MB);
+        ReflectionTestUtils.setField(controller, "reserveBytes", 0L);
+        ReflectionTestUtils.setField(controller, "perDriverBytes", 100 * MB);
+        ReflectionTestUtils.setField(controller, "startedAtMillis", System.currentTimeMillis());
+        return controller;
+    }
+
+    private static void awaitPosition(DriverAdmissionController controller, String sessionId, int position)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (controller.position(sessionId) != position) {
+            assertTrue(System.nanoTime() < deadline, sessionId + " never reached position " + position);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitReported(List<Integer> positions, int position) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!positions.contains(position)) {
+            assertTrue(System.nanoTime() < deadline, "position " + position + " never reported");
+            Thread.sleep(5);
+        }
+    }
+
+    private CompletableFuture<Void> acquireAsync(DriverAdmissionController controller, String sessionId,
+                                                 List<Integer> positions, List<String> admitted) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                controller.acquire(sessionId, positions::add);
+                admitted.add(sessionId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor);
+    }
+
+    @Test
+    void browsersAreAdmittedUpToCapacityThenQueued() throws Exception {
+        DriverAdmissionController controller = controller(2, 10, 30);
+        List<Integer> positions = Collections.synchronizedList(new ArrayList<>());
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+
+        assertEquals(0, controller.expectedPosition(0));
+        controller.acquire("a", positions::add);
+        assertTrue(controller.tryAcquire());
+        assertFalse(controller.tryAcquire());
+        assertEquals(1, controller.expectedPosition(0));
+
+        CompletableFuture<Void> waiting = acquireAsync(controller, "c", positions, admitted);
+        awaitPosition(controller, "c", 1);
+        assertEquals(2, controller.expectedPosition(0));
+        assertEquals(4, controller.expectedPosition(2));
+
+        controller.release();
+        waiting.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1), positions);
+        assertEquals(List.of("c"), admitted);
+        assertEquals(0, controller.position("c"));
+        assertEquals(2, controller.getStats().get("admitted"));
+    }
+
+    @Test
+    void waitersAreAdmittedInArrivalOrder() throws Exception {
+        DriverAdmissionController controller = controller(1, 10, 30);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> lastPositions = Collections.synchronizedList(new ArrayList<>());
+        controller.acquire("holder", position -> { });
+
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            List<Integer> positions = i == 4 ? lastPositions : new ArrayList<>();
+            waiters.add(acquireAsync(controller, "w" + i, positions, admitted));
+            awaitPosition(controller, "w" + i, i);
+        }
+        assertEquals(4L, controller.getStats().get("queued_total"));
+
+        // Each release lets in exactly the head, and everyone behind it moves up one place
+        for (int i = 1; i <= 4; i++) {
+            controller.release();
+            waiters.get(i - 1).get(5, TimeUnit.SECONDS);
+            assertEquals("w" + i, admitted.get(i - 1));
+            for (int j = i + 1; j <= 4; j++) {
+                awaitPosition(controller, "w" + j, j - i);
+            }
+            // The last waiter is told its new place before the next release
+            if (i < 4) {
+                awaitReported(lastPositions, 4 - i);
+            }
+        }
+        assertEquals(List.of("w1", "w2", "w3", "w4"), admitted);
+        assertEquals(List.of(4, 3, 2, 1), lastPositions);
+        assertEquals(0, controller.getStats().get("waiting"));
+    }
+
+    @Test
+    void fullQueueTurnsSessionsAwayAtOnce() throws Exception {
+        DriverAdmissionController controller = controller(1, 1, 30);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        controller.acquire("holder", position -> { });
+        CompletableFuture<Void> waiting = acquireAsync(controller, "queued", new ArrayList<>(), admitted);
+        awaitPosition(controller, "queued", 1);
+
+        assertTrue(controller.isQueueFull(0));
+        assertThrows(SeleniumException.NodeAtCapacityException.class,
+            () -> controller.acquire("turned-away", position -> { }));
+
+        assertEquals(1L, controller.getStats().get("rejected"));
+        assertEquals(0, controller.position("turned-away"));
+        controller.release();
+        waiting.get(5, TimeUnit.SECONDS);
+        assertFalse(controller.isQueueFull(0));
+        assertTrue(controller.isQueueFull(1));
+    }
+
+    @Test
+    void headThatWaitsTooLongIsTurnedAwayAndTheNextMovesUp() throws Exception {
+        DriverAdmissionController controller = controller(1, 10, 1);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        controller.acquire("holder", position -> { });
+
+        CompletableFuture<Void> head = CompletableFuture.runAsync(() -> {
+            try {
+                controller.acquire("head", position -> { });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor);
+        awaitPosition(controller, "head", 1);
+        ReflectionTestUtils.setField(controller, "maxWaitSeconds", 30L);
+        CompletableFuture<Void> behind = acquireAsync(controller, "behind", new ArrayList<>(), admitted);
+        awaitPosition(controller, "behind", 2);
+
+        Exception timedOut = assertThrows(Exception.class, () -> head.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SeleniumException.NodeAtCapacityException.class, timedOut.getCause());
+        awaitPosition(controller, "behind", 1);
+        assertEquals(1L, controller.getStats().get("timed_out"));
+
+        controller.release();
+        behind.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("behind"), admitted);
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheQueue() throws Exception {
+        DriverAdmissionController controller = controller(1, 10, 30);
+        controller.acquire("holder", position -> { });
+        Thread waiter = new Thread(() -> {
+            try {
+                controller.acquire("stopped", position -> { });
+            } catch (InterruptedException e) {
+                // Stopped while waiting for a browser
+            }
+        });
+        waiter.start();
+        awaitPosition(controller, "stopped", 1);
+
+        waiter.interrupt();
+        waiter.join(5000);
+
+        assertFalse(waiter.isAlive());
+        assertEquals(0, controller.position("stopped"));
+        assertEquals(1, controller.expectedPosition(0));
+    }
+
+    @Test
+    void higherPerBrowserCostLowersCapacityButNeverBelowOne() {
+        DriverAdmissionController controller = controller(4, 10, 30);
+        assertEquals(4, controller.capacity());
+        assertEquals(14, controller.getLoopCapacity());
+
+        ReflectionTestUtils.setField(controller, "perDriverBytes", 150 * MB);
+        assertEquals(2, controller.capacity());
+
+        ReflectionTestUtils.setField(controller, "perDriverBytes", 1000 * MB);
+        assertEquals(1, controller.capacity());
+    }
+
+    @Test
+    void waitEstimateFallsBackToTheHoldTimeSpreadOverCapacity() {
+        DriverAdmissionController controller = controller(2, 10, 30);
+        assertEquals(0, controller.estimatedWaitMillis(0));
+        assertEquals(TimeUnit.SECONDS.toMillis(1800), controller.estimatedWaitMillis(1));
+        assertEquals(TimeUnit.SECONDS.toMillis(1800), controller.estimatedWaitMillis(2));
+        assertEquals(TimeUnit.SECONDS.toMillis(3600), controller.estimatedWaitMillis(3));
+
+        // Fewer releases than it takes to trust a rate: the mean hold time replaces the default
+        assertTrue(controller.tryAcquire());
+        controller.release(60_000);
+        assertEquals(60_000, controller.estimatedWaitMillis(1));
+    }
+
+    @Test
+    void disabledControllerAdmitsEveryone() throws Exception {
+        DriverAdmissionController controller = controller(1, 2, 30);
+        ReflectionTestUtils.setField(controller, "enabled", false);
+
+        for (int i = 0; i < 5; i++) {
+            controller.acquire("s" + i, position -> { });
+        }
+
+        assertTrue(controller.tryAcquire());
+        assertEquals(0, controller.expectedPosition(0));
+        assertEquals(3, controller.expectedPosition(2));
+        assertTrue(controller.isQueueFull(2));
+    }
+}
@@ -0,0 +1,241 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.selenium.FailureRecovery.FailureKind;
+import com.ntu.adddrop.selenium.page.PageRecorder;
+import com.ntu.adddrop.selenium.page.PlannerPage;
+import com.ntu.adddrop.selenium.page.StarsPages;
+import com.ntu.adddrop.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.UnhandledAlertException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FailureRecoveryTest {
+
+    private static final String SESSION = "session-1";
+    private static final String USERNAME = "U2012345A";
+    private static final String PASSWORD = "password";
+    private static final IntConsumer NO_QUEUE = position -> { };
+
+    private final WebDriverManager webDriverManager = mock(WebDriverManager.class);
+    private final NTULoginAutomator ntuLoginAutomator = mock(NTULoginAutomator.class);
+    private final PortalRequestGovernor portalRequestGovernor = mock(PortalRequestGovernor.class);
+    private final StarsPages starsPages = mock(StarsPages.class);
+    private final PortalCircuitBreaker portalCircuitBreaker = mock(PortalCircuitBreaker.class);
+    private final PortalUrls portalUrls = new PortalUrls();
+    private final FailureRecovery recovery = new FailureRecovery();
+
+    private final WebDriver driver = mock(WebDriver.class);
+    private final WebDriver.Navigation navigation = mock(WebDriver.Navigation.class);
+    private final PlannerPage planner = mock(PlannerPage.class);
+
+    @BeforeEach
+    void wire() {
+        ReflectionTestUtils.setField(portalUrls, "baseUrl", Constants.URLs.DEFAULT_BASE_URL);
+        ReflectionTestUtils.setField(recovery, "webDriverManager", webDriverManager);
+        ReflectionTestUtils.setField(recovery, "ntuLoginAutomator", ntuLoginAutomator);
+        ReflectionTestUtils.setField(recovery, "portalRequestGovernor", portalRequestGovernor);
+        ReflectionTestUtils.setField(recovery, "portalUrls", portalUrls);
+        ReflectionTestUtils.setField(recovery, "starsPages", starsPages);
+        ReflectionTestUtils.setField(recovery, "portalCircuitBreaker", portalCircuitBreaker);
+        ReflectionTestUtils.setField(recovery, "pageRecorder", mock(PageRecorder.class));
+
+        stubBrowser(driver);
+        when(driver.navigate()).thenReturn(navigation);
+        when(driver.getCurrentUrl()).thenReturn(portalUrls.coursePlanner());
+        when(starsPages.planner(driver)).thenReturn(planner);
+    }
+
+    /* No alert in the way */
+    private static void stubBrowser(WebDriver browser) {
+        WebDriver.TargetLocator targetLocator = mock(WebDriver.TargetLocator.class);
+        when(browser.switchTo()).thenReturn(targetLocator);
+        when(targetLocator.alert()).thenThrow(new NoAlertPresentException());
+    }
+
+    private WebDriver recover(FailureKind kind) {
+        return recovery.recover(driver, SESSION, kind, USERNAME, PASSWORD, NO_QUEUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> tier(String name) {
+        return (Map<String, Object>) ((Map<String, Object>) recovery.getStats().get("tiers")).get(name);
+    }
+
+    @Test
+    void failuresAreClassifiedByTheirExceptionType() {
+        assertEquals(FailureKind.PORTAL_CLOSED,
+            recovery.classify(driver, new SeleniumException.PortalClosedException("Add/Drop is closed")));
+        assertEquals(FailureKind.BROWSER_DEAD, recovery.classify(driver, new NoSuchSessionException("gone")));
+        assertEquals(FailureKind.BROWSER_DEAD, recovery.classify(driver, new UnreachableBrowserException("gone")));
+        assertEquals(FailureKind.UNEXPECTED_ALERT, recovery.classify(driver, new UnhandledAlertException("alert")));
+        assertEquals(FailureKind.STALE_ELEMENT, recovery.classify(driver, new StaleElementReferenceException("stale")));
+        assertEquals(FailureKind.TIMEOUT, recovery.classify(driver, new TimeoutException("slow")));
+        assertEquals(FailureKind.TIMEOUT, recovery.classify(driver, new NoSuchElementException("missing")));
+        assertEquals(FailureKind.TIMEOUT, recovery.classify(driver, new SeleniumException.TimeoutException("planner")));
+        assertEquals(FailureKind.OTHER, recovery.classify(driver, new IllegalStateException((String) null)));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> failures = (Map<String, Object>) recovery.getStats().get("failures");
+        assertEquals(2L, failures.get("browser_dead"));
+        assertEquals(3L, failures.get("timeout"));
+    }
+
+    @Test
+    void causeChainIsSearchedForAKnownType() {
+        Throwable wrapped = new SeleniumException("Swap attempt failed", new RuntimeException(new NoSuchSessionException("gone")));
+
+        assertEquals(FailureKind.BROWSER_DEAD, recovery.classify(driver, wrapped));
+    }
+
+    @Test
+    void loginPageOutranksWhatTheExceptionSaid() {
+        when(driver.getCurrentUrl()).thenReturn(portalUrls.login());
+
+        assertEquals(FailureKind.LOGGED_OUT, recovery.classify(driver, new TimeoutException("slow")));
+        assertEquals(FailureKind.LOGGED_OUT, recovery.classify(driver, new StaleElementReferenceException("stale")));
+        assertEquals(FailureKind.LOGGED_OUT, recovery.classify(driver, new IllegalStateException("unknown")));
+    }
+
+    @Test
+    void browserThatCannotSayWhereItIsIsDeadOrBlockedByAnAlert() {
+        when(driver.getCurrentUrl()).thenThrow(new UnhandledAlertException("alert"));
+        assertEquals(FailureKind.UNEXPECTED_ALERT, recovery.classify(driver, new TimeoutException("slow")));
+
+        WebDriver dead = mock(WebDriver.class);
+        when(dead.getCurrentUrl()).thenThrow(new WebDriverException("chrome not reachable"));
+        assertEquals(FailureKind.BROWSER_DEAD, recovery.classify(dead, new TimeoutException("slow")));
+    }
+
+    @Test
+    void kindsTheTypeSettlesDoNotAskTheBrowser() {
+        recovery.classify(driver, new SeleniumException.PortalClosedException("Add/Drop is closed"));
+        recovery.classify(driver, new UnhandledAlertException("alert"));
+        recovery.classify(driver, new NoSuchSessionException("gone"));
+
+        verify(driver, never()).getCurrentUrl();
+    }
+
+    @Test
+    void staleElementIsRetriedOnTheSamePage() {
+        when(planner.isShowing()).thenReturn(true);
+
+        assertSame(driver, recover(FailureKind.STALE_ELEMENT));
+
+        verify(driver, never()).navigate();
+        verify(portalRequestGovernor, never()).acquire(anyString());
+        assertEquals(1L, tier("retry_step").get("recovered"));
+        assertEquals(0L, tier("reload_page").get("tried"));
+    }
+
+    @Test
+    void retryThatFindsNoPlannerEscalatesToAReload() {
+        when(planner.isShowing()).thenReturn(false);
+
+        assertSame(driver, recover(FailureKind.STALE_ELEMENT));
+
+        verify(portalRequestGovernor).acquire(SESSION);
+        verify(navigation).to(portalUrls.coursePlanner());
+        verify(planner).await();
+        verify(portalCircuitBreaker).recordSuccess(SESSION);
+        verify(ntuLoginAutomator, never()).performLogin(any(), anyString(), anyString(), anyString());
+        assertEquals(1L, tier("retry_step").get("tried"));
+        assertEquals(0L, tier("retry_step").get("recovered"));
+        assertEquals(1L, tier("reload_page").get("recovered"));
+    }
+
+    @Test
+    void reloadLandingOnTheLoginPageLogsInAgain() {
+        when(driver.getCurrentUrl()).thenReturn(portalUrls.login());
+
+        assertSame(driver, recover(FailureKind.TIMEOUT));
+
+        verify(planner, never()).await();
+        verify(portalCircuitBreaker, never()).recordSuccess(anyString());
+        verify(ntuLoginAutomator).performLogin(driver, SESSION, USERNAME, PASSWORD);
+        assertEquals(0L, tier("reload_page").get("recovered"));
+        assertEquals(1L, tier("relogin").get("recovered"));
+    }
+
+    @Test
+    void failedReloginRecreatesTheBrowser() {
+        WebDriver fresh = mock(WebDriver.class);
+        when(ntuLoginAutomator.performLogin(driver, SESSION, USERNAME, PASSWORD))
+            .thenThrow(new SeleniumException.TimeoutException("login page"));
+        when(webDriverManager.createDriver(SESSION, NO_QUEUE)).thenReturn(fresh);
+
+        assertSame(fresh, recover(FailureKind.LOGGED_OUT));
+
+        verify(webDriverManager).closeDriver(SESSION, driver);
+        verify(ntuLoginAutomator).performLogin(fresh, SESSION, USERNAME, PASSWORD);
+        assertEquals(0L, tier("reload_page").get("tried"));
+        assertEquals(1L, tier("recreate_driver").get("recovered"));
+        assertEquals(0L, recovery.getStats().get("recreate_avoided"));
+    }
+
+    @Test
+    void deadBrowserIsRecreatedStraightAway() {
+        WebDriver fresh = mock(WebDriver.class);
+        when(webDriverManager.createDriver(SESSION, NO_QUEUE)).thenReturn(fresh);
+
+        assertSame(fresh, recover(FailureKind.BROWSER_DEAD));
+
+        verify(driver, never()).navigate();
+        verify(ntuLoginAutomator, never()).performLogin(eq(driver), anyString(), anyString(), anyString());
+        assertEquals(1L, tier("recreate_driver").get("tried"));
+    }
+
+    @Test
+    void rejectedCredentialsAreNotRetriedInANewBrowser() {
+        when(ntuLoginAutomator.performLogin(driver, SESSION, USERNAME, PASSWORD))
+            .thenThrow(new SeleniumException.LoginFailedException("Invalid username or password"));
+
+        assertThrows(SeleniumException.LoginFailedException.class, () -> recover(FailureKind.LOGGED_OUT));
+
+        verify(webDriverManager, never()).closeDriver(any(), any());
+        assertEquals(0L, recovery.getStats().get("unrecovered"));
+    }
+
+    @Test
+    void recoveryFailsOnceEveryTierHasFailed() {
+        when(planner.isShowing()).thenReturn(false);
+        doThrow(new SeleniumException.TimeoutException("planner")).when(planner).await();
+        when(ntuLoginAutomator.performLogin(any(), anyString(), anyString(), anyString()))
+            .thenThrow(new SeleniumException.TimeoutException("login page"));
+        WebDriver fresh = mock(WebDriver.class);
+        when(webDriverManager.createDriver(SESSION, NO_QUEUE)).thenReturn(fresh);
+
+        SeleniumException thrown = assertThrows(SeleniumException.class, () -> recover(FailureKind.UNEXPECTED_ALERT));
+
+        assertEquals("RECOVERY_FAILED", thrown.getErrorCode());
+        assertEquals(1L, recovery.getStats().get("unrecovered"));
+        assertEquals(0L, recovery.getStats().get("recoveries"));
+        for (String name : new String[] {"retry_step", "reload_page", "relogin", "recreate_driver"}) {
+            assertEquals(1L, tier(name).get("tried"), name);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.ntu.adddrop.selenium;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.exception.SeleniumException;
+import com.ntu.adddrop.selenium.GridDriverProvider.Grid;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GridDriverProviderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<StubGrid> stubs = new ArrayList<>();
+    private GridDriverProvider provider;
+
+    @AfterEach
+    void stop() {
+        if (provider != null) {
+            provider.shutdown();
+        }
+        stubs.forEach(stub -> stub.server.stop(0));
+    }
+
+    /* A Grid's /status with one UP node holding the given number of free Chrome slots and one busy one */
+    private static String status(boolean ready, int freeSlots) {
+        StringBuilder slots = new StringBuilder("{\"stereotype\": {\"browserName\": \"chrome\"}, \"session\": {\"sessionId\": \"busy\"}}");
+        for (int i = 0; i < freeSlots; i++) {
+            slots.append(", {\"stereotype\": {\"browserName\": \"chrome\"}, \"session\": null}");
+        }
+        return "{\"value\": {\"ready\": " + ready + ", \"nodes\": [{\"availability\": \"UP\", \"slots\": [" + slots + "]}]}}";
+    }
+
+    /* Stub Grid answering /status and creating (or refusing) W3C sessions */
+    private static class StubGrid {
+        final HttpServer server;
+        volatile String status;
+        volatile boolean acceptSessions;
+        final AtomicInteger sessionRequests = new AtomicInteger();
+
+        StubGrid(String status, boolean acceptSessions) throws IOException {
+            this.status = status;
+            this.acceptSessions = acceptSessions;
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 16);
+            server.createContext("/status", exchange -> respond(exchange, 200, this.status));
+            server.createContext("/session", exchange -> {
+                if ("DELETE".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 200, "{\"value\": null}");
+                } else if (!this.acceptSessions) {
+                    sessionRequests.incrementAndGet();
+                    respond(exchange, 500, "{\"value\": {\"error\": \"session not created\", \"message\": \"No free slots\", \"stacktrace\": \"\"}}");
+                } else {
+                    int id = sessionRequests.incrementAndGet();
+                    respond(exchange, 200, "{\"value\": {\"sessionId\": \"stub-" + id + "\", \"capabilities\": {\"browserName\": \"chrome\"}}}");
+                }
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            exchange.getRequestBody().readAllBytes();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private StubGrid stub(String status, boolean acceptSessions) throws IOException {
+        StubGrid stub = new StubGrid(status, acceptSessions);
+        stubs.add(stub);
+        return stub;
+    }
+
+    private GridDriverProvider provider(StubGrid... grids) throws Exception {
+        provider = new GridDriverProvider();
+        ReflectionTestUtils.setField(provider, "chromeOptions", new ChromeOptions());
+        ReflectionTestUtils.setField(provider, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(provider, "gridUrls", String.join(",", List.of(grids).stream().map(StubGrid::url).toList()));
+        ReflectionTestUtils.setField(provider, "statusIntervalSeconds", 3600L);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(5);
+        scheduler.initialize();
+        ReflectionTestUtils.setField(provider, "taskScheduler", scheduler);
+        provider.start();
+        // Polled explicitly from here on, a background poll must not overwrite what a test counted down
+        scheduler.shutdown();
+        provider.refreshStatus();
+        return provider;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> gridStats() {
+        return (List<Map<String, Object>>) provider.getStats().get("grids");
+    }
+
+    private static Grid grid(String url, boolean reachable, int freeSlots, double rttMs) throws Exception {
+        Grid grid = new Grid(URI.create(url).toURL());
+        grid.reachable = reachable;
+        grid.freeSlots.set(freeSlots);
+        grid.rttMs = rttMs;
+        return grid;
+    }
+
+    @Test
+    void countsOnlyFreeChromeSlotsOnNodesThatAreUp() throws Exception {
+        String status = """
+            {"nodes": [
+              {"availability": "UP", "slots": [
+                {"stereotype": {"browserName": "chrome"}},
+                {"stereotype": {"browserName": "chrome"}, "session": null},
+                {"stereotype": {"browserName": "chrome"}, "session": {"sessionId": "taken"}},
+                {"stereotype": {"browserName": "firefox"}, "session": null}]},
+              {"availability": "DRAINING", "slots": [
+                {"stereotype": {"browserName": "chrome"}, "session": null}]}]}
+            """;
+
+        assertEquals(2, GridDriverProvider.freeChromeSlots(objectMapper.readTree(status)));
+    }
+
+    @Test
+    void choosesFreeSlotsWeighedByRoundTrip() throws Exception {
+        Grid near = grid("http://near:4444", true, 2, 5);
+        Grid far = grid("http://far:4444", true, 3, 200);
+        Grid full = grid("http://full:4444", true, 0, 1);
+        Grid down = grid("http://down:4444", false, 10, 1);
+        List<Grid> grids = List.of(far, full, down, near);
+
+        // 2 / (1 + 5/50) beats 3 / (1 + 200/50); a full grid only when nothing has slots, a down one last
+        assertSame(near, GridDriverProvider.choose(grids, List.of()));
+        assertSame(far, GridDriverProvider.choose(grids, List.of(near)));
+        assertSame(full, GridDriverProvider.choose(grids, List.of(near, far)));
+        assertSame(down, GridDriverProvider.choose(grids, List.of(near, far, full)));
+        assertNull(GridDriverProvider.choose(grids, grids));
+    }
+
+    @Test
+    void pollsStatusOfEveryGrid() throws Exception {
+        StubGrid ready = stub(status(true, 3), true);
+        StubGrid notReady = stub(status(false, 5), true);
+        provider(ready, notReady);
+
+        List<Map<String, Object>> stats = gridStats();
+        assertEquals(true, stats.get(0).get("reachable"));
+        assertEquals(3, stats.get(0).get("free_slots"));
+        assertEquals(false, stats.get(1).get("reachable"));
+
+        // The next poll picks up slots freed and a grid that came back
+        ready.status = status(true, 1);
+        notReady.status = status(true, 4);
+        provider.refreshStatus();
+        stats = gridStats();
+        assertEquals(1, stats.get(0).get("free_slots"));
+        assertEquals(true, stats.get(1).get("reachable"));
+        assertEquals(4, stats.get(1).get("free_slots"));
+
+        // A grid that stops answering is marked unreachable
+        ready.server.stop(0);
+        provider.refreshStatus();
+        assertEquals(false, gridStats().get(0).get("reachable"));
+    }
+
+    @Test
+    void placesSessionOnBestGridAndCountsSlotDown() throws Exception {
+        StubGrid busy = stub(status(true, 1), true);
+        StubGrid idle = stub(status(true, 4), true);
+        provider(busy, idle);
+
+        WebDriver driver = provider.create();
+        try {
+            assertInstanceOf(RemoteWebDriver.class, driver);
+            assertEquals(0, busy.sessionRequests.get());
+            assertEquals(1, idle.sessionRequests.get());
+            assertEquals(3, gridStats().get(1).get("free_slots"));
+            assertEquals(1L, gridStats().get(1).get("placed"));
+        } finally {
+            driver.quit();
+        }
+    }
+
+    @Test
+    void failsOverToNextGridWhenSessionIsRefused() throws Exception {
+        StubGrid refusing = stub(status(true, 5), false);
+        StubGrid accepting = stub(status(true, 1), true);
+        provider(refusing, accepting);
+
+        WebDriver driver = provider.create();
+        try {
+            assertEquals(1, refusing.sessionRequests.get());
+            assertEquals(1, accepting.sessionRequests.get());
+            List<Map<String, Object>> stats = gridStats();
+            assertEquals(false, stats.get(0).get("reachable"));
+            assertEquals(1L, stats.get(0).get("failures"));
+            assertEquals(1L, stats.get(1).get("placed"));
+        } finally {
+            driver.quit();
+        }
+
+        // Not offered again until its status says it's back
+        WebDriver next = provider.create();
+        next.quit();
+        assertEquals(1, refusing.sessionRequests.get());
+        provider.refreshStatus();
+        assertTrue((Boolean) gridStats().get(0).get("reachable"));
+    }
+
+    @Test
+    void throwsWhenNoGridAcceptsASession() throws Exception {
+        StubGrid first = stub(status(true, 2), false);
+        StubGrid second = stub(status(true, 1), false);
+        provider(first, second);
+
+        SeleniumException e = assertThrows(SeleniumException.class, () -> provider.create());
+
+        assertTrue(e.getMessage().contains("no Selenium Grid accepted a new session"));
+        assertEquals(1, first.sessionRequests.get());
+        assertEquals(1, second.sessionRequests.get());
+        assertFalse(gridStats().stream().anyMatch(stats -> Boolean.TRUE.equals(stats.get("reachable"))));
+    }
+}
@@ -0,0 +1,193 @@
+package com.ntu.adddrop.selenium;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortalCircuitBreakerTest {
+
+    // A paused session blocks, so it gets a thread of its own
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final PortalCircuitBreaker breaker = new PortalCircuitBreaker();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(breaker, "windowSeconds", 60L);
+        ReflectionTestUtils.setField(breaker, "minSessions", 3);
+        ReflectionTestUtils.setField(breaker, "openSeconds", 30L);
+        ReflectionTestUtils.setField(breaker, "maxOpenSeconds", 600L);
+        ReflectionTestUtils.setField(breaker, "closedPortalOpenSeconds", 300L);
+        ReflectionTestUtils.setField(breaker, "probeTimeoutSeconds", 60L);
+        // Longer than any test waits, so only a state change wakes a paused session
+        ReflectionTestUtils.setField(breaker, "pollMs", 60_000L);
+        ReflectionTestUtils.setField(breaker, "clusterEnabled", false);
+    }
+
+    @AfterEach
+    void stopWaiters() {
+        executor.shutdownNow();
+    }
+
+    private void trip() {
+        breaker.recordFailure("a", "timeout");
+        breaker.recordFailure("b", "timeout");
+        breaker.recordFailure("c", "timeout");
+    }
+
+    /* Skip to the end of the open period */
+    private void openPeriodRunsOut() {
+        ReflectionTestUtils.setField(breaker, "openUntil", System.currentTimeMillis() - 1);
+    }
+
+    private long openMs() {
+        return (long) ReflectionTestUtils.getField(breaker, "trippedOpenMs");
+    }
+
+    private Object stat(String name) {
+        return breaker.getStats().get(name);
+    }
+
+    @Test
+    void opensOnceEnoughSessionsFail() {
+        breaker.recordFailure("a", "timeout");
+        breaker.recordFailure("b", "timeout");
+        // The same session failing again is still one session
+        breaker.recordFailure("b", "timeout");
+        assertEquals(PortalCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure("c", "timeout");
+
+        assertEquals(PortalCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(30_000L, openMs());
+        assertEquals(1L, stat("trips"));
+        assertEquals("timeout", stat("last_reason"));
+    }
+
+    @Test
+    void staysClosedWhileMoreSessionsGetThrough() {
+        for (String sessionId : new String[] {"w", "x", "y", "z"}) {
+            breaker.recordSuccess(sessionId);
+        }
+
+        trip();
+
+        assertEquals(PortalCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0L, stat("trips"));
+    }
+
+    @Test
+    void openBreakerHoldsSessionsUntilTheyGiveUp() {
+        AtomicInteger pauses = new AtomicInteger();
+        assertEquals(0, breaker.awaitPermit("a", 50, pauses::incrementAndGet));
+        assertEquals(0, pauses.get());
+
+        trip();
+
+        assertEquals(-1, breaker.awaitPermit("a", 50, pauses::incrementAndGet));
+        assertEquals(1, pauses.get());
+        assertEquals(1L, stat("pauses"));
+        assertEquals(0, stat("paused_now"));
+    }
+
+    @Test
+    void onlyOneSessionProbesOnceTheOpenPeriodRunsOut() {
+        trip();
+        openPeriodRunsOut();
+        assertEquals(PortalCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertEquals(0, breaker.awaitPermit("a", 50, () -> { }));
+        assertEquals(-1, breaker.awaitPermit("b", 50, () -> { }));
+        // The probe may keep sending requests while it finds out
+        assertEquals(0, breaker.awaitPermit("a", 50, () -> { }));
+        assertEquals(1L, stat("probes"));
+    }
+
+    @Test
+    void probeThatGetsThroughClosesTheBreakerAndWakesTheOthers() throws Exception {
+        trip();
+        openPeriodRunsOut();
+        assertEquals(0, breaker.awaitPermit("a", 50, () -> { }));
+        CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(
+            () -> breaker.awaitPermit("b", 10_000, () -> { }), executor);
+        awaitPaused(1);
+
+        breaker.recordSuccess("a");
+
+        assertEquals(PortalCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1L, stat("closes"));
+        long pausedMs = waiting.get(5, TimeUnit.SECONDS);
+        assertTrue(pausedMs > 0 && pausedMs < 5000, "paused " + pausedMs + " ms");
+
+        // Failures from before the trip no longer count towards the next one
+        breaker.recordFailure("a", "timeout");
+        assertEquals(PortalCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void probeThatFailsOpensTheBreakerForTwiceAsLong() {
+        trip();
+        openPeriodRunsOut();
+        assertEquals(0, breaker.awaitPermit("a", 50, () -> { }));
+
+        // A request sent before the breaker opened fails late; it isn't the probe
+        breaker.recordFailure("b", "timeout");
+        assertEquals(PortalCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.recordFailure("a", "probe timeout");
+
+        assertEquals(PortalCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(60_000L, openMs());
+        assertEquals(1L, stat("failed_probes"));
+        assertEquals("probe timeout", stat("last_reason"));
+    }
+
+    @Test
+    void reopenedPeriodIsCappedAtTheMaximum() {
+        ReflectionTestUtils.setField(breaker, "maxOpenSeconds", 45L);
+        trip();
+
+        for (int i = 0; i < 3; i++) {
+            openPeriodRunsOut();
+            assertEquals(0, breaker.awaitPermit("a", 50, () -> { }));
+            breaker.recordFailure("a", "probe timeout");
+        }
+
+        assertEquals(45_000L, openMs());
+        assertEquals(3L, stat("failed_probes"));
+    }
+
+    @Test
+    void closedPortalOpensTheBreakerAtOnce() {
+        breaker.tripPortalClosed("a", "Add/Drop is closed");
+
+        assertEquals(PortalCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(300_000L, openMs());
+        assertEquals(1L, stat("trips"));
+
+        // Already open for longer than a normal trip: further failures don't shorten it
+        breaker.recordFailure("b", "timeout");
+        breaker.recordFailure("c", "timeout");
+        breaker.recordFailure("d", "timeout");
+        assertEquals(300_000L, openMs());
+        assertEquals(1L, stat("trips"));
+        assertEquals("portal closed: Add/Drop is closed", stat("last_reason"));
+    }
+
+    private void awaitPaused(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((int) stat("paused_now") < count) {
+            assertTrue(System.nanoTime() < deadline, "session never paused");
+            Thread.sleep(5);
+        }
+    }
+}
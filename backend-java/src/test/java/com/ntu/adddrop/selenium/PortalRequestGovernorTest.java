@@ -0,0 +1,185 @@
+package com.ntu.adddrop.selenium;
+
+import com.ntu.adddrop.exception.SeleniumException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PortalRequestGovernorTest {
+
+    // Waiters block, so they get threads of their own rather than the common pool's few
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopWaiters() {
+        executor.shutdownNow();
+    }
+
+    private static PortalRequestGovernor governor(double ratePerSecond, int burst, long maxWaitSeconds) {
+        PortalRequestGovernor governor = new PortalRequestGovernor();
+        ReflectionTestUtils.setField(governor, "ratePerSecond", ratePerSecond);
+        ReflectionTestUtils.setField(governor, "burst", burst);
+        ReflectionTestUtils.setField(governor, "maxWaitSeconds", maxWaitSeconds);
+        return governor;
+    }
+
+    private static int queued(PortalRequestGovernor governor) {
+        return (int) governor.getStats().get("queued");
+    }
+
+    private static void awaitQueued(PortalRequestGovernor governor, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queued(governor) < count) {
+            assertTrue(System.nanoTime() < deadline, "waiters never queued");
+            Thread.sleep(5);
+        }
+    }
+
+    private static long millisToAcquire(PortalRequestGovernor governor, String sessionId) {
+        long start = System.nanoTime();
+        governor.acquire(sessionId);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    void heavySessionCannotStarveALightOne() throws Exception {
+        // One permit every 200 ms, so the order permits are granted in is the order of the finish tags
+        PortalRequestGovernor governor = governor(5.0, 1, 30);
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        governor.acquire("heavy");
+        granted.add("heavy");
+        for (int i = 0; i < 5; i++) {
+            waiters.add(CompletableFuture.runAsync(() -> {
+                governor.acquire("heavy");
+                granted.add("heavy");
+            }, executor));
+        }
+        awaitQueued(governor, 5);
+        waiters.add(CompletableFuture.runAsync(() -> {
+            governor.acquire("light");
+            granted.add("light");
+        }, executor));
+        CompletableFuture.allOf(waiters.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        // Light's first request finishes with heavy's second, ahead of the rest of heavy's backlog
+        assertEquals(7, granted.size());
+        assertTrue(granted.indexOf("light") <= 2, "light served at " + granted.indexOf("light") + ": " + granted);
+    }
+
+    @Test
+    void waiterPastItsDeadlineThrowsAndFreesTheHead() throws Exception {
+        // The next token is 2 s away: the head gives up after 1 s, the waiter behind it gets the token
+        PortalRequestGovernor governor = governor(0.5, 1, 1);
+        governor.acquire("a");
+
+        CompletableFuture<Long> head = CompletableFuture.supplyAsync(() -> millisToAcquire(governor, "b"), executor);
+        awaitQueued(governor, 1);
+        ReflectionTestUtils.setField(governor, "maxWaitSeconds", 10L);
+        CompletableFuture<Long> behind = CompletableFuture.supplyAsync(() -> millisToAcquire(governor, "c"), executor);
+        awaitQueued(governor, 2);
+
+        Exception timedOut = assertThrows(Exception.class, () -> head.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SeleniumException.TimeoutException.class, timedOut.getCause());
+        long behindMs = behind.get(5, TimeUnit.SECONDS);
+        assertTrue(behindMs < 3000, "waiter behind the timed-out head waited " + behindMs + " ms");
+        assertEquals(1L, governor.getStats().get("timed_out"));
+        assertEquals(0, queued(governor));
+    }
+
+    @Test
+    void bucketAllowsItsBurstThenRefillsAtTheRate() {
+        PortalRequestGovernor governor = governor(10.0, 3, 30);
+
+        long burstMs = 0;
+        for (int i = 0; i < 3; i++) {
+            burstMs += millisToAcquire(governor, "s");
+        }
+        assertTrue(burstMs < 50, "burst took " + burstMs + " ms");
+
+        // Empty bucket: the next permit is one refill (100 ms) away
+        long refillMs = millisToAcquire(governor, "s");
+        assertTrue(refillMs >= 80 && refillMs < 500, "refill took " + refillMs + " ms");
+    }
+
+    @Test
+    void bucketRefillIsCappedAtTheBurst() throws Exception {
+        PortalRequestGovernor governor = governor(10.0, 2, 30);
+        millisToAcquire(governor, "s");
+        millisToAcquire(governor, "s");
+
+        // Long enough for five tokens, but the bucket holds two
+        Thread.sleep(500);
+        assertTrue(millisToAcquire(governor, "s") < 50);
+        assertTrue(millisToAcquire(governor, "s") < 50);
+        assertTrue(millisToAcquire(governor, "s") >= 80);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clusterTokenIsTakenWithoutHoldingTheLock() throws Exception {
+        PortalRequestGovernor governor = governor(10.0, 5, 30);
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        CountDownLatch inRedis = new CountDownLatch(1);
+        CountDownLatch redisAnswers = new CountDownLatch(1);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenAnswer(invocation -> {
+            inRedis.countDown();
+            redisAnswers.await();
+            return 0L;
+        });
+        ReflectionTestUtils.setField(governor, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(governor, "clusterEnabled", true);
+
+        CompletableFuture<Void> head = CompletableFuture.runAsync(() -> governor.acquire("a"), executor);
+        assertTrue(inRedis.await(5, TimeUnit.SECONDS));
+
+        // Stats and new waiters get the lock while the head's Redis call is in flight
+        CompletableFuture<Integer> stats = CompletableFuture.supplyAsync(() -> queued(governor), executor);
+        assertEquals(1, stats.get(1, TimeUnit.SECONDS));
+        CompletableFuture<Void> next = CompletableFuture.runAsync(() -> governor.acquire("b"), executor);
+        awaitQueued(governor, 2);
+
+        redisAnswers.countDown();
+        head.get(5, TimeUnit.SECONDS);
+        next.get(5, TimeUnit.SECONDS);
+        assertEquals(2L, governor.getStats().get("granted"));
+        assertEquals(0L, governor.getStats().get("cluster_fallbacks"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clusterFailureFallsBackToTheLocalBucket() {
+        PortalRequestGovernor governor = governor(10.0, 5, 30);
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+            .thenThrow(new IllegalStateException("Redis unavailable"));
+        ReflectionTestUtils.setField(governor, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(governor, "clusterEnabled", true);
+
+        governor.acquire("a");
+
+        assertEquals(1L, governor.getStats().get("granted"));
+        assertEquals(1L, governor.getStats().get("cluster_fallbacks"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.service.SessionEventLog.EventType;
+import com.ntu.adddrop.service.SessionEventLog.SessionEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionEventLogTest {
+
+    private final List<Map<String, String>> stream = new ArrayList<>();
+
+    private void append(SessionEvent event) {
+        Map<String, String> logged = new LinkedHashMap<>();
+        logged.put("id", "1700000000000-" + stream.size());
+        logged.putAll(event.getFields());
+        stream.add(logged);
+    }
+
+    private void append(EventType type, Object... fieldsAndValues) {
+        append(SessionEventLog.event(type, fieldsAndValues));
+    }
+
+    private void appendSwapSession() {
+        append(EventType.STATUS, "status", "Processing", "message", "Your swap request is being processed");
+        append(EventType.MODULES, "old_indexes", "10001,10002");
+        for (int cycle = 0; cycle < 3; cycle++) {
+            append(EventType.ATTEMPT, "old_index", "10001", "new_index", "20001", "success", false);
+            append(EventType.ATTEMPT, "old_index", "10002", "new_index", "20002", "success", false);
+            append(EventType.CYCLE, "duration_ms", 1200);
+        }
+        append(EventType.RECOVERY, "kind", "stale_session");
+        append(EventType.ATTEMPT, "old_index", "10001", "new_index", "20001", "success", true);
+        append(EventType.MODULE, "idx", 0, "old_index", "10001", "swapped", true, "message", "Swapped to 20001");
+    }
+
+    @Test
+    void foldsModulesAndCounts() {
+        appendSwapSession();
+
+        Map<String, Object> state = SessionEventLog.fold(stream);
+
+        assertEquals("Processing", state.get("status"));
+        assertEquals(7L, state.get("attempts"));
+        assertEquals(3L, state.get("cycles"));
+        assertEquals(1L, state.get("recoveries"));
+        List<?> modules = (List<?>) state.get("modules");
+        assertEquals(2, modules.size());
+        assertEquals(true, ((Map<?, ?>) modules.get(0)).get("swapped"));
+        assertEquals("Swapped to 20001", ((Map<?, ?>) modules.get(0)).get("message"));
+        assertEquals(false, ((Map<?, ?>) modules.get(1)).get("swapped"));
+    }
+
+    @Test
+    void trimmedStreamFoldsFromSnapshot() {
+        appendSwapSession();
+        append(SessionEventLog.snapshot(SessionEventLog.fold(stream)));
+        int snapshotAt = stream.size() - 1;
+        append(EventType.ATTEMPT, "old_index", "10002", "new_index", "20002", "success", true);
+        append(EventType.MODULE, "idx", 1, "old_index", "10002", "swapped", true, "message", "Swapped to 20002");
+        append(EventType.STATUS, "status", "Completed", "message", "All modules swapped");
+        Map<String, Object> full = SessionEventLog.fold(stream);
+
+        // MAXLEN ~ dropped everything before the snapshot, the modules event included
+        List<Map<String, String>> trimmed = new ArrayList<>(stream.subList(snapshotAt, stream.size()));
+        Map<String, Object> folded = SessionEventLog.fold(trimmed);
+
+        assertEquals(full, folded);
+        assertEquals("Completed", folded.get("status"));
+        assertEquals(8L, folded.get("attempts"));
+        List<?> modules = (List<?>) folded.get("modules");
+        assertEquals(2, modules.size());
+        assertTrue(modules.stream().allMatch(module -> Boolean.TRUE.equals(((Map<?, ?>) module).get("swapped"))));
+    }
+}
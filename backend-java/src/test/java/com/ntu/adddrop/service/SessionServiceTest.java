@@ -0,0 +1,154 @@
+package com.ntu.adddrop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ntu.adddrop.codec.BinarySessionCodec;
+import com.ntu.adddrop.config.RedisConfig;
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.util.Constants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/* Needs a local Redis (REDIS_HOST/REDIS_PORT, default localhost:6379), skipped without one */
+class SessionServiceTest {
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate<String, byte[]> bytesRedisTemplate;
+    private SessionService sessionService;
+    private final Queue<Long> published = new ConcurrentLinkedQueue<>();
+    private final List<String> sessionIds = new ArrayList<>();
+
+    @BeforeEach
+    void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+            System.getenv().getOrDefault("REDIS_HOST", "localhost"),
+            Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379")));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        boolean reachable;
+        try (var connection = connectionFactory.getConnection()) {
+            reachable = "PONG".equals(connection.ping());
+        } catch (RuntimeException e) {
+            reachable = false;
+        }
+        assumeTrue(reachable, "no Redis to test against");
+
+        bytesRedisTemplate = new RedisConfig().bytesRedisTemplate(connectionFactory);
+        SwapStatusWatchService swapStatusWatchService = mock(SwapStatusWatchService.class);
+        doAnswer(invocation -> published.add(invocation.getArgument(1)))
+            .when(swapStatusWatchService).publish(anyString(), anyLong());
+
+        sessionService = new SessionService();
+        ReflectionTestUtils.setField(sessionService, "bytesRedisTemplate", bytesRedisTemplate);
+        ReflectionTestUtils.setField(sessionService, "sessionCodec", new BinarySessionCodec(new ObjectMapper()));
+        ReflectionTestUtils.setField(sessionService, "swapStatusWatchService", swapStatusWatchService);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        if (sessionService != null) {
+            sessionService.cleanupSessions(sessionIds);
+        }
+        connectionFactory.destroy();
+    }
+
+    private String createSession() {
+        String sessionId = sessionService.createSecureSession("U2012345A", "gAAAAABencrypted==");
+        sessionIds.add(sessionId);
+        return sessionId;
+    }
+
+    @Test
+    void concurrentWritersNeitherLoseUpdatesNorShareVersions() throws Exception {
+        String sessionId = createSession();
+        int writers = 8;
+        int updatesEach = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < updatesEach; i++) {
+                    // Whatever stays contended after the last round is the caller's to retry
+                    SessionService.UpdateResult result;
+                    do {
+                        result = sessionService.applySessionUpdates(Map.of(sessionId,
+                            sessionData -> sessionData.setSwapCycles(sessionData.getSwapCycles() + 1)));
+                    } while (!result.getConflicted().isEmpty());
+                    assertEquals(List.of(sessionId), result.getWritten());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        int total = writers * updatesEach;
+        SessionData stored = sessionService.getSecureSession(sessionId);
+        assertEquals(total, stored.getSwapCycles());
+        assertEquals(1 + total, stored.getStatusVersion());
+        assertEquals(total, published.size());
+        assertEquals(total, new HashSet<>(published).size());
+        byte[] mirrored = bytesRedisTemplate.opsForValue().get(Constants.Session.STATUS_VERSION_PREFIX + sessionId);
+        assertEquals(Long.toString(1 + total), new String(mirrored, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writeInterleavedWithAStopIsReappliedOnTopOfIt() {
+        String sessionId = createSession();
+        List<ModuleStatus> modules = List.of(new ModuleStatus("10001", List.of("20001"), false, "Pending..."));
+        AtomicInteger runs = new AtomicInteger();
+
+        SessionService.UpdateResult result = sessionService.applySessionUpdates(Map.of(sessionId, sessionData -> {
+            if (runs.incrementAndGet() == 1) {
+                // Another node stops the swap between this writer's read and its write
+                sessionService.updateOverallSwapStatus(sessionId, Constants.SwapStatus.STOPPED, "Swap stopped by user");
+            }
+            sessionData.setModules(new ArrayList<>(modules));
+        }));
+
+        assertEquals(List.of(sessionId), result.getWritten());
+        assertEquals(2, runs.get());
+        SessionData stored = sessionService.getSecureSession(sessionId);
+        assertEquals(Constants.SwapStatus.STOPPED, stored.getSwapStatus());
+        assertEquals(1, stored.getModules().size());
+        assertEquals(3, stored.getStatusVersion());
+    }
+
+    @Test
+    void missingSessionsAreNeitherWrittenNorContended() {
+        SessionService.UpdateResult result = sessionService.applySessionUpdates(
+            Map.of("no-such-session", sessionData -> sessionData.setSwapCycles(1)));
+
+        assertEquals(List.of(), result.getWritten());
+        assertEquals(List.of(), result.getConflicted());
+    }
+}
@@ -0,0 +1,216 @@
+package com.ntu.adddrop.service;
+
+import com.ntu.adddrop.exception.SwapProcessingException;
+import com.ntu.adddrop.model.SessionData;
+import com.ntu.adddrop.model.SessionData.ModuleStatus;
+import com.ntu.adddrop.service.SwapLockService.SwapLease;
+import com.ntu.adddrop.util.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionStatusWriteBufferTest {
+
+    private static final String SESSION = "session-1";
+
+    private final SessionService sessionService = mock(SessionService.class);
+    private final SwapLockService swapLockService = mock(SwapLockService.class);
+    private final SessionStatusWriteBuffer buffer = new SessionStatusWriteBuffer();
+
+    // What the mocked store holds, and how many times it was written
+    private final Map<String, SessionData> stored = new HashMap<>();
+    private final List<Map<String, Consumer<SessionData>>> writes = new ArrayList<>();
+    private RuntimeException storeFailure;
+
+    @BeforeEach
+    void wire() {
+        ReflectionTestUtils.setField(buffer, "taskScheduler", mock(TaskScheduler.class));
+        ReflectionTestUtils.setField(buffer, "sessionService", sessionService);
+        ReflectionTestUtils.setField(buffer, "sessionEventLog", mock(SessionEventLog.class));
+        ReflectionTestUtils.setField(buffer, "swapLockService", swapLockService);
+        ReflectionTestUtils.setField(buffer, "flushDelayMs", 250L);
+
+        stored.put(SESSION, session());
+        when(sessionService.applySessionUpdates(any())).thenAnswer(invocation -> {
+            if (storeFailure != null) {
+                throw storeFailure;
+            }
+            Map<String, Consumer<SessionData>> mutations = invocation.getArgument(0);
+            writes.add(mutations);
+            List<String> written = new ArrayList<>();
+            mutations.forEach((sessionId, mutation) -> {
+                mutation.accept(stored.get(sessionId));
+                written.add(sessionId);
+            });
+            return new SessionService.UpdateResult(written, List.of());
+        });
+        when(swapLockService.isSupersededBy(any(), any())).thenCallRealMethod();
+    }
+
+    private static SessionData session() {
+        SessionData sessionData = new SessionData("U2012345A", "gAAAAABencrypted==", true);
+        sessionData.setModules(new ArrayList<>(List.of(
+            new ModuleStatus("10001", List.of("20001"), false, "Pending..."),
+            new ModuleStatus("10002", List.of("20002"), false, "Pending..."))));
+        return sessionData;
+    }
+
+    private static ModuleStatus module(String oldIndex, boolean swapped, String message) {
+        return new ModuleStatus(oldIndex, List.of("2" + oldIndex.substring(1)), swapped, message);
+    }
+
+    private Object stat(String name) {
+        return buffer.getStats().get(name);
+    }
+
+    @Test
+    void updatesToOneSessionAreMergedIntoOneWrite() {
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Logging into NTU portal...");
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Your swap request is being processed");
+        buffer.updateModuleStatus(SESSION, 1, module("10002", false, "Indexes 20002 have no vacancies."));
+        buffer.recordCycle(SESSION, 1200);
+        buffer.recordCycle(SESSION, 900);
+
+        buffer.flushAll();
+
+        assertEquals(1, writes.size());
+        SessionData sessionData = stored.get(SESSION);
+        assertEquals("Your swap request is being processed", sessionData.getSwapMessage());
+        assertEquals("Indexes 20002 have no vacancies.", sessionData.getModules().get(1).getMessage());
+        assertEquals("Pending...", sessionData.getModules().get(0).getMessage());
+        assertEquals(2, sessionData.getSwapCycles());
+        assertEquals(900L, sessionData.getLastAttemptMs());
+        assertEquals(4L, stat("merged_updates"));
+    }
+
+    @Test
+    void updatesThatChangeNothingAreDropped() {
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Your swap request is being processed");
+        buffer.updateModuleStatus(SESSION, 0, module("10001", false, "Indexes 20001 have no vacancies."));
+        buffer.flushAll();
+
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Your swap request is being processed");
+        buffer.updateModuleStatus(SESSION, 0, module("10001", false, "Indexes 20001 have no vacancies."));
+        buffer.flushAll();
+
+        assertEquals(1, writes.size());
+        assertEquals(2L, stat("dropped_noop_updates"));
+    }
+
+    @Test
+    void failedTerminalFlushThrowsAndStaysBuffered() {
+        storeFailure = new IllegalStateException("Redis unavailable");
+
+        SwapProcessingException.StatusWriteException thrown = assertThrows(SwapProcessingException.StatusWriteException.class,
+            () -> buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.COMPLETED, "All modules have been successfully swapped."));
+
+        assertEquals(SESSION, thrown.getSessionId());
+        assertEquals(1, stat("pending_sessions"));
+        assertEquals(1L, stat("failed_flushes"));
+        assertNotEquals(Constants.SwapStatus.COMPLETED, stored.get(SESSION).getSwapStatus());
+
+        storeFailure = null;
+        buffer.flushAll();
+
+        assertEquals(Constants.SwapStatus.COMPLETED, stored.get(SESSION).getSwapStatus());
+        assertEquals(0, stat("pending_sessions"));
+    }
+
+    @Test
+    void requeuedBatchGoesUnderNewerUpdates() {
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Logging into NTU portal...");
+        buffer.updateModuleStatus(SESSION, 0, module("10001", false, "Indexes 20001 have no vacancies."));
+        buffer.recordCycle(SESSION, 1500);
+        storeFailure = new IllegalStateException("Redis unavailable");
+        assertThrows(IllegalStateException.class, buffer::flushAll);
+
+        // Newer updates arrive while the failed batch waits for its retry
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Your swap request is being processed");
+        buffer.updateModuleStatus(SESSION, 1, module("10002", false, "Indexes 20002 have no vacancies."));
+        buffer.recordCycle(SESSION, 800);
+        storeFailure = null;
+        buffer.flushAll();
+
+        SessionData sessionData = stored.get(SESSION);
+        assertEquals("Your swap request is being processed", sessionData.getSwapMessage());
+        assertEquals("Indexes 20001 have no vacancies.", sessionData.getModules().get(0).getMessage());
+        assertEquals("Indexes 20002 have no vacancies.", sessionData.getModules().get(1).getMessage());
+        assertEquals(2, sessionData.getSwapCycles());
+        assertEquals(800L, sessionData.getLastAttemptMs());
+    }
+
+    @Test
+    void supersededFencingTokenDropsTheWrite() {
+        SwapLease lease = mock(SwapLease.class);
+        when(lease.getSessionId()).thenReturn(SESSION);
+        when(lease.getFencingToken()).thenReturn(7L);
+        when(swapLockService.getLockHolders(anyList())).thenReturn(List.of("node-b:8"));
+        buffer.fence(lease);
+
+        buffer.updateModuleStatus(SESSION, 0, module("10001", true, "Successfully swapped 10001 → 20001"));
+
+        assertTrue(writes.get(0).isEmpty());
+        assertEquals("Pending...", stored.get(SESSION).getModules().get(0).getMessage());
+        assertEquals(1L, stat("fenced_writes"));
+    }
+
+    @Test
+    void currentFencingTokenWrites() {
+        SwapLease lease = mock(SwapLease.class);
+        when(lease.getSessionId()).thenReturn(SESSION);
+        when(lease.getFencingToken()).thenReturn(8L);
+        when(swapLockService.getLockHolders(anyList())).thenReturn(List.of("node-a:8"));
+        buffer.fence(lease);
+
+        buffer.updateModuleStatus(SESSION, 0, module("10001", true, "Successfully swapped 10001 → 20001"));
+
+        assertTrue(stored.get(SESSION).getModules().get(0).isSwapped());
+        assertEquals(0L, stat("fenced_writes"));
+    }
+
+    @Test
+    void loopStatusDoesNotReplaceAStopFromAnotherNode() {
+        SwapLease lease = mock(SwapLease.class);
+        when(lease.getSessionId()).thenReturn(SESSION);
+        when(lease.getFencingToken()).thenReturn(8L);
+        when(swapLockService.getLockHolders(anyList())).thenReturn(List.of("node-a:8"));
+        buffer.fence(lease);
+        stored.get(SESSION).setSwapStatus(Constants.SwapStatus.STOPPED);
+        stored.get(SESSION).setSwapMessage("Swap stopped by user");
+
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.PROCESSING, "Logging into NTU portal...");
+        buffer.updateModuleStatus(SESSION, 0, module("10001", false, "Indexes 20001 have no vacancies."));
+        buffer.flushAll();
+
+        SessionData sessionData = stored.get(SESSION);
+        assertEquals(Constants.SwapStatus.STOPPED, sessionData.getSwapStatus());
+        assertEquals("Swap stopped by user", sessionData.getSwapMessage());
+        assertEquals("Indexes 20001 have no vacancies.", sessionData.getModules().get(0).getMessage());
+    }
+
+    @Test
+    void unfencedSessionsSkipTheLockLookup() {
+        buffer.updateOverallSwapStatus(SESSION, Constants.SwapStatus.STOPPED, "Swap stopped by user");
+
+        verify(swapLockService, never()).getLockHolders(anyList());
+        assertEquals(Constants.SwapStatus.STOPPED, stored.get(SESSION).getSwapStatus());
+    }
+}
@@ -92,7 +92,7 @@ const InputIndex = () => {
       }
     } catch (error) {
       console.error('Swap submission error:', error);
-      const errorMessage = error.response?.data?.detail || error.message || 'Swap submission failed. Please try again.';
+      const errorMessage = error.response?.data?.detail || error.response?.data?.message || error.message || 'Swap submission failed. Please try again.';
       setMessage({ type: 'error', text: errorMessage });
     } finally {
       setLoading(false);
@@ -31,7 +31,7 @@ const SwapStatus = () => {
 
   // Initial state - will be replaced by real data from the backend
   const [swapData, setSwapData] = useState({
-    status: 'Loading', // Processing, Completed, Error, Timed Out, Stopped
+    status: 'Loading', // Queued, Processing, Completed, Error, Timed Out, Stopped
     message: 'Loading swap status...',
     details: [],
     attempt_count: 0,
@@ -147,6 +147,7 @@ const SwapStatus = () => {
   const getStatusColor = (status) => {
     switch (status.toLowerCase()) {
       case 'completed': return 'success';
+      case 'queued': return 'warning';
       case 'processing': return 'primary';
       case 'error':
       case 'timed out':
@@ -166,6 +167,7 @@ const SwapStatus = () => {
   const getStatusIndicatorColor = (status) => {
     switch (status.toLowerCase()) {
       case 'completed': return '#4caf50';
+      case 'queued': return '#ff9800';
       case 'processing': return '#2196f3';
       case 'error':
       case 'timed out':
@@ -232,6 +234,12 @@ const SwapStatus = () => {
               {swapData.message}
             </Typography>
 
+            {swapData.status === 'Queued' && swapData.estimatedStartAt && (
+              <Typography variant="caption" color="text.secondary" sx={{ mt: 0.5, display: 'block' }}>
+                Expected to start around {formatTimestamp(swapData.estimatedStartAt)}
+              </Typography>
+            )}
+
             {swapData.status === 'Processing' && swapData.attempt_count > 0 && (
               <Typography variant="caption" color="text.secondary" sx={{ mt: 0.5, display: 'block' }}>
                 Attempt #{swapData.attempt_count}
@@ -299,7 +307,7 @@ const SwapStatus = () => {
 
           {/* Action Buttons */}
           <Box sx={{ mt: 'auto' }}>
-            {(swapData.status === 'Processing') && (
+            {(swapData.status === 'Processing' || swapData.status === 'Queued') && (
               <Button
                 variant="contained"
                 color="error"